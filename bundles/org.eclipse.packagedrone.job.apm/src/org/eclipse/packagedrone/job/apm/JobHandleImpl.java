@@ -58,6 +58,33 @@ public class JobHandleImpl implements JobHandle
         this.properties = Collections.unmodifiableMap ( ji.getProperties () );
     }
 
+    /**
+     * Create a copy of a job handle, replacing the progress information
+     *
+     * @param other
+     *            the job handle to copy
+     * @param currentWorkLabel
+     *            the current work label
+     * @param percentComplete
+     *            the current progress
+     */
+    public JobHandleImpl ( final JobHandleImpl other, final String currentWorkLabel, final double percentComplete )
+    {
+        this.id = other.id;
+        this.state = other.state;
+        this.errorInformation = other.errorInformation;
+
+        this.currentWorkLabel = currentWorkLabel;
+        this.percentComplete = percentComplete;
+
+        this.request = other.request;
+
+        this.label = other.label;
+        this.result = other.result;
+
+        this.properties = other.properties;
+    }
+
     @Override
     public String getResult ()
     {
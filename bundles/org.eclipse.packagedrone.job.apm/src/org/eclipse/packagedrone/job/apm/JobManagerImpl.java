@@ -16,7 +16,16 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 import org.eclipse.packagedrone.job.ErrorInformation;
@@ -41,15 +50,47 @@ import org.slf4j.LoggerFactory;
 
 public class JobManagerImpl implements JobManager
 {
+    /**
+     * The transient progress of a running job
+     */
+    private static class Progress
+    {
+        private final String label;
+
+        private final double percentComplete;
+
+        public Progress ( final String label, final double percentComplete )
+        {
+            this.label = label;
+            this.percentComplete = percentComplete;
+        }
+    }
+
     public class ContextImpl implements Context, Runnable
     {
         private final String id;
 
-        private long totalAmount;
+        private volatile long totalAmount;
+
+        private final AtomicLong worked = new AtomicLong ();
 
-        private long worked;
+        private volatile String label;
 
-        private String label;
+        /**
+         * The current progress, only kept in memory and persisted at a limited
+         * rate
+         */
+        private final AtomicReference<Progress> progress = new AtomicReference<> ();
+
+        /**
+         * The time the progress was last persisted
+         */
+        private final AtomicLong lastFlush = new AtomicLong ();
+
+        /**
+         * If a flush of the progress is already scheduled
+         */
+        private final AtomicBoolean flushScheduled = new AtomicBoolean ();
 
         private final JobFactory factory;
 
@@ -65,6 +106,7 @@ public class JobManagerImpl implements JobManager
         @Override
         public void run ()
         {
+            JobManagerImpl.this.running.put ( this.id, this );
             try
             {
                 final JobInstance instance = this.factory.createInstance ( this.data );
@@ -78,7 +120,8 @@ public class JobManagerImpl implements JobManager
             }
             finally
             {
-                internalSetComplete ( this.id );
+                internalSetComplete ( this.id, this.progress.get () );
+                JobManagerImpl.this.running.remove ( this.id );
             }
         }
 
@@ -87,26 +130,85 @@ public class JobManagerImpl implements JobManager
         {
             this.totalAmount = amount;
             this.label = label;
-            internalStartWork ( this.id, label );
+            updateProgress ( current -> new Progress ( label, 0.0 ) );
         }
 
         @Override
         public void setCurrentTaskName ( final String name )
         {
-            internalSetTaskLabel ( this.id, name == null ? this.label : String.format ( "%s: %s", this.label, name ) );
+            final String label = name == null ? this.label : String.format ( "%s: %s", this.label, name );
+            updateProgress ( current -> new Progress ( label, current == null ? 0.0 : current.percentComplete ) );
         }
 
         @Override
         public void complete ()
         {
-            internalWorked ( this.id, 1.0 );
+            updatePercentComplete ( 1.0 );
         }
 
         @Override
         public void worked ( final long amount )
         {
-            this.worked = Math.min ( this.worked + amount, this.totalAmount );
-            internalWorked ( this.id, (double)this.worked / (double)this.totalAmount );
+            final long total = this.totalAmount;
+            final long worked = this.worked.accumulateAndGet ( amount, ( current, delta ) -> Math.min ( current + delta, total ) );
+            updatePercentComplete ( (double)worked / (double)total );
+        }
+
+        private void updatePercentComplete ( final double percentComplete )
+        {
+            updateProgress ( current -> new Progress ( current == null ? null : current.label, percentComplete ) );
+        }
+
+        private void updateProgress ( final UnaryOperator<Progress> updater )
+        {
+            final Progress progress = this.progress.updateAndGet ( updater );
+
+            logger.trace ( "{}: progress: {} - {}", this.id, progress.label, progress.percentComplete );
+
+            flushProgress ();
+        }
+
+        /**
+         * Persist the current progress, but not too often
+         * <p>
+         * An update inside the flush interval schedules a flush at the end of
+         * the interval, so that the last update gets persisted as well.
+         * </p>
+         */
+        private void flushProgress ()
+        {
+            final long now = System.currentTimeMillis ();
+            final long last = this.lastFlush.get ();
+            final long delay = last + PROGRESS_FLUSH_INTERVAL - now;
+
+            if ( delay <= 0 && this.lastFlush.compareAndSet ( last, now ) )
+            {
+                internalSetProgress ( this.id, this.progress.get () );
+                return;
+            }
+
+            if ( this.flushScheduled.compareAndSet ( false, true ) && !scheduleFlush ( this::runScheduledFlush, Math.max ( delay, PROGRESS_FLUSH_INTERVAL / 10 ) ) )
+            {
+                this.flushScheduled.set ( false );
+            }
+        }
+
+        private void runScheduledFlush ()
+        {
+            // updates from now on will either flush or schedule again
+
+            this.flushScheduled.set ( false );
+            this.lastFlush.set ( System.currentTimeMillis () );
+
+            if ( JobManagerImpl.this.running.get ( this.id ) == this )
+            {
+                internalSetProgress ( this.id, this.progress.get () );
+            }
+        }
+
+        private Progress getProgress ()
+        {
+            return this.progress.get ();
         }
 
         @Override
@@ -121,6 +223,12 @@ public class JobManagerImpl implements JobManager
 
     private static final MetaKey MODEL_KEY = new MetaKey ( "scheduler", "jobs" );
 
+    /**
+     * The minimum time in milliseconds between persisting the progress of a
+     * job
+     */
+    private static final long PROGRESS_FLUSH_INTERVAL = Long.getLong ( "drone.job.progressFlushInterval", 1_000 );
+
     private StorageManager storageManager;
 
     private StorageRegistration handle;
@@ -129,6 +237,16 @@ public class JobManagerImpl implements JobManager
 
     private final FactoryManager factoryManager;
 
+    /**
+     * The jobs currently running, by job id
+     */
+    private final Map<String, ContextImpl> running = new ConcurrentHashMap<> ();
+
+    /**
+     * The executor for delayed progress flushes
+     */
+    private volatile ScheduledExecutorService flushExecutor;
+
     public JobManagerImpl ()
     {
         this.factoryManager = new FactoryManager ( FrameworkUtil.getBundle ( JobManagerImpl.class ).getBundleContext () );
@@ -142,6 +260,11 @@ public class JobManagerImpl implements JobManager
     public void start ()
     {
         this.factoryManager.start ();
+        this.flushExecutor = Executors.newSingleThreadScheduledExecutor ( r -> {
+            final Thread t = new Thread ( r, "JobManager/ProgressFlush" );
+            t.setDaemon ( true );
+            return t;
+        } );
         this.queue.start ();
         this.handle = this.storageManager.registerModel ( 10_000, MODEL_KEY, new JobModelProvider () );
     }
@@ -154,6 +277,11 @@ public class JobManagerImpl implements JobManager
             this.handle.unregister ();
             this.handle = null;
         }
+        if ( this.flushExecutor != null )
+        {
+            this.flushExecutor.shutdownNow ();
+            this.flushExecutor = null;
+        }
         this.factoryManager.stop ();
     }
 
@@ -198,7 +326,7 @@ public class JobManagerImpl implements JobManager
     public Collection<? extends JobHandle> getActiveJobs ()
     {
         return this.storageManager.accessCall ( MODEL_KEY, JobModel.class, jobs -> {
-            return jobs.getJobs ().values ().stream ().filter ( job -> !job.isComplete () ).collect ( Collectors.toList () );
+            return jobs.getJobs ().values ().stream ().filter ( job -> !job.isComplete () ).map ( this::withProgress ).collect ( Collectors.toList () );
         } );
     }
 
@@ -207,7 +335,32 @@ public class JobManagerImpl implements JobManager
     {
         logger.trace ( "Get job: {}", id );
 
-        return this.storageManager.accessCall ( MODEL_KEY, JobModel.class, jobs -> jobs.getJobs ().get ( id ) );
+        return withProgress ( this.storageManager.accessCall ( MODEL_KEY, JobModel.class, jobs -> jobs.getJobs ().get ( id ) ) );
+    }
+
+    /**
+     * Add the live progress of a running job to the persisted job state
+     */
+    private JobHandle withProgress ( final JobHandle job )
+    {
+        if ( ! ( job instanceof JobHandleImpl ) )
+        {
+            return job;
+        }
+
+        final ContextImpl context = this.running.get ( job.getId () );
+        if ( context == null )
+        {
+            return job;
+        }
+
+        final Progress progress = context.getProgress ();
+        if ( progress == null )
+        {
+            return job;
+        }
+
+        return new JobHandleImpl ( (JobHandleImpl)job, progress.label, progress.percentComplete );
     }
 
     protected Optional<JobFactory> getJobFactory ( final String factoryId )
@@ -281,6 +434,27 @@ public class JobManagerImpl implements JobManager
         modifyJob ( id, job -> job.setResult ( data ) );
     }
 
+    private boolean scheduleFlush ( final Runnable flush, final long delay )
+    {
+        final ScheduledExecutorService executor = this.flushExecutor;
+        if ( executor == null )
+        {
+            return false;
+        }
+
+        try
+        {
+            executor.schedule ( flush, delay, TimeUnit.MILLISECONDS );
+            return true;
+        }
+        catch ( final RejectedExecutionException e )
+        {
+            // shutting down, the final progress gets persisted on completion
+            logger.trace ( "Failed to schedule progress flush", e );
+            return false;
+        }
+    }
+
     public void internalSetRunning ( final String id )
     {
         logger.debug ( "{}: set running", id );
@@ -290,33 +464,33 @@ public class JobManagerImpl implements JobManager
 
     public void internalSetComplete ( final String id )
     {
-        logger.debug ( "{}: set complete", id );
-
-        modifyJob ( id, job -> job.setState ( State.COMPLETE ) );
+        internalSetComplete ( id, null );
     }
 
-    public void internalWorked ( final String id, final double percentComplete )
+    private void internalSetComplete ( final String id, final Progress progress )
     {
-        logger.trace ( "{}: worked: {}", id, percentComplete );
+        logger.debug ( "{}: set complete", id );
 
-        modifyJob ( id, job -> job.setPercentComplete ( percentComplete ) );
+        modifyJob ( id, job -> {
+            applyProgress ( job, progress );
+            job.setState ( State.COMPLETE );
+        } );
     }
 
-    public void internalStartWork ( final String id, final String label )
+    private void internalSetProgress ( final String id, final Progress progress )
     {
-        logger.trace ( "{}: set start work: {}", id, label );
+        logger.trace ( "{}: persist progress", id );
 
-        modifyJob ( id, job -> {
-            job.setCurrentWorkLabel ( label );
-            job.setPercentComplete ( 0.0 );
-        } );
+        modifyJob ( id, job -> applyProgress ( job, progress ) );
     }
 
-    public void internalSetTaskLabel ( final String id, final String label )
+    private static void applyProgress ( final JobInstanceEntity job, final Progress progress )
     {
-        logger.trace ( "{}: set task label: {}", id, label );
-
-        modifyJob ( id, job -> job.setCurrentWorkLabel ( label ) );
+        if ( progress != null )
+        {
+            job.setCurrentWorkLabel ( progress.label );
+            job.setPercentComplete ( progress.percentComplete );
+        }
     }
 
 }
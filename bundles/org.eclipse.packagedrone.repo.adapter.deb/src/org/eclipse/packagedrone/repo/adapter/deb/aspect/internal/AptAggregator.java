@@ -23,7 +23,9 @@ import org.eclipse.packagedrone.repo.adapter.deb.aspect.DebianAspectInformation;
 import org.eclipse.packagedrone.repo.adapter.deb.aspect.DistributionInformation;
 import org.eclipse.packagedrone.repo.adapter.deb.aspect.internal.RepoBuilder.PackageInformation;
 import org.eclipse.packagedrone.repo.aspect.aggregate.AggregationContext;
-import org.eclipse.packagedrone.repo.aspect.aggregate.ChannelAggregator;
+import org.eclipse.packagedrone.repo.aspect.aggregate.ArtifactFragments;
+import org.eclipse.packagedrone.repo.aspect.aggregate.IncrementalAggregationContext;
+import org.eclipse.packagedrone.repo.aspect.aggregate.IncrementalChannelAggregator;
 import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
 import org.eclipse.packagedrone.repo.signing.SigningService;
 import org.osgi.framework.BundleContext;
@@ -34,7 +36,7 @@ import org.osgi.framework.ServiceReference;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
-public class AptAggregator implements ChannelAggregator
+public class AptAggregator implements IncrementalChannelAggregator
 {
     private final BundleContext context;
 
@@ -59,6 +61,59 @@ public class AptAggregator implements ChannelAggregator
 
         final Gson gson = new GsonBuilder ().create ();
 
+        final ArtifactFragments fragments = ArtifactFragments.render ( context.getArtifacts (), art -> renderPackage ( gson, art ) );
+
+        spoolOut ( context, cfg, fragments );
+
+        return result;
+    }
+
+    /**
+     * Apply changes to the APT repository
+     * <p>
+     * The previous repository is kept if none of the changed artifacts is, or
+     * was, a debian package. Otherwise only the package entries of the changed
+     * artifacts are rendered again, the entries of all other packages are taken
+     * from the cache entry "packages". The package indexes are compressed and
+     * signed as part of the release file, so the indexes and the release file
+     * are always written again.
+     * </p>
+     */
+    @Override
+    public boolean aggregateChanges ( final IncrementalAggregationContext context, final Map<String, String> result ) throws Exception
+    {
+        if ( !context.isAffected ( art -> art.getMetaData ().get ( DebianAspectInformation.KEY_PACKAGE ) != null ) )
+        {
+            context.keepPreviousValidationMessages ();
+            return true;
+        }
+
+        final ChannelConfiguration cfg = MetaKeys.bind ( new ChannelConfiguration (), context.getChannelMetaData () );
+        if ( !cfg.isValid () )
+        {
+            return false;
+        }
+
+        final ArtifactFragments fragments = ArtifactFragments.load ( context, "packages" );
+        if ( fragments == null )
+        {
+            return false;
+        }
+
+        final Gson gson = new GsonBuilder ().create ();
+
+        fragments.update ( context, art -> renderPackage ( gson, art ) );
+
+        spoolOut ( context, cfg, fragments );
+
+        return true;
+    }
+
+    /**
+     * Create the repository from the package entries
+     */
+    private void spoolOut ( final AggregationContext context, final ChannelConfiguration cfg, final ArtifactFragments fragments ) throws Exception
+    {
         ServiceReference<SigningService> serviceRef = null;
         SigningService signingService;
         if ( cfg.getSigningService () != null )
@@ -92,41 +147,22 @@ public class AptAggregator implements ChannelAggregator
 
             repo.addDistribution ( cfg.getDistribution (), info );
 
-            for ( final ArtifactInformation art : context.getArtifacts () )
+            for ( final Map.Entry<String, Map<String, String>> entry : fragments.getFragments ().entrySet () )
             {
-                final String arch = art.getMetaData ().get ( DebianAspectInformation.KEY_ARCH );
-                final String packageName = art.getMetaData ().get ( DebianAspectInformation.KEY_PACKAGE );
-                final String version = art.getMetaData ().get ( DebianAspectInformation.KEY_VERSION );
-                final String controlJson = art.getMetaData ().get ( DebianAspectInformation.KEY_CONTROL_JSON );
-
-                final String md5 = art.getMetaData ().get ( new MetaKey ( "hasher", "md5" ) );
-                final String sha1 = art.getMetaData ().get ( new MetaKey ( "hasher", "sha1" ) );
-                final String sha256 = art.getMetaData ().get ( new MetaKey ( "hasher", "sha256" ) );
-
-                final Map<String, String> checksums = new HashMap<> ( 3 );
-                checksums.put ( "MD5sum", md5 );
-                checksums.put ( "SHA1", sha1 );
-                checksums.put ( "SHA256", sha256 );
-
-                if ( arch == null || version == null || packageName == null || controlJson == null )
-                {
-                    continue;
-                }
-
-                final ControlInformation control = gson.fromJson ( controlJson, ControlInformation.class );
-
-                final PackageInformation packageInfo = new PackageInformation ( makePoolName ( art, packageName, version, arch ), art.getSize (), control.getValues (), checksums );
+                final String artifactId = entry.getKey ();
 
                 // TODO: implement a component selection mechanism
 
-                repo.addPackage ( cfg.getDistribution (), cfg.getDefaultComponent (), arch, packageInfo, ( severity, msg ) -> {
-                    context.validationMessage ( severity, msg, Collections.singleton ( art.getId () ) );
+                repo.addEntry ( cfg.getDistribution (), cfg.getDefaultComponent (), entry.getValue ().get ( "arch" ), entry.getValue ().get ( "entry" ), ( severity, msg ) -> {
+                    context.validationMessage ( severity, msg, Collections.singleton ( artifactId ) );
                 } );
             }
 
             repo.spoolOut ( ( name, mimeType, stream ) -> {
                 context.createCacheEntry ( name, name, mimeType, stream );
             } );
+
+            fragments.store ( context, "packages" );
         }
         finally
         {
@@ -135,7 +171,42 @@ public class AptAggregator implements ChannelAggregator
                 this.context.ungetService ( serviceRef );
             }
         }
+    }
+
+    /**
+     * Render the package entry of an artifact
+     *
+     * @return the fragment with the architecture and the entry of the package,
+     *         or {@code null} if the artifact is not a debian package
+     */
+    private Map<String, String> renderPackage ( final Gson gson, final ArtifactInformation art )
+    {
+        final String arch = art.getMetaData ().get ( DebianAspectInformation.KEY_ARCH );
+        final String packageName = art.getMetaData ().get ( DebianAspectInformation.KEY_PACKAGE );
+        final String version = art.getMetaData ().get ( DebianAspectInformation.KEY_VERSION );
+        final String controlJson = art.getMetaData ().get ( DebianAspectInformation.KEY_CONTROL_JSON );
+
+        final String md5 = art.getMetaData ().get ( new MetaKey ( "hasher", "md5" ) );
+        final String sha1 = art.getMetaData ().get ( new MetaKey ( "hasher", "sha1" ) );
+        final String sha256 = art.getMetaData ().get ( new MetaKey ( "hasher", "sha256" ) );
+
+        final Map<String, String> checksums = new HashMap<> ( 3 );
+        checksums.put ( "MD5sum", md5 );
+        checksums.put ( "SHA1", sha1 );
+        checksums.put ( "SHA256", sha256 );
+
+        if ( arch == null || version == null || packageName == null || controlJson == null )
+        {
+            return null;
+        }
+
+        final ControlInformation control = gson.fromJson ( controlJson, ControlInformation.class );
+
+        final PackageInformation packageInfo = new PackageInformation ( makePoolName ( art, packageName, version, arch ), art.getSize (), control.getValues (), checksums );
 
+        final Map<String, String> result = new HashMap<> ( 2 );
+        result.put ( "arch", arch );
+        result.put ( "entry", RepoBuilder.renderPackage ( packageInfo ) );
         return result;
     }
 
@@ -95,6 +95,11 @@ public class RepoBuilder
         }
 
         public void addPackage ( final String component, final String architecture, final PackageInformation packageInfo, final ValidationListener validationListener )
+        {
+            addEntry ( component, architecture, renderPackage ( packageInfo ), validationListener );
+        }
+
+        public void addEntry ( final String component, final String architecture, final String entry, final ValidationListener validationListener )
         {
             final Component comp = this.components.get ( component );
             if ( comp == null )
@@ -106,7 +111,7 @@ public class RepoBuilder
             {
                 for ( final String arch : this.information.getArchitectures () )
                 {
-                    comp.addPackage ( "binary-" + arch, arch, packageInfo );
+                    comp.addEntry ( "binary-" + arch, arch, entry );
                 }
             }
             else
@@ -120,7 +125,7 @@ public class RepoBuilder
                     return;
                 }
 
-                comp.addPackage ( "binary-" + architecture, architecture, packageInfo );
+                comp.addEntry ( "binary-" + architecture, architecture, entry );
             }
         }
     }
@@ -148,6 +153,11 @@ public class RepoBuilder
         }
 
         public void addPackage ( final String subComponent, final String architecture, final PackageInformation packageInfo )
+        {
+            addEntry ( subComponent, architecture, renderPackage ( packageInfo ) );
+        }
+
+        public void addEntry ( final String subComponent, final String architecture, final String entry )
         {
             final SubComponent sub = this.subComponents.get ( subComponent );
             if ( sub == null )
@@ -155,7 +165,7 @@ public class RepoBuilder
                 return;
             }
 
-            sub.addPackage ( packageInfo );
+            sub.addEntry ( entry );
         }
 
         public Map<String, SubComponent> getSubComponents ()
@@ -192,37 +202,19 @@ public class RepoBuilder
 
         public void addPackage ( final PackageInformation packageInfo )
         {
-            final Map<String, String> values = new HashMap<> ( packageInfo.getControl () );
-
-            values.put ( "Filename", packageInfo.getPoolName () );
-            values.put ( "Size", "" + packageInfo.getFileSize () );
-
-            if ( !values.containsKey ( "Description-md5" ) )
-            {
-                values.put ( "Description-md5", Packages.makeDescriptionMd5 ( values.get ( "Description" ) ) );
-            }
-
-            // add checksum entries
-
-            for ( final Map.Entry<String, String> entry : packageInfo.getChecksums ().entrySet () )
-            {
-                final String v = entry.getValue ();
-                if ( v != null )
-                {
-                    values.put ( entry.getKey (), v );
-                }
-            }
-
-            try
-            {
-                Packages.writeBinaryPackageValues ( this.pw, values );
-            }
-            catch ( final IOException e )
-            {
-                throw new RuntimeException ( "Failed to write package stream", e );
-            }
+            addEntry ( renderPackage ( packageInfo ) );
+        }
 
-            this.pw.print ( "\n" );
+        /**
+         * Add a package entry
+         *
+         * @param entry
+         *            the entry, as rendered by
+         *            {@link RepoBuilder#renderPackage(PackageInformation)}
+         */
+        public void addEntry ( final String entry )
+        {
+            this.pw.print ( entry );
         }
 
         public byte[] toReleaseFile ( final Distribution dist, final Component comp )
@@ -317,6 +309,84 @@ public class RepoBuilder
         dist.addPackage ( component, architecture, packageInfo, validationListener );
     }
 
+    /**
+     * Add a package entry which was rendered before
+     *
+     * @param distribution
+     *            the name of the distribution
+     * @param component
+     *            the name of the component
+     * @param architecture
+     *            the architecture of the package
+     * @param entry
+     *            the entry, as rendered by
+     *            {@link #renderPackage(PackageInformation)}
+     * @param validationListener
+     *            the listener for validation messages, may be {@code null}
+     */
+    public void addEntry ( final String distribution, final String component, final String architecture, final String entry, final ValidationListener validationListener )
+    {
+        final Distribution dist = this.distributions.get ( distribution );
+        if ( dist == null )
+        {
+            return; // ignore
+        }
+
+        dist.addEntry ( component, architecture, entry, validationListener );
+    }
+
+    /**
+     * Render the entry of a package in the package index
+     * <p>
+     * The entry does not depend on the architecture it gets added to, so the
+     * same entry can be added to several architectures.
+     * </p>
+     *
+     * @param packageInfo
+     *            the package to render
+     * @return the entry, including the terminating empty line
+     */
+    public static String renderPackage ( final PackageInformation packageInfo )
+    {
+        final Map<String, String> values = new HashMap<> ( packageInfo.getControl () );
+
+        values.put ( "Filename", packageInfo.getPoolName () );
+        values.put ( "Size", "" + packageInfo.getFileSize () );
+
+        if ( !values.containsKey ( "Description-md5" ) )
+        {
+            values.put ( "Description-md5", Packages.makeDescriptionMd5 ( values.get ( "Description" ) ) );
+        }
+
+        // add checksum entries
+
+        for ( final Map.Entry<String, String> entry : packageInfo.getChecksums ().entrySet () )
+        {
+            final String v = entry.getValue ();
+            if ( v != null )
+            {
+                values.put ( entry.getKey (), v );
+            }
+        }
+
+        final StringWriter sw = new StringWriter ();
+        final PrintWriter pw = new PrintWriter ( sw );
+
+        try
+        {
+            Packages.writeBinaryPackageValues ( pw, values );
+        }
+        catch ( final IOException e )
+        {
+            throw new RuntimeException ( "Failed to write package stream", e );
+        }
+
+        pw.print ( "\n" );
+        pw.flush ();
+
+        return sw.toString ();
+    }
+
     private static class Checksums
     {
         private final Map<String, HashCode> codes;
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.adapter.maven.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.packagedrone.repo.MetaKey;
+import org.eclipse.packagedrone.repo.adapter.maven.ChannelData;
+import org.eclipse.packagedrone.repo.channel.CacheEntryInformation;
+import org.junit.Test;
+
+public class ChannelDataCacheTest
+{
+    private static final MetaKey KEY = new MetaKey ( "maven.repo", "channel" );
+
+    private static CacheEntryInformation makeInformation ( final long size )
+    {
+        return new CacheEntryInformation ( KEY, "channel.json", size, "application/json", Instant.now () );
+    }
+
+    @Test
+    public void testReuse () throws IOException
+    {
+        final ChannelDataCache cache = new ChannelDataCache ( 1_000 );
+        final AtomicInteger loads = new AtomicInteger ();
+
+        final CacheEntryInformation info1 = makeInformation ( 100 );
+
+        final ChannelData data1 = cache.get ( "c1", info1, () -> {
+            loads.incrementAndGet ();
+            return new ChannelData ();
+        } );
+        final ChannelData data2 = cache.get ( "c1", info1, () -> {
+            loads.incrementAndGet ();
+            return new ChannelData ();
+        } );
+
+        assertSame ( data1, data2 );
+        assertEquals ( 1, loads.get () );
+
+        // a rewritten cache entry must be loaded again
+
+        final ChannelData data3 = cache.get ( "c1", makeInformation ( 100 ), () -> {
+            loads.incrementAndGet ();
+            return new ChannelData ();
+        } );
+
+        assertNotSame ( data1, data3 );
+        assertEquals ( 2, loads.get () );
+    }
+
+    @Test
+    public void testEviction () throws IOException
+    {
+        final ChannelDataCache cache = new ChannelDataCache ( 250 );
+        final AtomicInteger loads = new AtomicInteger ();
+
+        final CacheEntryInformation info1 = makeInformation ( 100 );
+        final CacheEntryInformation info2 = makeInformation ( 100 );
+        final CacheEntryInformation info3 = makeInformation ( 100 );
+
+        final ChannelDataCache.Loader loader = () -> {
+            loads.incrementAndGet ();
+            return new ChannelData ();
+        };
+
+        cache.get ( "c1", info1, loader );
+        cache.get ( "c2", info2, loader );
+        cache.get ( "c1", info1, loader ); // c2 is now the least recently used entry
+        cache.get ( "c3", info3, loader );
+        assertEquals ( 3, loads.get () );
+
+        cache.get ( "c1", info1, loader );
+        cache.get ( "c3", info3, loader );
+        assertEquals ( 3, loads.get () );
+
+        cache.get ( "c2", info2, loader );
+        assertEquals ( 4, loads.get () );
+    }
+}
@@ -0,0 +1,248 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.adapter.maven.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.eclipse.packagedrone.repo.MetaKey;
+import org.eclipse.packagedrone.repo.MetaKeys;
+import org.eclipse.packagedrone.repo.adapter.maven.ChannelData;
+import org.eclipse.packagedrone.repo.adapter.maven.ChannelData.ArtifactNode;
+import org.eclipse.packagedrone.repo.adapter.maven.ChannelData.ContentNode;
+import org.eclipse.packagedrone.repo.adapter.maven.ChannelData.DirectoryNode;
+import org.eclipse.packagedrone.repo.adapter.maven.ChannelData.Node;
+import org.eclipse.packagedrone.repo.adapter.maven.MavenInformation;
+import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the incremental aggregation of the maven repository
+ * <p>
+ * Each incremental aggregation is compared to a full aggregation of the same
+ * artifacts.
+ * </p>
+ */
+public class IncrementalAggregationTest
+{
+    private MavenRepositoryChannelAggregator aggregator;
+
+    private MockAggregationContext context;
+
+    private Map<String, String> state;
+
+    private Instant now;
+
+    @Before
+    public void setup () throws Exception
+    {
+        this.aggregator = new MavenRepositoryChannelAggregator ( () -> "http://localhost" );
+        this.context = new MockAggregationContext ();
+        this.now = Instant.parse ( "2015-01-01T12:00:00Z" );
+    }
+
+    @Test
+    public void testNewVersion () throws Exception
+    {
+        this.context.add ( makeArtifact ( "a1", "g1", "a1", "1.0.0", null ) );
+        this.context.add ( makeArtifact ( "b1", "g2", "b1", "1.0.0", null ) );
+        aggregateFull ();
+
+        this.context.add ( makeArtifact ( "a2", "g1", "a1", "1.1.0", null ) );
+        assertTrue ( aggregateIncremental () );
+
+        final Map<String, String> content = dump ();
+        assertEquals ( "a2", content.get ( "g1/a1/1.1.0/a1-1.1.0.jar" ) );
+        assertTrue ( content.get ( "g1/a1/maven-metadata.xml" ).contains ( "<latest>1.1.0</latest>" ) );
+
+        assertFullAggregation ();
+    }
+
+    @Test
+    public void testNewSnapshot () throws Exception
+    {
+        this.context.add ( makeArtifact ( "s1", "g1", "a1", "1.0.0-SNAPSHOT", "1.0.0-20150101.120000-1" ) );
+        aggregateFull ();
+
+        this.context.add ( makeArtifact ( "s2", "g1", "a1", "1.0.0-SNAPSHOT", "1.0.0-20150102.120000-2" ) );
+        assertTrue ( aggregateIncremental () );
+
+        final Map<String, String> content = dump ();
+        assertEquals ( "s2", content.get ( "g1/a1/1.0.0-SNAPSHOT/a1-1.0.0-20150102.120000-2.jar" ) );
+
+        final String metaData = content.get ( "g1/a1/1.0.0-SNAPSHOT/maven-metadata.xml" );
+        assertTrue ( metaData.contains ( "<value>1.0.0-20150101.120000-1</value>" ) );
+        assertTrue ( metaData.contains ( "<value>1.0.0-20150102.120000-2</value>" ) );
+
+        assertFullAggregation ();
+    }
+
+    @Test
+    public void testRemoveVersion () throws Exception
+    {
+        this.context.add ( makeArtifact ( "a1", "g1", "a1", "1.0.0", null ) );
+        this.context.add ( makeArtifact ( "a2", "g1", "a1", "1.1.0", null ) );
+        this.context.add ( makeArtifact ( "b1", "g2.sub", "b1", "1.0.0", null ) );
+        aggregateFull ();
+
+        this.context.remove ( "a2" );
+        this.context.remove ( "b1" );
+        assertTrue ( aggregateIncremental () );
+
+        final Map<String, String> content = dump ();
+        assertNull ( content.get ( "g1/a1/1.1.0/a1-1.1.0.jar" ) );
+        assertTrue ( content.get ( "g1/a1/maven-metadata.xml" ).contains ( "<latest>1.0.0</latest>" ) );
+        assertFalse ( this.context.getCacheEntry ( "prefixes" ).contains ( "/g2" ) );
+
+        assertFullAggregation ();
+    }
+
+    @Test
+    public void testUnrelatedArtifact () throws Exception
+    {
+        this.context.add ( makeArtifact ( "a1", "g1", "a1", "1.0.0", null ) );
+        aggregateFull ();
+
+        this.context.add ( makeArtifact ( "x1", null, null, null, null ) );
+        assertTrue ( aggregateIncremental () );
+
+        assertTrue ( this.context.getCacheEntries ().isEmpty () );
+    }
+
+    /**
+     * Removing coordinates which hide the same coordinates of another artifact
+     * requires a full aggregation
+     */
+    @Test
+    public void testRemoveShadowing () throws Exception
+    {
+        this.context.add ( makeArtifact ( "a1", "g1", "a1", "1.0.0", null ) );
+        this.context.add ( makeArtifact ( "a2", "g1", "a1", "1.0.0", null ) );
+        aggregateFull ();
+
+        this.context.remove ( "a1" );
+        assertFalse ( aggregateIncremental () );
+        assertTrue ( this.context.getCacheEntries ().isEmpty () );
+    }
+
+    private void aggregateFull () throws Exception
+    {
+        this.state = this.aggregator.aggregateMetaData ( this.context );
+        this.context.commit ();
+    }
+
+    private boolean aggregateIncremental () throws Exception
+    {
+        final Map<String, String> result = new HashMap<> ( this.state );
+
+        if ( !this.aggregator.aggregateChanges ( this.context, result ) )
+        {
+            this.context.rollback ();
+            return false;
+        }
+
+        this.state = result;
+        return true;
+    }
+
+    private void assertFullAggregation () throws Exception
+    {
+        final Map<String, String> incremental = dump ();
+        final String prefixes = this.context.getCacheEntry ( "prefixes" );
+
+        this.context.commit ();
+        aggregateFull ();
+
+        assertEquals ( dump (), incremental );
+        assertEquals ( this.context.getCacheEntry ( "prefixes" ), prefixes );
+    }
+
+    /**
+     * Dump the content of the current channel data
+     *
+     * @return a map of all paths to the artifact id or the content of the
+     *         node, without the time stamp of the meta data
+     */
+    private Map<String, String> dump ()
+    {
+        final ChannelData cs = ChannelData.fromJson ( this.state.get ( "channel" ) );
+
+        final Map<String, String> result = new TreeMap<> ();
+        dump ( result, "", cs.findNode ( new LinkedList<> () ) );
+        return result;
+    }
+
+    private static void dump ( final Map<String, String> result, final String prefix, final Node node )
+    {
+        if ( node instanceof DirectoryNode )
+        {
+            for ( final Map.Entry<String, Node> entry : ( (DirectoryNode)node ).getNodes ().entrySet () )
+            {
+                dump ( result, prefix.isEmpty () ? entry.getKey () : prefix + "/" + entry.getKey (), entry.getValue () );
+            }
+        }
+        else if ( node instanceof ArtifactNode )
+        {
+            result.put ( prefix, ( (ArtifactNode)node ).getArtifactId () );
+        }
+        else if ( node instanceof ContentNode && prefix.endsWith ( ".xml" ) )
+        {
+            final String data = new String ( ( (ContentNode)node ).getData (), StandardCharsets.UTF_8 );
+            result.put ( prefix, data.replaceAll ( "<lastUpdated>[0-9]*</lastUpdated>", "" ) );
+        }
+        else if ( node instanceof ContentNode )
+        {
+            result.put ( prefix, "" );
+        }
+    }
+
+    private ArtifactInformation makeArtifact ( final String id, final String groupId, final String artifactId, final String version, final String snapshotVersion )
+    {
+        final SortedMap<MetaKey, String> md = new TreeMap<> ();
+
+        if ( groupId != null )
+        {
+            final MavenInformation mi = new MavenInformation ();
+
+            mi.setGroupId ( groupId );
+            mi.setArtifactId ( artifactId );
+            mi.setVersion ( version );
+            mi.setSnapshotVersion ( snapshotVersion );
+            mi.setExtension ( "jar" );
+
+            try
+            {
+                md.putAll ( MetaKeys.unbind ( mi ) );
+            }
+            catch ( final Exception e )
+            {
+                throw new RuntimeException ( e );
+            }
+        }
+
+        this.now = this.now.plusSeconds ( 60 );
+
+        return new ArtifactInformation ( id, null, new TreeSet<> ( Collections.<String> emptySet () ), id + ".jar", 0L, this.now, Collections.emptySet (), Collections.emptyList (), md, null, null );
+    }
+}
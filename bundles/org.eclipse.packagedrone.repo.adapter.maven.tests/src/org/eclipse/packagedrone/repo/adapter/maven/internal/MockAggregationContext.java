@@ -0,0 +1,212 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.adapter.maven.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.packagedrone.repo.MetaKey;
+import org.eclipse.packagedrone.repo.Severity;
+import org.eclipse.packagedrone.repo.aspect.aggregate.IncrementalAggregationContext;
+import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
+import org.eclipse.packagedrone.repo.channel.ChannelService.ArtifactReceiver;
+import org.eclipse.packagedrone.repo.channel.ValidationMessage;
+import org.eclipse.packagedrone.utils.io.IOConsumer;
+
+/**
+ * An aggregation context keeping artifacts and cache entries in memory
+ * <p>
+ * Changes to the artifacts are recorded as delta until {@link #commit()} is
+ * called. Cache entries which were not re-created are kept, like the channel
+ * implementation does.
+ * </p>
+ */
+public class MockAggregationContext implements IncrementalAggregationContext
+{
+    private final Map<String, ArtifactInformation> artifacts = new LinkedHashMap<> ();
+
+    private final Map<String, ArtifactInformation> previous = new HashMap<> ();
+
+    private final List<ArtifactInformation> added = new LinkedList<> ();
+
+    private final List<ArtifactInformation> changed = new LinkedList<> ();
+
+    private final List<ArtifactInformation> removed = new LinkedList<> ();
+
+    private final Map<String, byte[]> previousCacheEntries = new HashMap<> ();
+
+    private final Map<String, byte[]> cacheEntries = new HashMap<> ();
+
+    private final List<ValidationMessage> previousMessages = new LinkedList<> ();
+
+    private final List<ValidationMessage> messages = new LinkedList<> ();
+
+    public void add ( final ArtifactInformation art )
+    {
+        this.artifacts.put ( art.getId (), art );
+        this.added.add ( art );
+    }
+
+    public void change ( final ArtifactInformation art )
+    {
+        this.artifacts.put ( art.getId (), art );
+        this.changed.add ( art );
+    }
+
+    public void remove ( final String artifactId )
+    {
+        this.removed.add ( this.artifacts.remove ( artifactId ) );
+    }
+
+    /**
+     * Make the current state the previous state
+     */
+    public void commit ()
+    {
+        this.previous.clear ();
+        this.previous.putAll ( this.artifacts );
+
+        this.added.clear ();
+        this.changed.clear ();
+        this.removed.clear ();
+
+        this.previousCacheEntries.putAll ( this.cacheEntries );
+        this.cacheEntries.clear ();
+
+        this.previousMessages.clear ();
+        this.previousMessages.addAll ( this.messages );
+        this.messages.clear ();
+    }
+
+    /**
+     * Discard all cache entries and messages of the last aggregation
+     */
+    public void rollback ()
+    {
+        this.cacheEntries.clear ();
+        this.messages.clear ();
+    }
+
+    public Map<String, byte[]> getCacheEntries ()
+    {
+        return this.cacheEntries;
+    }
+
+    public String getCacheEntry ( final String id )
+    {
+        final byte[] data = this.cacheEntries.containsKey ( id ) ? this.cacheEntries.get ( id ) : this.previousCacheEntries.get ( id );
+        return data == null ? null : new String ( data, StandardCharsets.UTF_8 );
+    }
+
+    public List<ValidationMessage> getMessages ()
+    {
+        return this.messages;
+    }
+
+    @Override
+    public Collection<ArtifactInformation> getArtifacts ()
+    {
+        return Collections.unmodifiableCollection ( this.artifacts.values () );
+    }
+
+    @Override
+    public String getChannelId ()
+    {
+        return "channel1";
+    }
+
+    @Override
+    public String getChannelDescription ()
+    {
+        return null;
+    }
+
+    @Override
+    public Map<MetaKey, String> getChannelMetaData ()
+    {
+        return Collections.emptyMap ();
+    }
+
+    @Override
+    public void createCacheEntry ( final String id, final String name, final String mimeType, final IOConsumer<OutputStream> creator ) throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream ();
+        creator.accept ( out );
+        this.cacheEntries.put ( id, out.toByteArray () );
+    }
+
+    @Override
+    public boolean streamArtifact ( final String artifactId, final ArtifactReceiver receiver ) throws IOException
+    {
+        return false;
+    }
+
+    @Override
+    public void validationMessage ( final Severity severity, final String message, final Set<String> artifactIds )
+    {
+        this.messages.add ( new ValidationMessage ( "mock", severity, message, artifactIds ) );
+    }
+
+    @Override
+    public Collection<ArtifactInformation> getAddedArtifacts ()
+    {
+        return this.added;
+    }
+
+    @Override
+    public Collection<ArtifactInformation> getChangedArtifacts ()
+    {
+        return this.changed;
+    }
+
+    @Override
+    public Collection<ArtifactInformation> getRemovedArtifacts ()
+    {
+        return this.removed;
+    }
+
+    @Override
+    public ArtifactInformation getPreviousArtifact ( final String artifactId )
+    {
+        return this.previous.get ( artifactId );
+    }
+
+    @Override
+    public Collection<ValidationMessage> getPreviousValidationMessages ()
+    {
+        return this.previousMessages;
+    }
+
+    @Override
+    public boolean streamCacheEntry ( final String id, final IOConsumer<InputStream> consumer ) throws IOException
+    {
+        final byte[] data = this.previousCacheEntries.get ( id );
+        if ( data == null )
+        {
+            return false;
+        }
+
+        consumer.accept ( new ByteArrayInputStream ( data ) );
+        return true;
+    }
+}
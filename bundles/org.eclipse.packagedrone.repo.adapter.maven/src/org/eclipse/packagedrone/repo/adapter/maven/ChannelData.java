@@ -114,6 +114,13 @@ public class ChannelData
         }
     }
 
+    /**
+     * A node providing the checksum of another content node
+     * <p>
+     * The checksum is only re-calculated when the wrapped node provides
+     * different data.
+     * </p>
+     */
     public static class ChecksumNode extends ContentNode
     {
 
@@ -121,6 +128,10 @@ public class ChannelData
 
         private final String alg;
 
+        private transient byte[] source;
+
+        private transient byte[] checksum;
+
         public ChecksumNode ( final ContentNode node, final String alg )
         {
             this.node = node;
@@ -136,11 +147,21 @@ public class ChannelData
         @Override
         public byte[] getData ()
         {
+            final byte[] data = this.node.getData ();
+            if ( this.checksum != null && this.source == data )
+            {
+                return this.checksum;
+            }
+
             try
             {
                 final MessageDigest md = MessageDigest.getInstance ( this.alg );
-                final byte[] result = md.digest ( this.node.getData () );
-                return StringHelper.toHex ( result ).getBytes ( StandardCharsets.UTF_8 );
+                final byte[] result = md.digest ( data );
+
+                this.source = data;
+                this.checksum = StringHelper.toHex ( result ).getBytes ( StandardCharsets.UTF_8 );
+
+                return this.checksum;
             }
             catch ( final Exception e )
             {
@@ -177,6 +198,8 @@ public class ChannelData
 
         private final String version;
 
+        private transient byte[] data;
+
         public VersionMetadataNode ( final String groupId, final String artifactId, final String version )
         {
             this.groupId = groupId;
@@ -193,23 +216,18 @@ public class ChannelData
         @Override
         public byte[] getData ()
         {
-            final XmlHelper xml = new XmlHelper ();
-
-            final Document doc = createMetaData ( this.groupId, this.artifactId, this.version, this.infos, this.timestamps );
-            try
-            {
-                return xml.toData ( doc );
-            }
-            catch ( final Exception e )
+            if ( this.data == null )
             {
-                throw new RuntimeException ( e );
+                this.data = toData ( createMetaData ( this.groupId, this.artifactId, this.version, this.infos, this.timestamps ) );
             }
+            return this.data;
         }
 
         public void add ( final MavenInformation info, final Date date )
         {
             this.infos.add ( info );
             this.timestamps.put ( info, date );
+            this.data = null;
         }
     }
 
@@ -221,6 +239,8 @@ public class ChannelData
 
         private final String artifactId;
 
+        private transient byte[] data;
+
         public ArtifactMetadataNode ( final String groupId, final String artifactId )
         {
             this.groupId = groupId;
@@ -236,22 +256,17 @@ public class ChannelData
         @Override
         public byte[] getData ()
         {
-            final XmlHelper xml = new XmlHelper ();
-
-            final Document doc = createMetaData ( this.groupId, this.artifactId, this.infos );
-            try
+            if ( this.data == null )
             {
-                return xml.toData ( doc );
-            }
-            catch ( final Exception e )
-            {
-                throw new RuntimeException ( e );
+                this.data = toData ( createMetaData ( this.groupId, this.artifactId, this.infos ) );
             }
+            return this.data;
         }
 
         public void add ( final MavenInformation info, final Date date )
         {
             this.infos.add ( info );
+            this.data = null;
         }
     }
 
@@ -268,10 +283,7 @@ public class ChannelData
 
         final DirectoryNode versionNode = addDirNode ( artifactBase, info.getVersion () );
 
-        addNode ( versionNode, info.makeName (), new ArtifactNode ( art.getId () ) );
-
-        addCheckSum ( versionNode, info.makeName (), art, "md5" );
-        addCheckSum ( versionNode, info.makeName (), art, "sha1" );
+        addArtifactNodes ( versionNode, info, art );
 
         mdNode.add ( info, art.getCreationTimestamp () );
 
@@ -282,6 +294,217 @@ public class ChannelData
         }
     }
 
+    /**
+     * Add an artifact without updating the meta data
+     * <p>
+     * The caller is responsible for updating the meta data of the artifact
+     * and the version using {@link #setMetaData(String, String, List)} and
+     * {@link #setVersionMetaData(String, String, String, List, Map)}.
+     * </p>
+     *
+     * @param info
+     *            the maven coordinates
+     * @param art
+     *            the artifact providing the content
+     * @throws IllegalStateException
+     *             if the coordinates are already used
+     */
+    public void addArtifact ( final MavenInformation info, final ArtifactInformation art )
+    {
+        final String[] gn = info.getGroupId ().split ( "\\." );
+        final DirectoryNode groupNode = getGroup ( gn );
+
+        final DirectoryNode artifactBase = addDirNode ( groupNode, info.getArtifactId () );
+        final DirectoryNode versionNode = addDirNode ( artifactBase, info.getVersion () );
+
+        addArtifactNodes ( versionNode, info, art );
+    }
+
+    private static void addArtifactNodes ( final DirectoryNode versionNode, final MavenInformation info, final ArtifactInformation art )
+    {
+        addNode ( versionNode, info.makeName (), new ArtifactNode ( art.getId () ) );
+
+        addCheckSum ( versionNode, info.makeName (), art, "md5" );
+        addCheckSum ( versionNode, info.makeName (), art, "sha1" );
+    }
+
+    /**
+     * Check if the coordinates are used by an artifact
+     *
+     * @param info
+     *            the maven coordinates
+     * @return {@code true} if there is an artifact for the coordinates,
+     *         {@code false} otherwise
+     */
+    public boolean hasArtifact ( final MavenInformation info )
+    {
+        final DirectoryNode versionNode = findVersion ( info.getGroupId (), info.getArtifactId (), info.getVersion () );
+        return versionNode != null && versionNode.nodes.containsKey ( info.makeName () );
+    }
+
+    /**
+     * Remove an artifact without updating the meta data
+     * <p>
+     * Directories which are empty afterwards get removed as well. The caller
+     * is responsible for updating the meta data, see
+     * {@link #addArtifact(MavenInformation, ArtifactInformation)}.
+     * </p>
+     *
+     * @param info
+     *            the maven coordinates
+     */
+    public void removeArtifact ( final MavenInformation info )
+    {
+        final DirectoryNode versionNode = findVersion ( info.getGroupId (), info.getArtifactId (), info.getVersion () );
+        if ( versionNode == null )
+        {
+            return;
+        }
+
+        final String name = info.makeName ();
+        versionNode.nodes.remove ( name );
+        versionNode.nodes.remove ( name + ".md5" );
+        versionNode.nodes.remove ( name + ".sha1" );
+
+        prune ( info.getGroupId (), info.getArtifactId (), info.getVersion () );
+    }
+
+    /**
+     * Replace the meta data of an artifact
+     *
+     * @param groupId
+     *            the group id
+     * @param artifactId
+     *            the artifact id
+     * @param infos
+     *            all coordinates of the artifact, the meta data gets removed
+     *            if this is empty
+     */
+    public void setMetaData ( final String groupId, final String artifactId, final List<MavenInformation> infos )
+    {
+        final DirectoryNode artifactBase = findArtifact ( groupId, artifactId );
+        if ( artifactBase == null )
+        {
+            return;
+        }
+
+        setMetaDataNode ( artifactBase, infos.isEmpty () ? null : toData ( createMetaData ( groupId, artifactId, infos ) ) );
+
+        prune ( groupId, artifactId, null );
+    }
+
+    /**
+     * Replace the meta data of a snapshot version
+     *
+     * @param groupId
+     *            the group id
+     * @param artifactId
+     *            the artifact id
+     * @param version
+     *            the snapshot version
+     * @param infos
+     *            all coordinates of the version, the meta data gets removed
+     *            if this is empty
+     * @param timestamps
+     *            the creation timestamps of the coordinates
+     */
+    public void setVersionMetaData ( final String groupId, final String artifactId, final String version, final List<MavenInformation> infos, final Map<MavenInformation, Date> timestamps )
+    {
+        final DirectoryNode versionNode = findVersion ( groupId, artifactId, version );
+        if ( versionNode == null )
+        {
+            return;
+        }
+
+        setMetaDataNode ( versionNode, infos.isEmpty () ? null : toData ( createMetaData ( groupId, artifactId, version, infos, timestamps ) ) );
+
+        prune ( groupId, artifactId, version );
+    }
+
+    private static void setMetaDataNode ( final DirectoryNode base, final byte[] data )
+    {
+        if ( data == null )
+        {
+            base.nodes.remove ( "maven-metadata.xml" );
+            base.nodes.remove ( "maven-metadata.xml.md5" );
+            base.nodes.remove ( "maven-metadata.xml.sha1" );
+            return;
+        }
+
+        final DataNode node = new DataNode ( data, "application/xml" );
+        base.nodes.put ( "maven-metadata.xml", node );
+        base.nodes.put ( "maven-metadata.xml.md5", new ChecksumNode ( node, "MD5" ) );
+        base.nodes.put ( "maven-metadata.xml.sha1", new ChecksumNode ( node, "SHA1" ) );
+    }
+
+    /**
+     * Remove empty directories
+     * <p>
+     * The version directory is removed when it is empty, the artifact and
+     * group directories are removed when they don't contain any other
+     * directory or meta data.
+     * </p>
+     */
+    private void prune ( final String groupId, final String artifactId, final String version )
+    {
+        final LinkedList<DirectoryNode> path = new LinkedList<> ();
+        final LinkedList<String> names = new LinkedList<> ( Arrays.asList ( groupId.split ( "\\." ) ) );
+        names.add ( artifactId );
+        if ( version != null )
+        {
+            names.add ( version );
+        }
+
+        DirectoryNode current = this.root;
+        path.add ( current );
+        for ( final String name : names )
+        {
+            final Node node = current.nodes.get ( name );
+            if ( ! ( node instanceof DirectoryNode ) )
+            {
+                return;
+            }
+            current = (DirectoryNode)node;
+            path.add ( current );
+        }
+
+        // walk up and remove empty directories
+
+        while ( path.size () > 1 )
+        {
+            final DirectoryNode dir = path.removeLast ();
+            final String name = names.removeLast ();
+
+            if ( !dir.nodes.isEmpty () )
+            {
+                return;
+            }
+
+            path.getLast ().nodes.remove ( name );
+        }
+    }
+
+    private DirectoryNode findArtifact ( final String groupId, final String artifactId )
+    {
+        final Deque<String> path = new LinkedList<> ( Arrays.asList ( groupId.split ( "\\." ) ) );
+        path.add ( artifactId );
+
+        final Node node = findNode ( path );
+        return node instanceof DirectoryNode ? (DirectoryNode)node : null;
+    }
+
+    private DirectoryNode findVersion ( final String groupId, final String artifactId, final String version )
+    {
+        final DirectoryNode artifactBase = findArtifact ( groupId, artifactId );
+        if ( artifactBase == null )
+        {
+            return null;
+        }
+
+        final Node node = artifactBase.nodes.get ( version );
+        return node instanceof DirectoryNode ? (DirectoryNode)node : null;
+    }
+
     protected <T extends ContentNode> T addMetaDataNode ( final MavenInformation info, final DirectoryNode base, final Class<T> clazz, final Supplier<T> supp )
     {
         final Node n = base.getNodes ().get ( "maven-metadata.xml" );
@@ -314,6 +537,18 @@ public class ChannelData
         return addMetaDataNode ( info, artifactBase, VersionMetadataNode.class, () -> new VersionMetadataNode ( info.getGroupId (), info.getArtifactId (), info.getVersion () ) );
     }
 
+    private static byte[] toData ( final Document doc )
+    {
+        try
+        {
+            return new XmlHelper ().toData ( doc );
+        }
+        catch ( final Exception e )
+        {
+            throw new RuntimeException ( e );
+        }
+    }
+
     protected static Document makeMetaData ( final String groupId, final String artifactId, final BiConsumer<Document, Element> cons )
     {
         final XmlHelper xml = new XmlHelper ();
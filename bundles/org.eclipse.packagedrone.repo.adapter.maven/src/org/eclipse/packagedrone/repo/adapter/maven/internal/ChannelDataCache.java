@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.adapter.maven.internal;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.packagedrone.repo.adapter.maven.ChannelData;
+import org.eclipse.packagedrone.repo.channel.CacheEntryInformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of parsed {@link ChannelData} instances
+ * <p>
+ * The channel data is cached per channel, together with the cache entry
+ * information it was parsed from. Each time the aggregator rewrites the cache
+ * entry, a new cache entry information instance is created. So comparing the
+ * instances is enough for detecting outdated channel data.
+ * </p>
+ * <p>
+ * The cache is limited by the sum of the sizes of the cache entries. When
+ * exceeding the limit, the least recently used channel data gets evicted.
+ * </p>
+ */
+public class ChannelDataCache
+{
+    private final static Logger logger = LoggerFactory.getLogger ( ChannelDataCache.class );
+
+    private static final long DEFAULT_MAX_SIZE = Long.getLong ( "drone.maven.channelDataCache.maxSize", 64L * 1024L * 1024L );
+
+    @FunctionalInterface
+    public interface Loader
+    {
+        public ChannelData load () throws IOException;
+    }
+
+    private static class Entry
+    {
+        private final CacheEntryInformation information;
+
+        private final ChannelData data;
+
+        public Entry ( final CacheEntryInformation information, final ChannelData data )
+        {
+            this.information = information;
+            this.data = data;
+        }
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<> ( 16, 0.75f, true );
+
+    private final long maxSize;
+
+    private long size;
+
+    public ChannelDataCache ()
+    {
+        this ( DEFAULT_MAX_SIZE );
+    }
+
+    public ChannelDataCache ( final long maxSize )
+    {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the channel data of a channel
+     * <p>
+     * If there is no cached channel data for the provided cache entry, the
+     * loader is called. The loader is called without holding a lock on the
+     * cache, so multiple threads may load the same channel data.
+     * </p>
+     *
+     * @param channelId
+     *            the id of the channel
+     * @param information
+     *            the information of the cache entry holding the serialized
+     *            channel data
+     * @param loader
+     *            the loader, parsing the cache entry
+     * @return the channel data, or {@code null} if the loader returned
+     *         {@code null}
+     * @throws IOException
+     *             if the loader failed
+     */
+    public ChannelData get ( final String channelId, final CacheEntryInformation information, final Loader loader ) throws IOException
+    {
+        synchronized ( this )
+        {
+            final Entry entry = this.entries.get ( channelId );
+            if ( entry != null && entry.information == information )
+            {
+                return entry.data;
+            }
+        }
+
+        final ChannelData data = loader.load ();
+
+        if ( data != null )
+        {
+            put ( channelId, new Entry ( information, data ) );
+        }
+
+        return data;
+    }
+
+    private synchronized void put ( final String channelId, final Entry entry )
+    {
+        final Entry old = this.entries.put ( channelId, entry );
+        if ( old != null )
+        {
+            this.size -= old.information.getSize ();
+        }
+
+        this.size += entry.information.getSize ();
+
+        final Iterator<Entry> i = this.entries.values ().iterator ();
+        while ( this.size > this.maxSize && i.hasNext () )
+        {
+            final Entry evicted = i.next ();
+            this.size -= evicted.information.getSize ();
+            i.remove ();
+
+            logger.debug ( "Evicted channel data - size: {}", evicted.information.getSize () );
+        }
+    }
+
+    /**
+     * Remove all cached channel data
+     */
+    public synchronized void clear ()
+    {
+        this.entries.clear ();
+        this.size = 0;
+    }
+}
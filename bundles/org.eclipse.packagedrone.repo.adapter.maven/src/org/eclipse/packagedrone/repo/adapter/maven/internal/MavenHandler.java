@@ -99,7 +99,7 @@ public class MavenHandler
         {
             response.setStatus ( HttpServletResponse.SC_OK );
 
-            download ( response, (ArtifactNode)node );
+            download ( request, response, (ArtifactNode)node );
         }
         else
         {
@@ -109,9 +109,9 @@ public class MavenHandler
         }
     }
 
-    private void download ( final HttpServletResponse response, final ArtifactNode node ) throws IOException
+    private void download ( final HttpServletRequest request, final HttpServletResponse response, final ArtifactNode node ) throws IOException
     {
-        streamArtifact ( response, node.getArtifactId (), empty (), false, this.channel, null );
+        streamArtifact ( request, response, node.getArtifactId (), empty (), false, this.channel, null );
     }
 
     private static class DirRenderer
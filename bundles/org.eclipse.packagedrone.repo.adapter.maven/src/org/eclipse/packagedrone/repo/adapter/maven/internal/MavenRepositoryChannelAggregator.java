@@ -20,11 +20,17 @@ import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
 
 import org.apache.commons.io.FilenameUtils;
 import org.eclipse.packagedrone.VersionInformation;
@@ -34,7 +40,9 @@ import org.eclipse.packagedrone.repo.XmlHelper;
 import org.eclipse.packagedrone.repo.adapter.maven.ChannelData;
 import org.eclipse.packagedrone.repo.adapter.maven.MavenInformation;
 import org.eclipse.packagedrone.repo.aspect.aggregate.AggregationContext;
-import org.eclipse.packagedrone.repo.aspect.aggregate.ChannelAggregator;
+import org.eclipse.packagedrone.repo.aspect.aggregate.ArtifactFragments;
+import org.eclipse.packagedrone.repo.aspect.aggregate.IncrementalAggregationContext;
+import org.eclipse.packagedrone.repo.aspect.aggregate.IncrementalChannelAggregator;
 import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
 import org.eclipse.packagedrone.repo.manage.system.SitePrefixService;
 import org.slf4j.Logger;
@@ -42,7 +50,9 @@ import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
-public class MavenRepositoryChannelAggregator implements ChannelAggregator
+import com.google.gson.Gson;
+
+public class MavenRepositoryChannelAggregator implements IncrementalChannelAggregator
 {
     private final static Logger logger = LoggerFactory.getLogger ( MavenRepositoryChannelAggregator.class );
 
@@ -66,7 +76,7 @@ public class MavenRepositoryChannelAggregator implements ChannelAggregator
 
         final ChannelData cs = new ChannelData ();
 
-        final Set<String> groupIds = new HashSet<> ();
+        final ArtifactFragments fragments = new ArtifactFragments ();
 
         for ( final ArtifactInformation art : context.getArtifacts () )
         {
@@ -81,13 +91,16 @@ public class MavenRepositoryChannelAggregator implements ChannelAggregator
                 }
             }
 
+            final List<MavenInformation> accepted = new LinkedList<> ();
+            final List<MavenInformation> shadowed = new LinkedList<> ();
+
             for ( final MavenInformation info : infos )
             {
                 // add
                 try
                 {
                     cs.add ( info, art );
-                    groupIds.add ( info.getGroupId () );
+                    accepted.add ( info );
                 }
                 catch ( final IllegalStateException ex )
                 {
@@ -96,8 +109,11 @@ public class MavenRepositoryChannelAggregator implements ChannelAggregator
 
                     // but log it for debugging
                     logger.debug ( "Failed to add " + info, ex );
+                    shadowed.add ( info );
                 }
             }
+
+            fragments.update ( art.getId (), makeFragment ( accepted, shadowed ) );
         }
 
         String json = cs.toJson ();
@@ -115,11 +131,379 @@ public class MavenRepositoryChannelAggregator implements ChannelAggregator
                 throw new IOException ( e );
             }
         } );
-        context.createCacheEntry ( "prefixes", "prefixes.txt", "text/plain", ( stream ) -> makePrefixes ( stream, groupIds ) );
+        context.createCacheEntry ( "prefixes", "prefixes.txt", "text/plain", ( stream ) -> makePrefixes ( stream, getGroupIds ( fragments ) ) );
+        fragments.store ( context, "coordinates" );
+
+        return result;
+    }
+
+    /**
+     * Apply changes to the maven repository
+     * <p>
+     * The repository only needs to be updated if one of the changed artifacts
+     * is, or was, relevant to the maven layout. Otherwise the previous result
+     * is kept.
+     * </p>
+     * <p>
+     * The coordinates of each artifact are stored in the cache entry
+     * "coordinates". The coordinates of all affected artifacts are removed
+     * from the previous channel data and the current coordinates are added
+     * again. Then the meta data of all affected artifacts and snapshot
+     * versions is rendered again from the stored coordinates. A full
+     * aggregation is only required if the removal of coordinates would make
+     * coordinates of another artifact visible, which were hidden by the
+     * removed ones.
+     * </p>
+     */
+    @Override
+    public boolean aggregateChanges ( final IncrementalAggregationContext context, final Map<String, String> result ) throws Exception
+    {
+        final Map<String, ArtifactInformation> map = makeMap ( context.getArtifacts () );
+
+        final Set<String> affected = getAffectedArtifacts ( context );
+
+        if ( !isAffected ( context, affected, map ) )
+        {
+            logger.debug ( "No maven artifacts affected, keeping repository" );
+            return true;
+        }
+
+        // load the previous state, before creating any cache entries
+
+        final String previous = result.get ( "channel" );
+        if ( previous == null )
+        {
+            return false;
+        }
+
+        final ArtifactFragments fragments = ArtifactFragments.load ( context, "coordinates" );
+        if ( fragments == null )
+        {
+            return false;
+        }
+
+        final ChannelData cs = ChannelData.fromJson ( previous );
+
+        final Set<MavenInformation> touched = new HashSet<> ();
+
+        // remove all previous coordinates first
+
+        for ( final String id : affected )
+        {
+            for ( final MavenInformation info : getCoordinates ( fragments.get ( id ), "accepted" ) )
+            {
+                cs.removeArtifact ( info );
+                touched.add ( info );
+            }
+        }
+
+        // now add the current coordinates
+
+        for ( final String id : affected )
+        {
+            final ArtifactInformation art = map.get ( id );
+            if ( art == null )
+            {
+                fragments.remove ( id );
+                continue;
+            }
+
+            final List<MavenInformation> accepted = new LinkedList<> ();
+            final List<MavenInformation> shadowed = new LinkedList<> ();
+
+            for ( final MavenInformation info : getInfos ( art, map ) )
+            {
+                touched.add ( info );
+
+                if ( cs.hasArtifact ( info ) )
+                {
+                    // first-come, first-served
+                    shadowed.add ( info );
+                    continue;
+                }
+
+                try
+                {
+                    cs.addArtifact ( info, art );
+                    accepted.add ( info );
+                }
+                catch ( final IllegalStateException ex )
+                {
+                    logger.debug ( "Failed to add " + info, ex );
+                    shadowed.add ( info );
+                }
+            }
+
+            fragments.update ( id, makeFragment ( accepted, shadowed ) );
+        }
+
+        // check if hidden coordinates would become visible
+
+        for ( final Map<String, String> fragment : fragments.getFragments ().values () )
+        {
+            for ( final MavenInformation info : getCoordinates ( fragment, "shadowed" ) )
+            {
+                if ( !cs.hasArtifact ( info ) )
+                {
+                    logger.debug ( "Hidden coordinates {} are now available, require full aggregation", info );
+                    return false;
+                }
+            }
+        }
+
+        updateMetaData ( cs, fragments, touched, map );
+
+        logger.debug ( "Updated {} artifacts in maven repository", affected.size () );
+
+        result.put ( "channel", cs.toJson () );
+
+        context.createCacheEntry ( "channel", "channel.json", "application/json", new ByteArrayInputStream ( cs.toString ().getBytes ( StandardCharsets.UTF_8 ) ) );
+        context.createCacheEntry ( "prefixes", "prefixes.txt", "text/plain", ( stream ) -> makePrefixes ( stream, getGroupIds ( fragments ) ) );
+        fragments.store ( context, "coordinates" );
+
+        return true;
+    }
+
+    /**
+     * Get the ids of all artifacts whose coordinates may have changed
+     * <p>
+     * Since the coordinates of an artifact may be provided by its child POM
+     * artifacts, the parent of each changed artifact is affected as well.
+     * </p>
+     */
+    private static Set<String> getAffectedArtifacts ( final IncrementalAggregationContext context )
+    {
+        final Set<String> result = new LinkedHashSet<> ();
+
+        for ( final ArtifactInformation art : context.getRemovedArtifacts () )
+        {
+            addAffected ( result, art );
+        }
+        for ( final ArtifactInformation art : context.getChangedArtifacts () )
+        {
+            addAffected ( result, context.getPreviousArtifact ( art.getId () ) );
+            addAffected ( result, art );
+        }
+        for ( final ArtifactInformation art : context.getAddedArtifacts () )
+        {
+            addAffected ( result, art );
+        }
 
         return result;
     }
 
+    private static void addAffected ( final Set<String> result, final ArtifactInformation art )
+    {
+        if ( art == null )
+        {
+            return;
+        }
+
+        result.add ( art.getId () );
+        if ( art.getParentId () != null )
+        {
+            result.add ( art.getParentId () );
+        }
+    }
+
+    private static boolean isAffected ( final IncrementalAggregationContext context, final Set<String> affected, final Map<String, ArtifactInformation> map )
+    {
+        for ( final String id : affected )
+        {
+            if ( isRelevant ( map.get ( id ), map::get ) || isRelevant ( context.getPreviousArtifact ( id ), context::getPreviousArtifact ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Render the meta data of all touched artifacts and snapshot versions
+     *
+     * @param cs
+     *            the channel data to update
+     * @param fragments
+     *            the coordinates of all artifacts
+     * @param touched
+     *            the coordinates which got removed or added
+     * @param map
+     *            the current artifacts
+     */
+    private static void updateMetaData ( final ChannelData cs, final ArtifactFragments fragments, final Set<MavenInformation> touched, final Map<String, ArtifactInformation> map )
+    {
+        final Map<String, List<MavenInformation>> artifacts = new HashMap<> ();
+        final Map<String, List<MavenInformation>> versions = new HashMap<> ();
+
+        for ( final MavenInformation info : touched )
+        {
+            artifacts.put ( makeArtifactKey ( info ), new LinkedList<> () );
+            if ( info.isSnapshot () )
+            {
+                versions.put ( makeVersionKey ( info ), new LinkedList<> () );
+            }
+        }
+
+        final Map<MavenInformation, Date> timestamps = new HashMap<> ();
+
+        for ( final Map.Entry<String, Map<String, String>> entry : fragments.getFragments ().entrySet () )
+        {
+            if ( Collections.disjoint ( getArtifactKeys ( entry.getValue () ), artifacts.keySet () ) )
+            {
+                // skip parsing the coordinates
+                continue;
+            }
+
+            for ( final MavenInformation info : getCoordinates ( entry.getValue (), "accepted" ) )
+            {
+                final List<MavenInformation> infos = artifacts.get ( makeArtifactKey ( info ) );
+                if ( infos != null )
+                {
+                    infos.add ( info );
+                }
+
+                final List<MavenInformation> versionInfos = versions.get ( makeVersionKey ( info ) );
+                if ( versionInfos != null )
+                {
+                    versionInfos.add ( info );
+                    timestamps.put ( info, map.get ( entry.getKey () ).getCreationTimestamp () );
+                }
+            }
+        }
+
+        final Set<String> done = new HashSet<> ();
+
+        for ( final MavenInformation info : touched )
+        {
+            if ( done.add ( makeArtifactKey ( info ) ) )
+            {
+                cs.setMetaData ( info.getGroupId (), info.getArtifactId (), artifacts.get ( makeArtifactKey ( info ) ) );
+            }
+            if ( info.isSnapshot () && done.add ( makeVersionKey ( info ) ) )
+            {
+                cs.setVersionMetaData ( info.getGroupId (), info.getArtifactId (), info.getVersion (), versions.get ( makeVersionKey ( info ) ), timestamps );
+            }
+        }
+    }
+
+    private static String makeArtifactKey ( final MavenInformation info )
+    {
+        return info.getGroupId () + ":" + info.getArtifactId ();
+    }
+
+    private static String makeVersionKey ( final MavenInformation info )
+    {
+        return info.getGroupId () + ":" + info.getArtifactId () + ":" + info.getVersion ();
+    }
+
+    /**
+     * Create the fragment of an artifact
+     *
+     * @param accepted
+     *            the coordinates which are provided by the artifact
+     * @param shadowed
+     *            the coordinates which are already provided by another
+     *            artifact
+     * @return the fragment, or {@code null} if the artifact has no
+     *         coordinates
+     */
+    private static Map<String, String> makeFragment ( final List<MavenInformation> accepted, final List<MavenInformation> shadowed )
+    {
+        if ( accepted.isEmpty () && shadowed.isEmpty () )
+        {
+            return null;
+        }
+
+        final Gson gson = new Gson ();
+
+        final Map<String, String> result = new HashMap<> ( 3 );
+
+        final Set<String> keys = new TreeSet<> ();
+        for ( final MavenInformation info : accepted )
+        {
+            keys.add ( makeArtifactKey ( info ) );
+        }
+
+        result.put ( "keys", String.join ( NL, keys ) );
+        result.put ( "accepted", gson.toJson ( accepted ) );
+        if ( !shadowed.isEmpty () )
+        {
+            result.put ( "shadowed", gson.toJson ( shadowed ) );
+        }
+
+        return result;
+    }
+
+    private static List<MavenInformation> getCoordinates ( final Map<String, String> fragment, final String part )
+    {
+        if ( fragment == null || fragment.get ( part ) == null )
+        {
+            return Collections.emptyList ();
+        }
+
+        return Arrays.asList ( new Gson ().fromJson ( fragment.get ( part ), MavenInformation[].class ) );
+    }
+
+    private static Set<String> getArtifactKeys ( final Map<String, String> fragment )
+    {
+        final String keys = fragment.get ( "keys" );
+        if ( keys == null || keys.isEmpty () )
+        {
+            return Collections.emptySet ();
+        }
+
+        return new HashSet<> ( Arrays.asList ( keys.split ( NL ) ) );
+    }
+
+    private static Set<String> getGroupIds ( final ArtifactFragments fragments )
+    {
+        final Set<String> result = new HashSet<> ();
+
+        for ( final Map<String, String> fragment : fragments.getFragments ().values () )
+        {
+            for ( final String key : getArtifactKeys ( fragment ) )
+            {
+                result.add ( key.substring ( 0, key.indexOf ( ':' ) ) );
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Check if an artifact contributes to the maven repository
+     *
+     * @param art
+     *            the artifact to check, may be {@code null}
+     * @param artifacts
+     *            the lookup for child artifacts
+     * @return {@code true} if the artifact is relevant for the maven
+     *         repository, {@code false} otherwise
+     */
+    private static boolean isRelevant ( final ArtifactInformation art, final Function<String, ArtifactInformation> artifacts )
+    {
+        if ( art == null )
+        {
+            return false;
+        }
+
+        if ( isPomFileName ( art.getName () ) || parseMavenCoordinates ( art.getMetaData (), null ) != null )
+        {
+            return true;
+        }
+
+        for ( final String childId : art.getChildIds () )
+        {
+            final ArtifactInformation child = artifacts.apply ( childId );
+            if ( child != null && isPomFileName ( child.getName () ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     private void makePrefixes ( final OutputStream stream, final Set<String> groupIds ) throws IOException
     {
         final OutputStreamWriter writer = new OutputStreamWriter ( stream, StandardCharsets.UTF_8 );
@@ -24,11 +24,13 @@ import org.eclipse.packagedrone.repo.adapter.maven.upload.ArtifactNotFoundExcept
 import org.eclipse.packagedrone.repo.adapter.maven.upload.ChannelUploadTarget;
 import org.eclipse.packagedrone.repo.adapter.maven.upload.ChecksumValidationException;
 import org.eclipse.packagedrone.repo.adapter.maven.upload.Uploader;
+import org.eclipse.packagedrone.repo.channel.CacheEntryInformation;
 import org.eclipse.packagedrone.repo.channel.ChannelNotFoundException;
 import org.eclipse.packagedrone.repo.channel.ChannelService;
 import org.eclipse.packagedrone.repo.channel.ChannelService.By;
 import org.eclipse.packagedrone.repo.channel.ModifiableChannel;
 import org.eclipse.packagedrone.repo.channel.ReadableChannel;
+import org.eclipse.packagedrone.repo.channel.StagedArtifact;
 import org.eclipse.packagedrone.repo.channel.servlet.AbstractChannelServiceServlet;
 import org.eclipse.packagedrone.repo.web.utils.ChannelCacheHandler;
 import org.eclipse.packagedrone.utils.profiler.Profile;
@@ -49,6 +51,8 @@ public class MavenServlet extends AbstractChannelServiceServlet
 
     private static final ChannelCacheHandler HANDLER_PREFIXES = new ChannelCacheHandler ( new MetaKey ( "maven.repo", "prefixes" ) );
 
+    private final transient ChannelDataCache channelDataCache = new ChannelDataCache ();
+
     private static String makeOperation ( final HttpServletRequest request )
     {
         return String.format ( "MavenServlet|%s|%s", request.getRequestURI (), request.getMethod () );
@@ -65,6 +69,17 @@ public class MavenServlet extends AbstractChannelServiceServlet
         }
     }
 
+    private static ChannelData loadChannelData ( final ReadableChannel channel ) throws IOException
+    {
+        final Holder<ChannelData> holder = new Holder<> ();
+
+        channel.streamCacheEntry ( CHANNEL_KEY, entry -> {
+            holder.value = ChannelData.fromReader ( new InputStreamReader ( entry.getStream (), StandardCharsets.UTF_8 ) );
+        } );
+
+        return holder.value;
+    }
+
     private void handleGetRequest ( final HttpServletRequest request, final HttpServletResponse response ) throws IOException
     {
         String pathString = request.getPathInfo ();
@@ -91,21 +106,21 @@ public class MavenServlet extends AbstractChannelServiceServlet
         {
             service.accessRun ( By.nameOrId ( channelId ), ReadableChannel.class, channel -> {
 
-                // init holder
+                // find cache entry
 
-                final Holder<ChannelData> holder = new Holder<> ();
+                final CacheEntryInformation information = channel.getCacheEntries ().get ( CHANNEL_KEY );
+                if ( information == null )
+                {
+                    commitNotConfigured ( response, channelId );
+                    return;
+                }
 
                 // fetch structure from cache
 
+                final ChannelData channelData;
                 try
                 {
-                    if ( !channel.streamCacheEntry ( CHANNEL_KEY, entry -> {
-                        holder.value = ChannelData.fromReader ( new InputStreamReader ( entry.getStream (), StandardCharsets.UTF_8 ) );
-                    } ) )
-                    {
-                        commitNotConfigured ( response, channelId );
-                        return;
-                    }
+                    channelData = this.channelDataCache.get ( channel.getId ().getId (), information, () -> loadChannelData ( channel ) );
                 }
                 catch ( final Exception e )
                 {
@@ -114,10 +129,6 @@ public class MavenServlet extends AbstractChannelServiceServlet
                     return;
                 }
 
-                // get data
-
-                final ChannelData channelData = holder.value;
-
                 // check for null
 
                 if ( channelData == null )
@@ -174,10 +185,10 @@ public class MavenServlet extends AbstractChannelServiceServlet
         }
     }
 
-    private void processUpload ( final ModifiableChannel channel, final String path, final HttpServletRequest request ) throws ChecksumValidationException, IOException
+    private void processUpload ( final ModifiableChannel channel, final String path, final StagedArtifact staged ) throws ChecksumValidationException, IOException
     {
         final Uploader uploader = new Uploader ( new ChannelUploadTarget ( channel ), null );
-        uploader.receive ( path, request.getInputStream () );
+        uploader.receiveStaged ( path, staged );
     }
 
     private void processPut ( final HttpServletRequest request, final HttpServletResponse response, final ChannelService service ) throws Exception
@@ -201,12 +212,14 @@ public class MavenServlet extends AbstractChannelServiceServlet
             return;
         }
 
-        try
+        // receive the content before locking the channel
+
+        try ( StagedArtifact staged = service.stage ( By.nameOrId ( channelNameOrId ), request.getInputStream () ) )
         {
             service.accessRun ( By.nameOrId ( channelNameOrId ), ModifiableChannel.class, channel -> {
                 try
                 {
-                    processUpload ( channel, fullName, request );
+                    processUpload ( channel, fullName, staged );
                     response.setStatus ( HttpServletResponse.SC_OK );
                 }
                 catch ( final ArtifactNotFoundException e )
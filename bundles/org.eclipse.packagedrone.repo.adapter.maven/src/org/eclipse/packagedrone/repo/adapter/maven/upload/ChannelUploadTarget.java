@@ -22,6 +22,7 @@ import java.util.stream.Collectors;
 import org.eclipse.packagedrone.repo.MetaKey;
 import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
 import org.eclipse.packagedrone.repo.channel.ModifiableChannel;
+import org.eclipse.packagedrone.repo.channel.StagedArtifact;
 
 /**
  * A channel based implementation for the {@link UploadTarget}
@@ -49,6 +50,21 @@ public class ChannelUploadTarget implements UploadTarget
 
     @Override
     public String createArtifact ( final String parentId, final Coordinates coordinates, final InputStream stream, final Map<MetaKey, String> metaData ) throws IOException
+    {
+        final ArtifactInformation result = this.channel.getContext ().createArtifact ( parentId, stream, coordinates.toFileName (), makeProvidedMetaData ( coordinates, metaData ) );
+
+        return toId ( result );
+    }
+
+    @Override
+    public String createArtifact ( final String parentId, final Coordinates coordinates, final StagedArtifact artifact, final Map<MetaKey, String> metaData ) throws IOException
+    {
+        final ArtifactInformation result = this.channel.getContext ().createArtifact ( parentId, artifact, coordinates.toFileName (), makeProvidedMetaData ( coordinates, metaData ) );
+
+        return toId ( result );
+    }
+
+    private static Map<MetaKey, String> makeProvidedMetaData ( final Coordinates coordinates, final Map<MetaKey, String> metaData )
     {
         final Map<MetaKey, String> providedMetaData = new HashMap<> ();
 
@@ -63,10 +79,11 @@ public class ChannelUploadTarget implements UploadTarget
 
         fillMetaData ( coordinates, providedMetaData );
 
-        // create artifact
-
-        final ArtifactInformation result = this.channel.getContext ().createArtifact ( parentId, stream, coordinates.toFileName (), providedMetaData );
+        return providedMetaData;
+    }
 
+    private static String toId ( final ArtifactInformation result )
+    {
         if ( result != null )
         {
             // accepted
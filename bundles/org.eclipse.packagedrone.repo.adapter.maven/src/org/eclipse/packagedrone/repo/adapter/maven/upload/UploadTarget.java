@@ -16,6 +16,8 @@ import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.packagedrone.repo.MetaKey;
+import org.eclipse.packagedrone.repo.channel.StagedArtifact;
+import org.eclipse.packagedrone.utils.Holder;
 
 /**
  * A target for the {@link Uploader}
@@ -46,6 +48,39 @@ public interface UploadTarget
      */
     public String createArtifact ( String parentId, Coordinates coordinates, InputStream stream, Map<MetaKey, String> metaData ) throws IOException;
 
+    /**
+     * Create a new artifact from staged content
+     * <p>
+     * The default implementation streams the staged content to
+     * {@link #createArtifact(String, Coordinates, InputStream, Map)}.
+     * </p>
+     *
+     * @param parentId
+     *            an optional parent id
+     * @param coordinates
+     *            the coordinates to create the artifact for
+     * @param artifact
+     *            the staged content
+     * @param metaData
+     *            the provided meta data, these already contain the converted
+     *            coordinate information
+     * @return the id of the artifact which was created, or {@code null} if the
+     *         artifact was rejected and not stored (which is not an error)
+     * @throws IOException
+     *             if there was an IO error during the storage process
+     */
+    public default String createArtifact ( final String parentId, final Coordinates coordinates, final StagedArtifact artifact, final Map<MetaKey, String> metaData ) throws IOException
+    {
+        final Holder<String> result = new Holder<> ();
+
+        if ( !artifact.stream ( stream -> result.value = createArtifact ( parentId, coordinates, stream, metaData ) ) )
+        {
+            throw new IOException ( String.format ( "Staged content of %s is no longer available", coordinates ) );
+        }
+
+        return result.value;
+    }
+
     /**
      * Find all artifacts which match the provided coordinates
      *
@@ -16,6 +16,8 @@ import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.Set;
 
+import org.eclipse.packagedrone.repo.channel.StagedArtifact;
+import org.eclipse.packagedrone.utils.Holder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,6 +37,16 @@ public class Uploader
         FAIL;
     }
 
+    /**
+     * The content of an upload
+     */
+    private interface Content
+    {
+        public String createArtifact ( UploadTarget target, String parentId, Coordinates coordinates ) throws IOException;
+
+        public String toChecksumString () throws IOException;
+    }
+
     private final Options options;
 
     private final UploadTarget target;
@@ -47,6 +59,56 @@ public class Uploader
     }
 
     public boolean receive ( final String path, final InputStream stream ) throws ChecksumValidationException, IOException
+    {
+        return receive ( path, new Content () {
+
+            @Override
+            public String createArtifact ( final UploadTarget target, final String parentId, final Coordinates coordinates ) throws IOException
+            {
+                return target.createArtifact ( parentId, coordinates, stream, null );
+            }
+
+            @Override
+            public String toChecksumString () throws IOException
+            {
+                return Uploader.toChecksumString ( stream );
+            }
+        } );
+    }
+
+    /**
+     * Receive content which already got staged
+     *
+     * @param path
+     *            the upload path
+     * @param artifact
+     *            the staged content
+     * @return {@code true} if an artifact was created, {@code false} otherwise
+     */
+    public boolean receiveStaged ( final String path, final StagedArtifact artifact ) throws ChecksumValidationException, IOException
+    {
+        return receive ( path, new Content () {
+
+            @Override
+            public String createArtifact ( final UploadTarget target, final String parentId, final Coordinates coordinates ) throws IOException
+            {
+                return target.createArtifact ( parentId, coordinates, artifact, null );
+            }
+
+            @Override
+            public String toChecksumString () throws IOException
+            {
+                final Holder<String> result = new Holder<> ();
+                if ( !artifact.stream ( stream -> result.value = Uploader.toChecksumString ( stream ) ) )
+                {
+                    return Uploader.toChecksumString ( null );
+                }
+                return result.value;
+            }
+        } );
+    }
+
+    private boolean receive ( final String path, final Content content ) throws ChecksumValidationException, IOException
     {
         final Coordinates c = Coordinates.parse ( path );
 
@@ -68,7 +130,7 @@ public class Uploader
         {
             // process checksum
 
-            this.target.validateChecksum ( c.replaceExtension ( c.getExtension ().substring ( 0, c.getExtension ().length () - ( alg.length () + 1 ) ) ), alg, toChecksumString ( stream ) );
+            this.target.validateChecksum ( c.replaceExtension ( c.getExtension ().substring ( 0, c.getExtension ().length () - ( alg.length () + 1 ) ) ), alg, content.toChecksumString () );
             return false;
         }
 
@@ -76,7 +138,7 @@ public class Uploader
         {
             // primary
 
-            return this.target.createArtifact ( c, stream, null ) != null;
+            return content.createArtifact ( this.target, null, c ) != null;
         }
         else
         {
@@ -95,7 +157,7 @@ public class Uploader
                 switch ( this.options.getNoParentMode () )
                 {
                     case ADD:
-                        return this.target.createArtifact ( c, stream, null ) != null;
+                        return content.createArtifact ( this.target, null, c ) != null;
                     case IGNORE:
                         return false;
                     case FAIL:
@@ -110,12 +172,12 @@ public class Uploader
             }
             else
             {
-                return this.target.createArtifact ( parents.iterator ().next (), c, stream, null ) != null;
+                return content.createArtifact ( this.target, parents.iterator ().next (), c ) != null;
             }
         }
     }
 
-    private String toChecksumString ( final InputStream stream ) throws IOException
+    private static String toChecksumString ( final InputStream stream ) throws IOException
     {
         if ( stream == null )
         {
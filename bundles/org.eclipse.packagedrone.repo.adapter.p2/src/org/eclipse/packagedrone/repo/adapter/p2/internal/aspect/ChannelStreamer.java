@@ -198,16 +198,43 @@ public class ChannelStreamer
     }
 
     public void spoolOut ( final SpoolOutHandler handler ) throws IOException
+    {
+        spoolOut ( handler, true, true );
+    }
+
+    /**
+     * Spool out the repository documents
+     *
+     * @param handler
+     *            the handler receiving the documents
+     * @param metaData
+     *            whether to write the meta data documents
+     * @param artifacts
+     *            whether to write the artifacts documents
+     */
+    public void spoolOut ( final SpoolOutHandler handler, final boolean metaData, final boolean artifacts ) throws IOException
     {
         if ( this.writeCompressed )
         {
-            spoolOut ( handler, new MetaDataWriter ( this.metaDataFragments, this.metaDataCounter, this.title, this.now, this.additionalProperties, true ) );
-            spoolOut ( handler, new ArtifactsWriter ( this.artifactsFragments, this.artifactsCounter, this.title, this.now, this.additionalProperties, true ) );
+            if ( metaData )
+            {
+                spoolOut ( handler, new MetaDataWriter ( this.metaDataFragments, this.metaDataCounter, this.title, this.now, this.additionalProperties, true ) );
+            }
+            if ( artifacts )
+            {
+                spoolOut ( handler, new ArtifactsWriter ( this.artifactsFragments, this.artifactsCounter, this.title, this.now, this.additionalProperties, true ) );
+            }
         }
         if ( this.writePlain )
         {
-            spoolOut ( handler, new MetaDataWriter ( this.metaDataFragments, this.metaDataCounter, this.title, this.now, this.additionalProperties, false ) );
-            spoolOut ( handler, new ArtifactsWriter ( this.artifactsFragments, this.artifactsCounter, this.title, this.now, this.additionalProperties, false ) );
+            if ( metaData )
+            {
+                spoolOut ( handler, new MetaDataWriter ( this.metaDataFragments, this.metaDataCounter, this.title, this.now, this.additionalProperties, false ) );
+            }
+            if ( artifacts )
+            {
+                spoolOut ( handler, new ArtifactsWriter ( this.artifactsFragments, this.artifactsCounter, this.title, this.now, this.additionalProperties, false ) );
+            }
         }
     }
 
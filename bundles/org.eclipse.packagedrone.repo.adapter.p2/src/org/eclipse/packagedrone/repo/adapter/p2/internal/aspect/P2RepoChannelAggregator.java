@@ -17,13 +17,15 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
+import org.eclipse.packagedrone.repo.adapter.p2.aspect.P2RepoConstants;
 import org.eclipse.packagedrone.repo.aspect.aggregate.AggregationContext;
-import org.eclipse.packagedrone.repo.aspect.aggregate.ChannelAggregator;
+import org.eclipse.packagedrone.repo.aspect.aggregate.IncrementalAggregationContext;
+import org.eclipse.packagedrone.repo.aspect.aggregate.IncrementalChannelAggregator;
 import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
 import org.eclipse.packagedrone.utils.profiler.Profile;
 import org.eclipse.packagedrone.utils.profiler.Profile.Handle;
 
-public class P2RepoChannelAggregator implements ChannelAggregator
+public class P2RepoChannelAggregator implements IncrementalChannelAggregator
 {
     private static final DateFormat DATE_FORMAT = new SimpleDateFormat ( "yyyy-MM-dd HH:mm:ss.SSS" );
 
@@ -37,24 +39,12 @@ public class P2RepoChannelAggregator implements ChannelAggregator
             final Map<String, String> result = new HashMap<> ();
             final ChannelStreamer streamer = new ChannelStreamer ( context.getChannelId (), context.getChannelMetaData (), true, true );
 
-            Date lastTimestamp = null;
             for ( final ArtifactInformation ai : context.getArtifacts () )
             {
-                final Date cts = ai.getCreationTimestamp ();
-
-                if ( lastTimestamp == null || lastTimestamp.before ( cts ) )
-                {
-                    lastTimestamp = cts;
-                }
-
                 streamer.process ( ai, context::streamArtifact );
             }
 
-            if ( lastTimestamp != null )
-            {
-                result.put ( "last-change", "" + lastTimestamp.getTime () );
-                result.put ( "last-change-string", DATE_FORMAT.format ( lastTimestamp.getTime () ) );
-            }
+            putLastChange ( context, result );
 
             // spool out to cache
 
@@ -66,13 +56,94 @@ public class P2RepoChannelAggregator implements ChannelAggregator
 
             handle.task ( "Validate" );
 
-            final Map<String, Set<String>> duplicates = streamer.checkDuplicates ();
-            for ( final Map.Entry<String, Set<String>> arts : duplicates.entrySet () )
+            validate ( context, streamer );
+
+            return result;
+        }
+    }
+
+    /**
+     * Apply changes to the P2 repository
+     * <p>
+     * The repository documents are assembled from the fragments which are
+     * already rendered into the meta data of each artifact. Only the kind of
+     * document which is affected by the changed artifacts gets assembled and
+     * written again, the other documents are kept. The duplicate check only
+     * covers the artifacts documents, so its messages are kept unless those
+     * changed.
+     * </p>
+     */
+    @Override
+    public boolean aggregateChanges ( final IncrementalAggregationContext context, final Map<String, String> result ) throws Exception
+    {
+        final boolean metaData = context.isAffected ( art -> isFragment ( art, "metadata" ) );
+        final boolean artifacts = context.isAffected ( art -> isFragment ( art, "artifacts" ) );
+
+        if ( metaData || artifacts )
+        {
+            final ChannelStreamer streamer = new ChannelStreamer ( context.getChannelId (), context.getChannelMetaData (), true, true );
+
+            for ( final ArtifactInformation ai : context.getArtifacts () )
             {
-                context.validationError ( String.format ( "Installable units have the same ID (%s) but different checksums. This will cause an \"MD5 hash is not as expected\" error when working with P2.", arts.getKey () ), arts.getValue () );
+                if ( isFragment ( ai, metaData ? "metadata" : null ) || isFragment ( ai, artifacts ? "artifacts" : null ) )
+                {
+                    streamer.process ( ai, context::streamArtifact );
+                }
             }
 
-            return result;
+            streamer.spoolOut ( context::createCacheEntry, metaData, artifacts );
+
+            if ( artifacts )
+            {
+                validate ( context, streamer );
+            }
+        }
+
+        if ( !artifacts )
+        {
+            context.keepPreviousValidationMessages ();
+        }
+
+        // the last change covers all artifacts, not only P2 fragments
+
+        result.remove ( "last-change" );
+        result.remove ( "last-change-string" );
+        putLastChange ( context, result );
+
+        return true;
+    }
+
+    private static void validate ( final AggregationContext context, final ChannelStreamer streamer )
+    {
+        final Map<String, Set<String>> duplicates = streamer.checkDuplicates ();
+        for ( final Map.Entry<String, Set<String>> arts : duplicates.entrySet () )
+        {
+            context.validationError ( String.format ( "Installable units have the same ID (%s) but different checksums. This will cause an \"MD5 hash is not as expected\" error when working with P2.", arts.getKey () ), arts.getValue () );
+        }
+    }
+
+    private static boolean isFragment ( final ArtifactInformation art, final String type )
+    {
+        return type != null && type.equals ( art.getMetaData ().get ( P2RepoConstants.KEY_FRAGMENT_TYPE ) );
+    }
+
+    private static void putLastChange ( final AggregationContext context, final Map<String, String> result )
+    {
+        Date lastTimestamp = null;
+        for ( final ArtifactInformation ai : context.getArtifacts () )
+        {
+            final Date cts = ai.getCreationTimestamp ();
+
+            if ( lastTimestamp == null || lastTimestamp.before ( cts ) )
+            {
+                lastTimestamp = cts;
+            }
+        }
+
+        if ( lastTimestamp != null )
+        {
+            result.put ( "last-change", "" + lastTimestamp.getTime () );
+            result.put ( "last-change-string", DATE_FORMAT.format ( lastTimestamp.getTime () ) );
         }
     }
 }
@@ -96,7 +96,7 @@ public class DownloadHandler implements Handler
                 }
 
                 logger.debug ( "Streaming artifact: {} / {} ", a.getName (), a.getId () );
-                DownloadHelper.streamArtifact ( resp, this.service, this.channelId, a.getId (), empty (), true, art -> this.filename );
+                DownloadHelper.streamArtifact ( req, resp, this.service, this.channelId, a.getId (), empty (), true, art -> this.filename );
                 return; // exit search loop
             }
 
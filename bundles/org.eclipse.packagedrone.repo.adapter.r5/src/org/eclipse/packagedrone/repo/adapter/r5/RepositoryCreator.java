@@ -17,6 +17,8 @@ import static org.eclipse.packagedrone.utils.Filters.versionRange;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -54,6 +56,10 @@ public class RepositoryCreator
 
     private static final String FRAMEWORK_PACKAGE = "org.osgi.framework";
 
+    private static final String KEY_INDEX = "index";
+
+    private static final String KEY_OBR = "obr";
+
     private final OutputSpooler indexStreamBuilder;
 
     private final String name;
@@ -64,47 +70,58 @@ public class RepositoryCreator
 
     private final OutputSpooler obrStreamBuilder;
 
+    private XMLOutputFactory xml;
+
     public static interface Context
     {
         public void addArtifact ( ArtifactInformation artifact ) throws IOException;
+
+        /**
+         * Add the entries of an artifact which were rendered before
+         *
+         * @param fragment
+         *            the entries, as rendered by
+         *            {@link RepositoryCreator#renderArtifact(ArtifactInformation)}
+         */
+        public void addEntries ( Map<String, String> fragment ) throws IOException;
     }
 
-    private static class ContextImpl implements Context
+    private class ContextImpl implements Context
     {
         private final XMLStreamWriter indexWriter;
 
         private final XMLStreamWriter obrWriter;
 
-        private final Function<ArtifactInformation, String> urlProvider;
+        private final OutputStream indexStream;
+
+        private final OutputStream obrStream;
 
-        public ContextImpl ( final XMLStreamWriter indexWriter, final XMLStreamWriter obrWriter, final Function<ArtifactInformation, String> urlProvider )
+        public ContextImpl ( final XMLStreamWriter indexWriter, final XMLStreamWriter obrWriter, final OutputStream indexStream, final OutputStream obrStream )
         {
             this.indexWriter = indexWriter;
             this.obrWriter = obrWriter;
-            this.urlProvider = urlProvider;
+            this.indexStream = indexStream;
+            this.obrStream = obrStream;
         }
 
         @Override
         public void addArtifact ( final ArtifactInformation art ) throws IOException
         {
-            final Map<MetaKey, String> md = art.getMetaData ();
-
-            final BundleInformation bi = OsgiAspectFactory.fetchBundleInformation ( md );
-
-            if ( bi == null )
-            {
-                return;
-            }
+            addEntries ( renderArtifact ( art ) );
+        }
 
-            if ( bi.getId () == null || bi.getVersion () == null )
+        @Override
+        public void addEntries ( final Map<String, String> fragment ) throws IOException
+        {
+            if ( fragment == null )
             {
                 return;
             }
 
             try
             {
-                addIndexEntry ( art, bi );
-                addObrEntry ( art, bi );
+                writeRaw ( this.indexWriter, this.indexStream, fragment.get ( KEY_INDEX ) );
+                writeRaw ( this.obrWriter, this.obrStream, fragment.get ( KEY_OBR ) );
             }
             catch ( final XMLStreamException e )
             {
@@ -112,64 +129,136 @@ public class RepositoryCreator
             }
         }
 
-        private void addIndexEntry ( final ArtifactInformation art, final BundleInformation bi ) throws XMLStreamException
+        private void writeRaw ( final XMLStreamWriter writer, final OutputStream stream, final String data ) throws XMLStreamException, IOException
         {
-            this.indexWriter.writeStartElement ( "resource" );
-            this.indexWriter.writeCharacters ( "\n" );
+            // the start tag of the repository element is already closed
+            writer.flush ();
+            stream.write ( data.getBytes ( StandardCharsets.UTF_8 ) );
+        }
+    }
 
-            addIndexIdentity ( this.indexWriter, bi );
-            addIndexContent ( this.indexWriter, art, this.urlProvider.apply ( art ) );
-            addIndexDependencies ( this.indexWriter, bi );
+    /**
+     * Render the entries of an artifact
+     * <p>
+     * The entries can be added to a repository using
+     * {@link Context#addEntries(Map)}.
+     * </p>
+     *
+     * @param art
+     *            the artifact to render
+     * @return the entries of the artifact, or {@code null} if the artifact is
+     *         not a bundle
+     */
+    public Map<String, String> renderArtifact ( final ArtifactInformation art ) throws IOException
+    {
+        final Map<MetaKey, String> md = art.getMetaData ();
+
+        final BundleInformation bi = OsgiAspectFactory.fetchBundleInformation ( md );
+
+        if ( bi == null )
+        {
+            return null;
+        }
 
-            this.indexWriter.writeEndElement ();
-            this.indexWriter.writeCharacters ( "\n\n" );
+        if ( bi.getId () == null || bi.getVersion () == null )
+        {
+            return null;
         }
 
-        private void addObrEntry ( final ArtifactInformation art, final BundleInformation bi ) throws XMLStreamException
+        final Map<String, String> result = new HashMap<> ( 2 );
+
+        try
+        {
+            result.put ( KEY_INDEX, render ( writer -> addIndexEntry ( writer, art, bi ) ) );
+            result.put ( KEY_OBR, render ( writer -> addObrEntry ( writer, art, bi ) ) );
+        }
+        catch ( final XMLStreamException e )
         {
-            this.obrWriter.writeStartElement ( "resource" );
+            throw new IOException ( e );
+        }
 
-            this.obrWriter.writeAttribute ( "id", art.getId () );
-            this.obrWriter.writeAttribute ( "symbolicname", bi.getId () );
-            this.obrWriter.writeAttribute ( "version", "" + bi.getVersion () );
+        return result;
+    }
 
-            if ( bi.getName () != null )
-            {
-                this.obrWriter.writeAttribute ( "presentationname", bi.getName () );
-            }
-            this.obrWriter.writeAttribute ( "uri", this.urlProvider.apply ( art ) );
-            this.obrWriter.writeCharacters ( "\n" ); // resource
+    @FunctionalInterface
+    private interface EntryWriter
+    {
+        public void write ( XMLStreamWriter writer ) throws XMLStreamException;
+    }
 
-            addObrMainTag ( this.obrWriter, "size", "" + art.getSize () );
-            if ( bi.getDocUrl () != null && !bi.getDocUrl ().isEmpty () )
-            {
-                addObrMainTag ( this.obrWriter, "documentation", "" + bi.getDocUrl () );
-            }
-            if ( bi.getDescription () != null && !bi.getDescription ().isEmpty () )
-            {
-                addObrMainTag ( this.obrWriter, "description", "" + bi.getDescription () );
-            }
+    private String render ( final EntryWriter entryWriter ) throws XMLStreamException
+    {
+        final StringWriter sw = new StringWriter ();
+
+        final XMLStreamWriter writer = getOutputFactory ().createXMLStreamWriter ( sw );
+        try
+        {
+            entryWriter.write ( writer );
+        }
+        finally
+        {
+            writer.close ();
+        }
+
+        return sw.toString ();
+    }
+
+    private void addIndexEntry ( final XMLStreamWriter writer, final ArtifactInformation art, final BundleInformation bi ) throws XMLStreamException
+    {
+        writer.writeStartElement ( "resource" );
+        writer.writeCharacters ( "\n" );
+
+        addIndexIdentity ( writer, bi );
+        addIndexContent ( writer, art, this.urlProvider.apply ( art ) );
+        addIndexDependencies ( writer, bi );
+
+        writer.writeEndElement ();
+        writer.writeCharacters ( "\n\n" );
+    }
+
+    private void addObrEntry ( final XMLStreamWriter writer, final ArtifactInformation art, final BundleInformation bi ) throws XMLStreamException
+    {
+        writer.writeStartElement ( "resource" );
 
-            addObrDependencies ( this.obrWriter, bi );
+        writer.writeAttribute ( "id", art.getId () );
+        writer.writeAttribute ( "symbolicname", bi.getId () );
+        writer.writeAttribute ( "version", "" + bi.getVersion () );
 
-            this.obrWriter.writeEndElement ();
-            this.obrWriter.writeCharacters ( "\n\n" );
+        if ( bi.getName () != null )
+        {
+            writer.writeAttribute ( "presentationname", bi.getName () );
         }
+        writer.writeAttribute ( "uri", this.urlProvider.apply ( art ) );
+        writer.writeCharacters ( "\n" ); // resource
 
-        private static void addObrMainTag ( final XMLStreamWriter obrWriter, final String name, final String value ) throws XMLStreamException
+        addObrMainTag ( writer, "size", "" + art.getSize () );
+        if ( bi.getDocUrl () != null && !bi.getDocUrl ().isEmpty () )
         {
-            if ( value == null )
-            {
-                return;
-            }
+            addObrMainTag ( writer, "documentation", "" + bi.getDocUrl () );
+        }
+        if ( bi.getDescription () != null && !bi.getDescription ().isEmpty () )
+        {
+            addObrMainTag ( writer, "description", "" + bi.getDescription () );
+        }
+
+        addObrDependencies ( writer, bi );
 
-            obrWriter.writeCharacters ( "\t" );
-            obrWriter.writeStartElement ( name );
-            obrWriter.writeCharacters ( value );
-            obrWriter.writeEndElement ();
-            obrWriter.writeCharacters ( "\n" );
+        writer.writeEndElement ();
+        writer.writeCharacters ( "\n\n" );
+    }
+
+    private static void addObrMainTag ( final XMLStreamWriter obrWriter, final String name, final String value ) throws XMLStreamException
+    {
+        if ( value == null )
+        {
+            return;
         }
 
+        obrWriter.writeCharacters ( "\t" );
+        obrWriter.writeStartElement ( name );
+        obrWriter.writeCharacters ( value );
+        obrWriter.writeEndElement ();
+        obrWriter.writeCharacters ( "\n" );
     }
 
     private static void addIndexIdentity ( final XMLStreamWriter writer, final BundleInformation bi ) throws XMLStreamException
@@ -494,9 +583,18 @@ public class RepositoryCreator
         this ( name, target, urlProvider, XMLOutputFactory::newFactory );
     }
 
+    private XMLOutputFactory getOutputFactory ()
+    {
+        if ( this.xml == null )
+        {
+            this.xml = this.outputFactory.get ();
+        }
+        return this.xml;
+    }
+
     public void process ( final IOConsumer<Context> consumer ) throws IOException
     {
-        final XMLOutputFactory xml = this.outputFactory.get ();
+        final XMLOutputFactory xml = getOutputFactory ();
 
         this.indexStreamBuilder.open ( indexStream -> {
             this.obrStreamBuilder.open ( obrStream -> {
@@ -524,7 +622,7 @@ public class RepositoryCreator
             startIndex ( indexWriter );
             startObr ( obrWriter );
 
-            final ContextImpl ctx = new ContextImpl ( indexWriter, obrWriter, this.urlProvider );
+            final ContextImpl ctx = new ContextImpl ( indexWriter, obrWriter, indexStream, obrStream );
             consumer.accept ( ctx );
 
             endObr ( obrWriter );
@@ -94,7 +94,7 @@ public abstract class CommonRepoServlet extends AbstractChannelServiceServlet
                     }
                     else
                     {
-                        DownloadHelper.streamArtifact ( resp, artifact.get (), Optional.of ( "application/vnd.osgi.bundle" ), true, channel, art -> toks.length == 5 ? toks[4] : art.getName () );
+                        DownloadHelper.streamArtifact ( req, resp, artifact.get (), Optional.of ( "application/vnd.osgi.bundle" ), true, channel, art -> toks.length == 5 ? toks[4] : art.getName () );
                     }
                 } );
             }
@@ -14,14 +14,18 @@ import java.util.Map;
 
 import org.eclipse.packagedrone.repo.adapter.r5.RepositoryCreator;
 import org.eclipse.packagedrone.repo.aspect.aggregate.AggregationContext;
-import org.eclipse.packagedrone.repo.aspect.aggregate.ChannelAggregator;
+import org.eclipse.packagedrone.repo.aspect.aggregate.ArtifactFragments;
+import org.eclipse.packagedrone.repo.aspect.aggregate.IncrementalAggregationContext;
+import org.eclipse.packagedrone.repo.aspect.aggregate.IncrementalChannelAggregator;
+import org.eclipse.packagedrone.repo.aspect.common.osgi.OsgiAspectFactory;
 import org.eclipse.packagedrone.repo.aspect.common.spool.ChannelCacheTarget;
 import org.eclipse.packagedrone.repo.aspect.common.spool.SpoolOutTarget;
-import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
 import org.eclipse.packagedrone.utils.xml.XmlToolsFactory;
 
-public class R5RepoIndexAggregator implements ChannelAggregator
+public class R5RepoIndexAggregator implements IncrementalChannelAggregator
 {
+    private static final String KEY_BUNDLES = "bundles";
+
     private final XmlToolsFactory xmlFactory;
 
     public R5RepoIndexAggregator ( final XmlToolsFactory xmlFactory )
@@ -31,21 +35,68 @@ public class R5RepoIndexAggregator implements ChannelAggregator
 
     @Override
     public Map<String, String> aggregateMetaData ( final AggregationContext context ) throws Exception
+    {
+        final RepositoryCreator repo = makeCreator ( context );
+
+        final ArtifactFragments fragments = ArtifactFragments.render ( context.getArtifacts (), repo::renderArtifact );
+
+        process ( context, repo, fragments );
+
+        return null;
+    }
+
+    /**
+     * Apply changes to the repository index
+     * <p>
+     * The entries of each bundle are kept as cache entry. Only the entries of
+     * added and changed bundles are rendered again, the index documents are
+     * then assembled from the stored entries.
+     * </p>
+     */
+    @Override
+    public boolean aggregateChanges ( final IncrementalAggregationContext context, final Map<String, String> result ) throws Exception
+    {
+        if ( !context.isAffected ( art -> OsgiAspectFactory.fetchBundleInformation ( art.getMetaData () ) != null ) )
+        {
+            context.keepPreviousValidationMessages ();
+            return true;
+        }
+
+        final ArtifactFragments fragments = ArtifactFragments.load ( context, KEY_BUNDLES );
+        if ( fragments == null )
+        {
+            return false;
+        }
+
+        final RepositoryCreator repo = makeCreator ( context );
+
+        fragments.update ( context, repo::renderArtifact );
+
+        process ( context, repo, fragments );
+
+        context.keepPreviousValidationMessages ();
+        return true;
+    }
+
+    private RepositoryCreator makeCreator ( final AggregationContext context )
     {
         final String name = context.getChannelId ();
 
         final SpoolOutTarget target = new ChannelCacheTarget ( context );
 
-        final RepositoryCreator repo = new RepositoryCreator ( name, target, art -> context.getChannelId () + "/artifact/" + art.getId () + "/" + art.getName (), this.xmlFactory::newXMLOutputFactory );
+        return new RepositoryCreator ( name, target, art -> context.getChannelId () + "/artifact/" + art.getId () + "/" + art.getName (), this.xmlFactory::newXMLOutputFactory );
+    }
 
+    private static void process ( final AggregationContext context, final RepositoryCreator repo, final ArtifactFragments fragments ) throws Exception
+    {
         repo.process ( ctx -> {
-            for ( final ArtifactInformation art : context.getArtifacts () )
+            for ( final Map<String, String> fragment : fragments.getFragments ().values () )
             {
-                ctx.addArtifact ( art );
+                ctx.addEntries ( fragment );
             }
         } );
 
-        return null;
+        fragments.store ( context, KEY_BUNDLES );
     }
 
 }
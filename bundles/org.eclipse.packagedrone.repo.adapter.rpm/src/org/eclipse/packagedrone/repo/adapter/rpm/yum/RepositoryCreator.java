@@ -13,11 +13,18 @@ package org.eclipse.packagedrone.repo.adapter.rpm.yum;
 import static org.eclipse.packagedrone.repo.XmlHelper.addElement;
 import static org.eclipse.packagedrone.repo.XmlHelper.addOptionalElement;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeSet;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
@@ -39,6 +46,12 @@ import org.w3c.dom.Element;
 
 public class RepositoryCreator
 {
+    private static final String KEY_PRIMARY = "primary";
+
+    private static final String KEY_FILELISTS = "filelists";
+
+    private static final String KEY_OTHER = "other";
+
     private final XmlHelper xml = new XmlHelper ();
 
     private final OutputSpooler primaryStreamBuilder;
@@ -56,6 +69,15 @@ public class RepositoryCreator
     public interface Context
     {
         public void addPackage ( final String sha1, final ArtifactInformation artifact, final RpmInformation info );
+
+        /**
+         * Add a package which was rendered before
+         *
+         * @param fragment
+         *            the package, as rendered by
+         *            {@link RepositoryCreator#renderPackage(String, ArtifactInformation, RpmInformation)}
+         */
+        public void addPackage ( final Map<String, String> fragment );
     }
 
     public class ContextImpl implements Context
@@ -66,42 +88,13 @@ public class RepositoryCreator
 
         private final OutputStream otherStream;
 
-        private final Document primary;
-
-        private final Document filelists;
-
-        private final Document other;
-
-        private final XmlHelper xml;
-
-        private final Element primaryRoot;
+        private final List<Map<String, String>> packages = new LinkedList<> ();
 
-        private final Element filelistsRoot;
-
-        private final Element otherRoot;
-
-        private long count;
-
-        public ContextImpl ( final OutputStream primaryStream, final OutputStream filelistsStream, final OutputStream otherStream, final XmlHelper xml )
+        public ContextImpl ( final OutputStream primaryStream, final OutputStream filelistsStream, final OutputStream otherStream )
         {
             this.primaryStream = primaryStream;
             this.filelistsStream = filelistsStream;
             this.otherStream = otherStream;
-
-            this.primary = xml.createNs ();
-            this.primaryRoot = this.primary.createElementNS ( "http://linux.duke.edu/metadata/common", "metadata" );
-            this.primaryRoot.setAttribute ( "xmlns:rpm", "http://linux.duke.edu/metadata/rpm" );
-            this.primary.appendChild ( this.primaryRoot );
-
-            this.filelists = xml.createNs ();
-            this.filelistsRoot = this.filelists.createElementNS ( "http://linux.duke.edu/metadata/filelists", "filelists" );
-            this.filelists.appendChild ( this.filelistsRoot );
-
-            this.other = xml.createNs ();
-            this.otherRoot = this.other.createElementNS ( "http://linux.duke.edu/metadata/other", "otherdata" );
-            this.other.appendChild ( this.otherRoot );
-
-            this.xml = xml;
         }
 
         @Override
@@ -112,228 +105,279 @@ public class RepositoryCreator
                 return;
             }
 
-            this.count++;
-
-            // insert to primary
-
-            insertToPrimary ( sha1, artifact, info );
-
-            // insert to "filelists"
+            addPackage ( renderPackage ( sha1, artifact, info ) );
+        }
 
+        @Override
+        public void addPackage ( final Map<String, String> fragment )
+        {
+            if ( fragment != null )
             {
-                final Element pkg = createPackage ( this.filelistsRoot, sha1, info );
-                appendFiles ( info, pkg, null, null );
+                this.packages.add ( fragment );
             }
+        }
 
-            // insert to "other"
+        public void close () throws IOException
+        {
+            final int count = this.packages.size ();
 
-            {
-                final Element pkg = createPackage ( this.otherRoot, sha1, info );
-                for ( final Changelog log : info.getChangelog () )
-                {
-                    final Element cl = addElement ( pkg, "changelog", log.getText () );
-                    cl.setAttribute ( "author", log.getAuthor () );
-                    cl.setAttribute ( "date", "" + log.getTimestamp () );
-                }
-            }
+            writeDocument ( this.primaryStream, String.format ( "<metadata xmlns=\"http://linux.duke.edu/metadata/common\" xmlns:rpm=\"http://linux.duke.edu/metadata/rpm\" packages=\"%s\">", count ), KEY_PRIMARY, "</metadata>" );
+            writeDocument ( this.filelistsStream, String.format ( "<filelists xmlns=\"http://linux.duke.edu/metadata/filelists\" packages=\"%s\">", count ), KEY_FILELISTS, "</filelists>" );
+            writeDocument ( this.otherStream, String.format ( "<otherdata xmlns=\"http://linux.duke.edu/metadata/other\" packages=\"%s\">", count ), KEY_OTHER, "</otherdata>" );
         }
 
-        private void appendFiles ( final RpmInformation info, final Element pkg, final Predicate<String> fileFilter, final Predicate<String> dirFilter )
+        private void writeDocument ( final OutputStream stream, final String start, final String key, final String end ) throws IOException
         {
-            for ( final String file : new TreeSet<> ( info.getFiles () ) )
-            {
-                if ( fileFilter == null || fileFilter.test ( file ) )
-                {
-                    addElement ( pkg, "file", file );
-                }
-            }
-            for ( final String dir : new TreeSet<> ( info.getDirectories () ) )
+            final Writer writer = new BufferedWriter ( new OutputStreamWriter ( stream, StandardCharsets.UTF_8 ) );
+
+            writer.write ( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" );
+            writer.write ( start );
+            writer.write ( "\n" );
+
+            for ( final Map<String, String> fragment : this.packages )
             {
-                if ( dirFilter == null || dirFilter.test ( dir ) )
-                {
-                    final Element ele = addElement ( pkg, "file", dir );
-                    ele.setAttribute ( "type", "dir" );
-                }
+                writer.write ( fragment.get ( key ) );
             }
+
+            writer.write ( end );
+            writer.write ( "\n" );
+
+            writer.flush ();
         }
+    }
 
-        private void insertToPrimary ( final String sha1, final ArtifactInformation artifact, final RpmInformation info )
+    /**
+     * Render the entries of a package
+     * <p>
+     * The entries can be added to a repository using
+     * {@link Context#addPackage(Map)}.
+     * </p>
+     *
+     * @param sha1
+     *            the SHA1 checksum of the package
+     * @param artifact
+     *            the artifact of the package
+     * @param info
+     *            the information of the package
+     * @return the entries of the package, or {@code null} if the information
+     *         is {@code null}
+     */
+    public Map<String, String> renderPackage ( final String sha1, final ArtifactInformation artifact, final RpmInformation info )
+    {
+        if ( info == null )
         {
-            final Element pkg = addElement ( this.primaryRoot, "package" );
-            pkg.setAttribute ( "type", "rpm" );
+            return null;
+        }
+
+        final Document doc = this.xml.create ();
+        final Element root = doc.createElement ( "packages" );
+        doc.appendChild ( root );
 
-            addElement ( pkg, "name", info.getName () );
-            addElement ( pkg, "arch", info.getArchitecture () );
+        final Map<String, String> result = new HashMap<> ( 3 );
 
-            addVersion ( pkg, info.getVersion () );
+        // render "primary"
 
-            final Element checksum = addElement ( pkg, "checksum", sha1 );
-            checksum.setAttribute ( "type", "sha" );
-            checksum.setAttribute ( "pkgid", "YES" );
+        result.put ( KEY_PRIMARY, this.xml.toFragment ( createPrimary ( root, sha1, artifact, info ) ) );
 
-            addElement ( pkg, "summary", info.getSummary () );
-            addElement ( pkg, "description", info.getDescription () );
-            addElement ( pkg, "packager", info.getPackager () );
-            addElement ( pkg, "url", info.getUrl () );
+        // render "filelists"
 
-            // time
+        {
+            final Element pkg = createPackage ( root, sha1, info );
+            appendFiles ( info, pkg, null, null );
+            result.put ( KEY_FILELISTS, this.xml.toFragment ( pkg ) );
+        }
 
-            final Element time = addElement ( pkg, "time" );
-            time.setAttribute ( "file", "" + artifact.getCreationTimestamp ().getTime () / 1000 );
-            if ( info.getBuildTimestamp () != null )
+        // render "other"
+
+        {
+            final Element pkg = createPackage ( root, sha1, info );
+            for ( final Changelog log : info.getChangelog () )
             {
-                time.setAttribute ( "build", "" + info.getBuildTimestamp () );
+                final Element cl = addElement ( pkg, "changelog", log.getText () );
+                cl.setAttribute ( "author", log.getAuthor () );
+                cl.setAttribute ( "date", "" + log.getTimestamp () );
             }
+            result.put ( KEY_OTHER, this.xml.toFragment ( pkg ) );
+        }
 
-            // size
+        return result;
+    }
 
-            final Element size = addElement ( pkg, "size" );
-            size.setAttribute ( "package", "" + artifact.getSize () );
-            if ( info.getInstalledSize () != null )
+    private void appendFiles ( final RpmInformation info, final Element pkg, final Predicate<String> fileFilter, final Predicate<String> dirFilter )
+    {
+        for ( final String file : new TreeSet<> ( info.getFiles () ) )
+        {
+            if ( fileFilter == null || fileFilter.test ( file ) )
             {
-                size.setAttribute ( "installed", "" + info.getInstalledSize () );
+                addElement ( pkg, "file", file );
             }
-            if ( info.getArchiveSize () != null )
+        }
+        for ( final String dir : new TreeSet<> ( info.getDirectories () ) )
+        {
+            if ( dirFilter == null || dirFilter.test ( dir ) )
             {
-                size.setAttribute ( "archive", "" + info.getArchiveSize () );
+                final Element ele = addElement ( pkg, "file", dir );
+                ele.setAttribute ( "type", "dir" );
             }
+        }
+    }
 
-            // location
+    private Element createPrimary ( final Element root, final String sha1, final ArtifactInformation artifact, final RpmInformation info )
+    {
+        final Element pkg = addElement ( root, "package" );
+        pkg.setAttribute ( "type", "rpm" );
 
-            final Element location = addElement ( pkg, "location" );
-            location.setAttribute ( "href", String.format ( "pool/%s/%s", artifact.getId (), artifact.getName () ) );
+        addElement ( pkg, "name", info.getName () );
+        addElement ( pkg, "arch", info.getArchitecture () );
 
-            // add format section
+        addVersion ( pkg, info.getVersion () );
 
-            final Element fmt = addElement ( pkg, "format" );
-            addOptionalElement ( fmt, "rpm:license", info.getLicense () );
-            addOptionalElement ( fmt, "rpm:vendor", info.getVendor () );
-            addOptionalElement ( fmt, "rpm:group", info.getGroup () );
-            addOptionalElement ( fmt, "rpm:buildhost", info.getBuildHost () );
-            addOptionalElement ( fmt, "rpm:sourcerpm", info.getSourcePackage () );
+        final Element checksum = addElement ( pkg, "checksum", sha1 );
+        checksum.setAttribute ( "type", "sha" );
+        checksum.setAttribute ( "pkgid", "YES" );
 
-            // add header range
+        addElement ( pkg, "summary", info.getSummary () );
+        addElement ( pkg, "description", info.getDescription () );
+        addElement ( pkg, "packager", info.getPackager () );
+        addElement ( pkg, "url", info.getUrl () );
 
-            final Element rng = addElement ( fmt, "rpm:header-range" );
-            rng.setAttribute ( "start", "" + info.getHeaderStart () );
-            rng.setAttribute ( "end", "" + info.getHeaderEnd () );
+        // time
 
-            addDependencies ( fmt, "rpm:provides", info.getProvides () );
-            addDependencies ( fmt, "rpm:requires", info.getRequires () );
-            addDependencies ( fmt, "rpm:conflicts", info.getConflicts () );
-            addDependencies ( fmt, "rpm:obsoletes", info.getObsoletes () );
+        final Element time = addElement ( pkg, "time" );
+        time.setAttribute ( "file", "" + artifact.getCreationTimestamp ().getTime () / 1000 );
+        if ( info.getBuildTimestamp () != null )
+        {
+            time.setAttribute ( "build", "" + info.getBuildTimestamp () );
+        }
 
-            // add primary files
+        // size
 
-            appendFiles ( info, pkg, file -> matches ( file, RepositoryCreator.this.primaryFiles ), dir -> matches ( dir, RepositoryCreator.this.primaryDirs ) );
+        final Element size = addElement ( pkg, "size" );
+        size.setAttribute ( "package", "" + artifact.getSize () );
+        if ( info.getInstalledSize () != null )
+        {
+            size.setAttribute ( "installed", "" + info.getInstalledSize () );
         }
-
-        private void addDependencies ( final Element fmt, final String elementName, final List<Dependency> deps )
+        if ( info.getArchiveSize () != null )
         {
-            final Element ele = addElement ( fmt, elementName );
+            size.setAttribute ( "archive", "" + info.getArchiveSize () );
+        }
 
-            for ( final Dependency dep : deps )
-            {
-                final EnumSet<RpmDependencyFlags> flags = RpmDependencyFlags.parse ( dep.getFlags () );
-                if ( flags.contains ( RpmDependencyFlags.RPMLIB ) )
-                {
-                    continue;
-                }
+        // location
 
-                final Element entry = addElement ( ele, "rpm:entry" );
-                entry.setAttribute ( "name", dep.getName () );
-                if ( dep.getVersion () != null )
-                {
-                    final RpmVersion version = RpmVersion.valueOf ( dep.getVersion () );
-                    entry.setAttribute ( "epoch", "" + version.getEpoch ().orElse ( 0 ) );
-                    entry.setAttribute ( "ver", version.getVersion () );
-                    if ( version.getRelease ().isPresent () )
-                    {
-                        entry.setAttribute ( "rel", version.getRelease ().get () );
-                    }
-                }
+        final Element location = addElement ( pkg, "location" );
+        location.setAttribute ( "href", String.format ( "pool/%s/%s", artifact.getId (), artifact.getName () ) );
 
-                final boolean eq = flags.contains ( RpmDependencyFlags.EQUAL );
+        // add format section
 
-                if ( flags.contains ( RpmDependencyFlags.GREATER ) )
-                {
-                    entry.setAttribute ( "flags", eq ? "GE" : "GT" );
-                }
-                else if ( flags.contains ( RpmDependencyFlags.LESS ) )
-                {
-                    entry.setAttribute ( "flags", eq ? "LE" : "LT" );
-                }
-                else if ( eq )
-                {
-                    entry.setAttribute ( "flags", "EQ" );
-                }
+        final Element fmt = addElement ( pkg, "format" );
+        addOptionalElement ( fmt, "rpm:license", info.getLicense () );
+        addOptionalElement ( fmt, "rpm:vendor", info.getVendor () );
+        addOptionalElement ( fmt, "rpm:group", info.getGroup () );
+        addOptionalElement ( fmt, "rpm:buildhost", info.getBuildHost () );
+        addOptionalElement ( fmt, "rpm:sourcerpm", info.getSourcePackage () );
 
-                final boolean pre = flags.contains ( RpmDependencyFlags.PREREQ ) || flags.contains ( RpmDependencyFlags.SCRIPT_PRE ) || flags.contains ( RpmDependencyFlags.SCRIPT_POST );
-                if ( pre )
-                {
-                    entry.setAttribute ( "pre", "1" );
-                }
-            }
-        }
+        // add header range
 
-        private Element createPackage ( final Element root, final String id, final RpmInformation info )
-        {
-            final Element pkg = addElement ( root, "package" );
-            pkg.setAttribute ( "pkgid", id );
-            pkg.setAttribute ( "name", info.getName () );
-            pkg.setAttribute ( "arch", info.getArchitecture () );
+        final Element rng = addElement ( fmt, "rpm:header-range" );
+        rng.setAttribute ( "start", "" + info.getHeaderStart () );
+        rng.setAttribute ( "end", "" + info.getHeaderEnd () );
 
-            addVersion ( pkg, info.getVersion () );
+        addDependencies ( fmt, "rpm:provides", info.getProvides () );
+        addDependencies ( fmt, "rpm:requires", info.getRequires () );
+        addDependencies ( fmt, "rpm:conflicts", info.getConflicts () );
+        addDependencies ( fmt, "rpm:obsoletes", info.getObsoletes () );
 
-            return pkg;
-        }
+        // add primary files
 
-        private Element addVersion ( final Element pkg, final RpmInformation.Version version )
-        {
-            if ( version == null )
-            {
-                return null;
-            }
+        appendFiles ( info, pkg, file -> matches ( file, this.primaryFiles ), dir -> matches ( dir, this.primaryDirs ) );
 
-            final Element ver = addElement ( pkg, "version" );
+        return pkg;
+    }
+
+    private void addDependencies ( final Element fmt, final String elementName, final List<Dependency> deps )
+    {
+        final Element ele = addElement ( fmt, elementName );
 
-            if ( version.getEpoch () == null || version.getEpoch ().isEmpty () )
+        for ( final Dependency dep : deps )
+        {
+            final EnumSet<RpmDependencyFlags> flags = RpmDependencyFlags.parse ( dep.getFlags () );
+            if ( flags.contains ( RpmDependencyFlags.RPMLIB ) )
             {
-                ver.setAttribute ( "epoch", "0" );
+                continue;
             }
-            else
+
+            final Element entry = addElement ( ele, "rpm:entry" );
+            entry.setAttribute ( "name", dep.getName () );
+            if ( dep.getVersion () != null )
             {
-                ver.setAttribute ( "epoch", version.getEpoch () );
+                final RpmVersion version = RpmVersion.valueOf ( dep.getVersion () );
+                entry.setAttribute ( "epoch", "" + version.getEpoch ().orElse ( 0 ) );
+                entry.setAttribute ( "ver", version.getVersion () );
+                if ( version.getRelease ().isPresent () )
+                {
+                    entry.setAttribute ( "rel", version.getRelease ().get () );
+                }
             }
-            ver.setAttribute ( "ver", version.getVersion () );
-            ver.setAttribute ( "rel", version.getRelease () );
 
-            return ver;
-        }
-
-        public void close () throws IOException
-        {
-            this.primaryRoot.setAttribute ( "packages", "" + this.count );
-            this.filelistsRoot.setAttribute ( "packages", "" + this.count );
-            this.otherRoot.setAttribute ( "packages", "" + this.count );
+            final boolean eq = flags.contains ( RpmDependencyFlags.EQUAL );
 
-            try
+            if ( flags.contains ( RpmDependencyFlags.GREATER ) )
+            {
+                entry.setAttribute ( "flags", eq ? "GE" : "GT" );
+            }
+            else if ( flags.contains ( RpmDependencyFlags.LESS ) )
             {
-                this.xml.write ( this.primary, this.primaryStream );
-                this.xml.write ( this.filelists, this.filelistsStream );
-                this.xml.write ( this.other, this.otherStream );
+                entry.setAttribute ( "flags", eq ? "LE" : "LT" );
             }
-            catch ( final IOException e )
+            else if ( eq )
             {
-                throw e;
+                entry.setAttribute ( "flags", "EQ" );
             }
-            catch ( final Exception e )
+
+            final boolean pre = flags.contains ( RpmDependencyFlags.PREREQ ) || flags.contains ( RpmDependencyFlags.SCRIPT_PRE ) || flags.contains ( RpmDependencyFlags.SCRIPT_POST );
+            if ( pre )
             {
-                throw new IOException ( e );
+                entry.setAttribute ( "pre", "1" );
             }
         }
     }
 
+    private Element createPackage ( final Element root, final String id, final RpmInformation info )
+    {
+        final Element pkg = addElement ( root, "package" );
+        pkg.setAttribute ( "pkgid", id );
+        pkg.setAttribute ( "name", info.getName () );
+        pkg.setAttribute ( "arch", info.getArchitecture () );
+
+        addVersion ( pkg, info.getVersion () );
+
+        return pkg;
+    }
+
+    private Element addVersion ( final Element pkg, final RpmInformation.Version version )
+    {
+        if ( version == null )
+        {
+            return null;
+        }
+
+        final Element ver = addElement ( pkg, "version" );
+
+        if ( version.getEpoch () == null || version.getEpoch ().isEmpty () )
+        {
+            ver.setAttribute ( "epoch", "0" );
+        }
+        else
+        {
+            ver.setAttribute ( "epoch", version.getEpoch () );
+        }
+        ver.setAttribute ( "ver", version.getVersion () );
+        ver.setAttribute ( "rel", version.getRelease () );
+
+        return ver;
+    }
+
     public RepositoryCreator ( final SpoolOutTarget target )
     {
         // filters
@@ -412,7 +456,7 @@ public class RepositoryCreator
 
     private ContextImpl makeContext ( final OutputStream primaryStream, final OutputStream filelistsStream, final OutputStream otherStream )
     {
-        return new ContextImpl ( primaryStream, filelistsStream, otherStream, this.xml );
+        return new ContextImpl ( primaryStream, filelistsStream, otherStream );
     }
 
     private void writeRepoMd ( final OutputStream stream, final long now ) throws IOException
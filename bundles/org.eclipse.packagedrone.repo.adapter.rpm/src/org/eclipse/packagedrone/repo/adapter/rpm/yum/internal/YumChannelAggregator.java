@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.eclipse.packagedrone.repo.adapter.rpm.yum.internal;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -18,11 +19,13 @@ import org.eclipse.packagedrone.repo.adapter.rpm.Constants;
 import org.eclipse.packagedrone.repo.adapter.rpm.RpmInformation;
 import org.eclipse.packagedrone.repo.adapter.rpm.yum.RepositoryCreator;
 import org.eclipse.packagedrone.repo.aspect.aggregate.AggregationContext;
-import org.eclipse.packagedrone.repo.aspect.aggregate.ChannelAggregator;
+import org.eclipse.packagedrone.repo.aspect.aggregate.ArtifactFragments;
+import org.eclipse.packagedrone.repo.aspect.aggregate.IncrementalAggregationContext;
+import org.eclipse.packagedrone.repo.aspect.aggregate.IncrementalChannelAggregator;
 import org.eclipse.packagedrone.repo.aspect.common.spool.ChannelCacheTarget;
 import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
 
-public class YumChannelAggregator implements ChannelAggregator
+public class YumChannelAggregator implements IncrementalChannelAggregator
 {
 
     @Override
@@ -32,22 +35,73 @@ public class YumChannelAggregator implements ChannelAggregator
 
         final Map<String, String> result = new HashMap<> ();
 
-        creator.process ( repoContext -> {
-            for ( final ArtifactInformation art : context.getArtifacts () )
-            {
-                final RpmInformation info = RpmInformation.fromJson ( art.getMetaData ().get ( Constants.KEY_INFO ) );
+        final ArtifactFragments fragments = ArtifactFragments.render ( context.getArtifacts (), art -> renderPackage ( creator, art ) );
+
+        process ( context, creator, fragments );
+
+        return result;
+    }
+
+    /**
+     * Apply changes to the YUM repository
+     * <p>
+     * The previous repository is kept if none of the changed artifacts is, or
+     * was, an RPM package. Otherwise only the package entries of the changed
+     * artifacts are rendered again, the entries of all other packages are
+     * taken from the cache entry "packages". The repository meta data is
+     * compressed and referenced by checksum from the {@code repomd.xml} file,
+     * so all documents are written again.
+     * </p>
+     */
+    @Override
+    public boolean aggregateChanges ( final IncrementalAggregationContext context, final Map<String, String> result ) throws Exception
+    {
+        if ( !context.isAffected ( art -> art.getMetaData ().get ( Constants.KEY_INFO ) != null ) )
+        {
+            context.keepPreviousValidationMessages ();
+            return true;
+        }
+
+        final ArtifactFragments fragments = ArtifactFragments.load ( context, "packages" );
+        if ( fragments == null )
+        {
+            return false;
+        }
+
+        final RepositoryCreator creator = new RepositoryCreator ( new ChannelCacheTarget ( context ) );
+
+        fragments.update ( context, art -> renderPackage ( creator, art ) );
 
-                if ( info == null )
-                {
-                    continue;
-                }
+        process ( context, creator, fragments );
 
-                final String sha1 = art.getMetaData ().get ( new MetaKey ( "hasher", "sha1" ) );
+        context.keepPreviousValidationMessages ();
 
-                repoContext.addPackage ( sha1, art, info );
+        return true;
+    }
+
+    private static void process ( final AggregationContext context, final RepositoryCreator creator, final ArtifactFragments fragments ) throws IOException
+    {
+        creator.process ( repoContext -> {
+            for ( final Map<String, String> fragment : fragments.getFragments ().values () )
+            {
+                repoContext.addPackage ( fragment );
             }
         } );
 
-        return result;
+        fragments.store ( context, "packages" );
+    }
+
+    private static Map<String, String> renderPackage ( final RepositoryCreator creator, final ArtifactInformation art )
+    {
+        final RpmInformation info = RpmInformation.fromJson ( art.getMetaData ().get ( Constants.KEY_INFO ) );
+
+        if ( info == null )
+        {
+            return null;
+        }
+
+        final String sha1 = art.getMetaData ().get ( new MetaKey ( "hasher", "sha1" ) );
+
+        return creator.renderPackage ( sha1, art, info );
     }
 }
@@ -224,7 +224,7 @@ public class YumServlet extends AbstractChannelServiceServlet
 
         final Optional<String> name = segs.length > 2 ? Optional.of ( segs[segs.length - 1] ) : Optional.empty ();
 
-        DownloadHelper.streamArtifact ( response, artifact.get (), null, true, channel, art -> name.orElse ( art.getName () ) );
+        DownloadHelper.streamArtifact ( request, response, artifact.get (), null, true, channel, art -> name.orElse ( art.getName () ) );
     }
 
     private void viewJsp ( final HttpServletRequest request, final HttpServletResponse response, final String viewName ) throws ServletException, IOException
@@ -560,7 +560,7 @@ public class UnzipServlet extends AbstractChannelServiceServlet
 
         if ( localPath.isEmpty () )
         {
-            DownloadHelper.streamArtifact ( response, artifact, Optional.empty (), true, channel, null );
+            DownloadHelper.streamArtifact ( request, response, artifact, Optional.empty (), true, channel, null );
             return;
         }
 
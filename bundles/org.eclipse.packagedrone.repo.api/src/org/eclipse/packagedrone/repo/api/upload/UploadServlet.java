@@ -23,6 +23,7 @@ import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
 import org.eclipse.packagedrone.repo.channel.ChannelNotFoundException;
 import org.eclipse.packagedrone.repo.channel.ChannelService;
 import org.eclipse.packagedrone.repo.channel.ModifiableChannel;
+import org.eclipse.packagedrone.repo.channel.StagedArtifact;
 import org.eclipse.packagedrone.repo.channel.ChannelService.By;
 import org.eclipse.packagedrone.repo.channel.servlet.AbstractChannelServiceServlet;
 import org.eclipse.scada.utils.ExceptionHelper;
@@ -107,13 +108,15 @@ public class UploadServlet extends AbstractChannelServiceServlet
             return;
         }
 
-        try
+        // receive the content before locking the channel
+
+        try ( StagedArtifact staged = service.stage ( By.nameOrId ( channelIdOrName ), req.getInputStream () ) )
         {
             service.accessRun ( By.nameOrId ( channelIdOrName ), ModifiableChannel.class, channel -> {
 
                 // do store
 
-                store ( channel, parentArtifactId, artifactName, req, resp );
+                store ( channel, parentArtifactId, artifactName, staged, req, resp );
 
             } );
         }
@@ -131,11 +134,11 @@ public class UploadServlet extends AbstractChannelServiceServlet
         response.getWriter ().println ( message );
     }
 
-    private static void store ( final ModifiableChannel channel, final String parentArtifactId, final String name, final HttpServletRequest request, final HttpServletResponse response ) throws IOException
+    private static void store ( final ModifiableChannel channel, final String parentArtifactId, final String name, final StagedArtifact staged, final HttpServletRequest request, final HttpServletResponse response ) throws IOException
     {
         try
         {
-            final ArtifactInformation art = channel.getContext ().createArtifact ( parentArtifactId, request.getInputStream (), name, makeMetaData ( request ) );
+            final ArtifactInformation art = channel.getContext ().createArtifact ( parentArtifactId, staged, name, makeMetaData ( request ) );
             response.setStatus ( HttpServletResponse.SC_OK );
             if ( art != null )
             {
@@ -54,7 +54,7 @@ public class HashAspectFactory implements ChannelAspectFactory
                 @Override
                 public void extractMetaData ( final Extractor.Context context, final Map<String, String> metadata ) throws Exception
                 {
-                    makeChecksumMetadata ( context.getPath (), metadata );
+                    makeChecksumMetadata ( context.getPath (), context.getChecksums (), metadata );
                 }
             };
         }
@@ -78,9 +78,25 @@ public class HashAspectFactory implements ChannelAspectFactory
         return new ChannelAspectImpl ();
     }
 
-    private static void makeChecksumMetadata ( final Path file, final Map<String, String> metadata ) throws IOException
+    private static void makeChecksumMetadata ( final Path file, final Map<String, String> knownChecksums, final Map<String, String> metadata ) throws IOException
     {
-        final Map<String, HashCode> result = HashHelper.createChecksums ( file, functions );
+        // only calculate what is not already known
+
+        final Map<String, HashFunction> missing = new HashMap<> ( functions.size () );
+        for ( final Map.Entry<String, HashFunction> entry : functions.entrySet () )
+        {
+            final String value = knownChecksums.get ( entry.getKey () );
+            if ( value != null )
+            {
+                metadata.put ( entry.getKey (), value );
+            }
+            else
+            {
+                missing.put ( entry.getKey (), entry.getValue () );
+            }
+        }
+
+        final Map<String, HashCode> result = HashHelper.createChecksums ( file, missing );
         for ( final Map.Entry<String, HashCode> entry : result.entrySet () )
         {
             metadata.put ( entry.getKey (), entry.getValue ().toString () );
@@ -58,8 +58,14 @@ public class OsgiExtractor implements Extractor
 
     private void extractFeatureInformation ( final Extractor.Context context, final Map<String, String> metadata ) throws Exception
     {
+        final ZipFile zipFile = context.getZipFile ();
+        if ( zipFile == null )
+        {
+            return;
+        }
+
         final FeatureInformation fi;
-        try ( ZipFile zipFile = new ZipFile ( context.getPath ().toFile () ) )
+        try
         {
             fi = new FeatureInformationParser ( zipFile ).parse ();
             if ( fi == null )
@@ -84,10 +90,15 @@ public class OsgiExtractor implements Extractor
 
     private void extractBundleInformation ( final Extractor.Context context, final Map<String, String> metadata ) throws Exception
     {
-        final BundleInformation bi;
-        try ( ZipFile zipFile = new ZipFile ( context.getPath ().toFile () ) )
+        final ZipFile zipFile = context.getZipFile ();
+        if ( zipFile == null )
         {
+            return;
+        }
 
+        final BundleInformation bi;
+        try
+        {
             final ZipEntry m = zipFile.getEntry ( JarFile.MANIFEST_NAME );
             if ( m == null )
             {
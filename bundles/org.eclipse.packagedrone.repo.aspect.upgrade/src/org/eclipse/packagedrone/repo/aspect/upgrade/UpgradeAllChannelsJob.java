@@ -20,6 +20,7 @@ import org.eclipse.packagedrone.repo.channel.ChannelInformation;
 import org.eclipse.packagedrone.repo.channel.ChannelService;
 import org.eclipse.packagedrone.repo.channel.ModifiableChannel;
 import org.eclipse.packagedrone.repo.channel.ChannelService.By;
+import org.eclipse.packagedrone.repo.channel.provider.ProgressMonitor;
 import org.eclipse.packagedrone.utils.profiler.Profile;
 import org.eclipse.packagedrone.utils.profiler.Profile.Handle;
 import org.eclipse.packagedrone.web.LinkTarget;
@@ -65,16 +66,31 @@ public class UpgradeAllChannelsJob implements JobFactory
         {
             final Collection<ChannelInformation> channels = this.service.list ();
 
-            ctx.beginWork ( "Refreshing channels", channels.size () );
+            // the work is measured in artifacts, as channels differ a lot in size
+
+            ctx.beginWork ( "Refreshing channels", channels.stream ().mapToLong ( ci -> ci.getState ().getNumberOfArtifacts () ).sum () );
 
             for ( final ChannelInformation channelInformation : channels )
             {
-                ctx.setCurrentTaskName ( String.format ( "Processing %s", channelInformation.getNameOrId () ) );
+                final String label = String.format ( "Processing %s", channelInformation.getNameOrId () );
+                ctx.setCurrentTaskName ( label );
 
                 this.service.accessRun ( By.id ( channelInformation.getId () ), ModifiableChannel.class, channel -> {
-                    channel.getContext ().refreshAspects ( null );
+                    channel.getContext ().refreshAspects ( null, new ProgressMonitor () {
+
+                        @Override
+                        public void setCurrentTaskName ( final String name )
+                        {
+                            ctx.setCurrentTaskName ( String.format ( "%s: %s", label, name ) );
+                        }
+
+                        @Override
+                        public void worked ( final long amount )
+                        {
+                            ctx.worked ( amount );
+                        }
+                    } );
                 } );
-                ctx.worked ( 1 );
             }
 
             ctx.complete ();
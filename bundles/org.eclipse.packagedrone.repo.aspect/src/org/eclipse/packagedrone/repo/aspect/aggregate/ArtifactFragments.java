@@ -0,0 +1,315 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.aspect.aggregate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
+
+/**
+ * Fragments of an aggregated index, rendered for each artifact
+ * <p>
+ * Aggregators which assemble their index from information of each artifact
+ * can keep the rendered fragments as a cache entry. An incremental aggregation
+ * then only renders the fragments of the added and changed artifacts, and
+ * assembles the index from the stored fragments.
+ * </p>
+ * <p>
+ * A fragment consists of named parts, the meaning of the parts is up to the
+ * aggregator. The fragments keep the order in which they were added. A
+ * fragment which got replaced keeps its position.
+ * </p>
+ */
+public class ArtifactFragments
+{
+    private static final int VERSION = 1;
+
+    /**
+     * Render the fragment of an artifact
+     */
+    @FunctionalInterface
+    public interface Renderer
+    {
+        /**
+         * Render the fragment of an artifact
+         *
+         * @param artifact
+         *            the artifact to render
+         * @return the parts of the fragment, or {@code null} if the artifact
+         *         does not contribute to the index
+         * @throws Exception
+         *             if rendering failed
+         */
+        public Map<String, String> render ( ArtifactInformation artifact ) throws Exception;
+    }
+
+    private final Map<String, Map<String, String>> fragments = new LinkedHashMap<> ();
+
+    /**
+     * Render the fragments of all artifacts
+     *
+     * @param artifacts
+     *            the artifacts to render
+     * @param renderer
+     *            the renderer of a single fragment
+     * @return the fragments, never {@code null}
+     */
+    public static ArtifactFragments render ( final Collection<ArtifactInformation> artifacts, final Renderer renderer ) throws Exception
+    {
+        final ArtifactFragments result = new ArtifactFragments ();
+
+        for ( final ArtifactInformation art : artifacts )
+        {
+            final Map<String, String> fragment = renderer.render ( art );
+            if ( fragment != null )
+            {
+                result.put ( art.getId (), fragment );
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Apply the changes of an incremental aggregation
+     * <p>
+     * Fragments of removed artifacts get dropped, fragments of added and
+     * changed artifacts get rendered again.
+     * </p>
+     *
+     * @param context
+     *            the context providing the changes
+     * @param renderer
+     *            the renderer of a single fragment
+     * @return {@code true} if at least one fragment was added, changed or
+     *         removed, {@code false} otherwise
+     */
+    public boolean update ( final IncrementalAggregationContext context, final Renderer renderer ) throws Exception
+    {
+        boolean modified = false;
+
+        for ( final ArtifactInformation art : context.getRemovedArtifacts () )
+        {
+            modified |= remove ( art.getId () ) != null;
+        }
+
+        for ( final ArtifactInformation art : context.getChangedArtifacts () )
+        {
+            modified |= update ( art.getId (), renderer.render ( art ) );
+        }
+
+        for ( final ArtifactInformation art : context.getAddedArtifacts () )
+        {
+            modified |= update ( art.getId (), renderer.render ( art ) );
+        }
+
+        return modified;
+    }
+
+    /**
+     * Set or remove the fragment of an artifact
+     *
+     * @param artifactId
+     *            the id of the artifact
+     * @param fragment
+     *            the new fragment, {@code null} to remove the fragment
+     * @return {@code true} if the fragment changed, {@code false} otherwise
+     */
+    public boolean update ( final String artifactId, final Map<String, String> fragment )
+    {
+        if ( fragment == null )
+        {
+            return remove ( artifactId ) != null;
+        }
+
+        return !fragment.equals ( put ( artifactId, fragment ) );
+    }
+
+    /**
+     * Set the fragment of an artifact
+     *
+     * @param artifactId
+     *            the id of the artifact
+     * @param fragment
+     *            the parts of the fragment
+     * @return the previous fragment, or {@code null} if there was none
+     */
+    public Map<String, String> put ( final String artifactId, final Map<String, String> fragment )
+    {
+        return this.fragments.put ( artifactId, Collections.unmodifiableMap ( new HashMap<> ( fragment ) ) );
+    }
+
+    /**
+     * Remove the fragment of an artifact
+     *
+     * @param artifactId
+     *            the id of the artifact
+     * @return the removed fragment, or {@code null} if there was none
+     */
+    public Map<String, String> remove ( final String artifactId )
+    {
+        return this.fragments.remove ( artifactId );
+    }
+
+    /**
+     * Get the fragment of an artifact
+     *
+     * @param artifactId
+     *            the id of the artifact
+     * @return the parts of the fragment, or {@code null} if there is none
+     */
+    public Map<String, String> get ( final String artifactId )
+    {
+        return this.fragments.get ( artifactId );
+    }
+
+    /**
+     * Get all fragments
+     *
+     * @return an unmodifiable map of artifact ids to their fragments, in the
+     *         order of the fragments
+     */
+    public Map<String, Map<String, String>> getFragments ()
+    {
+        return Collections.unmodifiableMap ( this.fragments );
+    }
+
+    public int size ()
+    {
+        return this.fragments.size ();
+    }
+
+    /**
+     * Store the fragments as cache entry
+     *
+     * @param context
+     *            the context to create the cache entry in
+     * @param id
+     *            the id of the cache entry
+     */
+    public void store ( final AggregationContext context, final String id ) throws IOException
+    {
+        context.createCacheEntry ( id, id + ".bin", "application/octet-stream", this::write );
+    }
+
+    /**
+     * Load the fragments stored by a previous aggregation
+     *
+     * @param context
+     *            the context to load the cache entry from
+     * @param id
+     *            the id of the cache entry
+     * @return the fragments, or {@code null} if there are no stored fragments
+     *         or they could not be read
+     */
+    public static ArtifactFragments load ( final IncrementalAggregationContext context, final String id ) throws IOException
+    {
+        final ArtifactFragments result = new ArtifactFragments ();
+
+        final AtomicBoolean valid = new AtomicBoolean ();
+
+        if ( !context.streamCacheEntry ( id, stream -> valid.set ( result.read ( stream ) ) ) || !valid.get () )
+        {
+            return null;
+        }
+
+        return result;
+    }
+
+    private void write ( final OutputStream stream ) throws IOException
+    {
+        final DataOutputStream out = new DataOutputStream ( new BufferedOutputStream ( stream ) );
+
+        out.writeInt ( VERSION );
+        out.writeInt ( this.fragments.size () );
+
+        for ( final Map.Entry<String, Map<String, String>> entry : this.fragments.entrySet () )
+        {
+            writeString ( out, entry.getKey () );
+
+            out.writeInt ( entry.getValue ().size () );
+            for ( final Map.Entry<String, String> part : entry.getValue ().entrySet () )
+            {
+                writeString ( out, part.getKey () );
+                writeString ( out, part.getValue () );
+            }
+        }
+
+        out.flush ();
+    }
+
+    private boolean read ( final InputStream stream ) throws IOException
+    {
+        final DataInputStream in = new DataInputStream ( new BufferedInputStream ( stream ) );
+
+        if ( in.readInt () != VERSION )
+        {
+            return false;
+        }
+
+        final int count = in.readInt ();
+        for ( int i = 0; i < count; i++ )
+        {
+            final String artifactId = readString ( in );
+
+            final int parts = in.readInt ();
+            final Map<String, String> fragment = new HashMap<> ( parts );
+            for ( int j = 0; j < parts; j++ )
+            {
+                final String key = readString ( in );
+                fragment.put ( key, readString ( in ) );
+            }
+
+            this.fragments.put ( artifactId, Collections.unmodifiableMap ( fragment ) );
+        }
+
+        return true;
+    }
+
+    private static void writeString ( final DataOutputStream out, final String value ) throws IOException
+    {
+        if ( value == null )
+        {
+            out.writeInt ( -1 );
+            return;
+        }
+
+        final byte[] data = value.getBytes ( StandardCharsets.UTF_8 );
+        out.writeInt ( data.length );
+        out.write ( data );
+    }
+
+    private static String readString ( final DataInputStream in ) throws IOException
+    {
+        final int length = in.readInt ();
+        if ( length < 0 )
+        {
+            return null;
+        }
+
+        final byte[] data = new byte[length];
+        in.readFully ( data );
+        return new String ( data, StandardCharsets.UTF_8 );
+    }
+}
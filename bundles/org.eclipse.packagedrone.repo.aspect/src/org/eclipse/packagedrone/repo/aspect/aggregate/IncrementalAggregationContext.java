@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.aspect.aggregate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.function.Predicate;
+
+import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
+import org.eclipse.packagedrone.repo.channel.ValidationMessage;
+import org.eclipse.packagedrone.utils.io.IOConsumer;
+
+/**
+ * The context of an incremental aggregation
+ * <p>
+ * In addition to the full aggregation context, this context provides the
+ * changes to the channel since the last time the aggregators ran, and access
+ * to the output of the previous aggregation.
+ * </p>
+ */
+public interface IncrementalAggregationContext extends AggregationContext
+{
+    /**
+     * Get the artifacts which got added since the last aggregation
+     *
+     * @return the added artifacts, never {@code null}
+     */
+    public Collection<ArtifactInformation> getAddedArtifacts ();
+
+    /**
+     * Get the artifacts which got changed since the last aggregation
+     *
+     * @return the current state of the changed artifacts, never {@code null}
+     */
+    public Collection<ArtifactInformation> getChangedArtifacts ();
+
+    /**
+     * Get the artifacts which got removed since the last aggregation
+     *
+     * @return the removed artifacts, in the state of the last aggregation,
+     *         never {@code null}
+     */
+    public Collection<ArtifactInformation> getRemovedArtifacts ();
+
+    /**
+     * Get an artifact in the state of the last aggregation
+     *
+     * @param artifactId
+     *            the id of the artifact
+     * @return the artifact as it was during the last aggregation, or
+     *         {@code null} if the artifact did not exist at that time
+     */
+    public ArtifactInformation getPreviousArtifact ( String artifactId );
+
+    /**
+     * Get the validation messages which were reported by the previous
+     * aggregation of this aspect
+     * <p>
+     * These messages will be dropped, unless the aggregator reports them
+     * again.
+     * </p>
+     *
+     * @return the previous validation messages, never {@code null}
+     */
+    public Collection<ValidationMessage> getPreviousValidationMessages ();
+
+    /**
+     * Stream a cache entry which was created by a previous aggregation
+     *
+     * @param id
+     *            the id of the cache entry, as used for
+     *            {@link #createCacheEntry(String, String, String, IOConsumer)}
+     * @param consumer
+     *            the consumer of the content
+     * @return {@code true} if the cache entry was found, {@code false}
+     *         otherwise
+     * @throws IOException
+     *             if streaming failed
+     */
+    public boolean streamCacheEntry ( String id, IOConsumer<InputStream> consumer ) throws IOException;
+
+    /**
+     * Check if one of the changes is relevant to the aggregation
+     * <p>
+     * Changed artifacts are tested in their current and in their previous
+     * state.
+     * </p>
+     *
+     * @param relevant
+     *            the test if an artifact contributes to the aggregation
+     * @return {@code true} if at least one added, changed or removed artifact
+     *         is relevant, {@code false} otherwise
+     */
+    public default boolean isAffected ( final Predicate<ArtifactInformation> relevant )
+    {
+        for ( final ArtifactInformation art : getAddedArtifacts () )
+        {
+            if ( relevant.test ( art ) )
+            {
+                return true;
+            }
+        }
+
+        for ( final ArtifactInformation art : getChangedArtifacts () )
+        {
+            if ( relevant.test ( art ) )
+            {
+                return true;
+            }
+
+            final ArtifactInformation previous = getPreviousArtifact ( art.getId () );
+            if ( previous != null && relevant.test ( previous ) )
+            {
+                return true;
+            }
+        }
+
+        for ( final ArtifactInformation art : getRemovedArtifacts () )
+        {
+            if ( relevant.test ( art ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Report the validation messages of the previous aggregation again
+     * <p>
+     * This has to be called by aggregators which keep the previous result,
+     * since the previous messages would be dropped otherwise.
+     * </p>
+     */
+    public default void keepPreviousValidationMessages ()
+    {
+        for ( final ValidationMessage msg : getPreviousValidationMessages () )
+        {
+            validationMessage ( msg.getSeverity (), msg.getMessage (), msg.getArtifactIds () );
+        }
+    }
+}
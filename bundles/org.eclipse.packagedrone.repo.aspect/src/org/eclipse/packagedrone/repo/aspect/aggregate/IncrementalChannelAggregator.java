@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.aspect.aggregate;
+
+import java.util.Map;
+
+/**
+ * A channel aggregator which is capable of updating the result of a previous
+ * aggregation
+ * <p>
+ * Incremental aggregation is only attempted when the channel only changed by
+ * adding, modifying or removing artifacts. Every other change, like adding
+ * aspects or changing the channel meta data, causes a full aggregation using
+ * {@link #aggregateMetaData(AggregationContext)}.
+ * </p>
+ */
+public interface IncrementalChannelAggregator extends ChannelAggregator
+{
+    /**
+     * Update the result of the previous aggregation
+     * <p>
+     * The result map is initialized with the meta data returned by the
+     * previous aggregation and may be modified by the aggregator. Cache entries
+     * of the previous aggregation are kept unless they get replaced.
+     * </p>
+     * <p>
+     * If the aggregator is not able to apply the changes, it has to return
+     * {@code false} without creating any cache entries. In this case a full
+     * aggregation will be performed.
+     * </p>
+     *
+     * @param context
+     *            the aggregation context
+     * @param result
+     *            the meta data of the aggregation
+     * @return {@code true} if the changes have been applied, {@code false} if
+     *         a full aggregation is required
+     * @throws Exception
+     *             if the aggregation failed
+     */
+    public boolean aggregateChanges ( IncrementalAggregationContext context, Map<String, String> result ) throws Exception;
+}
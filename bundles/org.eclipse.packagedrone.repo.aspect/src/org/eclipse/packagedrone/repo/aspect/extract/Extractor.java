@@ -10,9 +10,11 @@
  *******************************************************************************/
 package org.eclipse.packagedrone.repo.aspect.extract;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.util.Map;
+import java.util.zip.ZipFile;
 
 import org.eclipse.packagedrone.repo.aspect.ValidationContext;
 
@@ -28,13 +30,46 @@ public interface Extractor
         public String getName ();
 
         /**
-         * Get the path to a temporary file where the BLOB is stored
+         * Get the path to the file where the BLOB is stored
+         * <p>
+         * The file may be the stored content of the artifact itself, so it
+         * must only be read, never modified.
+         * </p>
          *
-         * @return the path to the temporary BLOB file
+         * @return the path to the BLOB file
          */
         public Path getPath ();
 
         public Instant getCreationTimestamp ();
+
+        /**
+         * Get the BLOB as ZIP file
+         * <p>
+         * The ZIP file is opened on first access and shared by all extractors
+         * of the same artifact, so that the central directory is only read
+         * once. The ZIP file must not be closed by the extractor, it will be
+         * closed after all extractors are finished.
+         * </p>
+         *
+         * @return the ZIP file, or {@code null} if the BLOB is not a ZIP file
+         * @throws IOException
+         *             if the BLOB could not be read
+         */
+        public ZipFile getZipFile () throws IOException;
+
+        /**
+         * Get the checksums of the BLOB which are already known
+         * <p>
+         * Checksums may already have been calculated when the content was
+         * received, e.g. while staging. Extractors should use those instead of
+         * reading the BLOB again.
+         * </p>
+         *
+         * @return the known checksums, by name of the hash algorithm (e.g.
+         *         "md5", "sha1", "sha256", "sha512"). Never returns
+         *         {@code null}, but may return an empty map.
+         */
+        public Map<String, String> getChecksums ();
     }
 
     public void extractMetaData ( Context context, Map<String, String> metadata ) throws Exception;
@@ -0,0 +1,366 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.channel.apm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.packagedrone.repo.MetaKey;
+import org.eclipse.packagedrone.repo.Severity;
+import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
+import org.eclipse.packagedrone.repo.channel.ChannelState;
+import org.eclipse.packagedrone.repo.channel.ValidationMessage;
+import org.eclipse.packagedrone.repo.channel.apm.store.BlobStore;
+import org.eclipse.packagedrone.repo.channel.apm.store.CacheStore;
+import org.eclipse.scada.utils.io.RecursiveDeleteVisitor;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ChannelJournalTest
+{
+    private static final MetaKey KEY_FOO_BAR = new MetaKey ( "foo", "bar" );
+
+    private static Path root;
+
+    private static BlobStore store;
+
+    private static CacheStore cacheStore;
+
+    @BeforeClass
+    public static void setup () throws IOException
+    {
+        root = Paths.get ( "tests", "journal" );
+
+        if ( Files.exists ( root ) )
+        {
+            Files.walkFileTree ( root, new RecursiveDeleteVisitor () );
+        }
+
+        Files.createDirectories ( root );
+
+        store = new BlobStore ( root.resolve ( "blobs" ) );
+        cacheStore = new CacheStore ( root.resolve ( "cache" ) );
+    }
+
+    /**
+     * Replay modifications and deletions on top of a snapshot
+     */
+    @Test
+    public void testReplay () throws IOException
+    {
+        final Path base = root.resolve ( "testReplay" );
+        Files.createDirectories ( base );
+
+        final ModifyContextImpl ctx = makeModel ( "a1", "a2", "a3" );
+        writeSnapshot ( base, ctx );
+
+        final ChannelJournal journal = new ChannelJournal ( base.resolve ( "state.journal" ) );
+
+        // first change: modify a1
+
+        final ModifyContextImpl ctx1 = new ModifyContextImpl ( ctx );
+        ctx1.setExtractedMetaData ( "a1", Collections.singletonMap ( KEY_FOO_BAR, "changed" ) );
+        appendRecord ( journal, ctx1 );
+
+        // second change: delete a2
+
+        final ModifyContextImpl ctx2 = new ModifyContextImpl ( ctx1 );
+        ctx2.deletePlainArtifact ( "a2" );
+        ctx2.claimTransaction ().rollback ();
+        appendRecord ( journal, ctx2 );
+
+        assertEquals ( Collections.singleton ( "a2" ), ctx2.getModifiedArtifacts () );
+
+        // read back
+
+        final ModifyContextImpl read = read ( base.resolve ( "state.json" ), journal );
+
+        assertEquals ( ctx2.getArtifacts ().keySet (), read.getArtifacts ().keySet () );
+        assertEquals ( "changed", read.getArtifacts ().get ( "a1" ).getExtractedMetaData ().get ( KEY_FOO_BAR ) );
+        assertNull ( read.getArtifacts ().get ( "a2" ) );
+        assertEquals ( 2L, read.getState ().getNumberOfArtifacts () );
+        assertEquals ( 2L * 100L, read.getState ().getNumberOfBytes () );
+    }
+
+    /**
+     * A loaded state is the baseline of the next incremental aggregation
+     */
+    @Test
+    public void testAggregationBaseline () throws IOException
+    {
+        final Path base = root.resolve ( "testAggregationBaseline" );
+        Files.createDirectories ( base );
+
+        final ModifyContextImpl ctx = makeModel ( "a1", "a2" );
+        writeSnapshot ( base, ctx );
+
+        final ChannelJournal journal = new ChannelJournal ( base.resolve ( "state.journal" ) );
+
+        final ModifyContextImpl read = read ( base.resolve ( "state.json" ), journal );
+
+        assertEquals ( read.getArtifacts (), read.getAggregatedArtifacts () );
+
+        // the baseline must not follow modifications
+
+        final ModifyContextImpl ctx1 = new ModifyContextImpl ( read );
+        ctx1.setExtractedMetaData ( "a1", Collections.singletonMap ( KEY_FOO_BAR, "changed" ) );
+
+        assertEquals ( "original", ctx1.getAggregatedArtifacts ().get ( "a1" ).getExtractedMetaData ().get ( KEY_FOO_BAR ) );
+    }
+
+    /**
+     * An incomplete last record must be ignored
+     */
+    @Test
+    public void testIncompleteRecord () throws IOException
+    {
+        final Path base = root.resolve ( "testIncompleteRecord" );
+        Files.createDirectories ( base );
+
+        final ModifyContextImpl ctx = makeModel ( "a1" );
+        writeSnapshot ( base, ctx );
+
+        final ChannelJournal journal = new ChannelJournal ( base.resolve ( "state.journal" ) );
+
+        final ModifyContextImpl ctx1 = new ModifyContextImpl ( ctx );
+        ctx1.setExtractedMetaData ( "a1", Collections.singletonMap ( KEY_FOO_BAR, "changed" ) );
+        appendRecord ( journal, ctx1 );
+
+        Files.write ( journal.getPath (), "{\"locked\":fal".getBytes ( StandardCharsets.UTF_8 ), StandardOpenOption.APPEND );
+
+        final ModifyContextImpl read = read ( base.resolve ( "state.json" ), journal );
+
+        assertEquals ( "changed", read.getArtifacts ().get ( "a1" ).getExtractedMetaData ().get ( KEY_FOO_BAR ) );
+    }
+
+    /**
+     * Replay the journal on top of a binary snapshot, the result must match
+     * the JSON snapshot
+     */
+    @Test
+    public void testBinarySnapshot () throws IOException
+    {
+        final Path base = root.resolve ( "testBinarySnapshot" );
+        Files.createDirectories ( base );
+
+        final ModifyContextImpl ctx = makeModel ( "a1", "a2", "a3" );
+        writeSnapshot ( base, ctx );
+        writeBinarySnapshot ( base, ctx );
+
+        final ChannelJournal journal = new ChannelJournal ( base.resolve ( "state.journal" ) );
+
+        final ModifyContextImpl ctx1 = new ModifyContextImpl ( ctx );
+        ctx1.setExtractedMetaData ( "a1", Collections.singletonMap ( KEY_FOO_BAR, "changed" ) );
+        appendRecord ( journal, ctx1 );
+
+        final ModifyContextImpl json = read ( base.resolve ( "state.json" ), journal );
+        final ModifyContextImpl binary = read ( base.resolve ( "state.bin" ), journal );
+
+        assertTrue ( Files.size ( base.resolve ( "state.bin" ) ) < Files.size ( base.resolve ( "state.json" ) ) );
+
+        assertEquals ( json.getArtifacts ().keySet (), binary.getArtifacts ().keySet () );
+        assertEquals ( "changed", binary.getArtifacts ().get ( "a1" ).getExtractedMetaData ().get ( KEY_FOO_BAR ) );
+        assertEquals ( "original", binary.getArtifacts ().get ( "a2" ).getExtractedMetaData ().get ( KEY_FOO_BAR ) );
+
+        for ( final ArtifactInformation expected : json.getArtifacts ().values () )
+        {
+            final ArtifactInformation actual = binary.getArtifacts ().get ( expected.getId () );
+            assertEquals ( expected.getName (), actual.getName () );
+            assertEquals ( expected.getSize (), actual.getSize () );
+            assertEquals ( expected.getCreationInstant (), actual.getCreationInstant () );
+            assertEquals ( expected.getFacets (), actual.getFacets () );
+            assertEquals ( expected.getMetaData (), actual.getMetaData () );
+        }
+
+        assertEquals ( json.getState ().getDescription (), binary.getState ().getDescription () );
+        assertEquals ( json.getState ().getCreationTimestamp (), binary.getState ().getCreationTimestamp () );
+        assertEquals ( json.getState ().getNumberOfArtifacts (), binary.getState ().getNumberOfArtifacts () );
+        assertEquals ( json.getState ().getNumberOfBytes (), binary.getState ().getNumberOfBytes () );
+    }
+
+    /**
+     * Records only contain the channel level sections which changed, the
+     * others are kept from the previous state when replaying
+     */
+    @Test
+    public void testDeltaRecord () throws IOException
+    {
+        final Path base = root.resolve ( "testDeltaRecord" );
+        Files.createDirectories ( base );
+
+        final ModifyContextImpl ctx = makeModel ( Collections.singletonMap ( KEY_FOO_BAR, "channel" ), "a1", "a2" );
+        writeSnapshot ( base, ctx );
+
+        final ChannelJournal journal = new ChannelJournal ( base.resolve ( "state.journal" ) );
+
+        // first change: add a validation message
+
+        final ModifyContextImpl ctx1 = new ModifyContextImpl ( ctx );
+        ctx1.setValidationMessages ( Collections.singletonList ( new ValidationMessage ( "aspect", Severity.WARNING, "Message", Collections.singleton ( "a1" ) ) ) );
+        appendRecord ( journal, ctx1, ctx );
+
+        // second change: modify a1 only
+
+        final ModifyContextImpl ctx2 = new ModifyContextImpl ( ctx1 );
+        ctx2.setExtractedMetaData ( "a1", Collections.singletonMap ( KEY_FOO_BAR, "changed" ) );
+        appendRecord ( journal, ctx2, ctx1 );
+
+        final List<String> records = Files.readAllLines ( journal.getPath (), StandardCharsets.UTF_8 );
+        assertEquals ( 2, records.size () );
+
+        assertTrue ( records.get ( 0 ).contains ( "\"validationMessages\"" ) );
+        assertFalse ( records.get ( 0 ).contains ( "\"cacheEntries\"" ) );
+        assertFalse ( records.get ( 0 ).contains ( "\"channel\"" ) );
+
+        assertFalse ( records.get ( 1 ).contains ( "\"validationMessages\"" ) );
+        assertFalse ( records.get ( 1 ).contains ( "\"cacheEntries\"" ) );
+        assertFalse ( records.get ( 1 ).contains ( "\"channel\"" ) );
+
+        final ModifyContextImpl read = read ( base.resolve ( "state.json" ), journal );
+
+        assertEquals ( "channel", read.getProvidedMetaData ().get ( KEY_FOO_BAR ) );
+        assertEquals ( 1, read.getValidationMessages ().size () );
+        assertEquals ( "Message", read.getValidationMessages ().iterator ().next ().getMessage () );
+        assertEquals ( "changed", read.getArtifacts ().get ( "a1" ).getExtractedMetaData ().get ( KEY_FOO_BAR ) );
+
+        // third change: remove the validation message again, the empty section must be recorded
+
+        final ModifyContextImpl ctx3 = new ModifyContextImpl ( ctx2 );
+        ctx3.setValidationMessages ( Collections.emptyList () );
+        appendRecord ( journal, ctx3, ctx2 );
+
+        assertTrue ( read ( base.resolve ( "state.json" ), journal ).getValidationMessages ().isEmpty () );
+    }
+
+    /**
+     * A failed append must not leave a partial record
+     */
+    @Test
+    public void testFailedAppend () throws IOException
+    {
+        final ChannelJournal journal = new ChannelJournal ( root.resolve ( "testFailedAppend.journal" ) );
+
+        journal.append ( out -> out.write ( "{}\n".getBytes ( StandardCharsets.UTF_8 ) ) );
+        assertEquals ( 3, journal.size () );
+
+        boolean failed = false;
+        try
+        {
+            journal.append ( out -> {
+                out.write ( "{\"foo\":".getBytes ( StandardCharsets.UTF_8 ) );
+                throw new IOException ( "Failed" );
+            } );
+        }
+        catch ( final IOException e )
+        {
+            failed = true;
+        }
+
+        assertTrue ( failed );
+        assertEquals ( 3, journal.size () );
+
+        // roll back a complete record
+
+        journal.append ( out -> out.write ( "{}\n".getBytes ( StandardCharsets.UTF_8 ) ) );
+        assertEquals ( 6, journal.size () );
+
+        journal.truncate ( 3 );
+        assertEquals ( 3, journal.size () );
+
+        journal.delete ();
+        assertEquals ( 0, journal.size () );
+        assertFalse ( Files.exists ( journal.getPath () ) );
+    }
+
+    private static void writeSnapshot ( final Path base, final ModifyContextImpl ctx ) throws IOException
+    {
+        try ( OutputStream stream = new BufferedOutputStream ( Files.newOutputStream ( base.resolve ( "state.json" ) ) );
+              ChannelWriter writer = new ChannelWriter ( stream ); )
+        {
+            writer.write ( ctx );
+        }
+    }
+
+    private static void writeBinarySnapshot ( final Path base, final ModifyContextImpl ctx ) throws IOException
+    {
+        try ( OutputStream stream = Files.newOutputStream ( base.resolve ( "state.bin" ) );
+              ChannelWriter writer = new ChannelWriter ( stream ); )
+        {
+            writer.writeBinary ( ctx );
+        }
+    }
+
+    private static void appendRecord ( final ChannelJournal journal, final ModifyContextImpl ctx ) throws IOException
+    {
+        journal.append ( stream -> new ChannelWriter ( stream ).writeRecord ( ctx, ctx.getModifiedArtifacts () ) );
+    }
+
+    private static void appendRecord ( final ChannelJournal journal, final ModifyContextImpl ctx, final ModifyContextImpl previous ) throws IOException
+    {
+        journal.append ( stream -> new ChannelWriter ( stream ).writeRecord ( ctx, ctx.getModifiedArtifacts (), previous ) );
+    }
+
+    private static ModifyContextImpl read ( final Path snapshot, final ChannelJournal journal ) throws IOException
+    {
+        try ( InputStream stream = new BufferedInputStream ( Files.newInputStream ( snapshot ) );
+              ChannelReader reader = new ChannelReader ( stream, journal.getPath (), "id", null, store, cacheStore ); )
+        {
+            return reader.read ();
+        }
+    }
+
+    private static ModifyContextImpl makeModel ( final String... ids )
+    {
+        return makeModel ( Collections.emptyMap (), ids );
+    }
+
+    private static ModifyContextImpl makeModel ( final Map<MetaKey, String> providedMetaData, final String... ids )
+    {
+        final Map<String, ArtifactInformation> artifacts = new HashMap<> ();
+
+        for ( final String id : ids )
+        {
+            final Map<MetaKey, String> extractedMetaData = new HashMap<> ();
+            extractedMetaData.put ( KEY_FOO_BAR, "original" );
+
+            artifacts.put ( id, new ArtifactInformation ( id, null, Collections.emptySet (), id + ".jar", 100, Instant.now (), Collections.singleton ( "stored" ), Collections.emptyList (), Collections.emptyMap (), extractedMetaData, null ) );
+        }
+
+        final ChannelState.Builder state = new ChannelState.Builder ();
+
+        state.setCreationTimestamp ( Instant.now () );
+        state.setModificationTimestamp ( Instant.now () );
+        state.setLocked ( false );
+        state.setDescription ( "Journal test" );
+        state.setNumberOfArtifacts ( ids.length );
+        state.setNumberOfBytes ( ids.length * 100L );
+
+        return new ModifyContextImpl ( "id", null, store, cacheStore, state.build (), Collections.emptyMap (), artifacts, Collections.emptyMap (), Collections.emptyMap (), providedMetaData );
+    }
+}
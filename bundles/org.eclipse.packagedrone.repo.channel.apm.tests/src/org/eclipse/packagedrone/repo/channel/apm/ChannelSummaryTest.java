@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.channel.apm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.eclipse.packagedrone.repo.MetaKey;
+import org.eclipse.packagedrone.repo.channel.ChannelDetails;
+import org.eclipse.packagedrone.repo.channel.provider.ChannelSummary;
+import org.eclipse.packagedrone.storage.apm.StorageManager;
+import org.eclipse.packagedrone.storage.apm.StorageRegistration;
+import org.eclipse.scada.utils.io.RecursiveDeleteVisitor;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ChannelSummaryTest
+{
+    private static Path root;
+
+    @BeforeClass
+    public static void setup () throws IOException
+    {
+        root = Paths.get ( "tests", "summary" ).toAbsolutePath ();
+
+        if ( Files.exists ( root ) )
+        {
+            Files.walkFileTree ( root, new RecursiveDeleteVisitor () );
+        }
+    }
+
+    private static class LazyProvider extends ChannelModelProvider
+    {
+        public LazyProvider ( final String channelId )
+        {
+            super ( null, channelId );
+        }
+
+        @Override
+        protected boolean isLazy ()
+        {
+            return true;
+        }
+    }
+
+    /**
+     * A lazy channel can be listed after a restart without loading it
+     */
+    @Test
+    public void testLazySummary ()
+    {
+        final MetaKey key = new MetaKey ( "channel", "c1" );
+
+        final StorageManager manager1 = new StorageManager ( root );
+        try
+        {
+            final StorageRegistration handle = manager1.registerModel ( 1, key, new LazyProvider ( "c1" ) );
+
+            manager1.modifyRun ( key, ModifyContextImpl.class, model -> {
+                final ChannelDetails details = new ChannelDetails ();
+                details.setDescription ( "foo" );
+                model.setDetails ( details );
+                model.lock ();
+            } );
+
+            handle.unregister ();
+        }
+        finally
+        {
+            manager1.close ();
+        }
+
+        final StorageManager manager2 = new StorageManager ( root );
+        try
+        {
+            final LazyProvider provider = new LazyProvider ( "c1" );
+            manager2.registerModel ( 1, key, provider );
+
+            final ChannelSummary summary = manager2.summaryCall ( key, ChannelSummary.class, s -> s );
+
+            assertFalse ( provider.isLoaded () );
+            assertEquals ( "foo", summary.getState ().getDescription () );
+            assertTrue ( summary.getState ().isLocked () );
+
+            // loading must not change the summary
+
+            manager2.accessRun ( key, ModifyContextImpl.class, model -> {
+            } );
+
+            assertTrue ( provider.isLoaded () );
+            assertEquals ( "foo", manager2.summaryCall ( key, ChannelSummary.class, s -> s.getState ().getDescription () ) );
+        }
+        finally
+        {
+            manager2.close ();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.channel.apm.aspect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
+import org.junit.Test;
+
+public class AggregationDeltaTest
+{
+    private static ArtifactInformation makeArtifact ( final String id )
+    {
+        return new ArtifactInformation ( id, null, Collections.emptySet (), id + ".jar", 0, Instant.now (), Collections.singleton ( "stored" ), Collections.emptyList (), Collections.emptyMap (), null, null );
+    }
+
+    @Test
+    public void testEmpty ()
+    {
+        final Map<String, ArtifactInformation> previous = new HashMap<> ();
+        previous.put ( "a", makeArtifact ( "a" ) );
+
+        final AggregationDelta delta = new AggregationDelta ( previous, new HashMap<> ( previous ) );
+
+        assertTrue ( delta.isEmpty () );
+    }
+
+    @Test
+    public void testChanges ()
+    {
+        final ArtifactInformation a = makeArtifact ( "a" );
+        final ArtifactInformation b = makeArtifact ( "b" );
+        final ArtifactInformation c = makeArtifact ( "c" );
+
+        final Map<String, ArtifactInformation> previous = new HashMap<> ();
+        previous.put ( "a", a );
+        previous.put ( "b", b );
+        previous.put ( "c", c );
+
+        final ArtifactInformation b2 = makeArtifact ( "b" );
+        final ArtifactInformation d = makeArtifact ( "d" );
+
+        final Map<String, ArtifactInformation> current = new HashMap<> ();
+        current.put ( "a", a );
+        current.put ( "b", b2 );
+        current.put ( "d", d );
+
+        final AggregationDelta delta = new AggregationDelta ( previous, current );
+
+        assertFalse ( delta.isEmpty () );
+
+        assertEquals ( Collections.singletonList ( d ), delta.getAdded () );
+        assertEquals ( Collections.singletonList ( b2 ), delta.getChanged () );
+        assertEquals ( Collections.singletonList ( c ), delta.getRemoved () );
+
+        assertSame ( b, delta.getPrevious ( "b" ) );
+    }
+}
@@ -0,0 +1,490 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.channel.apm.blob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+
+import org.eclipse.packagedrone.repo.channel.StagedArtifact;
+import org.eclipse.packagedrone.repo.channel.apm.store.BlobStore;
+import org.eclipse.packagedrone.repo.channel.apm.store.BlobStore.StagedBlob;
+import org.eclipse.packagedrone.repo.channel.apm.store.ContentStore;
+import org.eclipse.packagedrone.utils.Holder;
+import org.eclipse.packagedrone.utils.io.IOConsumer;
+import org.eclipse.scada.utils.io.RecursiveDeleteVisitor;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.io.CharStreams;
+
+public class BlobStoreTest
+{
+    private static Path basePath;
+
+    @BeforeClass
+    public static void setup () throws IOException
+    {
+        basePath = Paths.get ( "tests-blob" );
+
+        if ( Files.exists ( basePath ) )
+        {
+            Files.walkFileTree ( basePath, new RecursiveDeleteVisitor () );
+        }
+
+        Files.createDirectories ( basePath );
+    }
+
+    private static ByteArrayInputStream text ( final String text )
+    {
+        return new ByteArrayInputStream ( text.getBytes ( StandardCharsets.UTF_8 ) );
+    }
+
+    /**
+     * Stage content and check size and checksums
+     */
+    @Test
+    public void testStage1 () throws IOException
+    {
+        try ( BlobStore store = new BlobStore ( basePath.resolve ( "testStage1" ) ) )
+        {
+            try ( StagedBlob blob = store.stage ( text ( "foo" ) ) )
+            {
+                assertEquals ( 3, blob.getSize () );
+                assertEquals ( "acbd18db4cc2f85cedef654fccc4a4d8", blob.getChecksums ().get ( "md5" ) );
+                assertEquals ( "0beec7b5ea3f0fdbc95d0dd47f3c5bc275da8a33", blob.getChecksums ().get ( "sha1" ) );
+
+                final Holder<String> result = new Holder<> ();
+                assertTrue ( blob.stream ( stream -> result.value = CharStreams.toString ( new InputStreamReader ( stream, StandardCharsets.UTF_8 ) ) ) );
+                assertEquals ( "foo", result.value );
+
+                assertNotNull ( store.getStagedPath ( blob ) );
+            }
+        }
+    }
+
+    /**
+     * Closing discards the staged content
+     */
+    @Test
+    public void testStage2 () throws IOException
+    {
+        try ( BlobStore store = new BlobStore ( basePath.resolve ( "testStage2" ) ) )
+        {
+            final StagedBlob blob = store.stage ( text ( "foo" ) );
+            final Path path = store.getStagedPath ( blob );
+
+            assertTrue ( Files.exists ( path ) );
+
+            blob.close ();
+
+            assertFalse ( Files.exists ( path ) );
+            assertFalse ( blob.stream ( stream -> {
+            } ) );
+        }
+    }
+
+    /**
+     * Staged artifacts of another store must not be resolved
+     */
+    @Test
+    public void testStage3 () throws IOException
+    {
+        try ( BlobStore store1 = new BlobStore ( basePath.resolve ( "testStage3a" ) );
+              BlobStore store2 = new BlobStore ( basePath.resolve ( "testStage3b" ) ) )
+        {
+            try ( StagedBlob blob = store1.stage ( text ( "foo" ) ) )
+            {
+                assertNull ( store2.getStagedPath ( blob ) );
+                assertNull ( store2.getStagedPath ( new StagedArtifact () {
+
+                    @Override
+                    public long getSize ()
+                    {
+                        return 0;
+                    }
+
+                    @Override
+                    public Map<String, String> getChecksums ()
+                    {
+                        return Collections.emptyMap ();
+                    }
+
+                    @Override
+                    public boolean stream ( final IOConsumer<InputStream> consumer ) throws IOException
+                    {
+                        return false;
+                    }
+
+                    @Override
+                    public void close ()
+                    {
+                    }
+                } ) );
+            }
+        }
+    }
+
+    /**
+     * Left over staged content is removed when opening the store
+     */
+    @Test
+    public void testStage4 () throws IOException
+    {
+        final Path path;
+
+        try ( BlobStore store = new BlobStore ( basePath.resolve ( "testStage4" ) ) )
+        {
+            path = store.getStagedPath ( store.stage ( text ( "foo" ) ) );
+        }
+
+        assertTrue ( Files.exists ( path ) );
+
+        try ( BlobStore store = new BlobStore ( basePath.resolve ( "testStage4" ) ) )
+        {
+            assertFalse ( Files.exists ( path ) );
+        }
+    }
+
+    /**
+     * Deleting a blob which is still being read must defer the deletion until
+     * the stream is closed
+     */
+    @Test
+    public void testDeferredDelete () throws IOException
+    {
+        try ( BlobStore store = new BlobStore ( basePath.resolve ( "testDeferredDelete" ) ) )
+        {
+            final BlobStore.Transaction t1 = store.start ();
+            t1.create ( "abc", text ( "foo" ) );
+            t1.commit ();
+
+            try ( InputStream stream = store.open ( "abc" ) )
+            {
+                assertNotNull ( stream );
+
+                final BlobStore.Transaction t2 = store.start ();
+                assertTrue ( t2.delete ( "abc" ) );
+                t2.commit ();
+
+                // deleted blobs can no longer be opened
+
+                assertNull ( store.open ( "abc" ) );
+                assertFalse ( store.stream ( "abc", in -> {
+                } ) );
+
+                // but the open stream is still readable
+
+                assertTrue ( Files.exists ( basePath.resolve ( "testDeferredDelete/data/a/b/abc" ) ) );
+                assertEquals ( "foo", CharStreams.toString ( new InputStreamReader ( stream, StandardCharsets.UTF_8 ) ) );
+            }
+
+            assertFalse ( Files.exists ( basePath.resolve ( "testDeferredDelete/data/a/b/abc" ) ) );
+        }
+    }
+
+    /**
+     * A deferred delete must be completed on the next start, if the stream
+     * was never closed
+     */
+    @Test
+    public void testDeferredDeleteRecovery () throws IOException
+    {
+        final Path path = basePath.resolve ( "testDeferredDeleteRecovery" );
+
+        try ( BlobStore store = new BlobStore ( path ) )
+        {
+            final BlobStore.Transaction t1 = store.start ();
+            t1.create ( "abc", text ( "foo" ) );
+            t1.create ( "def", text ( "bar" ) );
+            t1.commit ();
+
+            // the stream is never closed, like after a crash
+
+            assertNotNull ( store.open ( "abc" ) );
+
+            final BlobStore.Transaction t2 = store.start ();
+            assertTrue ( t2.delete ( "abc" ) );
+            t2.commit ();
+
+            assertTrue ( Files.exists ( path.resolve ( "data/a/b/abc" ) ) );
+        }
+
+        try ( BlobStore store = new BlobStore ( path ) )
+        {
+            assertFalse ( Files.exists ( path.resolve ( "data/a/b/abc" ) ) );
+            assertTrue ( Files.exists ( path.resolve ( "data/d/e/def" ) ) );
+            assertFalse ( Files.exists ( path.resolve ( "deletes.log" ) ) );
+        }
+    }
+
+    /**
+     * Adopting a spooled file moves it into the store, adopting a staged file
+     * keeps the staged content in place
+     */
+    @Test
+    public void testAdopt () throws IOException
+    {
+        try ( BlobStore store = new BlobStore ( basePath.resolve ( "testAdopt" ) ) )
+        {
+            final Path spool = store.createSpoolFile ();
+            Files.write ( spool, "foo".getBytes ( StandardCharsets.UTF_8 ) );
+
+            try ( StagedBlob blob = store.stage ( text ( "bar" ) ) )
+            {
+                final BlobStore.Transaction t = store.start ();
+                assertEquals ( 3, t.adopt ( "abc", spool, true ) );
+                assertEquals ( 3, t.adopt ( "def", store.getStagedPath ( blob ), false ) );
+                t.commit ();
+
+                assertFalse ( Files.exists ( spool ) );
+                assertTrue ( Files.exists ( store.getStagedPath ( blob ) ) );
+            }
+
+            try ( InputStream stream = store.open ( "abc" ) )
+            {
+                assertEquals ( "foo", CharStreams.toString ( new InputStreamReader ( stream, StandardCharsets.UTF_8 ) ) );
+            }
+            try ( InputStream stream = store.open ( "def" ) )
+            {
+                assertEquals ( "bar", CharStreams.toString ( new InputStreamReader ( stream, StandardCharsets.UTF_8 ) ) );
+            }
+        }
+    }
+
+    /**
+     * Adopting a file which is not owned by the store must copy it, so that
+     * later changes to the file don't affect the stored content
+     */
+    @Test
+    public void testAdoptForeignFile () throws IOException
+    {
+        try ( BlobStore store = new BlobStore ( basePath.resolve ( "testAdoptForeignFile" ) ) )
+        {
+            final Path file = basePath.resolve ( "testAdoptForeignFile.txt" );
+            Files.write ( file, "foo".getBytes ( StandardCharsets.UTF_8 ) );
+
+            final BlobStore.Transaction t = store.start ();
+            assertEquals ( 3, t.adopt ( "abc", file, false ) );
+            t.commit ();
+
+            Files.write ( file, "bar".getBytes ( StandardCharsets.UTF_8 ) );
+
+            try ( InputStream stream = store.open ( "abc" ) )
+            {
+                assertEquals ( "foo", CharStreams.toString ( new InputStreamReader ( stream, StandardCharsets.UTF_8 ) ) );
+            }
+        }
+    }
+
+    /**
+     * Committed changes are appended to the index log and replayed when
+     * opening the store again
+     */
+    @Test
+    public void testIndexLog () throws IOException
+    {
+        final Path path = basePath.resolve ( "testIndexLog" );
+
+        try ( BlobStore store = new BlobStore ( path ) )
+        {
+            final BlobStore.Transaction t1 = store.start ();
+            t1.create ( "abc", text ( "foo" ) );
+            t1.create ( "def", text ( "bar" ) );
+            t1.commit ();
+
+            final BlobStore.Transaction t2 = store.start ();
+            assertTrue ( t2.delete ( "abc" ) );
+            t2.commit ();
+
+            assertTrue ( Files.exists ( path.resolve ( "index.log" ) ) );
+        }
+
+        try ( BlobStore store = new BlobStore ( path ) )
+        {
+            assertNull ( store.open ( "abc" ) );
+            try ( InputStream stream = store.open ( "def" ) )
+            {
+                assertEquals ( "bar", CharStreams.toString ( new InputStreamReader ( stream, StandardCharsets.UTF_8 ) ) );
+            }
+        }
+    }
+
+    /**
+     * A last index log line, which got torn by a crash, must be dropped, and
+     * must not corrupt the following entries
+     */
+    @Test
+    public void testIndexLogTornLine () throws IOException
+    {
+        final Path path = basePath.resolve ( "testIndexLogTornLine" );
+
+        try ( BlobStore store = new BlobStore ( path ) )
+        {
+            final BlobStore.Transaction t = store.start ();
+            t.create ( "abc", text ( "foo" ) );
+            t.create ( "def", text ( "bar" ) );
+            t.commit ();
+        }
+
+        Files.write ( path.resolve ( "index.log" ), "+de".getBytes ( StandardCharsets.UTF_8 ), StandardOpenOption.APPEND );
+
+        try ( BlobStore store = new BlobStore ( path ) )
+        {
+            assertNull ( store.open ( "de" ) );
+
+            final BlobStore.Transaction t = store.start ();
+            t.create ( "ghi", text ( "baz" ) );
+            t.commit ();
+        }
+
+        try ( BlobStore store = new BlobStore ( path ) )
+        {
+            assertNull ( store.open ( "de" ) );
+            try ( InputStream stream = store.open ( "ghi" ) )
+            {
+                assertEquals ( "baz", CharStreams.toString ( new InputStreamReader ( stream, StandardCharsets.UTF_8 ) ) );
+            }
+            try ( InputStream stream = store.open ( "def" ) )
+            {
+                assertEquals ( "bar", CharStreams.toString ( new InputStreamReader ( stream, StandardCharsets.UTF_8 ) ) );
+            }
+        }
+    }
+
+    /**
+     * Rolling back removes the blobs created by the transaction, but keeps the
+     * committed ones
+     */
+    @Test
+    public void testRollback () throws IOException
+    {
+        final Path path = basePath.resolve ( "testRollback" );
+
+        try ( BlobStore store = new BlobStore ( path ) )
+        {
+            final BlobStore.Transaction t1 = store.start ();
+            t1.create ( "abc", text ( "foo" ) );
+            t1.commit ();
+
+            final BlobStore.Transaction t2 = store.start ();
+            t2.create ( "def", text ( "bar" ) );
+            assertTrue ( t2.delete ( "abc" ) );
+            t2.rollback ();
+
+            assertTrue ( Files.exists ( path.resolve ( "data/a/b/abc" ) ) );
+            assertFalse ( Files.exists ( path.resolve ( "data/d/e/def" ) ) );
+        }
+    }
+
+    /**
+     * Identical content of different stores is shared and removed once no
+     * longer used
+     */
+    @Test
+    public void testSharedContent () throws IOException
+    {
+        final Path path = basePath.resolve ( "testSharedContent" );
+
+        final ContentStore content = new ContentStore ( path.resolve ( "content" ) );
+
+        try ( BlobStore store1 = new BlobStore ( path.resolve ( "store1" ), content );
+              BlobStore store2 = new BlobStore ( path.resolve ( "store2" ), content ) )
+        {
+            final Path spool = store2.createSpoolFile ();
+            Files.write ( spool, "foo".getBytes ( StandardCharsets.UTF_8 ) );
+
+            final BlobStore.Transaction t1 = store1.start ();
+            t1.create ( "abc", text ( "foo" ) );
+            t1.commit ();
+
+            final BlobStore.Transaction t2 = store2.start ();
+            t2.adopt ( "def", spool, true );
+            t2.commit ();
+
+            final Path file1 = path.resolve ( "store1/data/a/b/abc" );
+            final Path file2 = path.resolve ( "store2/data/d/e/def" );
+
+            assertTrue ( Files.isSameFile ( file1, file2 ) );
+
+            // still used by the second store
+
+            final BlobStore.Transaction t3 = store1.start ();
+            t3.delete ( "abc" );
+            t3.commit ();
+
+            content.gc ();
+
+            try ( InputStream stream = store2.open ( "def" ) )
+            {
+                assertEquals ( "foo", CharStreams.toString ( new InputStreamReader ( stream, StandardCharsets.UTF_8 ) ) );
+            }
+
+            // no longer used
+
+            final BlobStore.Transaction t4 = store2.start ();
+            t4.delete ( "def" );
+            t4.commit ();
+
+            content.gc ();
+
+            assertEquals ( 0, Files.walk ( path.resolve ( "content" ) ).filter ( Files::isRegularFile ).count () );
+        }
+    }
+
+    /**
+     * Known content can be linked into another store without copying it
+     */
+    @Test
+    public void testLinkContent () throws IOException
+    {
+        final Path path = basePath.resolve ( "testLinkContent" );
+
+        final ContentStore content = new ContentStore ( path.resolve ( "content" ) );
+
+        final String sha256 = "2c26b46b68ffc68ff99b453c1d30413413422d706483bfa0f98a5e886266e7ae"; // "foo"
+
+        try ( BlobStore store1 = new BlobStore ( path.resolve ( "store1" ), content );
+              BlobStore store2 = new BlobStore ( path.resolve ( "store2" ), content ) )
+        {
+            assertNull ( store2.linkContent ( sha256, 3 ) );
+
+            final BlobStore.Transaction t1 = store1.start ();
+            t1.create ( "abc", text ( "foo" ) );
+            t1.commit ();
+
+            assertNull ( store2.linkContent ( sha256, 4 ) );
+
+            final Path file = store2.linkContent ( sha256, 3 );
+            assertNotNull ( file );
+
+            final BlobStore.Transaction t2 = store2.start ();
+            assertEquals ( 3, t2.adopt ( "def", file, true, Collections.singletonMap ( "sha256", sha256 ) ) );
+            t2.commit ();
+
+            assertTrue ( Files.isSameFile ( path.resolve ( "store1/data/a/b/abc" ), path.resolve ( "store2/data/d/e/def" ) ) );
+        }
+    }
+}
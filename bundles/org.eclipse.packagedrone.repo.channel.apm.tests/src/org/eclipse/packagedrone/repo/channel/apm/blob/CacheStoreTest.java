@@ -13,6 +13,7 @@ package org.eclipse.packagedrone.repo.channel.apm.blob;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -24,6 +25,11 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.packagedrone.repo.MetaKey;
 import org.eclipse.packagedrone.repo.channel.apm.store.CacheStore;
@@ -231,4 +237,124 @@ public class CacheStoreTest
             assertEquals ( "Foo Bar 2", streamed ( key1, store::stream ) ); // in transaction
         }
     }
+
+    /**
+     * Keep committed entries
+     */
+    @Test
+    public void test5a () throws IOException
+    {
+        final MetaKey key1 = new MetaKey ( "foo", "bar1" );
+        final MetaKey key2 = new MetaKey ( "foo", "bar2" );
+
+        try ( CacheStore store = new CacheStore ( basePath.resolve ( "test5a" ) ) )
+        {
+            Transaction t = store.startTransaction ();
+            t.put ( key1, text ( "Foo Bar 1" ) );
+            t.put ( key2, text ( "Foo Bar 2" ) );
+            t.commit ();
+
+            t = store.startTransaction ();
+            assertTrue ( t.keep ( key1 ) );
+            assertFalse ( t.keep ( new MetaKey ( "foo", "bar3" ) ) );
+            t.commit ();
+
+            assertEquals ( "Foo Bar 1", streamed ( key1, store::stream ) );
+            assertNull ( streamed ( key2, store::stream ) );
+
+            t = store.startTransaction ();
+            t.keep ( key1 );
+            t.put ( key1, text ( "Foo Bar 1a" ) );
+            assertEquals ( "Foo Bar 1", streamed ( key1, store::stream ) ); // still uncommitted
+            t.commit ();
+
+            assertEquals ( "Foo Bar 1a", streamed ( key1, store::stream ) );
+        }
+    }
+
+    /**
+     * Concurrent writers
+     */
+    @Test
+    public void test6a () throws Exception
+    {
+        try ( CacheStore store = new CacheStore ( basePath.resolve ( "test6a" ) ) )
+        {
+            final Transaction t = store.startTransaction ();
+
+            final ExecutorService executor = Executors.newFixedThreadPool ( 4 );
+            try
+            {
+                final List<Future<Long>> futures = new ArrayList<> ();
+                for ( int i = 0; i < 100; i++ )
+                {
+                    final MetaKey key = new MetaKey ( "ns" + i % 4, "key" + i );
+                    final String value = "Value " + i;
+                    futures.add ( executor.submit ( () -> t.put ( key, text ( value ) ) ) );
+                }
+
+                for ( final Future<Long> future : futures )
+                {
+                    future.get ();
+                }
+            }
+            finally
+            {
+                executor.shutdown ();
+            }
+
+            t.commit ();
+
+            for ( int i = 0; i < 100; i++ )
+            {
+                assertEquals ( "Value " + i, streamed ( new MetaKey ( "ns" + i % 4, "key" + i ), store::stream ) );
+            }
+        }
+    }
+
+    /**
+     * Put the same, a longer, a shorter and a different content again
+     */
+    @Test
+    public void test7a () throws IOException
+    {
+        final MetaKey key = new MetaKey ( "foo", "bar" );
+
+        try ( CacheStore store = new CacheStore ( basePath.resolve ( "test7a" ) ) )
+        {
+            for ( final String value : new String[] { "Foo Bar", "Foo Bar", "Foo Bar Baz", "Foo", "Bar" } )
+            {
+                final Transaction t = store.startTransaction ();
+                assertEquals ( value.length (), t.put ( key, text ( value ) ) );
+                t.commit ();
+
+                assertEquals ( value, streamed ( key, store::stream ) );
+            }
+        }
+    }
+
+    /**
+     * Committed generations survive re-opening the store
+     */
+    @Test
+    public void test7b () throws IOException
+    {
+        final MetaKey key = new MetaKey ( "foo", "bar" );
+
+        try ( CacheStore store = new CacheStore ( basePath.resolve ( "test7b" ) ) )
+        {
+            Transaction t = store.startTransaction ();
+            t.put ( key, text ( "Foo Bar 1" ) );
+            t.commit ();
+
+            t = store.startTransaction ();
+            t.put ( key, text ( "Foo Bar 2" ) );
+            t.commit ();
+        }
+
+        try ( CacheStore store = new CacheStore ( basePath.resolve ( "test7b" ) ) )
+        {
+            assertEquals ( "Foo Bar 2", streamed ( key, store::stream ) );
+        }
+    }
 }
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.channel.apm.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HashTrieMapTest
+{
+    /**
+     * A key with a fixed hash code
+     */
+    private static final class Key
+    {
+        private final String value;
+
+        private final int hash;
+
+        public Key ( final String value, final int hash )
+        {
+            this.value = value;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode ()
+        {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals ( final Object obj )
+        {
+            return obj instanceof Key && ( (Key)obj ).value.equals ( this.value );
+        }
+    }
+
+    /**
+     * Compare random modifications with a plain hash map
+     */
+    @Test
+    public void testRandom ()
+    {
+        final Random r = new Random ( 0 );
+
+        final Map<Integer, Integer> expected = new HashMap<> ();
+        final HashTrieMap<Integer, Integer> map = new HashTrieMap<> ();
+
+        for ( int i = 0; i < 100_000; i++ )
+        {
+            final Integer key = r.nextInt ( 10_000 );
+            if ( r.nextInt ( 3 ) == 0 )
+            {
+                assertEquals ( expected.remove ( key ), map.remove ( key ) );
+            }
+            else
+            {
+                assertEquals ( expected.put ( key, i ), map.put ( key, i ) );
+            }
+            assertEquals ( expected.size (), map.size () );
+        }
+
+        assertEquals ( expected, map );
+        assertEquals ( map, expected );
+    }
+
+    /**
+     * Keys with the same hash code
+     */
+    @Test
+    public void testCollisions ()
+    {
+        final HashTrieMap<Key, String> map = new HashTrieMap<> ();
+
+        map.put ( new Key ( "a", 42 ), "a" );
+        map.put ( new Key ( "b", 42 ), "b" );
+        map.put ( new Key ( "c", 42 ), "c" );
+        map.put ( new Key ( "d", 42 + 32 ), "d" );
+        map.put ( null, "null" );
+
+        assertEquals ( 5, map.size () );
+        assertEquals ( "a", map.get ( new Key ( "a", 42 ) ) );
+        assertEquals ( "b", map.get ( new Key ( "b", 42 ) ) );
+        assertEquals ( "c", map.get ( new Key ( "c", 42 ) ) );
+        assertEquals ( "d", map.get ( new Key ( "d", 42 + 32 ) ) );
+        assertEquals ( "null", map.get ( null ) );
+        assertNull ( map.get ( new Key ( "e", 42 ) ) );
+
+        assertEquals ( "b", map.remove ( new Key ( "b", 42 ) ) );
+        assertNull ( map.remove ( new Key ( "b", 42 ) ) );
+        assertEquals ( "a", map.remove ( new Key ( "a", 42 ) ) );
+
+        assertEquals ( 3, map.size () );
+        assertEquals ( "c", map.get ( new Key ( "c", 42 ) ) );
+        assertEquals ( "d", map.get ( new Key ( "d", 42 + 32 ) ) );
+    }
+
+    /**
+     * Modifications of a copy must not be visible in the original and vice
+     * versa
+     */
+    @Test
+    public void testCopy ()
+    {
+        final HashTrieMap<Integer, String> map = new HashTrieMap<> ();
+        for ( int i = 0; i < 1_000; i++ )
+        {
+            map.put ( i, "v" + i );
+        }
+
+        final HashTrieMap<Integer, String> copy = new HashTrieMap<> ( map );
+
+        copy.put ( 1, "changed" );
+        copy.remove ( 2 );
+        copy.put ( 1_000, "added" );
+        map.remove ( 3 );
+
+        assertEquals ( 1_000, copy.size () );
+        assertEquals ( 999, map.size () );
+
+        assertEquals ( "v1", map.get ( 1 ) );
+        assertEquals ( "changed", copy.get ( 1 ) );
+        assertTrue ( map.containsKey ( 2 ) );
+        assertFalse ( copy.containsKey ( 2 ) );
+        assertFalse ( map.containsKey ( 1_000 ) );
+        assertFalse ( map.containsKey ( 3 ) );
+        assertTrue ( copy.containsKey ( 3 ) );
+    }
+
+    /**
+     * Removing entries while iterating
+     */
+    @Test
+    public void testIteratorRemove ()
+    {
+        final HashTrieMap<Integer, Integer> map = new HashTrieMap<> ();
+        for ( int i = 0; i < 1_000; i++ )
+        {
+            map.put ( i, i );
+        }
+
+        int count = 0;
+        for ( final Iterator<Integer> i = map.keySet ().iterator (); i.hasNext (); )
+        {
+            final Integer key = i.next ();
+            count++;
+            if ( key % 2 == 0 )
+            {
+                i.remove ();
+            }
+        }
+
+        assertEquals ( 1_000, count );
+        assertEquals ( 500, map.size () );
+
+        for ( final Integer key : map.keySet () )
+        {
+            assertTrue ( key % 2 == 1 );
+        }
+    }
+}
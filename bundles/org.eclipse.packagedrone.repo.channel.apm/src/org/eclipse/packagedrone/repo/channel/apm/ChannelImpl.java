@@ -12,11 +12,16 @@ package org.eclipse.packagedrone.repo.channel.apm;
 
 import static org.eclipse.packagedrone.utils.Exceptions.wrapException;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 import org.eclipse.packagedrone.repo.MetaKey;
 import org.eclipse.packagedrone.repo.channel.IdTransformer;
+import org.eclipse.packagedrone.repo.channel.StagedArtifact;
 import org.eclipse.packagedrone.repo.channel.ChannelService.ChannelOperation;
 import org.eclipse.packagedrone.repo.channel.provider.AccessContext;
 import org.eclipse.packagedrone.repo.channel.provider.Channel;
+import org.eclipse.packagedrone.repo.channel.provider.ChannelSummary;
 import org.eclipse.packagedrone.repo.channel.provider.ModifyContext;
 import org.eclipse.packagedrone.storage.apm.StorageManager;
 import org.eclipse.packagedrone.storage.apm.StorageRegistration;
@@ -32,6 +37,8 @@ public class ChannelImpl implements Channel
 
     private final ChannelProviderImpl provider;
 
+    private final ChannelModelProvider model;
+
     private final StorageRegistration handle;
 
     public ChannelImpl ( final String id, final EventAdmin eventAdmin, final MetaKey storageKey, final StorageManager manager, final ChannelProviderImpl provider )
@@ -43,7 +50,8 @@ public class ChannelImpl implements Channel
 
         this.provider = provider;
 
-        this.handle = manager.registerModel ( 10_000, storageKey, new ChannelModelProvider ( eventAdmin, id ) );
+        this.model = new ChannelModelProvider ( eventAdmin, id, provider.getContentStore () );
+        this.handle = manager.registerModel ( 10_000, storageKey, this.model );
     }
 
     public void dispose ()
@@ -57,13 +65,45 @@ public class ChannelImpl implements Channel
         return this.id;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The {@link AccessContext} does not provide the external channel id, so
+     * the id transformer is not required. The model is shared between
+     * concurrent readers and must not be modified.
+     * </p>
+     */
     @Override
     public <T> T accessCall ( final ChannelOperation<T, AccessContext> operation, final IdTransformer idTransformer )
     {
-        return this.manager.accessCall ( this.storageKey, AccessContext.class, model -> wrapException ( () -> {
-            ( (ModifyContextImpl)model ).setIdTransformer ( idTransformer );
-            return operation.process ( model );
-        } ) );
+        return this.manager.accessCall ( this.storageKey, AccessContext.class, model -> wrapException ( () -> operation.process ( model ) ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The snapshot is shared between concurrent readers and must not be
+     * modified, so the id transformer is not applied. Also see
+     * {@link #accessCall(ChannelOperation, IdTransformer)}.
+     * </p>
+     */
+    @Override
+    public <T> T snapshotCall ( final ChannelOperation<T, AccessContext> operation, final IdTransformer idTransformer )
+    {
+        return this.manager.snapshotCall ( this.storageKey, AccessContext.class, model -> wrapException ( () -> operation.process ( model ) ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Getting the summary does not count as using the channel, so listing
+     * channels does not keep unloaded channels in memory.
+     * </p>
+     */
+    @Override
+    public ChannelSummary getSummary ()
+    {
+        return this.manager.summaryCall ( this.storageKey, ChannelSummary.class, summary -> summary );
     }
 
     @Override
@@ -75,6 +115,12 @@ public class ChannelImpl implements Channel
         } ) );
     }
 
+    @Override
+    public StagedArtifact stage ( final InputStream source ) throws IOException
+    {
+        return this.model.stage ( source );
+    }
+
     @Override
     public void delete ()
     {
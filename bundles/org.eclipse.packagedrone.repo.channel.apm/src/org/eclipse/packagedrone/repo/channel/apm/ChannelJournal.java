@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.channel.apm;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.eclipse.packagedrone.utils.io.IOConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append only journal file of channel state records
+ * <p>
+ * The journal records the changes since the last snapshot of the channel
+ * state. Records are written by
+ * {@link ChannelWriter#writeRecord(ModifyContextImpl, java.util.Set, ModifyContextImpl)}
+ * and
+ * replayed by the {@link ChannelReader}.
+ * </p>
+ */
+public class ChannelJournal
+{
+    private final static Logger logger = LoggerFactory.getLogger ( ChannelJournal.class );
+
+    private final Path path;
+
+    public ChannelJournal ( final Path path )
+    {
+        this.path = path;
+    }
+
+    public Path getPath ()
+    {
+        return this.path;
+    }
+
+    /**
+     * Get the current size of the journal
+     *
+     * @return the size in bytes, zero if there is no journal
+     */
+    public long size () throws IOException
+    {
+        try
+        {
+            return Files.size ( this.path );
+        }
+        catch ( final NoSuchFileException e )
+        {
+            return 0;
+        }
+    }
+
+    /**
+     * Append a record to the journal
+     * <p>
+     * If writing the record fails, the journal will be truncated to its
+     * previous size.
+     * </p>
+     *
+     * @param writer
+     *            the writer of the record, the stream handed over to the
+     *            writer must not be closed
+     */
+    public void append ( final IOConsumer<OutputStream> writer ) throws IOException
+    {
+        try ( FileChannel channel = FileChannel.open ( this.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE ) )
+        {
+            final long size = channel.size ();
+            channel.position ( size );
+
+            try
+            {
+                final OutputStream out = new BufferedOutputStream ( Channels.newOutputStream ( channel ) );
+                writer.accept ( out );
+                out.flush ();
+            }
+            catch ( final IOException | RuntimeException e )
+            {
+                try
+                {
+                    channel.truncate ( size );
+                }
+                catch ( final IOException e2 )
+                {
+                    logger.warn ( "Failed to truncate journal after failed append", e2 );
+                    e.addSuppressed ( e2 );
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Truncate the journal to a previous size
+     * <p>
+     * This drops all records which got appended after the journal had the
+     * provided size.
+     * </p>
+     *
+     * @param size
+     *            the size to truncate to, as reported by {@link #size()}
+     */
+    public void truncate ( final long size ) throws IOException
+    {
+        try ( FileChannel channel = FileChannel.open ( this.path, StandardOpenOption.WRITE ) )
+        {
+            channel.truncate ( size );
+        }
+    }
+
+    /**
+     * Delete the journal
+     * <p>
+     * This must only be called after a snapshot containing all journal records
+     * got written.
+     * </p>
+     */
+    public void delete () throws IOException
+    {
+        Files.deleteIfExists ( this.path );
+    }
+}
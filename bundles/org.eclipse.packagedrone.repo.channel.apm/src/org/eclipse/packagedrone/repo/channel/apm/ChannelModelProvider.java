@@ -11,21 +11,32 @@
 package org.eclipse.packagedrone.repo.channel.apm;
 
 import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.packagedrone.repo.MetaKey;
+import org.eclipse.packagedrone.repo.channel.ChannelState;
 import org.eclipse.packagedrone.repo.channel.apm.internal.Finally;
 import org.eclipse.packagedrone.repo.channel.apm.store.BlobStore;
 import org.eclipse.packagedrone.repo.channel.apm.store.BlobStore.Transaction;
 import org.eclipse.packagedrone.repo.channel.apm.store.CacheStore;
+import org.eclipse.packagedrone.repo.channel.apm.store.ContentStore;
 import org.eclipse.packagedrone.repo.channel.provider.AccessContext;
+import org.eclipse.packagedrone.repo.channel.provider.ChannelSummary;
 import org.eclipse.packagedrone.storage.apm.AbstractSimpleStorageModelProvider;
 import org.eclipse.packagedrone.storage.apm.StorageContext;
 import org.eclipse.packagedrone.storage.apm.util.ReplaceOnCloseOutputStream;
@@ -42,34 +53,103 @@ import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
 import com.google.gson.LongSerializationPolicy;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 public class ChannelModelProvider extends AbstractSimpleStorageModelProvider<AccessContext, ModifyContextImpl>
 {
     private final static Logger logger = LoggerFactory.getLogger ( ChannelModelProvider.class );
 
+    /**
+     * The minimum size of the journal before it gets folded into the snapshot
+     * <p>
+     * Once the journal is bigger than this value and bigger than the last
+     * snapshot, a new snapshot will be written.
+     * </p>
+     */
+    private static final long MIN_COMPACTION_SIZE = Long.getLong ( "drone.channel.journal.minCompactionSize", 1 * 1024 * 1024 /* 1MB */ );
+
+    /**
+     * Load the channel state on first access instead of when starting
+     */
+    private static final boolean LAZY = Boolean.getBoolean ( "drone.channel.lazyLoad" );
+
+    /**
+     * Write snapshots in the binary format if set to {@code binary}
+     * <p>
+     * JSON is the default. Snapshots in either format can be read, so the
+     * format can be switched at any time. The next snapshot will be written in
+     * the new format.
+     * </p>
+     */
+    private static final boolean BINARY_STATE = "binary".equals ( System.getProperty ( "drone.channel.stateFormat", "json" ) );
+
     private final String channelId;
 
+    private final ContentStore contentStore;
+
     private BlobStore store;
 
     private CacheStore cacheStore;
 
     private final EventAdmin eventAdmin;
 
+    private ChannelJournal journal;
+
+    private long snapshotSize;
+
+    private boolean forceSnapshot;
+
+    /**
+     * The state last written to the snapshot or the journal, the next journal
+     * record only contains what changed since then
+     * <p>
+     * This is {@code null} when the state is unknown, e.g. after the model got
+     * unloaded.
+     * </p>
+     */
+    private ModifyContextImpl journalBase;
+
     public ChannelModelProvider ( final EventAdmin eventAdmin, final String channelId )
+    {
+        this ( eventAdmin, channelId, null );
+    }
+
+    /**
+     * @param contentStore
+     *            the content store shared between channels, may be
+     *            {@code null}
+     */
+    public ChannelModelProvider ( final EventAdmin eventAdmin, final String channelId, final ContentStore contentStore )
     {
         super ( AccessContext.class, ModifyContextImpl.class );
 
         this.eventAdmin = eventAdmin;
 
         this.channelId = channelId;
+        this.contentStore = contentStore;
     }
 
     @Override
     public void start ( final StorageContext context ) throws Exception
     {
-        this.store = new BlobStore ( makeBasePath ( context, this.channelId ).resolve ( "blobs" ) );
+        this.store = new BlobStore ( makeBasePath ( context, this.channelId ).resolve ( "blobs" ), this.contentStore );
         this.cacheStore = new CacheStore ( makeBasePath ( context, this.channelId ).resolve ( "cache" ) );
-        super.start ( context );
+        this.journal = new ChannelJournal ( makeJournalPath ( context, this.channelId ) );
+
+        try
+        {
+            super.start ( context );
+        }
+        catch ( final Exception e )
+        {
+            // the provider will not get stopped if starting fails
+            this.store.close ();
+            this.cacheStore.close ();
+            throw e;
+        }
     }
 
     @Override
@@ -80,6 +160,135 @@ public class ChannelModelProvider extends AbstractSimpleStorageModelProvider<Acc
         this.cacheStore.close ();
     }
 
+    @Override
+    protected boolean isLazy ()
+    {
+        return LAZY;
+    }
+
+    /**
+     * Channel models can always be loaded again from disk
+     */
+    @Override
+    public boolean isUnloadable ()
+    {
+        return true;
+    }
+
+    @Override
+    public synchronized boolean unload ()
+    {
+        if ( !super.unload () )
+        {
+            return false;
+        }
+
+        // don't keep the unloaded model in memory
+
+        this.journalBase = null;
+        return true;
+    }
+
+    /**
+     * The summary is made for every persisted model, so it is available when
+     * the model gets unloaded
+     */
+    @Override
+    protected ChannelSummary makeSummaryTyped ( final ModifyContextImpl writeModel )
+    {
+        return new ChannelSummary ( writeModel.getState (), writeModel.getMetaData (), writeModel.getAspectStates () );
+    }
+
+    /**
+     * Load the summary written by the last persist operation
+     * <p>
+     * If the summary is missing or older than the channel state, {@code null}
+     * is returned and the channel will be loaded when the summary is
+     * requested.
+     * </p>
+     */
+    @Override
+    protected ChannelSummary loadSummary ( final StorageContext context )
+    {
+        final Path path = makeSummaryPath ( context, this.channelId );
+
+        try
+        {
+            if ( !isSummaryCurrent ( context ) )
+            {
+                return null;
+            }
+
+            final ChannelSummary summary;
+            try ( Reader reader = Files.newBufferedReader ( path, StandardCharsets.UTF_8 ) )
+            {
+                summary = createSummaryGson ().fromJson ( reader, ChannelSummary.class );
+            }
+
+            if ( summary == null || summary.getState () == null )
+            {
+                return null;
+            }
+
+            // restore the immutable collections
+
+            final ChannelState.Builder state = new ChannelState.Builder ( summary.getState () );
+            state.setValidationMessages ( new ArrayList<> ( summary.getState ().getValidationMessages () ) );
+
+            return new ChannelSummary ( state.build (), summary.getMetaData (), summary.getAspectStates () );
+        }
+        catch ( final IOException | RuntimeException e )
+        {
+            logger.info ( "Failed to load channel summary, loading channel instead: " + path, e );
+            return null;
+        }
+    }
+
+    private boolean isSummaryCurrent ( final StorageContext context ) throws IOException
+    {
+        final Path path = makeSummaryPath ( context, this.channelId );
+
+        if ( !Files.exists ( path ) )
+        {
+            return false;
+        }
+
+        final FileTime summaryTime = Files.getLastModifiedTime ( path );
+
+        for ( final Path state : new Path[] { makeStatePath ( context, this.channelId ), makeBinaryStatePath ( context, this.channelId ), this.journal.getPath () } )
+        {
+            if ( Files.exists ( state ) && Files.getLastModifiedTime ( state ).compareTo ( summaryTime ) > 0 )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Write the summary of the model, so that a lazy channel does not need to
+     * be loaded in order to be listed
+     */
+    private void writeSummary ( final StorageContext context, final ModifyContextImpl writeModel ) throws IOException
+    {
+        try ( Handle h = Profile.start ( this, "writeSummary" ) )
+        {
+            try ( ReplaceOnCloseOutputStream stream = new ReplaceOnCloseOutputStream ( makeSummaryPath ( context, this.channelId ) );
+                  Writer writer = new OutputStreamWriter ( stream, StandardCharsets.UTF_8 ) )
+            {
+                createSummaryGson ().toJson ( makeSummaryTyped ( writeModel ), writer );
+                writer.flush ();
+                stream.commit ();
+            }
+        }
+    }
+
+    public BlobStore.StagedBlob stage ( final InputStream source ) throws IOException
+    {
+        return this.store.stage ( source );
+    }
+
     @Override
     protected AccessContext makeViewModelTyped ( final ModifyContextImpl writeModel )
     {
@@ -102,6 +311,53 @@ public class ChannelModelProvider extends AbstractSimpleStorageModelProvider<Acc
         return makeBasePath ( context, channelId ).resolve ( "state.json" );
     }
 
+    public static Path makeBinaryStatePath ( final StorageContext context, final String channelId )
+    {
+        return makeBasePath ( context, channelId ).resolve ( "state.bin" );
+    }
+
+    /**
+     * Get the path new snapshots get written to
+     */
+    private static Path makeSnapshotPath ( final StorageContext context, final String channelId )
+    {
+        return BINARY_STATE ? makeBinaryStatePath ( context, channelId ) : makeStatePath ( context, channelId );
+    }
+
+    /**
+     * Find the snapshot to load
+     * <p>
+     * If the state format was changed, the snapshot might still be in the
+     * other format. If both exist, the most recent one wins.
+     * </p>
+     */
+    private static Path findSnapshotPath ( final StorageContext context, final String channelId ) throws IOException
+    {
+        final Path json = makeStatePath ( context, channelId );
+        final Path binary = makeBinaryStatePath ( context, channelId );
+
+        if ( !Files.exists ( binary ) )
+        {
+            return json;
+        }
+        if ( !Files.exists ( json ) )
+        {
+            return binary;
+        }
+
+        return Files.getLastModifiedTime ( binary ).compareTo ( Files.getLastModifiedTime ( json ) ) >= 0 ? binary : json;
+    }
+
+    public static Path makeJournalPath ( final StorageContext context, final String channelId )
+    {
+        return makeBasePath ( context, channelId ).resolve ( "state.journal" );
+    }
+
+    public static Path makeSummaryPath ( final StorageContext context, final String channelId )
+    {
+        return makeBasePath ( context, channelId ).resolve ( "summary.json" );
+    }
+
     static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
 
     static Gson createGson ()
@@ -123,6 +379,49 @@ public class ChannelModelProvider extends AbstractSimpleStorageModelProvider<Acc
         return builder.create ();
     }
 
+    static Gson createSummaryGson ()
+    {
+        final GsonBuilder builder = new GsonBuilder ();
+
+        builder.setLongSerializationPolicy ( LongSerializationPolicy.STRING );
+        builder.registerTypeAdapter ( MetaKey.class, new JsonDeserializer<MetaKey> () {
+
+            @Override
+            public MetaKey deserialize ( final JsonElement json, final Type type, final JsonDeserializationContext ctx ) throws JsonParseException
+            {
+                return MetaKey.fromString ( json.getAsString () );
+            }
+        } );
+        builder.registerTypeAdapter ( Instant.class, new TypeAdapter<Instant> () {
+
+            @Override
+            public void write ( final JsonWriter out, final Instant value ) throws IOException
+            {
+                if ( value == null )
+                {
+                    out.nullValue ();
+                }
+                else
+                {
+                    out.value ( value.toString () );
+                }
+            }
+
+            @Override
+            public Instant read ( final JsonReader in ) throws IOException
+            {
+                if ( in.peek () == JsonToken.NULL )
+                {
+                    in.nextNull ();
+                    return null;
+                }
+                return Instant.parse ( in.nextString () );
+            }
+        } );
+
+        return builder.create ();
+    }
+
     @Override
     protected void persistWriteModel ( final StorageContext context, final ModifyContextImpl writeModel ) throws Exception
     {
@@ -149,9 +448,13 @@ public class ChannelModelProvider extends AbstractSimpleStorageModelProvider<Acc
                 }
             } );
 
+            // the size of the journal before appending the record, or -1 if nothing got appended
+
+            long journalSize = -1;
+
             try
             {
-                final Path path = makeStatePath ( context, this.channelId );
+                final Path path = makeSnapshotPath ( context, this.channelId );
                 Files.createDirectories ( path.getParent () );
 
                 // commit blob store
@@ -164,14 +467,19 @@ public class ChannelModelProvider extends AbstractSimpleStorageModelProvider<Acc
 
                 // write model
 
-                try ( Handle h2 = Profile.start ( this, "persistWriteModel#write" ) )
+                if ( needsSnapshot ( path ) )
                 {
-                    try ( ReplaceOnCloseOutputStream stream = new ReplaceOnCloseOutputStream ( path );
-                          ChannelWriter writer = new ChannelWriter ( stream ); )
-                    {
-                        writer.write ( writeModel );
-                        stream.commit ();
-                    }
+                    writeSnapshot ( context, path, writeModel );
+                }
+                else
+                {
+                    journalSize = this.journal.size ();
+                    appendRecord ( writeModel );
+                }
+
+                if ( isLazy () )
+                {
+                    writeSummary ( context, writeModel );
                 }
 
                 // commit cache store
@@ -181,10 +489,24 @@ public class ChannelModelProvider extends AbstractSimpleStorageModelProvider<Acc
                     ct.get ().commit ();
                     ct.set ( null );
                 }
+
+                this.journalBase = writeModel;
             }
             catch ( final Exception e )
             {
                 logger.warn ( "Failed to persist model", e );
+
+                if ( journalSize >= 0 )
+                {
+                    rollbackRecord ( journalSize, e );
+                }
+                else
+                {
+                    // the snapshot might now contain changes of a model which got rejected, a new snapshot fixes this
+
+                    this.forceSnapshot = true;
+                }
+
                 throw e;
             }
             finally
@@ -197,13 +519,99 @@ public class ChannelModelProvider extends AbstractSimpleStorageModelProvider<Acc
         }
     }
 
+    /**
+     * Remove a record of a rejected model from the journal
+     *
+     * @param journalSize
+     *            the size of the journal before the record got appended
+     * @param e
+     *            the failure which caused the model to be rejected
+     */
+    private void rollbackRecord ( final long journalSize, final Exception e )
+    {
+        try
+        {
+            this.journal.truncate ( journalSize );
+        }
+        catch ( final IOException e2 )
+        {
+            logger.warn ( "Failed to roll back journal", e2 );
+            e.addSuppressed ( e2 );
+
+            // the journal still contains the record, a new snapshot fixes this
+
+            this.forceSnapshot = true;
+        }
+    }
+
+    private boolean needsSnapshot ( final Path path ) throws IOException
+    {
+        if ( this.forceSnapshot || !Files.exists ( path ) )
+        {
+            return true;
+        }
+
+        final long journalSize = this.journal.size ();
+
+        return journalSize > MIN_COMPACTION_SIZE && journalSize > this.snapshotSize;
+    }
+
+    /**
+     * Write a full snapshot of the model, replacing the journal
+     */
+    private void writeSnapshot ( final StorageContext context, final Path path, final ModifyContextImpl writeModel ) throws IOException
+    {
+        try ( Handle h2 = Profile.start ( this, "persistWriteModel#write" ) )
+        {
+            try ( ReplaceOnCloseOutputStream stream = new ReplaceOnCloseOutputStream ( path );
+                  ChannelWriter writer = new ChannelWriter ( stream ); )
+            {
+                if ( BINARY_STATE )
+                {
+                    writer.writeBinary ( writeModel );
+                }
+                else
+                {
+                    writer.write ( writeModel );
+                }
+                stream.commit ();
+            }
+
+            // a snapshot in the other format is outdated now
+
+            Files.deleteIfExists ( BINARY_STATE ? makeStatePath ( context, this.channelId ) : makeBinaryStatePath ( context, this.channelId ) );
+
+            // the snapshot contains everything from the journal now
+
+            this.journal.delete ();
+
+            this.snapshotSize = Files.size ( path );
+            this.forceSnapshot = false;
+        }
+    }
+
+    /**
+     * Append the changes of the model to the journal
+     */
+    private void appendRecord ( final ModifyContextImpl writeModel ) throws IOException
+    {
+        try ( Handle h2 = Profile.start ( this, "persistWriteModel#append" ) )
+        {
+            this.journal.append ( stream -> {
+                @SuppressWarnings ( "resource" )
+                final ChannelWriter writer = new ChannelWriter ( stream ); // don't close the writer, the journal owns the stream
+                writer.writeRecord ( writeModel, writeModel.getModifiedArtifacts (), this.journalBase );
+            } );
+        }
+    }
+
     @Override
     protected ModifyContextImpl loadWriteModel ( final StorageContext context ) throws Exception
     {
-        final Path path = makeStatePath ( context, this.channelId );
+        final Path path = findSnapshotPath ( context, this.channelId );
 
         try ( InputStream stream = new BufferedInputStream ( Files.newInputStream ( path ) );
-              ChannelReader reader = new ChannelReader ( stream, this.channelId, this.eventAdmin, this.store, this.cacheStore ); )
+              ChannelReader reader = new ChannelReader ( stream, this.journal.getPath (), this.channelId, this.eventAdmin, this.store, this.cacheStore ); )
         {
             final ModifyContextImpl model = reader.read ();
             if ( model == null )
@@ -211,10 +619,25 @@ public class ChannelModelProvider extends AbstractSimpleStorageModelProvider<Acc
                 // FIXME: handle broken channel state
                 throw new IllegalStateException ( "Unable to load channel model" );
             }
+
+            this.snapshotSize = Files.size ( path );
+            this.journalBase = model;
+
+            if ( isLazy () && !isSummaryCurrent ( context ) )
+            {
+                // e.g. the first start in lazy mode
+
+                writeSummary ( context, model );
+            }
+
             return model;
         }
         catch ( final NoSuchFileException e )
         {
+            // a journal without a snapshot is of no use, the first persist will write a new snapshot
+
+            this.journal.delete ();
+
             // create a new model
 
             final ChannelModel model = new ChannelModel ();
@@ -17,15 +17,25 @@ import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import org.eclipse.packagedrone.repo.MetaKey;
 import org.eclipse.packagedrone.repo.channel.ChannelDetails;
 import org.eclipse.packagedrone.repo.channel.IdTransformer;
+import org.eclipse.packagedrone.repo.channel.apm.store.ContentStore;
 import org.eclipse.packagedrone.repo.channel.provider.Channel;
 import org.eclipse.packagedrone.repo.channel.provider.ChannelProvider;
 import org.eclipse.packagedrone.repo.channel.provider.ProviderInformation;
@@ -51,6 +61,16 @@ public class ChannelProviderImpl implements ChannelProvider
 
     private static final ProviderInformation INFO = new ProviderInformation ( "apm", "APM storage", "APM based channel storage" );
 
+    /**
+     * Share identical content between the blob stores of all channels
+     */
+    private static final boolean SHARED_CONTENT = Boolean.getBoolean ( "drone.channel.sharedContent" );
+
+    /**
+     * The number of channels loaded in parallel at startup
+     */
+    private static final int LOAD_THREADS = Integer.getInteger ( "drone.channel.loadThreads", Runtime.getRuntime ().availableProcessors () );
+
     private StorageManager manager;
 
     private EventAdmin eventAdmin;
@@ -59,6 +79,13 @@ public class ChannelProviderImpl implements ChannelProvider
 
     private final CopyOnWriteArraySet<ChannelImpl> channels = new CopyOnWriteArraySet<> ();
 
+    private ContentStore contentStore;
+
+    /**
+     * The executor running the cleanup of the shared content
+     */
+    private ExecutorService gcExecutor;
+
     public ChannelProviderImpl ()
     {
     }
@@ -75,8 +102,22 @@ public class ChannelProviderImpl implements ChannelProvider
 
     public void start ()
     {
+        if ( SHARED_CONTENT )
+        {
+            try
+            {
+                this.contentStore = new ContentStore ( this.manager.getContext ().getBasePath ().resolve ( "content" ) );
+            }
+            catch ( final IOException | UnsupportedOperationException e )
+            {
+                logger.warn ( "Failed to open shared content store, storing content per channel", e );
+            }
+        }
+
         final Path base = this.manager.getContext ().getBasePath ().resolve ( "channels" );
 
+        final List<String> channelIds = new ArrayList<> ();
+
         try
         {
             Files.list ( base ).forEach ( child -> {
@@ -88,7 +129,7 @@ public class ChannelProviderImpl implements ChannelProvider
                 try
                 {
                     final UUID id = UUID.fromString ( child.getName ( child.getNameCount () - 1 ).toString () );
-                    discoveredChannel ( id.toString () );
+                    channelIds.add ( id.toString () );
                 }
                 catch ( final IllegalArgumentException e )
                 {
@@ -105,6 +146,59 @@ public class ChannelProviderImpl implements ChannelProvider
         {
             logger.warn ( "Failed to scan for channels", e );
         }
+
+        discoveredChannels ( channelIds );
+
+        gcContent ();
+    }
+
+    /**
+     * Load discovered channels in parallel and register them all at once
+     * <p>
+     * A channel which fails to load is logged and skipped, so that it does not
+     * prevent the other channels from being available.
+     * </p>
+     */
+    private void discoveredChannels ( final List<String> channelIds )
+    {
+        if ( channelIds.isEmpty () )
+        {
+            return;
+        }
+
+        final List<ChannelImpl> loaded;
+
+        try ( Handle h = Profile.start ( this, "discoveredChannels" ) )
+        {
+            final ForkJoinPool pool = new ForkJoinPool ( Math.max ( 1, LOAD_THREADS ) );
+            try
+            {
+                final ClassLoader tccl = Thread.currentThread ().getContextClassLoader ();
+                loaded = pool.submit ( () -> channelIds.parallelStream ().map ( channelId -> loadChannel ( channelId, tccl ) ).filter ( Objects::nonNull ).collect ( Collectors.toList () ) ).get ();
+            }
+            catch ( final InterruptedException e )
+            {
+                Thread.currentThread ().interrupt ();
+                throw new RuntimeException ( "Interrupted while loading channels", e );
+            }
+            catch ( final ExecutionException e )
+            {
+                if ( e.getCause () instanceof RuntimeException )
+                {
+                    throw (RuntimeException)e.getCause ();
+                }
+                throw new RuntimeException ( "Failed to load channels", e.getCause () );
+            }
+            finally
+            {
+                pool.shutdown ();
+            }
+        }
+
+        logger.info ( "Loaded {} of {} channels", loaded.size (), channelIds.size () );
+
+        this.channels.addAll ( loaded );
+        fireChange ( loaded, null );
     }
 
     public void stop ()
@@ -116,6 +210,59 @@ public class ChannelProviderImpl implements ChannelProvider
             channel.dispose ();
         }
         this.channels.clear ();
+
+        if ( this.gcExecutor != null )
+        {
+            this.gcExecutor.shutdownNow ();
+            try
+            {
+                if ( !this.gcExecutor.awaitTermination ( 10, TimeUnit.SECONDS ) )
+                {
+                    logger.warn ( "Shared content cleanup did not stop in time" );
+                }
+            }
+            catch ( final InterruptedException e )
+            {
+                Thread.currentThread ().interrupt ();
+            }
+            this.gcExecutor = null;
+        }
+
+        this.contentStore = null;
+    }
+
+    ContentStore getContentStore ()
+    {
+        return this.contentStore;
+    }
+
+    /**
+     * Remove unused shared content in the background
+     */
+    private void gcContent ()
+    {
+        final ContentStore contentStore = this.contentStore;
+        if ( contentStore == null )
+        {
+            return;
+        }
+
+        this.gcExecutor = Executors.newSingleThreadExecutor ( r -> {
+            final Thread t = new Thread ( r, "ChannelProvider/ContentCleanup" );
+            t.setDaemon ( true );
+            return t;
+        } );
+
+        this.gcExecutor.execute ( () -> {
+            try
+            {
+                contentStore.gc ();
+            }
+            catch ( final IOException e )
+            {
+                logger.warn ( "Failed to remove unused shared content", e );
+            }
+        } );
     }
 
     @Override
@@ -147,13 +294,30 @@ public class ChannelProviderImpl implements ChannelProvider
         return channel;
     }
 
-    private void discoveredChannel ( final String channelId )
+    /**
+     * Load a single channel
+     *
+     * @return the channel, or {@code null} if the channel failed to load
+     */
+    private ChannelImpl loadChannel ( final String channelId, final ClassLoader tccl )
     {
-        try ( Handle h = Profile.start ( this, "discoveredChannel" ) )
+        final Thread thread = Thread.currentThread ();
+        final ClassLoader old = thread.getContextClassLoader ();
+
+        thread.setContextClassLoader ( tccl );
+        try ( Handle h = Profile.start ( this, "loadChannel" ) )
         {
             final MetaKey key = new MetaKey ( "channel", channelId );
-            final ChannelImpl channel = new ChannelImpl ( channelId, this.eventAdmin, key, this.manager, this );
-            registerChannel ( channel );
+            return new ChannelImpl ( channelId, this.eventAdmin, key, this.manager, this );
+        }
+        catch ( final Exception e )
+        {
+            logger.error ( "Failed to load channel: " + channelId, e );
+            return null;
+        }
+        finally
+        {
+            thread.setContextClassLoader ( old );
         }
     }
 
@@ -188,6 +352,7 @@ public class ChannelProviderImpl implements ChannelProvider
             fireChange ( null, Collections.singleton ( channel ) );
             channel.dispose ();
             deleteChannelContent ( id );
+            gcContent ();
         }
     }
 
@@ -241,6 +406,8 @@ public class ChannelProviderImpl implements ChannelProvider
             }
         }
 
+        gcContent ();
+
         fireChange ( null, deletedChannels );
     }
 
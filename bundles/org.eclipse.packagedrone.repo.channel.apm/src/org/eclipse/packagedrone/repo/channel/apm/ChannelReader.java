@@ -10,15 +10,22 @@
  *******************************************************************************/
 package org.eclipse.packagedrone.repo.channel.apm;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -27,6 +34,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.eclipse.packagedrone.repo.MetaDataMap;
 import org.eclipse.packagedrone.repo.MetaKey;
 import org.eclipse.packagedrone.repo.Severity;
 import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
@@ -36,14 +44,56 @@ import org.eclipse.packagedrone.repo.channel.ValidationMessage;
 import org.eclipse.packagedrone.repo.channel.apm.store.BlobStore;
 import org.eclipse.packagedrone.repo.channel.apm.store.CacheStore;
 import org.osgi.service.event.EventAdmin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.google.common.io.ByteStreams;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
 
 public class ChannelReader implements AutoCloseable
 {
+    private final static Logger logger = LoggerFactory.getLogger ( ChannelReader.class );
+
+    /**
+     * The content of a single state object
+     * <p>
+     * This is either the full snapshot or a single journal record.
+     * </p>
+     */
+    private static class Content
+    {
+        private final ChannelState.Builder state = new ChannelState.Builder ();
+
+        private Boolean locked;
+
+        private Map<MetaKey, CacheEntryInformation> cacheEntries = Collections.emptyMap ();
+
+        private Map<String, ArtifactInformation> artifacts = new HashMap<> ();
+
+        private Set<String> removedArtifacts = Collections.emptySet ();
+
+        private Map<MetaKey, String> extractedMetaData = Collections.emptyMap ();
+
+        private Map<MetaKey, String> providedMetaData = Collections.emptyMap ();
+
+        private Map<String, String> aspects = new HashMap<> ();
+
+        // a journal record only contains the following sections if they changed
+
+        private boolean hasCacheEntries;
+
+        private boolean hasValidationMessages;
+
+        private boolean hasExtractedMetaData;
+
+        private boolean hasProvidedMetaData;
+    }
+
     private final InputStream stream;
 
+    private final Path journal;
+
     private final String channelId;
 
     private final EventAdmin eventAdmin;
@@ -54,11 +104,30 @@ public class ChannelReader implements AutoCloseable
 
     private final DateFormat dateFormat;
 
-    private long numberOfBytes;
+    /**
+     * Pool of meta data values, values like versions or flags repeat a lot
+     * between artifacts
+     */
+    private final Map<String, String> values = new HashMap<> ();
 
     public ChannelReader ( final InputStream stream, final String channelId, final EventAdmin eventAdmin, final BlobStore store, final CacheStore cacheStore )
     {
-        this.stream = stream;
+        this ( stream, null, channelId, eventAdmin, store, cacheStore );
+    }
+
+    /**
+     * Create a new reader
+     *
+     * @param stream
+     *            the stream of the state snapshot
+     * @param journal
+     *            the optional path to the journal, which will be replayed on
+     *            top of the snapshot, may be {@code null}
+     */
+    public ChannelReader ( final InputStream stream, final Path journal, final String channelId, final EventAdmin eventAdmin, final BlobStore store, final CacheStore cacheStore )
+    {
+        this.stream = stream.markSupported () ? stream : new BufferedInputStream ( stream );
+        this.journal = journal;
         this.channelId = channelId;
         this.eventAdmin = eventAdmin;
         this.store = store;
@@ -67,24 +136,268 @@ public class ChannelReader implements AutoCloseable
         this.dateFormat = new SimpleDateFormat ( ChannelModelProvider.DATE_FORMAT );
     }
 
+    /**
+     * Read the channel state
+     * <p>
+     * The snapshot may either be in the JSON format or in the binary format,
+     * the format is detected automatically.
+     * </p>
+     */
     @SuppressWarnings ( "resource" )
     public ModifyContextImpl read () throws IOException
     {
-        this.numberOfBytes = 0;
+        Content content;
+
+        if ( isBinary () )
+        {
+            content = readBinaryContent ( new StateDecoder ( this.stream ) );
+        }
+        else
+        {
+            final Reader reader = new InputStreamReader ( this.stream, StandardCharsets.UTF_8 );
+            content = readContent ( new JsonReader ( reader ) );
+        }
+
+        if ( this.journal != null )
+        {
+            content = replayJournal ( content );
+        }
+
+        // transient information
+
+        long numberOfBytes = 0;
+        for ( final ArtifactInformation artifact : content.artifacts.values () )
+        {
+            numberOfBytes += artifact.getSize ();
+        }
+
+        content.state.setNumberOfArtifacts ( content.artifacts.size () );
+        content.state.setNumberOfBytes ( numberOfBytes );
+
+        // create result
+
+        return new ModifyContextImpl ( this.channelId, this.eventAdmin, this.store, this.cacheStore, content.state.build (), content.aspects, content.artifacts, content.cacheEntries, content.extractedMetaData, content.providedMetaData );
+    }
+
+    /**
+     * Replay the journal on top of the snapshot
+     * <p>
+     * Each record carries the basic channel state, the channel level sections
+     * which changed and the state of all artifacts it touched. So replaying a
+     * record, which is already part of the snapshot, does not change the
+     * result.
+     * </p>
+     * <p>
+     * An unreadable last record is the result of an interrupted append and
+     * will be ignored. Any other unreadable record is an error.
+     * </p>
+     */
+    private Content replayJournal ( Content content ) throws IOException
+    {
+        try ( BufferedReader reader = Files.newBufferedReader ( this.journal, StandardCharsets.UTF_8 ) )
+        {
+            int records = 0;
+
+            String line = reader.readLine ();
+            while ( line != null )
+            {
+                final String next = reader.readLine ();
+
+                if ( !line.isEmpty () )
+                {
+                    final Content record;
+                    try
+                    {
+                        record = readContent ( new JsonReader ( new StringReader ( line ) ) );
+                    }
+                    catch ( final IOException | RuntimeException e )
+                    {
+                        if ( next != null )
+                        {
+                            throw new IOException ( String.format ( "Invalid journal record #%s", records ), e );
+                        }
+                        logger.warn ( "Ignoring incomplete journal record", e );
+                        break;
+                    }
+
+                    content = applyRecord ( content, record );
+                    records++;
+                }
+
+                line = next;
+            }
+
+            logger.debug ( "Replayed {} journal records for channel {}", records, this.channelId );
+        }
+        catch ( final NoSuchFileException e )
+        {
+            // no journal
+        }
+
+        return content;
+    }
+
+    private static Content applyRecord ( final Content content, final Content record )
+    {
+        // the record has the basic channel information, but only the modified artifacts and changed sections
+
+        if ( !record.hasCacheEntries )
+        {
+            record.cacheEntries = content.cacheEntries;
+        }
+        if ( !record.hasValidationMessages )
+        {
+            record.state.setValidationMessages ( new ArrayList<> ( content.state.build ().getValidationMessages () ) );
+        }
+        if ( !record.hasExtractedMetaData )
+        {
+            record.extractedMetaData = content.extractedMetaData;
+        }
+        if ( !record.hasProvidedMetaData )
+        {
+            record.providedMetaData = content.providedMetaData;
+        }
+
+        for ( final String id : record.removedArtifacts )
+        {
+            content.artifacts.remove ( id );
+        }
+        content.artifacts.putAll ( record.artifacts );
+
+        record.artifacts = content.artifacts;
+
+        return record;
+    }
+
+    private boolean isBinary () throws IOException
+    {
+        final byte[] header = new byte[StateEncoder.MAGIC.length];
+
+        this.stream.mark ( header.length );
+        try
+        {
+            return ByteStreams.read ( this.stream, header, 0, header.length ) == header.length && StateDecoder.isBinary ( header );
+        }
+        finally
+        {
+            this.stream.reset ();
+        }
+    }
+
+    private static Content readBinaryContent ( final StateDecoder decoder ) throws IOException
+    {
+        final Content content = new Content ();
+
+        int type;
+        while ( ( type = decoder.nextRecord () ) != StateEncoder.RECORD_END )
+        {
+            switch ( type )
+            {
+                case StateEncoder.RECORD_CHANNEL:
+                    content.state.setDescription ( decoder.readString () );
+                    content.state.setLocked ( content.locked = decoder.readBoolean () );
+                    content.state.setCreationTimestamp ( decoder.readTimestamp () );
+                    content.state.setModificationTimestamp ( decoder.readTimestamp () );
+                    break;
+                case StateEncoder.RECORD_ASPECTS:
+                {
+                    final int count = decoder.readVarInt ();
+                    for ( int i = 0; i < count; i++ )
+                    {
+                        final String id = decoder.readString ();
+                        content.aspects.put ( id, decoder.readString () );
+                    }
+                    break;
+                }
+                case StateEncoder.RECORD_ARTIFACT:
+                {
+                    final String id = decoder.readString ();
+                    final String name = decoder.readString ();
+                    final long size = decoder.readVarLong ();
+                    final Instant creationTimestamp = decoder.readTimestamp ();
+                    final String parentId = decoder.readString ();
+                    final Set<String> childIds = decoder.readStringSet ();
+                    final Set<String> facets = decoder.readStringSet ();
+                    final List<ValidationMessage> validationMessages = readValidationMessages ( decoder );
+                    final String virtualizerAspectId = decoder.readString ();
+                    final Map<MetaKey, String> providedMetaData = decoder.readMetaData ();
+                    final Map<MetaKey, String> extractedMetaData = decoder.readMetaData ();
+
+                    if ( id == null || name == null || creationTimestamp == null )
+                    {
+                        throw new IOException ( "Missing values for artifact" );
+                    }
+
+                    content.artifacts.put ( id, new ArtifactInformation ( id, parentId, childIds, name, size, creationTimestamp, facets, validationMessages, providedMetaData, extractedMetaData, virtualizerAspectId ) );
+                    break;
+                }
+                case StateEncoder.RECORD_CACHE_ENTRY:
+                {
+                    final MetaKey key = decoder.readMetaKey ();
+                    final String name = decoder.readString ();
+                    final long size = decoder.readVarLong ();
+                    final String mimeType = decoder.readString ();
+                    final Instant timestamp = decoder.readTimestamp ();
+
+                    if ( name == null || mimeType == null || timestamp == null )
+                    {
+                        throw new IOException ( "Invalid format" );
+                    }
+
+                    if ( content.cacheEntries.isEmpty () )
+                    {
+                        content.cacheEntries = new HashMap<> ();
+                    }
+                    content.cacheEntries.put ( key, new CacheEntryInformation ( key, name, size, mimeType, timestamp ) );
+                    break;
+                }
+                case StateEncoder.RECORD_VALIDATION_MESSAGES:
+                    content.state.setValidationMessages ( readValidationMessages ( decoder ) );
+                    break;
+                case StateEncoder.RECORD_METADATA:
+                    content.providedMetaData = decoder.readMetaData ();
+                    content.extractedMetaData = decoder.readMetaData ();
+                    break;
+                default:
+                    throw new IOException ( String.format ( "Unknown record type: %s", type ) );
+            }
 
-        final Reader reader = new InputStreamReader ( this.stream, StandardCharsets.UTF_8 );
+            decoder.endRecord ();
+        }
 
-        final ChannelState.Builder state = new ChannelState.Builder ();
+        if ( content.locked == null )
+        {
+            throw new IOException ( "Missing values for channel" );
+        }
 
-        Boolean locked = null;
+        return content;
+    }
 
-        Map<MetaKey, CacheEntryInformation> cacheEntries = Collections.emptyMap ();
-        Map<String, ArtifactInformation> artifacts = Collections.emptyMap ();
-        Map<MetaKey, String> extractedMetaData = Collections.emptyMap ();
-        Map<MetaKey, String> providedMetaData = Collections.emptyMap ();
-        Map<String, String> aspects = new HashMap<> ();
+    private static List<ValidationMessage> readValidationMessages ( final StateDecoder decoder ) throws IOException
+    {
+        final int count = decoder.readVarInt ();
 
-        final JsonReader jr = new JsonReader ( reader );
+        final List<ValidationMessage> result = new ArrayList<> ( count );
+        for ( int i = 0; i < count; i++ )
+        {
+            final String aspectId = decoder.readString ();
+            final String severity = decoder.readString ();
+            final String message = decoder.readString ();
+            final Set<String> artifactIds = decoder.readStringSet ();
+
+            if ( aspectId == null || severity == null || message == null )
+            {
+                throw new IOException ( "Missing values in validation message" );
+            }
+
+            result.add ( new ValidationMessage ( aspectId, Severity.valueOf ( severity ), message, artifactIds ) );
+        }
+        return result;
+    }
+
+    private Content readContent ( final JsonReader jr ) throws IOException
+    {
+        final Content content = new Content ();
 
         jr.beginObject ();
         while ( jr.hasNext () )
@@ -93,34 +406,41 @@ public class ChannelReader implements AutoCloseable
             switch ( name )
             {
                 case "description":
-                    state.setDescription ( jr.nextString () );
+                    content.state.setDescription ( jr.nextString () );
                     break;
                 case "locked":
-                    state.setLocked ( locked = jr.nextBoolean () );
+                    content.state.setLocked ( content.locked = jr.nextBoolean () );
                     break;
                 case "creationTimestamp":
-                    state.setCreationTimestamp ( readTime ( jr ) );
+                    content.state.setCreationTimestamp ( readTime ( jr ) );
                     break;
                 case "modificationTimestamp":
-                    state.setModificationTimestamp ( readTime ( jr ) );
+                    content.state.setModificationTimestamp ( readTime ( jr ) );
                     break;
                 case "cacheEntries":
-                    cacheEntries = readCacheEntries ( jr );
+                    content.cacheEntries = readCacheEntries ( jr );
+                    content.hasCacheEntries = true;
                     break;
                 case "artifacts":
-                    artifacts = readArtifacts ( jr );
+                    readArtifacts ( jr, content.artifacts );
+                    break;
+                case "removedArtifacts":
+                    content.removedArtifacts = readSet ( jr );
                     break;
                 case "extractedMetaData":
-                    extractedMetaData = readMetadata ( jr );
+                    content.extractedMetaData = readMetadata ( jr );
+                    content.hasExtractedMetaData = true;
                     break;
                 case "providedMetaData":
-                    providedMetaData = readMetadata ( jr );
+                    content.providedMetaData = readMetadata ( jr );
+                    content.hasProvidedMetaData = true;
                     break;
                 case "validationMessages":
-                    state.setValidationMessages ( readValidationMessages ( jr ) );
+                    content.state.setValidationMessages ( readValidationMessages ( jr ) );
+                    content.hasValidationMessages = true;
                     break;
                 case "aspects":
-                    aspects = readAspects ( jr );
+                    content.aspects = readAspects ( jr );
                     break;
                 default:
                     jr.skipValue ();
@@ -129,19 +449,12 @@ public class ChannelReader implements AutoCloseable
         }
         jr.endObject ();
 
-        if ( locked == null )
+        if ( content.locked == null )
         {
             throw new IOException ( "Missing values for channel" );
         }
 
-        // transient information
-
-        state.setNumberOfArtifacts ( artifacts.size () );
-        state.setNumberOfBytes ( this.numberOfBytes );
-
-        // create result
-
-        return new ModifyContextImpl ( this.channelId, this.eventAdmin, this.store, this.cacheStore, state.build (), aspects, artifacts, cacheEntries, extractedMetaData, providedMetaData );
+        return content;
     }
 
     private Map<String, String> readAspects ( final JsonReader jr ) throws IOException
@@ -178,12 +491,10 @@ public class ChannelReader implements AutoCloseable
         return result;
     }
 
-    private Map<String, ArtifactInformation> readArtifacts ( final JsonReader jr ) throws IOException
+    private void readArtifacts ( final JsonReader jr, final Map<String, ArtifactInformation> result ) throws IOException
     {
         jr.beginObject ();
 
-        final Map<String, ArtifactInformation> result = new HashMap<> ();
-
         while ( jr.hasNext () )
         {
             final String id = jr.nextName ();
@@ -247,14 +558,10 @@ public class ChannelReader implements AutoCloseable
                 throw new IOException ( "Missing values for artifact" );
             }
 
-            this.numberOfBytes += size;
-
             result.put ( id, new ArtifactInformation ( id, parentId, childIds, name, size, creationTimestamp, facets, validationMessages, providedMetaData, extractedMetaData, virtualizerAspectId ) );
         }
 
         jr.endObject ();
-
-        return result;
     }
 
     private Map<MetaKey, String> readMetadata ( final JsonReader jr ) throws IOException
@@ -272,14 +579,22 @@ public class ChannelReader implements AutoCloseable
             }
             else
             {
+                final MetaKey key = MetaKey.fromString ( name );
                 final String value = jr.nextString ();
-                result.put ( MetaKey.fromString ( name ), value );
+
+                if ( key == null )
+                {
+                    logger.warn ( "Skipping invalid meta data key: {}", name );
+                    continue;
+                }
+
+                result.put ( key, this.values.computeIfAbsent ( value, v -> v ) );
             }
         }
 
         jr.endObject ();
 
-        return result;
+        return MetaDataMap.copyOf ( result );
     }
 
     private List<ValidationMessage> readValidationMessages ( final JsonReader jr ) throws IOException
@@ -16,7 +16,12 @@ import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 import org.eclipse.packagedrone.repo.MetaKey;
 import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
@@ -41,6 +46,12 @@ public class ChannelWriter implements AutoCloseable
         this.stream.close ();
     }
 
+    /**
+     * Write the full channel state
+     *
+     * @param context
+     *            the context to write
+     */
     public void write ( final ModifyContextImpl context ) throws IOException
     {
         final OutputStreamWriter writer = new OutputStreamWriter ( this.stream, StandardCharsets.UTF_8 );
@@ -51,6 +62,161 @@ public class ChannelWriter implements AutoCloseable
         jw.setSerializeNulls ( true );
         jw.setIndent ( "  " );
 
+        writeContext ( jw, context, null, null );
+
+        jw.flush ();
+    }
+
+    /**
+     * Write the full channel state in the binary format
+     * <p>
+     * See {@link StateEncoder} for a description of the format.
+     * </p>
+     *
+     * @param context
+     *            the context to write
+     */
+    public void writeBinary ( final ModifyContextImpl context ) throws IOException
+    {
+        final StateEncoder encoder = new StateEncoder ( this.stream );
+
+        final ChannelState state = context.getState ();
+
+        encoder.beginRecord ( StateEncoder.RECORD_CHANNEL );
+        encoder.writeString ( state.getDescription () );
+        encoder.writeBoolean ( state.isLocked () );
+        encoder.writeTimestamp ( state.getCreationTimestamp () );
+        encoder.writeTimestamp ( state.getModificationTimestamp () );
+        encoder.endRecord ();
+
+        encoder.beginRecord ( StateEncoder.RECORD_ASPECTS );
+        encoder.writeVarInt ( context.getAspectStates ().size () );
+        for ( final Map.Entry<String, String> entry : context.getAspectStates ().entrySet () )
+        {
+            encoder.writeString ( entry.getKey () );
+            encoder.writeString ( entry.getValue () );
+        }
+        encoder.endRecord ();
+
+        for ( final ArtifactInformation art : context.getArtifacts ().values () )
+        {
+            encoder.beginRecord ( StateEncoder.RECORD_ARTIFACT );
+
+            encoder.writeString ( art.getId () );
+            encoder.writeString ( art.getName () );
+            encoder.writeVarLong ( art.getSize () );
+            encoder.writeTimestamp ( art.getCreationInstant () );
+            encoder.writeString ( art.getParentId () );
+            encoder.writeStrings ( art.getChildIds () );
+            encoder.writeStrings ( art.getFacets () );
+            writeValidationMessages ( encoder, art.getValidationMessages () );
+            encoder.writeString ( art.getVirtualizerAspectId () );
+            encoder.writeMetaData ( art.getProvidedMetaData () );
+            encoder.writeMetaData ( art.getExtractedMetaData () );
+
+            encoder.endRecord ();
+        }
+
+        for ( final CacheEntryInformation entry : context.getCacheEntries ().values () )
+        {
+            encoder.beginRecord ( StateEncoder.RECORD_CACHE_ENTRY );
+
+            encoder.writeMetaKey ( entry.getKey () );
+            encoder.writeString ( entry.getName () );
+            encoder.writeVarLong ( entry.getSize () );
+            encoder.writeString ( entry.getMimeType () );
+            encoder.writeTimestamp ( entry.getTimestamp () );
+
+            encoder.endRecord ();
+        }
+
+        encoder.beginRecord ( StateEncoder.RECORD_VALIDATION_MESSAGES );
+        writeValidationMessages ( encoder, context.getValidationMessages () );
+        encoder.endRecord ();
+
+        encoder.beginRecord ( StateEncoder.RECORD_METADATA );
+        encoder.writeMetaData ( context.getProvidedMetaData () );
+        encoder.writeMetaData ( context.getExtractedMetaData () );
+        encoder.endRecord ();
+
+        encoder.finish ();
+    }
+
+    private static void writeValidationMessages ( final StateEncoder encoder, final Collection<ValidationMessage> messages )
+    {
+        if ( messages == null )
+        {
+            encoder.writeVarInt ( 0 );
+            return;
+        }
+
+        encoder.writeVarInt ( messages.size () );
+        for ( final ValidationMessage msg : messages )
+        {
+            encoder.writeString ( msg.getAspectId () );
+            encoder.writeString ( msg.getSeverity ().toString () );
+            encoder.writeString ( msg.getMessage () );
+            encoder.writeStrings ( msg.getArtifactIds () );
+        }
+    }
+
+    /**
+     * Write a single journal record, containing all channel level information
+     *
+     * @param context
+     *            the context to write
+     * @param modifiedArtifacts
+     *            the ids of the artifacts which got modified
+     * @see #writeRecord(ModifyContextImpl, Set, ModifyContextImpl)
+     */
+    public void writeRecord ( final ModifyContextImpl context, final Set<String> modifiedArtifacts ) throws IOException
+    {
+        writeRecord ( context, modifiedArtifacts, null );
+    }
+
+    /**
+     * Write a single journal record
+     * <p>
+     * The record is written as a single line of JSON, terminated by a newline.
+     * It contains the basic channel state, but only the artifacts which were
+     * modified. Artifacts which are modified, but no longer part of the
+     * channel, are recorded as removed.
+     * </p>
+     * <p>
+     * The cache entries, the validation messages and the channel meta data are
+     * only written if they differ from the previous state. When reading the
+     * record, a missing section means that the previous value is still valid.
+     * Written sections are always present, even when they are empty.
+     * </p>
+     *
+     * @param context
+     *            the context to write
+     * @param modifiedArtifacts
+     *            the ids of the artifacts which got modified
+     * @param previous
+     *            the state the record is based on, which is the last state
+     *            written to the snapshot or the journal, may be {@code null},
+     *            in which case all sections are written
+     */
+    public void writeRecord ( final ModifyContextImpl context, final Set<String> modifiedArtifacts, final ModifyContextImpl previous ) throws IOException
+    {
+        final OutputStreamWriter writer = new OutputStreamWriter ( this.stream, StandardCharsets.UTF_8 );
+
+        @SuppressWarnings ( "resource" )
+        final JsonWriter jw = new JsonWriter ( writer );
+
+        jw.setSerializeNulls ( true );
+
+        writeContext ( jw, context, modifiedArtifacts, previous );
+
+        jw.flush ();
+
+        writer.write ( '\n' );
+        writer.flush ();
+    }
+
+    private void writeContext ( final JsonWriter jw, final ModifyContextImpl context, final Set<String> modifiedArtifacts, final ModifyContextImpl previous ) throws IOException
+    {
         // begin write
 
         jw.beginObject ();
@@ -84,6 +250,7 @@ public class ChannelWriter implements AutoCloseable
             jw.endObject (); // aspects
         }
 
+        if ( modifiedArtifacts == null )
         {
             jw.name ( "artifacts" ).beginObject ();
 
@@ -98,7 +265,43 @@ public class ChannelWriter implements AutoCloseable
 
             jw.endObject ();
         }
+        else
+        {
+            final List<String> removed = new LinkedList<> ();
+
+            jw.name ( "artifacts" ).beginObject ();
 
+            for ( final String id : modifiedArtifacts )
+            {
+                final ArtifactInformation art = context.getArtifacts ().get ( id );
+                if ( art == null )
+                {
+                    removed.add ( id );
+                    continue;
+                }
+
+                jw.name ( id ).beginObject ();
+
+                writeArtifact ( jw, art );
+
+                jw.endObject ();
+            }
+
+            jw.endObject ();
+
+            jw.name ( "removedArtifacts" ).beginArray ();
+            for ( final String id : removed )
+            {
+                jw.value ( id );
+            }
+            jw.endArray ();
+        }
+
+        // in a record, empty sections must be written, as a missing section means "unchanged"
+
+        final boolean record = modifiedArtifacts != null;
+
+        if ( previous == null || !previous.getCacheEntries ().equals ( context.getCacheEntries () ) )
         {
             jw.name ( "cacheEntries" ).beginObject ();
             for ( final Map.Entry<MetaKey, CacheEntryInformation> entry : context.getCacheEntries ().entrySet () )
@@ -116,14 +319,21 @@ public class ChannelWriter implements AutoCloseable
             jw.endObject ();
         }
 
-        writeValidationMessages ( jw, context.getValidationMessages () );
+        if ( previous == null || !equalMessages ( previous.getValidationMessages (), context.getValidationMessages () ) )
+        {
+            writeValidationMessages ( jw, context.getValidationMessages (), record );
+        }
 
-        writeMetaData ( "providedMetaData", jw, context.getProvidedMetaData () );
-        writeMetaData ( "extractedMetaData", jw, context.getExtractedMetaData () );
+        if ( previous == null || !previous.getProvidedMetaData ().equals ( context.getProvidedMetaData () ) )
+        {
+            writeMetaData ( "providedMetaData", jw, context.getProvidedMetaData (), record );
+        }
+        if ( previous == null || !previous.getExtractedMetaData ().equals ( context.getExtractedMetaData () ) )
+        {
+            writeMetaData ( "extractedMetaData", jw, context.getExtractedMetaData (), record );
+        }
 
         jw.endObject (); // channel
-
-        jw.flush ();
     }
 
     private void writeTimestamp ( final JsonWriter jw, final Instant timestamp ) throws IOException
@@ -138,10 +348,55 @@ public class ChannelWriter implements AutoCloseable
         }
     }
 
+    /**
+     * Compare two collections of validation messages by their content
+     * <p>
+     * The aggregators create new message instances on every run, so the
+     * instances can't be compared directly.
+     * </p>
+     */
+    private static boolean equalMessages ( final Collection<ValidationMessage> messages1, final Collection<ValidationMessage> messages2 )
+    {
+        if ( messages1.size () != messages2.size () )
+        {
+            return false;
+        }
+
+        final Iterator<ValidationMessage> i1 = messages1.iterator ();
+        final Iterator<ValidationMessage> i2 = messages2.iterator ();
+
+        while ( i1.hasNext () )
+        {
+            final ValidationMessage msg1 = i1.next ();
+            final ValidationMessage msg2 = i2.next ();
+
+            if ( msg1 == msg2 )
+            {
+                continue;
+            }
+
+            if ( !Objects.equals ( msg1.getAspectId (), msg2.getAspectId () ) || msg1.getSeverity () != msg2.getSeverity () || !Objects.equals ( msg1.getMessage (), msg2.getMessage () ) || !Objects.equals ( msg1.getArtifactIds (), msg2.getArtifactIds () ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     private void writeValidationMessages ( final JsonWriter jw, final Collection<ValidationMessage> messages ) throws IOException
+    {
+        writeValidationMessages ( jw, messages, false );
+    }
+
+    private void writeValidationMessages ( final JsonWriter jw, final Collection<ValidationMessage> messages, final boolean writeEmpty ) throws IOException
     {
         if ( messages == null || messages.isEmpty () )
         {
+            if ( writeEmpty )
+            {
+                jw.name ( "validationMessages" ).beginArray ().endArray ();
+            }
             return;
         }
 
@@ -209,9 +464,18 @@ public class ChannelWriter implements AutoCloseable
     }
 
     private void writeMetaData ( final String name, final JsonWriter jw, final Map<MetaKey, String> metadata ) throws IOException
+    {
+        writeMetaData ( name, jw, metadata, false );
+    }
+
+    private void writeMetaData ( final String name, final JsonWriter jw, final Map<MetaKey, String> metadata, final boolean writeEmpty ) throws IOException
     {
         if ( metadata == null || metadata.isEmpty () )
         {
+            if ( writeEmpty )
+            {
+                jw.name ( name ).beginObject ().endObject ();
+            }
             return;
         }
 
@@ -10,11 +10,11 @@
  *******************************************************************************/
 package org.eclipse.packagedrone.repo.channel.apm;
 
-import static java.util.stream.Collectors.toMap;
-
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.util.Collection;
 import java.util.Collections;
@@ -30,6 +30,7 @@ import java.util.UUID;
 import java.util.function.Consumer;
 
 import org.eclipse.packagedrone.repo.MetaKey;
+import org.eclipse.packagedrone.repo.channel.ArtifactContent;
 import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
 import org.eclipse.packagedrone.repo.channel.ArtifactInformation.Manipulator;
 import org.eclipse.packagedrone.repo.channel.CacheEntry;
@@ -38,20 +39,29 @@ import org.eclipse.packagedrone.repo.channel.ChannelDetails;
 import org.eclipse.packagedrone.repo.channel.ChannelState;
 import org.eclipse.packagedrone.repo.channel.ChannelState.Builder;
 import org.eclipse.packagedrone.repo.channel.IdTransformer;
+import org.eclipse.packagedrone.repo.channel.StagedArtifact;
 import org.eclipse.packagedrone.repo.channel.ValidationMessage;
 import org.eclipse.packagedrone.repo.channel.apm.aspect.AspectContextImpl;
 import org.eclipse.packagedrone.repo.channel.apm.aspect.AspectableContext;
 import org.eclipse.packagedrone.repo.channel.apm.internal.Activator;
+import org.eclipse.packagedrone.repo.channel.apm.internal.HashTrieMap;
 import org.eclipse.packagedrone.repo.channel.apm.store.BlobStore;
 import org.eclipse.packagedrone.repo.channel.apm.store.BlobStore.Transaction;
 import org.eclipse.packagedrone.repo.channel.apm.store.CacheStore;
 import org.eclipse.packagedrone.repo.channel.provider.ModifyContext;
+import org.eclipse.packagedrone.repo.channel.provider.ProgressMonitor;
 import org.eclipse.packagedrone.storage.apm.StorageManager;
 import org.eclipse.packagedrone.utils.Exceptions;
+import org.eclipse.packagedrone.utils.Holder;
 import org.eclipse.packagedrone.utils.io.IOConsumer;
+import org.eclipse.packagedrone.utils.io.IOFunction;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
 
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+
 public class ModifyContextImpl implements ModifyContext, AspectableContext
 {
     private static final String FACET_GENERATOR = "generator";
@@ -70,23 +80,45 @@ public class ModifyContextImpl implements ModifyContext, AspectableContext
 
     private final Map<MetaKey, String> extractedMetadata;
 
-    private final Map<MetaKey, String> modExtractedMetadata;
+    private final HashTrieMap<MetaKey, String> modExtractedMetadata;
 
     private final Map<MetaKey, String> providedMetadata;
 
-    private final Map<MetaKey, String> modProvidedMetadata;
+    private final HashTrieMap<MetaKey, String> modProvidedMetadata;
 
     private final Map<String, ArtifactInformation> artifacts;
 
-    private final Map<String, ArtifactInformation> modArtifacts;
+    private final HashTrieMap<String, ArtifactInformation> modArtifacts;
 
     private final Map<String, ArtifactInformation> generatorArtifacts;
 
-    private final Map<String, ArtifactInformation> modGeneratorArtifacts;
+    private final HashTrieMap<String, ArtifactInformation> modGeneratorArtifacts;
 
     private final Map<MetaKey, CacheEntryInformation> cacheEntries;
 
-    private final Map<MetaKey, CacheEntryInformation> modCacheEntries;
+    private final HashTrieMap<MetaKey, CacheEntryInformation> modCacheEntries;
+
+    /**
+     * The ids of all artifacts which got added, changed or removed in this
+     * context
+     */
+    private final Set<String> modifiedArtifacts = new HashSet<> ();
+
+    /**
+     * The artifacts at the time the aggregators ran the last time, or
+     * {@code null} if unknown
+     * <p>
+     * A loaded state is its own baseline, since the aggregators run as part of
+     * every modification, before the state gets persisted.
+     * </p>
+     */
+    private Map<String, ArtifactInformation> aggregatedArtifacts;
+
+    /**
+     * The cache entries at the time the aggregators ran the last time, or
+     * {@code null} if unknown
+     */
+    private Map<MetaKey, CacheEntryInformation> aggregatedCacheEntries;
 
     private final Builder state;
 
@@ -94,11 +126,17 @@ public class ModifyContextImpl implements ModifyContext, AspectableContext
 
     private CacheStore.Transaction cacheTransaction;
 
+    /**
+     * Lock for the cache entries, which may be created by multiple aggregators
+     * concurrently
+     */
+    private final Object cacheLock = new Object ();
+
     private final AspectContextImpl aspectContext;
 
-    private SortedMap<MetaKey, String> metaDataCache;
+    private volatile SortedMap<MetaKey, String> metaDataCache;
 
-    private IdTransformer idTransformer;
+    private volatile IdTransformer idTransformer;
 
     /**
      * Create a new empty modification context
@@ -125,11 +163,11 @@ public class ModifyContextImpl implements ModifyContext, AspectableContext
         // main collections
 
         this.modAspectStates = new TreeMap<> ();
-        this.modCacheEntries = new HashMap<> ();
-        this.modArtifacts = new HashMap<> ();
-        this.modGeneratorArtifacts = new HashMap<> ();
-        this.modExtractedMetadata = new HashMap<> ();
-        this.modProvidedMetadata = new HashMap<> ();
+        this.modCacheEntries = new HashTrieMap<> ();
+        this.modArtifacts = new HashTrieMap<> ();
+        this.modGeneratorArtifacts = new HashTrieMap<> ();
+        this.modExtractedMetadata = new HashTrieMap<> ();
+        this.modProvidedMetadata = new HashTrieMap<> ();
 
         // create unmodifiable collections
 
@@ -158,11 +196,18 @@ public class ModifyContextImpl implements ModifyContext, AspectableContext
         // main collections
 
         this.modAspectStates = new TreeMap<> ( aspectStates );
-        this.modCacheEntries = new HashMap<> ( cacheEntries );
-        this.modArtifacts = new HashMap<> ( artifacts );
-        this.modGeneratorArtifacts = this.modArtifacts.values ().stream ().filter ( art -> art.is ( FACET_GENERATOR ) ).collect ( toMap ( ArtifactInformation::getId, a -> a ) );
-        this.modExtractedMetadata = new HashMap<> ( extractedMetaData );
-        this.modProvidedMetadata = new HashMap<> ( providedMetaData );
+        this.modCacheEntries = new HashTrieMap<> ( cacheEntries );
+        this.modArtifacts = new HashTrieMap<> ( artifacts );
+        this.modGeneratorArtifacts = new HashTrieMap<> ();
+        for ( final ArtifactInformation art : this.modArtifacts.values () )
+        {
+            if ( art.is ( FACET_GENERATOR ) )
+            {
+                this.modGeneratorArtifacts.put ( art.getId (), art );
+            }
+        }
+        this.modExtractedMetadata = new HashTrieMap<> ( extractedMetaData );
+        this.modProvidedMetadata = new HashTrieMap<> ( providedMetaData );
 
         // create unmodifiable collections
 
@@ -173,6 +218,10 @@ public class ModifyContextImpl implements ModifyContext, AspectableContext
         this.extractedMetadata = Collections.unmodifiableMap ( this.modExtractedMetadata );
         this.providedMetadata = Collections.unmodifiableMap ( this.modProvidedMetadata );
 
+        // the persisted state already is the result of an aggregation
+
+        markAggregated ();
+
         // aspect context
 
         this.aspectContext = new AspectContextImpl ( this, Activator.getProcessor () );
@@ -188,14 +237,17 @@ public class ModifyContextImpl implements ModifyContext, AspectableContext
 
         this.state = new Builder ( other.state.build () );
 
-        // main collections
+        // main collections, sharing their structure with the other context
 
         this.modAspectStates = new TreeMap<> ( other.aspectStates );
-        this.modCacheEntries = new HashMap<> ( other.cacheEntries );
-        this.modArtifacts = new HashMap<> ( other.artifacts );
-        this.modGeneratorArtifacts = new HashMap<> ( other.generatorArtifacts );
-        this.modExtractedMetadata = new HashMap<> ( other.extractedMetadata );
-        this.modProvidedMetadata = new HashMap<> ( other.providedMetadata );
+        this.modCacheEntries = new HashTrieMap<> ( other.modCacheEntries );
+        this.modArtifacts = new HashTrieMap<> ( other.modArtifacts );
+        this.modGeneratorArtifacts = new HashTrieMap<> ( other.modGeneratorArtifacts );
+        this.modExtractedMetadata = new HashTrieMap<> ( other.modExtractedMetadata );
+        this.modProvidedMetadata = new HashTrieMap<> ( other.modProvidedMetadata );
+
+        this.aggregatedArtifacts = other.aggregatedArtifacts;
+        this.aggregatedCacheEntries = other.aggregatedCacheEntries;
 
         // create unmodifiable collections
 
@@ -236,7 +288,7 @@ public class ModifyContextImpl implements ModifyContext, AspectableContext
     @Override
     public SortedMap<MetaKey, String> getMetaData ()
     {
-        // TODO: check if this should be synchronized
+        // no need to synchronize, the result will always be the same
 
         if ( this.metaDataCache == null )
         {
@@ -418,6 +470,17 @@ public class ModifyContextImpl implements ModifyContext, AspectableContext
         return t;
     }
 
+    /**
+     * Get the ids of all artifacts which were added, changed or removed since
+     * this context was created
+     *
+     * @return the set of modified artifact ids, never returns {@code null}
+     */
+    public Set<String> getModifiedArtifacts ()
+    {
+        return Collections.unmodifiableSet ( this.modifiedArtifacts );
+    }
+
     public CacheStore.Transaction claimCacheTransaction ()
     {
         final CacheStore.Transaction t = this.cacheTransaction;
@@ -438,6 +501,110 @@ public class ModifyContextImpl implements ModifyContext, AspectableContext
 
         markModified ();
 
+        checkParent ( parentId );
+
+        return Exceptions.wrapException ( () -> this.aspectContext.createArtifact ( parentId, source, name, providedMetaData ) );
+    }
+
+    @Override
+    public ArtifactInformation createArtifact ( final String parentId, final StagedArtifact source, final String name, final Map<MetaKey, String> providedMetaData )
+    {
+        testLocked ();
+
+        markModified ();
+
+        checkParent ( parentId );
+
+        final Path file = this.store.getStagedPath ( source );
+        if ( file != null )
+        {
+            // staged by our own store, link the file directly and re-use the checksums
+
+            return this.aspectContext.createArtifact ( parentId, file, false, source.getChecksums (), name, providedMetaData );
+        }
+
+        final Path known = Exceptions.wrapException ( () -> linkKnownContent ( source ) );
+        if ( known != null )
+        {
+            // the content is already stored, link it instead of copying it
+
+            try
+            {
+                return this.aspectContext.createArtifact ( parentId, known, true, source.getChecksums (), name, providedMetaData );
+            }
+            finally
+            {
+                Exceptions.wrapException ( () -> {
+                    Files.deleteIfExists ( known );
+                } );
+            }
+        }
+
+        final Holder<ArtifactInformation> result = new Holder<> ();
+
+        final boolean found = Exceptions.wrapException ( () -> source.stream ( stream -> {
+            result.value = this.aspectContext.createArtifact ( parentId, stream, name, providedMetaData );
+        } ) );
+
+        if ( !found )
+        {
+            throw new IllegalStateException ( "Staged artifact content is no longer available" );
+        }
+
+        return result.value;
+    }
+
+    /**
+     * Link the content of a foreign staged artifact, if it is already known to
+     * the content store
+     * <p>
+     * The checksum is provided by the foreign source, so it gets verified by
+     * reading the content before it is trusted. This is still a lot cheaper
+     * than writing out the content again.
+     * </p>
+     *
+     * @param source
+     *            the staged artifact
+     * @return the staged file linking to the known content, or {@code null}
+     *         if the content is not known
+     */
+    private Path linkKnownContent ( final StagedArtifact source ) throws IOException
+    {
+        final String sha256 = source.getChecksums ().get ( "sha256" );
+
+        final Path file = this.store.linkContent ( sha256, source.getSize () );
+        if ( file == null )
+        {
+            return null;
+        }
+
+        final Holder<String> actual = new Holder<> ();
+
+        try
+        {
+            source.stream ( stream -> {
+                final HashingInputStream in = new HashingInputStream ( Hashing.sha256 (), stream );
+                ByteStreams.copy ( in, ByteStreams.nullOutputStream () );
+                actual.value = in.hash ().toString ();
+            } );
+        }
+        catch ( final IOException | RuntimeException e )
+        {
+            Files.deleteIfExists ( file );
+            throw e;
+        }
+
+        if ( sha256.equalsIgnoreCase ( actual.value ) )
+        {
+            return file;
+        }
+
+        Files.deleteIfExists ( file );
+        return null;
+    }
+
+    private void checkParent ( final String parentId )
+    {
         if ( parentId != null )
         {
             final ArtifactInformation parent = this.modArtifacts.get ( parentId );
@@ -449,8 +616,6 @@ public class ModifyContextImpl implements ModifyContext, AspectableContext
                 }
             }
         }
-
-        return Exceptions.wrapException ( () -> this.aspectContext.createArtifact ( parentId, source, name, providedMetaData ) );
     }
 
     @Override
@@ -465,6 +630,23 @@ public class ModifyContextImpl implements ModifyContext, AspectableContext
 
     @Override
     public ArtifactInformation createPlainArtifact ( final String parentId, final InputStream source, final String name, final Map<MetaKey, String> providedMetaData, final Set<String> facets, final String virtualizerAspectId )
+    {
+        return internalCreatePlainArtifact ( parentId, id -> this.transaction.create ( id, source ), name, providedMetaData, facets, virtualizerAspectId );
+    }
+
+    @Override
+    public ArtifactInformation createPlainArtifact ( final String parentId, final Path file, final boolean move, final Map<String, String> checksums, final String name, final Map<MetaKey, String> providedMetaData, final Set<String> facets, final String virtualizerAspectId )
+    {
+        return internalCreatePlainArtifact ( parentId, id -> this.transaction.adopt ( id, file, move, checksums ), name, providedMetaData, facets, virtualizerAspectId );
+    }
+
+    @Override
+    public Path createSpoolFile () throws IOException
+    {
+        return this.store.createSpoolFile ();
+    }
+
+    private ArtifactInformation internalCreatePlainArtifact ( final String parentId, final IOFunction<String, Long> creator, final String name, final Map<MetaKey, String> providedMetaData, final Set<String> facets, final String virtualizerAspectId )
     {
         ensureTransaction ();
 
@@ -474,7 +656,7 @@ public class ModifyContextImpl implements ModifyContext, AspectableContext
 
         try
         {
-            final long size = this.transaction.create ( id, source );
+            final long size = creator.apply ( id );
 
             final ArtifactInformation parent;
 
@@ -495,6 +677,7 @@ public class ModifyContextImpl implements ModifyContext, AspectableContext
 
             final ArtifactInformation ai = new ArtifactInformation ( id, parentId, Collections.emptySet (), name, size, Instant.now (), facets, Collections.emptyList (), providedMetaData, null, virtualizerAspectId );
             this.modArtifacts.put ( ai.getId (), ai );
+            this.modifiedArtifacts.add ( ai.getId () );
 
             if ( ai.is ( FACET_GENERATOR ) )
             {
@@ -529,6 +712,7 @@ public class ModifyContextImpl implements ModifyContext, AspectableContext
 
         final ArtifactInformation art = manipulator.build ();
         this.modArtifacts.put ( art.getId (), art );
+        this.modifiedArtifacts.add ( art.getId () );
         return art;
     }
 
@@ -545,6 +729,8 @@ public class ModifyContextImpl implements ModifyContext, AspectableContext
             return result;
         }
 
+        this.modifiedArtifacts.add ( id );
+
         // remove from generators
 
         this.modGeneratorArtifacts.remove ( id );
@@ -653,20 +839,42 @@ public class ModifyContextImpl implements ModifyContext, AspectableContext
         }
     }
 
+    @Override
+    public ArtifactContent openContent ( final String artifactId )
+    {
+        if ( this.transaction != null )
+        {
+            // reference from transaction
+            return this.transaction.reference ( artifactId );
+        }
+        else
+        {
+            // reference from store
+            return this.store.reference ( artifactId );
+        }
+    }
+
     @Override
     public boolean streamCacheEntry ( final MetaKey key, final IOConsumer<CacheEntry> consumer ) throws IOException
     {
-        final CacheEntryInformation entry = this.cacheEntries.get ( key );
+        final CacheEntryInformation entry;
+        final CacheStore.Transaction cacheTransaction;
+
+        synchronized ( this.cacheLock )
+        {
+            entry = this.cacheEntries.get ( key );
+            cacheTransaction = this.cacheTransaction;
+        }
 
         if ( entry == null )
         {
             return false;
         }
 
-        if ( this.cacheTransaction != null )
+        if ( cacheTransaction != null )
         {
             // stream from transaction
-            return this.cacheTransaction.stream ( key, stream -> {
+            return cacheTransaction.stream ( key, stream -> {
                 consumer.accept ( new CacheEntry ( entry, stream ) );
             } );
         }
@@ -715,6 +923,8 @@ public class ModifyContextImpl implements ModifyContext, AspectableContext
         // clear extracted channel meta data
 
         this.modExtractedMetadata.clear ();
+        this.aggregatedArtifacts = null;
+        this.aggregatedCacheEntries = null;
 
         // clear meta data cache
 
@@ -755,7 +965,13 @@ public class ModifyContextImpl implements ModifyContext, AspectableContext
     }
 
     @Override
-    public void refreshAspects ( Set<String> aspectIds )
+    public void refreshAspects ( final Set<String> aspectIds )
+    {
+        refreshAspects ( aspectIds, ProgressMonitor.NONE );
+    }
+
+    @Override
+    public void refreshAspects ( Set<String> aspectIds, final ProgressMonitor monitor )
     {
         testLocked ();
 
@@ -766,7 +982,7 @@ public class ModifyContextImpl implements ModifyContext, AspectableContext
             aspectIds = new HashSet<> ( this.aspectStates.keySet () );
         }
 
-        this.aspectContext.refreshAspects ( aspectIds );
+        this.aspectContext.refreshAspects ( aspectIds, monitor );
 
         postAspectEvents ( aspectIds, "refresh" );
     }
@@ -865,14 +1081,98 @@ public class ModifyContextImpl implements ModifyContext, AspectableContext
     @Override
     public void createCacheEntry ( final MetaKey key, final String name, final String mimeType, final IOConsumer<OutputStream> creator ) throws IOException
     {
-        ensureCacheTransaction ();
+        final CacheStore.Transaction cacheTransaction;
+        synchronized ( this.cacheLock )
+        {
+            ensureCacheTransaction ();
+            cacheTransaction = this.cacheTransaction;
+        }
+
+        // write without holding the lock
 
-        final long size = this.cacheTransaction.put ( key, creator );
+        final long size = cacheTransaction.put ( key, creator );
 
         final CacheEntryInformation entry = new CacheEntryInformation ( key, name, size, mimeType, Instant.now () );
-        this.modCacheEntries.put ( key, entry );
 
-        markModified ();
+        synchronized ( this.cacheLock )
+        {
+            this.modCacheEntries.put ( key, entry );
+            markModified ();
+        }
+    }
+
+    @Override
+    public Map<String, ArtifactInformation> getAggregatedArtifacts ()
+    {
+        return this.aggregatedArtifacts;
+    }
+
+    @Override
+    public void markAggregated ()
+    {
+        // the copy shares the structure with the current artifacts and will never be modified
+
+        this.aggregatedArtifacts = Collections.unmodifiableMap ( new HashTrieMap<> ( this.modArtifacts ) );
+        this.aggregatedCacheEntries = Collections.unmodifiableMap ( new HashTrieMap<> ( this.modCacheEntries ) );
+    }
+
+    @Override
+    public void retainCacheEntries ( final String namespace ) throws IOException
+    {
+        if ( this.aggregatedCacheEntries == null )
+        {
+            return;
+        }
+
+        for ( final CacheEntryInformation entry : this.aggregatedCacheEntries.values () )
+        {
+            final MetaKey key = entry.getKey ();
+
+            if ( !namespace.equals ( key.getNamespace () ) )
+            {
+                continue;
+            }
+
+            synchronized ( this.cacheLock )
+            {
+                if ( this.cacheTransaction != null && this.modCacheEntries.containsKey ( key ) )
+                {
+                    // already part of the transaction
+                    continue;
+                }
+
+                ensureCacheTransaction ();
+
+                if ( this.cacheTransaction.keep ( key ) )
+                {
+                    this.modCacheEntries.put ( key, entry );
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean streamAggregatedCacheEntry ( final MetaKey key, final IOConsumer<InputStream> consumer ) throws IOException
+    {
+        if ( this.aggregatedCacheEntries == null || !this.aggregatedCacheEntries.containsKey ( key ) )
+        {
+            return false;
+        }
+
+        final boolean current;
+        synchronized ( this.cacheLock )
+        {
+            current = this.modCacheEntries.containsKey ( key );
+        }
+
+        if ( current )
+        {
+            return streamCacheEntry ( key, entry -> consumer.accept ( entry.getStream () ) );
+        }
+
+        // dropped by the current cache transaction, but still committed
+
+        return this.cacheStore.stream ( key, consumer );
     }
 
     @Override
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.channel.apm;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.packagedrone.repo.MetaDataMap;
+import org.eclipse.packagedrone.repo.MetaKey;
+
+/**
+ * Streaming decoder of the binary channel state format
+ * <p>
+ * Records are read one at a time, so only the current record is held in
+ * memory, together with the string table.
+ * </p>
+ *
+ * @see StateEncoder
+ */
+class StateDecoder
+{
+    private final DataInputStream in;
+
+    private final List<String> strings = new ArrayList<> ();
+
+    private byte[] buffer = new byte[8 * 1024];
+
+    private int position;
+
+    private int limit;
+
+    public StateDecoder ( final InputStream in ) throws IOException
+    {
+        this.in = new DataInputStream ( in );
+
+        final byte[] magic = new byte[StateEncoder.MAGIC.length];
+        this.in.readFully ( magic );
+
+        if ( !isBinary ( magic ) )
+        {
+            throw new IOException ( "Invalid binary state header" );
+        }
+
+        final int version = this.in.readUnsignedByte ();
+        if ( version != StateEncoder.VERSION )
+        {
+            throw new IOException ( String.format ( "Unsupported binary state version: %s", version ) );
+        }
+    }
+
+    /**
+     * Check if the provided header is the header of the binary format
+     *
+     * @param header
+     *            the first bytes of the content
+     * @return {@code true} if the content is in the binary format
+     */
+    public static boolean isBinary ( final byte[] header )
+    {
+        if ( header.length < StateEncoder.MAGIC.length )
+        {
+            return false;
+        }
+
+        for ( int i = 0; i < StateEncoder.MAGIC.length; i++ )
+        {
+            if ( header[i] != StateEncoder.MAGIC[i] )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Read the next record
+     *
+     * @return the type of the record
+     * @throws IOException
+     *             if the record could not be read
+     */
+    public int nextRecord () throws IOException
+    {
+        final int type;
+        final int length;
+
+        try
+        {
+            type = this.in.readUnsignedByte ();
+            length = this.in.readInt ();
+        }
+        catch ( final EOFException e )
+        {
+            throw new IOException ( "Unexpected end of binary state", e );
+        }
+
+        if ( length < 0 )
+        {
+            throw new IOException ( String.format ( "Invalid record length: %s", length ) );
+        }
+
+        if ( this.buffer.length < length )
+        {
+            this.buffer = new byte[Math.max ( length, this.buffer.length * 2 )];
+        }
+
+        this.in.readFully ( this.buffer, 0, length );
+
+        this.position = 0;
+        this.limit = length;
+
+        return type;
+    }
+
+    /**
+     * Check that the current record was fully consumed
+     */
+    public void endRecord () throws IOException
+    {
+        if ( this.position != this.limit )
+        {
+            throw new IOException ( String.format ( "Record not fully consumed - position: %s, length: %s", this.position, this.limit ) );
+        }
+    }
+
+    private void require ( final int bytes ) throws IOException
+    {
+        if ( this.position + bytes > this.limit )
+        {
+            throw new IOException ( "Record truncated" );
+        }
+    }
+
+    public int readByte () throws IOException
+    {
+        require ( 1 );
+        return this.buffer[this.position++] & 0xFF;
+    }
+
+    public boolean readBoolean () throws IOException
+    {
+        return readByte () != 0;
+    }
+
+    public long readVarLong () throws IOException
+    {
+        long result = 0;
+        for ( int shift = 0; shift < 64; shift += 7 )
+        {
+            final int b = readByte ();
+            result |= (long) ( b & 0x7F ) << shift;
+            if ( ( b & 0x80 ) == 0 )
+            {
+                return result;
+            }
+        }
+        throw new IOException ( "Invalid variable length number" );
+    }
+
+    public int readVarInt () throws IOException
+    {
+        final long value = readVarLong ();
+        if ( value > Integer.MAX_VALUE )
+        {
+            throw new IOException ( String.format ( "Number out of range: %s", value ) );
+        }
+        return (int)value;
+    }
+
+    public String readString () throws IOException
+    {
+        final int ref = readVarInt ();
+
+        if ( ref == StateEncoder.STRING_NULL )
+        {
+            return null;
+        }
+
+        if ( ref == StateEncoder.STRING_NEW )
+        {
+            final int length = readVarInt ();
+            require ( length );
+
+            final String result = new String ( this.buffer, this.position, length, StandardCharsets.UTF_8 );
+            this.position += length;
+
+            this.strings.add ( result );
+            return result;
+        }
+
+        final int index = ref - StateEncoder.STRING_TABLE_OFFSET;
+        if ( index >= this.strings.size () )
+        {
+            throw new IOException ( String.format ( "Invalid string reference: %s", ref ) );
+        }
+
+        return this.strings.get ( index );
+    }
+
+    public Instant readTimestamp () throws IOException
+    {
+        if ( !readBoolean () )
+        {
+            return null;
+        }
+        return Instant.ofEpochMilli ( readVarLong () );
+    }
+
+    public MetaKey readMetaKey () throws IOException
+    {
+        final String namespace = readString ();
+        final String key = readString ();
+
+        if ( namespace == null || key == null )
+        {
+            throw new IOException ( "Invalid meta key" );
+        }
+
+        return MetaKey.intern ( namespace, key );
+    }
+
+    public Set<String> readStringSet () throws IOException
+    {
+        final int count = readVarInt ();
+
+        final Set<String> result = new HashSet<> ( count );
+        for ( int i = 0; i < count; i++ )
+        {
+            result.add ( readString () );
+        }
+        return result;
+    }
+
+    public Map<MetaKey, String> readMetaData () throws IOException
+    {
+        final int count = readVarInt ();
+
+        if ( count == 0 )
+        {
+            return MetaDataMap.EMPTY;
+        }
+
+        final Map<MetaKey, String> result = new HashMap<> ( count );
+        for ( int i = 0; i < count; i++ )
+        {
+            final MetaKey key = readMetaKey ();
+            result.put ( key, readString () );
+        }
+        return MetaDataMap.copyOf ( result );
+    }
+}
@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.channel.apm;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.packagedrone.repo.MetaKey;
+
+/**
+ * Encoder of the binary channel state format
+ * <p>
+ * The binary format starts with the {@link #MAGIC} bytes, followed by the
+ * format {@link #VERSION}. After that, a sequence of records follows, each
+ * starting with the record type and the length of the record payload. The
+ * last record is of type {@link #RECORD_END}.
+ * </p>
+ * <p>
+ * Numbers are encoded as variable length integers. Strings are collected in a
+ * string table, which is built while writing. The first occurrence of a string
+ * is written in full, every further occurrence only refers to the index in
+ * the table. So a decoder can re-build the string table while reading.
+ * </p>
+ *
+ * @see StateDecoder
+ */
+class StateEncoder
+{
+    static final byte[] MAGIC = { 'P', 'D', 'C', 'S' };
+
+    static final int VERSION = 1;
+
+    static final int RECORD_END = 0;
+
+    static final int RECORD_CHANNEL = 1;
+
+    static final int RECORD_ASPECTS = 2;
+
+    static final int RECORD_ARTIFACT = 3;
+
+    static final int RECORD_CACHE_ENTRY = 4;
+
+    static final int RECORD_VALIDATION_MESSAGES = 5;
+
+    static final int RECORD_METADATA = 6;
+
+    /**
+     * String reference to {@code null}
+     */
+    static final int STRING_NULL = 0;
+
+    /**
+     * String reference introducing a new string
+     */
+    static final int STRING_NEW = 1;
+
+    /**
+     * The first string reference pointing into the string table
+     */
+    static final int STRING_TABLE_OFFSET = 2;
+
+    private final DataOutputStream out;
+
+    private final Map<String, Integer> strings = new HashMap<> ();
+
+    private byte[] buffer = new byte[8 * 1024];
+
+    private int length;
+
+    private int recordType = -1;
+
+    public StateEncoder ( final OutputStream out ) throws IOException
+    {
+        this.out = new DataOutputStream ( new BufferedOutputStream ( out, 64 * 1024 ) );
+
+        this.out.write ( MAGIC );
+        this.out.writeByte ( VERSION );
+    }
+
+    public void beginRecord ( final int recordType )
+    {
+        if ( this.recordType >= 0 )
+        {
+            throw new IllegalStateException ( "Record already started" );
+        }
+
+        this.recordType = recordType;
+        this.length = 0;
+    }
+
+    public void endRecord () throws IOException
+    {
+        if ( this.recordType < 0 )
+        {
+            throw new IllegalStateException ( "No record started" );
+        }
+
+        this.out.writeByte ( this.recordType );
+        this.out.writeInt ( this.length );
+        this.out.write ( this.buffer, 0, this.length );
+
+        this.recordType = -1;
+    }
+
+    /**
+     * Write the end record and flush the underlying stream
+     */
+    public void finish () throws IOException
+    {
+        beginRecord ( RECORD_END );
+        endRecord ();
+        this.out.flush ();
+    }
+
+    private void ensure ( final int bytes )
+    {
+        if ( this.length + bytes > this.buffer.length )
+        {
+            this.buffer = Arrays.copyOf ( this.buffer, Math.max ( this.buffer.length * 2, this.length + bytes ) );
+        }
+    }
+
+    public void writeByte ( final int value )
+    {
+        ensure ( 1 );
+        this.buffer[this.length++] = (byte)value;
+    }
+
+    public void writeBoolean ( final boolean value )
+    {
+        writeByte ( value ? 1 : 0 );
+    }
+
+    public void writeVarLong ( long value )
+    {
+        ensure ( 10 );
+        while ( ( value & ~0x7FL ) != 0 )
+        {
+            this.buffer[this.length++] = (byte) ( value & 0x7F | 0x80 );
+            value >>>= 7;
+        }
+        this.buffer[this.length++] = (byte)value;
+    }
+
+    public void writeVarInt ( final int value )
+    {
+        writeVarLong ( value & 0xFFFFFFFFL );
+    }
+
+    public void writeString ( final String value )
+    {
+        if ( value == null )
+        {
+            writeVarInt ( STRING_NULL );
+            return;
+        }
+
+        final Integer index = this.strings.get ( value );
+        if ( index != null )
+        {
+            writeVarInt ( index + STRING_TABLE_OFFSET );
+            return;
+        }
+
+        this.strings.put ( value, this.strings.size () );
+
+        final byte[] data = value.getBytes ( StandardCharsets.UTF_8 );
+
+        writeVarInt ( STRING_NEW );
+        writeVarInt ( data.length );
+
+        ensure ( data.length );
+        System.arraycopy ( data, 0, this.buffer, this.length, data.length );
+        this.length += data.length;
+    }
+
+    public void writeTimestamp ( final Instant timestamp )
+    {
+        if ( timestamp == null )
+        {
+            writeBoolean ( false );
+        }
+        else
+        {
+            writeBoolean ( true );
+            writeVarLong ( timestamp.toEpochMilli () );
+        }
+    }
+
+    public void writeMetaKey ( final MetaKey key )
+    {
+        writeString ( key.getNamespace () );
+        writeString ( key.getKey () );
+    }
+
+    public void writeStrings ( final Collection<String> values )
+    {
+        writeVarInt ( values.size () );
+        for ( final String value : values )
+        {
+            writeString ( value );
+        }
+    }
+
+    public void writeMetaData ( final Map<MetaKey, String> metadata )
+    {
+        if ( metadata == null )
+        {
+            writeVarInt ( 0 );
+            return;
+        }
+
+        int count = 0;
+        for ( final String value : metadata.values () )
+        {
+            if ( value != null )
+            {
+                count++;
+            }
+        }
+
+        writeVarInt ( count );
+
+        for ( final Map.Entry<MetaKey, String> entry : metadata.entrySet () )
+        {
+            if ( entry.getValue () == null )
+            {
+                continue;
+            }
+
+            writeMetaKey ( entry.getKey () );
+            writeString ( entry.getValue () );
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.channel.apm.aspect;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
+
+/**
+ * The changes of the channel artifacts between two aggregations
+ * <p>
+ * Artifact information instances are immutable and get replaced when an
+ * artifact changes. So comparing the instances is enough for detecting
+ * changes.
+ * </p>
+ */
+public class AggregationDelta
+{
+    private final Map<String, ArtifactInformation> previous;
+
+    private final List<ArtifactInformation> added = new ArrayList<> ();
+
+    private final List<ArtifactInformation> changed = new ArrayList<> ();
+
+    private final List<ArtifactInformation> removed = new ArrayList<> ();
+
+    public AggregationDelta ( final Map<String, ArtifactInformation> previous, final Map<String, ArtifactInformation> current )
+    {
+        this.previous = previous;
+
+        for ( final ArtifactInformation art : current.values () )
+        {
+            final ArtifactInformation prev = previous.get ( art.getId () );
+            if ( prev == null )
+            {
+                this.added.add ( art );
+            }
+            else if ( prev != art )
+            {
+                this.changed.add ( art );
+            }
+        }
+
+        for ( final ArtifactInformation art : previous.values () )
+        {
+            if ( !current.containsKey ( art.getId () ) )
+            {
+                this.removed.add ( art );
+            }
+        }
+    }
+
+    public Collection<ArtifactInformation> getAdded ()
+    {
+        return Collections.unmodifiableList ( this.added );
+    }
+
+    public Collection<ArtifactInformation> getChanged ()
+    {
+        return Collections.unmodifiableList ( this.changed );
+    }
+
+    public Collection<ArtifactInformation> getRemoved ()
+    {
+        return Collections.unmodifiableList ( this.removed );
+    }
+
+    public ArtifactInformation getPrevious ( final String artifactId )
+    {
+        return this.previous.get ( artifactId );
+    }
+
+    public boolean isEmpty ()
+    {
+        return this.added.isEmpty () && this.changed.isEmpty () && this.removed.isEmpty ();
+    }
+}
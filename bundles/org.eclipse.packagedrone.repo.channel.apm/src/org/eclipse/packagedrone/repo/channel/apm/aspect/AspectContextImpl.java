@@ -10,7 +10,6 @@
  *******************************************************************************/
 package org.eclipse.packagedrone.repo.channel.apm.aspect;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -18,6 +17,7 @@ import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -30,9 +30,12 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.zip.ZipFile;
 
 import org.eclipse.packagedrone.repo.ChannelAspectInformation;
 import org.eclipse.packagedrone.repo.MetaKey;
@@ -40,15 +43,19 @@ import org.eclipse.packagedrone.repo.Severity;
 import org.eclipse.packagedrone.repo.aspect.ChannelAspect;
 import org.eclipse.packagedrone.repo.aspect.ChannelAspectProcessor;
 import org.eclipse.packagedrone.repo.aspect.aggregate.AggregationContext;
+import org.eclipse.packagedrone.repo.aspect.aggregate.ChannelAggregator;
+import org.eclipse.packagedrone.repo.aspect.aggregate.IncrementalChannelAggregator;
 import org.eclipse.packagedrone.repo.aspect.extract.Extractor;
 import org.eclipse.packagedrone.repo.aspect.listener.PostAddContext;
+import org.eclipse.packagedrone.repo.channel.ArtifactContent;
 import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
+import org.eclipse.packagedrone.repo.channel.ChannelDetails;
 import org.eclipse.packagedrone.repo.channel.ValidationMessage;
 import org.eclipse.packagedrone.repo.channel.apm.internal.Activator;
+import org.eclipse.packagedrone.repo.channel.provider.ProgressMonitor;
 import org.eclipse.packagedrone.repo.event.AddedEvent;
 import org.eclipse.packagedrone.repo.event.RemovedEvent;
 import org.eclipse.packagedrone.utils.Exceptions;
-import org.eclipse.packagedrone.utils.Holder;
 import org.eclipse.packagedrone.utils.io.IOConsumer;
 import org.eclipse.packagedrone.utils.profiler.Profile;
 import org.eclipse.packagedrone.utils.profiler.Profile.Handle;
@@ -67,6 +74,12 @@ public class AspectContextImpl
 {
     private final static Logger logger = LoggerFactory.getLogger ( AspectContextImpl.class );
 
+    /**
+     * The number of artifacts which get extracted concurrently, before the
+     * results get applied to the channel
+     */
+    private static final int REFRESH_BATCH_SIZE = Integer.getInteger ( "drone.aspect.refreshBatchSize", 256 );
+
     @FunctionalInterface
     public interface ArtifactCreator
     {
@@ -85,6 +98,11 @@ public class AspectContextImpl
 
     private final RegenerationTracker tracker;
 
+    /**
+     * Force a full aggregation the next time the aggregators run
+     */
+    private boolean fullAggregation;
+
     public AspectContextImpl ( final AspectableContext context, final ChannelAspectProcessor processor )
     {
         this.context = context;
@@ -145,31 +163,217 @@ public class AspectContextImpl
         } );
     }
 
+    /**
+     * The run of a single aggregator
+     */
+    private static class AggregatorRun
+    {
+        private final ChannelAspect aspect;
+
+        private final ChannelAggregator aggregator;
+
+        private final List<ValidationMessage> messages = new CopyOnWriteArrayList<> ();
+
+        private Map<String, String> result;
+
+        public AggregatorRun ( final ChannelAspect aspect, final ChannelAggregator aggregator )
+        {
+            this.aspect = aspect;
+            this.aggregator = aggregator;
+        }
+    }
+
     protected void runAggregators ()
     {
         logger.debug ( "Running aggregators" );
 
         Profile.run ( this, "runAggregators", () -> {
 
-            final Map<MetaKey, String> metaData = new HashMap<> ();
-            final List<ValidationMessage> messages = new CopyOnWriteArrayList<> ();
+            final AggregationDelta delta = makeDelta ();
+
+            // capture the state which is not safe to be accessed by multiple threads
+
+            final String channelId = this.context.getChannelId ();
+            final ChannelDetails details = this.context.getChannelDetails ();
+            final Collection<ValidationMessage> previousMessages = new ArrayList<> ( this.context.getValidationMessages () );
 
+            // collect aggregators
+
+            final List<AggregatorRun> runs = new ArrayList<> ();
             this.processor.process ( this.aspectStates.keySet (), ChannelAspect::getChannelAggregator, ( aspect, aggregator ) -> {
+                runs.add ( new AggregatorRun ( aspect, aggregator ) );
+            } );
 
-                logger.trace ( "\tRunning aggregator: {}", aspect.getId () );
+            // run aggregators, each one only creates its own cache entries and meta data
 
-                final AggregationContext ctx = new AggregationContextImpl ( this.context, aspect.getId (), this.context.getChannelId (), this.context::getChannelDetails, messages::add );
+            runAll ( runs, run -> aggregate ( run, channelId, details, previousMessages, delta ) );
 
-                final Map<String, String> result = Exceptions.wrapException ( () -> aggregator.aggregateMetaData ( ctx ) );
+            // merge in the order of the aspects
 
-                mergeNamespaceMetaData ( aspect, result, metaData );
-            } );
+            final Map<MetaKey, String> metaData = new HashMap<> ();
+            final List<ValidationMessage> messages = new CopyOnWriteArrayList<> ();
+
+            for ( final AggregatorRun run : runs )
+            {
+                mergeNamespaceMetaData ( run.aspect, run.result, metaData );
+                messages.addAll ( run.messages );
+            }
 
             this.context.setExtractedMetaData ( metaData );
             this.context.setValidationMessages ( messages );
+
+            this.context.markAggregated ();
+            this.fullAggregation = false;
         } );
     }
 
+    @FunctionalInterface
+    private interface Runner<T>
+    {
+        public void run ( T run ) throws Exception;
+    }
+
+    /**
+     * Run all aspect operations
+     * <p>
+     * If more than one operation has to be run, the operations run
+     * concurrently in the aspect pool. This method only returns after all
+     * operations are finished, even if one failed.
+     * </p>
+     */
+    private static <T> void runAll ( final List<T> runs, final Runner<T> runner )
+    {
+        final ForkJoinPool pool = Activator.getAspectPool ();
+
+        if ( pool == null || runs.size () < 2 )
+        {
+            for ( final T run : runs )
+            {
+                Exceptions.wrapException ( () -> runner.run ( run ) );
+            }
+            return;
+        }
+
+        // aspects may rely on the context class loader of the caller
+
+        final ClassLoader classLoader = Thread.currentThread ().getContextClassLoader ();
+
+        final List<ForkJoinTask<Void>> tasks = new ArrayList<> ( runs.size () );
+        for ( final T run : runs )
+        {
+            tasks.add ( pool.submit ( () -> {
+                final Thread thread = Thread.currentThread ();
+                final ClassLoader oldClassLoader = thread.getContextClassLoader ();
+                thread.setContextClassLoader ( classLoader );
+                try
+                {
+                    runner.run ( run );
+                    return null;
+                }
+                finally
+                {
+                    thread.setContextClassLoader ( oldClassLoader );
+                }
+            } ) );
+        }
+
+        RuntimeException error = null;
+
+        for ( final ForkJoinTask<Void> task : tasks )
+        {
+            try
+            {
+                task.join ();
+            }
+            catch ( final RuntimeException e )
+            {
+                if ( error == null )
+                {
+                    error = e;
+                }
+                else
+                {
+                    error.addSuppressed ( e );
+                }
+            }
+        }
+
+        if ( error != null )
+        {
+            throw error;
+        }
+    }
+
+    /**
+     * Make the delta since the last aggregation
+     *
+     * @return the delta, or {@code null} if a full aggregation is required
+     */
+    private AggregationDelta makeDelta ()
+    {
+        if ( this.fullAggregation )
+        {
+            return null;
+        }
+
+        final Map<String, ArtifactInformation> previous = this.context.getAggregatedArtifacts ();
+        if ( previous == null )
+        {
+            return null;
+        }
+
+        return new AggregationDelta ( previous, this.context.getArtifacts () );
+    }
+
+    private void aggregate ( final AggregatorRun run, final String channelId, final ChannelDetails details, final Collection<ValidationMessage> previousMessages, final AggregationDelta delta ) throws Exception
+    {
+        final String aspectId = run.aspect.getId ();
+
+        logger.trace ( "\tRunning aggregator: {}", aspectId );
+
+        try ( Handle handle = Profile.start ( "processAspect|" + aspectId ) )
+        {
+            if ( delta != null && run.aggregator instanceof IncrementalChannelAggregator )
+            {
+                final Map<String, String> result = getNamespaceMetaData ( aspectId, this.context.getExtractedMetaData () );
+                final List<ValidationMessage> incrementalMessages = new CopyOnWriteArrayList<> ();
+
+                final IncrementalAggregationContextImpl ctx = new IncrementalAggregationContextImpl ( this.context, aspectId, channelId, () -> details, incrementalMessages::add, delta, previousMessages );
+
+                if ( ( (IncrementalChannelAggregator)run.aggregator ).aggregateChanges ( ctx, result ) )
+                {
+                    // cache entries which did not get replaced must survive the cache transaction
+
+                    this.context.retainCacheEntries ( aspectId );
+
+                    run.messages.addAll ( incrementalMessages );
+                    run.result = result;
+                    return;
+                }
+
+                logger.debug ( "Aggregator requested full aggregation: {}", aspectId );
+            }
+
+            final AggregationContext ctx = new AggregationContextImpl ( this.context, aspectId, channelId, () -> details, run.messages::add );
+            run.result = run.aggregator.aggregateMetaData ( ctx );
+        }
+    }
+
+    private static Map<String, String> getNamespaceMetaData ( final String namespace, final Map<MetaKey, String> metaData )
+    {
+        final Map<String, String> result = new HashMap<> ();
+
+        for ( final Map.Entry<MetaKey, String> entry : metaData.entrySet () )
+        {
+            if ( namespace.equals ( entry.getKey ().getNamespace () ) )
+            {
+                result.put ( entry.getKey ().getKey (), entry.getValue () );
+            }
+        }
+
+        return result;
+    }
+
     protected void runRegeneration ( final Set<String> artifactIds )
     {
         logger.debug ( "Running regeneration: {}", artifactIds );
@@ -191,6 +395,8 @@ public class AspectContextImpl
 
             this.tracker.run ( () -> {
 
+                this.fullAggregation = true;
+
                 // remove all virtualized
 
                 removeVirtualized ();
@@ -209,20 +415,9 @@ public class AspectContextImpl
                     }
                 }
 
-                // run extractors and virtualizers at the same time
-
-                for ( final ArtifactInformation art : this.context.getArtifacts ().values ().toArray ( new ArtifactInformation[this.context.getArtifacts ().size ()] ) )
-                {
-                    doStreamedRun ( art.getId (), path -> {
-
-                        // run added extractors
-
-                        final ArtifactInformation updatedArt = extractFor ( aspectIds, art, path );
+                // run added extractors and re-create all virtual
 
-                        // re-create all virtual
-                        virtualize ( updatedArt, path, this.aspectStates.keySet () );
-                    } );
-                }
+                refreshArtifacts ( aspectIds, ProgressMonitor.NONE );
 
                 // -> flush regeneration
             } );
@@ -241,6 +436,8 @@ public class AspectContextImpl
 
                 this.tracker.run ( () -> {
 
+                    this.fullAggregation = true;
+
                     // remove all virtualized
 
                     removeVirtualized ();
@@ -295,7 +492,15 @@ public class AspectContextImpl
         return filtered;
     }
 
-    public void refreshAspects ( final Set<String> aspectIds )
+    /**
+     * Refresh aspects
+     *
+     * @param aspectIds
+     *            the aspects to refresh, {@code null} or empty for all
+     * @param monitor
+     *            the monitor receiving the number of refreshed artifacts
+     */
+    public void refreshAspects ( final Set<String> aspectIds, final ProgressMonitor monitor )
     {
         final Set<String> effectiveAspectIds;
         if ( aspectIds == null || aspectIds.isEmpty () )
@@ -311,6 +516,8 @@ public class AspectContextImpl
 
             this.tracker.run ( () -> {
 
+                this.fullAggregation = true;
+
                 // remove all virtualized
 
                 removeVirtualized ();
@@ -323,31 +530,51 @@ public class AspectContextImpl
                     this.aspectStates.put ( aspect.getFactoryId (), versionString );
                 }
 
-                // run extractors and virtualizers at the same time
+                // run selected extractors and re-create _all_ virtual
 
-                for ( final ArtifactInformation art : this.context.getArtifacts ().values ().toArray ( new ArtifactInformation[this.context.getArtifacts ().size ()] ) )
-                {
-                    doStreamedRun ( art.getId (), path -> {
+                refreshArtifacts ( aspectIds, monitor );
 
-                        // run selected extractors
+                // -> flush regeneration
+            } );
+
+            // -> aggregators run after with guard
+        } );
+    }
+
+    public ArtifactInformation createArtifact ( final String parentId, final InputStream stream, final String name, final Map<MetaKey, String> providedMetaData ) throws IOException
+    {
+        return this.aggregation.guarded ( () -> {
 
-                        final ArtifactInformation updatedArt = extractFor ( aspectIds, art, path );
+            return this.postAdd.guarded ( () -> {
 
-                        // re-create _all_ virtual
+                return this.tracker.run ( () -> {
 
-                        virtualize ( updatedArt, path, this.aspectStates.keySet () );
+                    return internalCreateArtifact ( parentId, stream, name, providedMetaData, ArtifactType.STORED, null );
 
-                    } );
-                }
+                    // -> flush regeneration
+                } );
 
-                // -> flush regeneration
+                // -> run post add
             } );
 
-            // -> aggregators run after with guard
+            // --> aggregators run after guard
         } );
     }
 
-    public ArtifactInformation createArtifact ( final String parentId, final InputStream stream, final String name, final Map<MetaKey, String> providedMetaData ) throws IOException
+    /**
+     * Create a stored artifact from a file which already is in place
+     * <p>
+     * In contrast to {@link #createArtifact(String, InputStream, String, Map)}
+     * the content will not be spooled to a temporary file first.
+     * </p>
+     *
+     * @param move
+     *            {@code true} if the file may be moved into the store,
+     *            {@code false} if it must stay in place
+     * @param checksums
+     *            the already known checksums of the file, by hash algorithm
+     */
+    public ArtifactInformation createArtifact ( final String parentId, final Path file, final boolean move, final Map<String, String> checksums, final String name, final Map<MetaKey, String> providedMetaData )
     {
         return this.aggregation.guarded ( () -> {
 
@@ -355,7 +582,7 @@ public class AspectContextImpl
 
                 return this.tracker.run ( () -> {
 
-                    return internalCreateArtifact ( parentId, stream, name, providedMetaData, ArtifactType.STORED, null );
+                    return internalCreateArtifact ( parentId, file, move, checksums, name, providedMetaData, ArtifactType.STORED, null );
 
                     // -> flush regeneration
                 } );
@@ -444,7 +671,7 @@ public class AspectContextImpl
     {
         // run generator
 
-        doStreamedRun ( artifact.getId (), file -> {
+        doContentRun ( artifact.getId (), file -> {
             final String generatorId = artifact.getVirtualizerAspectId ();
             final VirtualizerContextImpl ctx = new VirtualizerContextImpl ( generatorId, file, artifact, this.context, this::internalCreateArtifact, ArtifactType.GENERATED );
 
@@ -454,64 +681,79 @@ public class AspectContextImpl
 
     private ArtifactInformation internalCreateArtifact ( final String parentId, final IOConsumer<OutputStream> producer, final String name, final Map<MetaKey, String> providedMetaData, final ArtifactType type, final String virtualizerAspectId ) throws IOException
     {
-        final Path tmp = Files.createTempFile ( "upload-", null );
+        // the spool file is located next to the blobs, so it can be moved into the store
 
-        return this.aggregation.guarded ( () -> {
+        final Path tmp = this.context.createSpoolFile ();
 
-            return this.tracker.run ( () -> {
-
-                try
-                {
-                    // spool out to tmp file
-
-                    try ( OutputStream out = new BufferedOutputStream ( Files.newOutputStream ( tmp ) ) )
-                    {
-                        producer.accept ( out );
-                    }
-
-                    // check veto
+        try
+        {
+            // spool out to tmp file
 
-                    if ( checkVetoAdd ( name, tmp, type.isExternal () ) )
-                    {
-                        return null;
-                    }
+            try ( OutputStream out = new BufferedOutputStream ( Files.newOutputStream ( tmp ) ) )
+            {
+                producer.accept ( out );
+            }
 
-                    // store artifact
+            return internalCreateArtifact ( parentId, tmp, true, Collections.emptyMap (), name, providedMetaData, type, virtualizerAspectId );
+        }
+        finally
+        {
+            Files.deleteIfExists ( tmp );
+        }
+    }
 
-                    ArtifactInformation result;
-                    try ( InputStream in = new BufferedInputStream ( Files.newInputStream ( tmp ) ) )
-                    {
-                        result = this.context.createPlainArtifact ( parentId, in, name, providedMetaData, type.getFacetTypes (), virtualizerAspectId );
-                    }
+    /**
+     * Create an artifact from a file
+     * <p>
+     * If the file may be moved, it will become the content of the artifact.
+     * Otherwise the file is left untouched and it is up to the caller to
+     * clean up. In both cases the content is not copied, unless the file is
+     * located on a different file system than the store.
+     * </p>
+     * <p>
+     * Extractors and virtualizers work on the stored content of the artifact.
+     * </p>
+     * <p>
+     * The caller is responsible for running this inside the aggregation guard
+     * and the regeneration tracker.
+     * </p>
+     */
+    private ArtifactInformation internalCreateArtifact ( final String parentId, final Path file, final boolean move, final Map<String, String> checksums, final String name, final Map<MetaKey, String> providedMetaData, final ArtifactType type, final String virtualizerAspectId )
+    {
+        // check veto
 
-                    // extract meta data
+        if ( checkVetoAdd ( name, file, type.isExternal () ) )
+        {
+            return null;
+        }
 
-                    final ExtractionResult extraction = extractMetaData ( result, tmp, this.aspectStates.keySet () );
-                    result = this.context.setExtractedMetaData ( result.getId (), extraction.metadata );
-                    result = this.context.setValidationMessages ( result.getId (), extraction.messages );
+        // store artifact
 
-                    fireArtifactCreated ( result );
+        ArtifactInformation result = this.context.createPlainArtifact ( parentId, file, move, checksums, name, providedMetaData, type.getFacetTypes (), virtualizerAspectId );
 
-                    // run virtualizers for artifact
+        try ( ArtifactContent content = this.context.openContent ( result.getId () ) )
+        {
+            if ( content == null )
+            {
+                throw new IllegalStateException ( String.format ( "Unable to access content of artifact '%s'", result.getId () ) );
+            }
 
-                    virtualize ( result, tmp, this.aspectStates.keySet () );
+            final Path stored = content.getPath ();
 
-                    // return result
+            // extract meta data
 
-                    return result;
+            final ExtractionResult extraction = extractMetaData ( result, stored, checksums, this.aspectStates.keySet () );
+            result = this.context.setExtractedMetaData ( result.getId (), extraction.metadata );
+            result = this.context.setValidationMessages ( result.getId (), extraction.messages );
 
-                    // -> flush regeneration
-                }
-                finally
-                {
-                    Files.deleteIfExists ( tmp );
-                }
+            fireArtifactCreated ( result );
 
-            } );
+            // run virtualizers for artifact
 
-            // -> aggregators run after with guard
+            virtualize ( result, stored, this.aspectStates.keySet () );
+        }
 
-        } );
+        return result;
     }
 
     private ArtifactInformation internalCreateArtifact ( final String parentId, final InputStream stream, final String name, final Map<MetaKey, String> providedMetaData, final ArtifactType type, final String virtualizerAspectId ) throws IOException
@@ -578,7 +820,7 @@ public class AspectContextImpl
 
         for ( final ArtifactInformation artifact : this.context.getArtifacts ().values ().toArray ( new ArtifactInformation[this.context.getArtifacts ().size ()] ) )
         {
-            doStreamedRun ( artifact.getId (), tmp -> {
+            doContentRun ( artifact.getId (), tmp -> {
                 virtualize ( artifact, tmp, aspects );
             } );
         }
@@ -694,10 +936,73 @@ public class AspectContextImpl
         }
     }
 
-    private ArtifactInformation extractFor ( final Set<String> aspectIds, final ArtifactInformation art, final Path path )
+    /**
+     * The refresh of a single artifact
+     */
+    private static class ArtifactRefresh
+    {
+        private final ArtifactInformation artifact;
+
+        private ExtractionResult extraction;
+
+        public ArtifactRefresh ( final ArtifactInformation artifact )
+        {
+            this.artifact = artifact;
+        }
+    }
+
+    /**
+     * Run extractors for all artifacts and re-create all virtual artifacts
+     * <p>
+     * The artifacts are processed in batches. The extractors of a batch run
+     * concurrently in the aspect pool, as they only read the artifact content.
+     * The results are then applied to the channel, and the virtualizers run,
+     * in the calling thread and in the order of the artifacts.
+     * </p>
+     *
+     * @param aspectIds
+     *            the aspects to run the extractors for
+     */
+    private void refreshArtifacts ( final Set<String> aspectIds, final ProgressMonitor monitor )
     {
-        final ExtractionResult result = extractMetaData ( art, path, aspectIds );
+        final ArtifactInformation[] artifacts = this.context.getArtifacts ().values ().toArray ( new ArtifactInformation[this.context.getArtifacts ().size ()] );
+
+        for ( int start = 0; start < artifacts.length; start += REFRESH_BATCH_SIZE )
+        {
+            final int end = Math.min ( start + REFRESH_BATCH_SIZE, artifacts.length );
+
+            final List<ArtifactRefresh> batch = new ArrayList<> ( end - start );
+            for ( int i = start; i < end; i++ )
+            {
+                batch.add ( new ArtifactRefresh ( artifacts[i] ) );
+            }
+
+            // extract concurrently
+
+            runAll ( batch, refresh -> doContentRun ( refresh.artifact.getId (), path -> {
+                refresh.extraction = extractMetaData ( refresh.artifact, path, Collections.emptyMap (), aspectIds );
+            } ) );
+
+            // apply results and virtualize
+
+            for ( final ArtifactRefresh refresh : batch )
+            {
+                final ArtifactInformation updatedArt = applyExtraction ( aspectIds, refresh.artifact, refresh.extraction );
+
+                doContentRun ( updatedArt.getId (), path -> {
+                    virtualize ( updatedArt, path, this.aspectStates.keySet () );
+                } );
+            }
+
+            monitor.worked ( end - start );
+            monitor.setCurrentTaskName ( String.format ( "Refreshed %s of %s artifacts", end, artifacts.length ) );
 
+            logger.debug ( "Refreshed {} of {} artifacts", end, artifacts.length );
+        }
+    }
+
+    private ArtifactInformation applyExtraction ( final Set<String> aspectIds, final ArtifactInformation art, final ExtractionResult result )
+    {
         final Map<MetaKey, String> updatedMetaData = result.metadata;
         final Map<MetaKey, String> newMetaData = new HashMap<> ( art.getExtractedMetaData () );
 
@@ -729,27 +1034,61 @@ public class AspectContextImpl
         final List<ValidationMessage> messages = new LinkedList<> ();
     }
 
-    private ExtractionResult extractMetaData ( final ArtifactInformation artifact, final Path path, final Collection<String> aspectIds )
+    /**
+     * The run of a single extractor
+     */
+    private static class ExtractorRun
     {
-        final ExtractionResult result = new ExtractionResult ();
-        this.processor.process ( aspectIds, ChannelAspect::getExtractor, ( aspect, extractor ) -> {
+        private final ChannelAspect aspect;
 
-            Exceptions.wrapException ( () -> extractMetaData ( artifact, result.metadata, result.messages, path, aspect, extractor ) );
+        private final Extractor extractor;
 
+        private final Map<String, String> metadata = new HashMap<> ();
+
+        private final List<ValidationMessage> messages = new LinkedList<> ();
+
+        public ExtractorRun ( final ChannelAspect aspect, final Extractor extractor )
+        {
+            this.aspect = aspect;
+            this.extractor = extractor;
+        }
+    }
+
+    private ExtractionResult extractMetaData ( final ArtifactInformation artifact, final Path path, final Map<String, String> checksums, final Collection<String> aspectIds )
+    {
+        final List<ExtractorRun> runs = new ArrayList<> ();
+        this.processor.process ( aspectIds, ChannelAspect::getExtractor, ( aspect, extractor ) -> {
+            runs.add ( new ExtractorRun ( aspect, extractor ) );
         } );
+
+        // run extractors, each one only reads the file and fills its own namespace
+
+        try ( SharedZipFile zipFile = new SharedZipFile ( path ) )
+        {
+            runAll ( runs, run -> extractMetaData ( artifact, path, checksums, zipFile, run ) );
+        }
+
+        // merge in the order of the aspects
+
+        final ExtractionResult result = new ExtractionResult ();
+        for ( final ExtractorRun run : runs )
+        {
+            mergeNamespaceMetaData ( run.aspect, run.metadata, result.metadata );
+            result.messages.addAll ( run.messages );
+        }
         return result;
     }
 
-    private void extractMetaData ( final ArtifactInformation artifact, final Map<MetaKey, String> result, final List<ValidationMessage> messages, final Path path, final ChannelAspect aspect, final Extractor extractor ) throws Exception
+    private void extractMetaData ( final ArtifactInformation artifact, final Path path, final Map<String, String> checksums, final SharedZipFile zipFile, final ExtractorRun run ) throws Exception
     {
-        final Map<String, String> md = new HashMap<> ();
+        final String aspectId = run.aspect.getId ();
 
-        extractor.extractMetaData ( new Extractor.Context () {
+        run.extractor.extractMetaData ( new Extractor.Context () {
 
             @Override
             public void validationMessage ( final Severity severity, final String message )
             {
-                messages.add ( new ValidationMessage ( aspect.getId (), severity, message, Collections.singleton ( artifact.getId () ) ) );
+                run.messages.add ( new ValidationMessage ( aspectId, severity, message, Collections.singleton ( artifact.getId () ) ) );
             }
 
             @Override
@@ -769,11 +1108,19 @@ public class AspectContextImpl
             {
                 return artifact.getCreationInstant ();
             }
-        }, md );
 
-        // insert into metakey map
+            @Override
+            public ZipFile getZipFile () throws IOException
+            {
+                return zipFile.get ();
+            }
 
-        mergeNamespaceMetaData ( aspect, md, result );
+            @Override
+            public Map<String, String> getChecksums ()
+            {
+                return checksums;
+            }
+        }, run.metadata );
     }
 
     private void mergeNamespaceMetaData ( final ChannelAspect aspect, final Map<String, String> md, final Map<MetaKey, String> result )
@@ -789,45 +1136,30 @@ public class AspectContextImpl
         }
     }
 
-    private <T> T doStreamedCall ( final String artifactId, final Function<Path, T> operation )
+    /**
+     * Call an operation with the stored content of an artifact
+     * <p>
+     * The operation gets the path to the blob file itself, either the
+     * committed one, or the one of the running transaction. So the content is
+     * not copied. The file must only be read.
+     * </p>
+     */
+    private <T> T doContentCall ( final String artifactId, final Function<Path, T> operation )
     {
-        try
+        try ( ArtifactContent content = this.context.openContent ( artifactId ) )
         {
-            final Holder<T> result = new Holder<> ();
-
-            final boolean streamed = this.context.stream ( artifactId, stream -> {
-                final Path tmp = Files.createTempFile ( "blob-", null );
-                try
-                {
-                    try ( OutputStream os = new BufferedOutputStream ( Files.newOutputStream ( tmp ) ) )
-                    {
-                        ByteStreams.copy ( stream, os );
-                    }
-
-                    result.value = operation.apply ( tmp );
-                }
-                finally
-                {
-                    Files.deleteIfExists ( tmp );
-                }
-            } );
-
-            if ( !streamed )
+            if ( content == null )
             {
-                throw new IllegalStateException ( "Unable to stream blob for: " + artifactId );
+                throw new IllegalStateException ( "Unable to access blob for: " + artifactId );
             }
 
-            return result.value;
-        }
-        catch ( final IOException e )
-        {
-            throw new RuntimeException ( "Failed to stream blob", e );
+            return operation.apply ( content.getPath () );
         }
     }
 
-    private void doStreamedRun ( final String artifactId, final Consumer<Path> consumer )
+    private void doContentRun ( final String artifactId, final Consumer<Path> consumer )
     {
-        doStreamedCall ( artifactId, path -> {
+        doContentCall ( artifactId, path -> {
             consumer.accept ( path );
             return null;
         } );
@@ -838,6 +1170,7 @@ public class AspectContextImpl
      */
     public void aggregate ()
     {
+        this.fullAggregation = true;
         runAggregators ();
     }
 
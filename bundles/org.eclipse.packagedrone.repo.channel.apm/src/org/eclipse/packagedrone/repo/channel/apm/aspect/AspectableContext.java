@@ -13,6 +13,7 @@ package org.eclipse.packagedrone.repo.channel.apm.aspect;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -20,7 +21,9 @@ import java.util.Set;
 import java.util.SortedMap;
 
 import org.eclipse.packagedrone.repo.MetaKey;
+import org.eclipse.packagedrone.repo.channel.ArtifactContent;
 import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
+import org.eclipse.packagedrone.repo.channel.CacheEntry;
 import org.eclipse.packagedrone.repo.channel.ChannelDetails;
 import org.eclipse.packagedrone.repo.channel.ValidationMessage;
 import org.eclipse.packagedrone.utils.io.IOConsumer;
@@ -31,6 +34,33 @@ public interface AspectableContext
 
     public ArtifactInformation createPlainArtifact ( String parentArtifactId, InputStream source, String name, Map<MetaKey, String> providedMetaData, Set<String> facets, String virtualizerAspectId );
 
+    /**
+     * Create an artifact from an existing file, without copying its content
+     *
+     * @param move
+     *            {@code true} if the file should be moved into the store,
+     *            {@code false} if the file must stay in place
+     * @param checksums
+     *            the already known checksums of the file, by hash algorithm
+     */
+    public ArtifactInformation createPlainArtifact ( String parentArtifactId, Path file, boolean move, Map<String, String> checksums, String name, Map<MetaKey, String> providedMetaData, Set<String> facets, String virtualizerAspectId );
+
+    /**
+     * Create a temporary file which can later be moved into the store using
+     * {@link #createPlainArtifact(String, Path, boolean, Map, String, Map, Set, String)}
+     *
+     * @return the new file, must be deleted by the caller if it did not get
+     *         moved
+     */
+    public Path createSpoolFile () throws IOException;
+
+    /**
+     * Open the content of an artifact
+     *
+     * @return the content, or {@code null} if the artifact does not exist
+     */
+    public ArtifactContent openContent ( String artifactId );
+
     public ArtifactInformation deletePlainArtifact ( String artifactId );
 
     public boolean stream ( String artifactId, IOConsumer<InputStream> consumer ) throws IOException;
@@ -53,6 +83,53 @@ public interface AspectableContext
 
     public void createCacheEntry ( MetaKey metaKey, String name, String mimeType, IOConsumer<OutputStream> creator ) throws IOException;
 
+    public boolean streamCacheEntry ( MetaKey key, IOConsumer<CacheEntry> consumer ) throws IOException;
+
+    /**
+     * Get the channel meta data, as extracted by the last aggregation
+     *
+     * @return the extracted channel meta data
+     */
+    public Map<MetaKey, String> getExtractedMetaData ();
+
+    /**
+     * Get the artifacts as they were when the aggregators ran the last time
+     *
+     * @return the unmodifiable artifacts of the last aggregation, or
+     *         {@code null} if they are unknown
+     */
+    public Map<String, ArtifactInformation> getAggregatedArtifacts ();
+
+    /**
+     * Record the current artifacts and cache entries as the state of the last
+     * aggregation
+     */
+    public void markAggregated ();
+
+    /**
+     * Keep the cache entries of a namespace, as they were after the last
+     * aggregation
+     *
+     * @param namespace
+     *            the namespace of the cache entries
+     * @throws IOException
+     *             if the entries could not be kept
+     */
+    public void retainCacheEntries ( String namespace ) throws IOException;
+
+    /**
+     * Stream a cache entry, as it was after the last aggregation
+     *
+     * @param key
+     *            the key of the cache entry
+     * @param consumer
+     *            the consumer of the content
+     * @return {@code true} if the entry was found, {@code false} otherwise
+     * @throws IOException
+     *             if streaming failed
+     */
+    public boolean streamAggregatedCacheEntry ( MetaKey key, IOConsumer<InputStream> consumer ) throws IOException;
+
     /**
      * Get the external channel id
      *
@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.channel.apm.aspect;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.eclipse.packagedrone.repo.MetaKey;
+import org.eclipse.packagedrone.repo.aspect.aggregate.IncrementalAggregationContext;
+import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
+import org.eclipse.packagedrone.repo.channel.ChannelDetails;
+import org.eclipse.packagedrone.repo.channel.ValidationMessage;
+import org.eclipse.packagedrone.utils.io.IOConsumer;
+
+public class IncrementalAggregationContextImpl extends AggregationContextImpl implements IncrementalAggregationContext
+{
+    private final AspectableContext ctx;
+
+    private final String aspectId;
+
+    private final AggregationDelta delta;
+
+    private final Collection<ValidationMessage> previousMessages;
+
+    public IncrementalAggregationContextImpl ( final AspectableContext ctx, final String aspectId, final String channelId, final Supplier<ChannelDetails> details, final Consumer<ValidationMessage> msgHandler, final AggregationDelta delta, final Collection<ValidationMessage> previousMessages )
+    {
+        super ( ctx, aspectId, channelId, details, msgHandler );
+
+        this.ctx = ctx;
+        this.aspectId = aspectId;
+        this.delta = delta;
+        this.previousMessages = previousMessages;
+    }
+
+    @Override
+    public Collection<ArtifactInformation> getAddedArtifacts ()
+    {
+        return this.delta.getAdded ();
+    }
+
+    @Override
+    public Collection<ArtifactInformation> getChangedArtifacts ()
+    {
+        return this.delta.getChanged ();
+    }
+
+    @Override
+    public Collection<ArtifactInformation> getRemovedArtifacts ()
+    {
+        return this.delta.getRemoved ();
+    }
+
+    @Override
+    public ArtifactInformation getPreviousArtifact ( final String artifactId )
+    {
+        return this.delta.getPrevious ( artifactId );
+    }
+
+    @Override
+    public Collection<ValidationMessage> getPreviousValidationMessages ()
+    {
+        final List<ValidationMessage> result = new LinkedList<> ();
+
+        for ( final ValidationMessage msg : this.previousMessages )
+        {
+            if ( this.aspectId.equals ( msg.getAspectId () ) )
+            {
+                result.add ( msg );
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public boolean streamCacheEntry ( final String id, final IOConsumer<InputStream> consumer ) throws IOException
+    {
+        return this.ctx.streamAggregatedCacheEntry ( new MetaKey ( this.aspectId, id ), consumer );
+    }
+}
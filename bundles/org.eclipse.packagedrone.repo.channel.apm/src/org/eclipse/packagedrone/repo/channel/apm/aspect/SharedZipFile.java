@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.channel.apm.aspect;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A ZIP file which is opened lazily and shared by multiple extractors
+ * <p>
+ * The file is opened at most once, also if it turns out not to be a ZIP file.
+ * Reading from a {@link ZipFile} is thread safe, so the extractors may run
+ * concurrently.
+ * </p>
+ */
+class SharedZipFile implements AutoCloseable
+{
+    private final static Logger logger = LoggerFactory.getLogger ( SharedZipFile.class );
+
+    private final Path path;
+
+    private ZipFile zipFile;
+
+    private boolean opened;
+
+    public SharedZipFile ( final Path path )
+    {
+        this.path = path;
+    }
+
+    /**
+     * Get the ZIP file
+     *
+     * @return the ZIP file, or {@code null} if the file is not a ZIP file
+     * @throws IOException
+     *             if the file could not be read
+     */
+    public synchronized ZipFile get () throws IOException
+    {
+        if ( !this.opened )
+        {
+            try
+            {
+                this.zipFile = new ZipFile ( this.path.toFile () );
+            }
+            catch ( final ZipException e )
+            {
+                logger.trace ( "Not a ZIP file: {}", this.path );
+            }
+            this.opened = true;
+        }
+        return this.zipFile;
+    }
+
+    @Override
+    public synchronized void close ()
+    {
+        if ( this.zipFile != null )
+        {
+            try
+            {
+                this.zipFile.close ();
+            }
+            catch ( final IOException e )
+            {
+                logger.warn ( "Failed to close ZIP file: " + this.path, e );
+            }
+            this.zipFile = null;
+        }
+    }
+}
@@ -10,6 +10,8 @@
  *******************************************************************************/
 package org.eclipse.packagedrone.repo.channel.apm.internal;
 
+import java.util.concurrent.ForkJoinPool;
+
 import org.eclipse.packagedrone.repo.aspect.ChannelAspectProcessor;
 import org.eclipse.packagedrone.repo.generator.GeneratorProcessor;
 import org.osgi.framework.BundleActivator;
@@ -24,6 +26,8 @@ public class Activator implements BundleActivator
 
     private GeneratorProcessor generatorProcessor;
 
+    private ForkJoinPool aspectPool;
+
     @Override
     public void start ( final BundleContext context ) throws Exception
     {
@@ -33,6 +37,8 @@ public class Activator implements BundleActivator
 
         this.generatorProcessor = new GeneratorProcessor ( context );
         this.generatorProcessor.open ();
+
+        this.aspectPool = new ForkJoinPool ( Integer.getInteger ( "drone.aspect.threads", Runtime.getRuntime ().availableProcessors () ) );
     }
 
     @Override
@@ -51,6 +57,12 @@ public class Activator implements BundleActivator
             this.generatorProcessor.close ();
             this.generatorProcessor = null;
         }
+
+        if ( this.aspectPool != null )
+        {
+            this.aspectPool.shutdown ();
+            this.aspectPool = null;
+        }
     }
 
     public static ChannelAspectProcessor getProcessor ()
@@ -63,4 +75,15 @@ public class Activator implements BundleActivator
         return INSTANCE.generatorProcessor;
     }
 
+    /**
+     * Get the pool for running channel aggregators and artifact extractors
+     *
+     * @return the pool, or {@code null} if the aspects have to be run in the
+     *         calling thread
+     */
+    public static ForkJoinPool getAspectPool ()
+    {
+        return INSTANCE != null ? INSTANCE.aspectPool : null;
+    }
+
 }
@@ -0,0 +1,608 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.channel.apm.internal;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A hash map which can be copied in constant time
+ * <p>
+ * The entries are stored in an immutable hash array mapped trie. A
+ * modification only copies the nodes on the path to the modified entry, all
+ * other nodes are shared with the copies of the map. Creating a copy with
+ * {@link #HashTrieMap(HashTrieMap)} only copies the reference to the root
+ * node. Lookups and modifications are {@code O(log32 n)}.
+ * </p>
+ * <p>
+ * Iterators work on the state of the map at the time the iterator was
+ * created. They support {@link Iterator#remove()}, but won't see any other
+ * modification made after their creation.
+ * </p>
+ * <p>
+ * This class is not thread safe. But as nodes are never modified, a copy may
+ * be read or modified by another thread than the original instance.
+ * </p>
+ *
+ * @param <K>
+ *            the key type
+ * @param <V>
+ *            the value type
+ */
+public class HashTrieMap<K, V> extends AbstractMap<K, V>
+{
+    private static final int BITS = 5;
+
+    private static final int MASK = ( 1 << BITS ) - 1;
+
+    /**
+     * The maximum depth of the trie, including the level of the collision
+     * nodes
+     */
+    private static final int MAX_DEPTH = 32 / BITS + 2;
+
+    private static final class Leaf<K, V> extends AbstractMap.SimpleImmutableEntry<K, V>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int hash;
+
+        private Leaf ( final int hash, final K key, final V value )
+        {
+            super ( key, value );
+            this.hash = hash;
+        }
+
+        private boolean matches ( final int hash, final Object key )
+        {
+            return this.hash == hash && Objects.equals ( getKey (), key );
+        }
+    }
+
+    /**
+     * Entries which have the same hash code
+     */
+    private static final class Collision
+    {
+        private final int hash;
+
+        private final Leaf<?, ?>[] leaves;
+
+        private Collision ( final int hash, final Leaf<?, ?>[] leaves )
+        {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        private int indexOf ( final Object key )
+        {
+            for ( int i = 0; i < this.leaves.length; i++ )
+            {
+                if ( Objects.equals ( this.leaves[i].getKey (), key ) )
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * A node of the trie
+     * <p>
+     * The bitmap marks the used slots of this level, the slot array only
+     * contains the used slots. A slot is either a {@link Leaf}, a
+     * {@link Collision} or another {@link Node}.
+     * </p>
+     */
+    private static final class Node
+    {
+        private static final Node EMPTY = new Node ( 0, new Object[0] );
+
+        private final int bitmap;
+
+        private final Object[] slots;
+
+        private Node ( final int bitmap, final Object[] slots )
+        {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        private int index ( final int bit )
+        {
+            return Integer.bitCount ( this.bitmap & bit - 1 );
+        }
+
+        private Node with ( final int index, final Object slot )
+        {
+            final Object[] slots = this.slots.clone ();
+            slots[index] = slot;
+            return new Node ( this.bitmap, slots );
+        }
+
+        private Node insert ( final int bit, final int index, final Object slot )
+        {
+            final Object[] slots = new Object[this.slots.length + 1];
+            System.arraycopy ( this.slots, 0, slots, 0, index );
+            slots[index] = slot;
+            System.arraycopy ( this.slots, index, slots, index + 1, this.slots.length - index );
+            return new Node ( this.bitmap | bit, slots );
+        }
+
+        private Node without ( final int bit, final int index )
+        {
+            if ( this.slots.length == 1 )
+            {
+                return EMPTY;
+            }
+
+            final Object[] slots = new Object[this.slots.length - 1];
+            System.arraycopy ( this.slots, 0, slots, 0, index );
+            System.arraycopy ( this.slots, index + 1, slots, index, slots.length - index );
+            return new Node ( this.bitmap & ~bit, slots );
+        }
+    }
+
+    /**
+     * The result of a modification
+     */
+    private static final class Change
+    {
+        private boolean added;
+
+        private Leaf<?, ?> previous;
+    }
+
+    private Node root;
+
+    private int size;
+
+    /**
+     * Create a new, empty map
+     */
+    public HashTrieMap ()
+    {
+        this.root = Node.EMPTY;
+    }
+
+    /**
+     * Create a copy of another map
+     * <p>
+     * This operation only copies the reference to the root of the other map.
+     * </p>
+     *
+     * @param other
+     *            the map to copy
+     */
+    public HashTrieMap ( final HashTrieMap<K, V> other )
+    {
+        this.root = other.root;
+        this.size = other.size;
+    }
+
+    /**
+     * Create a new map, containing all entries of the provided map
+     *
+     * @param other
+     *            the entries to add
+     */
+    public HashTrieMap ( final Map<? extends K, ? extends V> other )
+    {
+        this.root = Node.EMPTY;
+        putAll ( other );
+    }
+
+    private static int hash ( final Object key )
+    {
+        if ( key == null )
+        {
+            return 0;
+        }
+
+        final int h = key.hashCode ();
+        return h ^ h >>> 16;
+    }
+
+    private static int bit ( final int hash, final int shift )
+    {
+        return 1 << ( hash >>> shift & MASK );
+    }
+
+    @Override
+    public int size ()
+    {
+        return this.size;
+    }
+
+    @Override
+    public boolean containsKey ( final Object key )
+    {
+        return find ( key ) != null;
+    }
+
+    @Override
+    public V get ( final Object key )
+    {
+        final Leaf<K, V> leaf = find ( key );
+        return leaf != null ? leaf.getValue () : null;
+    }
+
+    @SuppressWarnings ( "unchecked" )
+    private Leaf<K, V> find ( final Object key )
+    {
+        final int hash = hash ( key );
+
+        Node node = this.root;
+        int shift = 0;
+
+        while ( true )
+        {
+            final int bit = bit ( hash, shift );
+            if ( ( node.bitmap & bit ) == 0 )
+            {
+                return null;
+            }
+
+            final Object slot = node.slots[node.index ( bit )];
+
+            if ( slot instanceof Leaf<?, ?> )
+            {
+                final Leaf<K, V> leaf = (Leaf<K, V>)slot;
+                return leaf.matches ( hash, key ) ? leaf : null;
+            }
+            else if ( slot instanceof Collision )
+            {
+                final Collision collision = (Collision)slot;
+                if ( collision.hash != hash )
+                {
+                    return null;
+                }
+                final int index = collision.indexOf ( key );
+                return index < 0 ? null : (Leaf<K, V>)collision.leaves[index];
+            }
+
+            node = (Node)slot;
+            shift += BITS;
+        }
+    }
+
+    @SuppressWarnings ( "unchecked" )
+    @Override
+    public V put ( final K key, final V value )
+    {
+        final Change change = new Change ();
+
+        this.root = put ( this.root, new Leaf<> ( hash ( key ), key, value ), 0, change );
+
+        if ( change.added )
+        {
+            this.size++;
+        }
+
+        return change.previous != null ? (V)change.previous.getValue () : null;
+    }
+
+    private static Node put ( final Node node, final Leaf<?, ?> leaf, final int shift, final Change change )
+    {
+        final int bit = bit ( leaf.hash, shift );
+        final int index = node.index ( bit );
+
+        if ( ( node.bitmap & bit ) == 0 )
+        {
+            change.added = true;
+            return node.insert ( bit, index, leaf );
+        }
+
+        final Object slot = node.slots[index];
+
+        if ( slot instanceof Leaf<?, ?> )
+        {
+            final Leaf<?, ?> current = (Leaf<?, ?>)slot;
+            if ( current.matches ( leaf.hash, leaf.getKey () ) )
+            {
+                change.previous = current;
+                if ( current.getValue () == leaf.getValue () )
+                {
+                    return node;
+                }
+                return node.with ( index, leaf );
+            }
+
+            change.added = true;
+            return node.with ( index, merge ( current, current.hash, leaf, shift + BITS ) );
+        }
+        else if ( slot instanceof Collision )
+        {
+            final Collision collision = (Collision)slot;
+            if ( collision.hash != leaf.hash )
+            {
+                change.added = true;
+                return node.with ( index, merge ( collision, collision.hash, leaf, shift + BITS ) );
+            }
+
+            final int i = collision.indexOf ( leaf.getKey () );
+            final Leaf<?, ?>[] leaves;
+            if ( i < 0 )
+            {
+                change.added = true;
+                leaves = new Leaf<?, ?>[collision.leaves.length + 1];
+                System.arraycopy ( collision.leaves, 0, leaves, 0, collision.leaves.length );
+                leaves[collision.leaves.length] = leaf;
+            }
+            else
+            {
+                change.previous = collision.leaves[i];
+                leaves = collision.leaves.clone ();
+                leaves[i] = leaf;
+            }
+            return node.with ( index, new Collision ( leaf.hash, leaves ) );
+        }
+        else
+        {
+            final Node current = (Node)slot;
+            final Node result = put ( current, leaf, shift + BITS, change );
+            return result == current ? node : node.with ( index, result );
+        }
+    }
+
+    /**
+     * Create a new node containing an existing slot and a new leaf
+     *
+     * @param slot
+     *            the existing slot, either a leaf or a collision
+     * @param hash
+     *            the hash of the existing slot
+     * @param leaf
+     *            the new leaf
+     * @param shift
+     *            the shift of the new node
+     */
+    private static Object merge ( final Object slot, final int hash, final Leaf<?, ?> leaf, final int shift )
+    {
+        if ( hash == leaf.hash )
+        {
+            // only possible if the slot is a leaf, otherwise the collision would have been extended
+            return new Collision ( hash, new Leaf<?, ?>[] { (Leaf<?, ?>)slot, leaf } );
+        }
+
+        final int bit1 = bit ( hash, shift );
+        final int bit2 = bit ( leaf.hash, shift );
+
+        if ( bit1 == bit2 )
+        {
+            return new Node ( bit1, new Object[] { merge ( slot, hash, leaf, shift + BITS ) } );
+        }
+
+        if ( Integer.compareUnsigned ( bit1, bit2 ) < 0 )
+        {
+            return new Node ( bit1 | bit2, new Object[] { slot, leaf } );
+        }
+        else
+        {
+            return new Node ( bit1 | bit2, new Object[] { leaf, slot } );
+        }
+    }
+
+    @SuppressWarnings ( "unchecked" )
+    @Override
+    public V remove ( final Object key )
+    {
+        final Change change = new Change ();
+
+        this.root = remove ( this.root, hash ( key ), key, 0, change );
+
+        if ( change.previous == null )
+        {
+            return null;
+        }
+
+        this.size--;
+        return (V)change.previous.getValue ();
+    }
+
+    private static Node remove ( final Node node, final int hash, final Object key, final int shift, final Change change )
+    {
+        final int bit = bit ( hash, shift );
+        if ( ( node.bitmap & bit ) == 0 )
+        {
+            return node;
+        }
+
+        final int index = node.index ( bit );
+        final Object slot = node.slots[index];
+
+        if ( slot instanceof Leaf<?, ?> )
+        {
+            final Leaf<?, ?> leaf = (Leaf<?, ?>)slot;
+            if ( !leaf.matches ( hash, key ) )
+            {
+                return node;
+            }
+
+            change.previous = leaf;
+            return node.without ( bit, index );
+        }
+        else if ( slot instanceof Collision )
+        {
+            final Collision collision = (Collision)slot;
+            final int i = collision.hash == hash ? collision.indexOf ( key ) : -1;
+            if ( i < 0 )
+            {
+                return node;
+            }
+
+            change.previous = collision.leaves[i];
+
+            if ( collision.leaves.length == 2 )
+            {
+                // replace with the remaining leaf
+                return node.with ( index, collision.leaves[1 - i] );
+            }
+
+            final Leaf<?, ?>[] leaves = new Leaf<?, ?>[collision.leaves.length - 1];
+            System.arraycopy ( collision.leaves, 0, leaves, 0, i );
+            System.arraycopy ( collision.leaves, i + 1, leaves, i, leaves.length - i );
+            return node.with ( index, new Collision ( hash, leaves ) );
+        }
+        else
+        {
+            final Node current = (Node)slot;
+            final Node result = remove ( current, hash, key, shift + BITS, change );
+
+            if ( result == current )
+            {
+                return node;
+            }
+
+            if ( result.slots.length == 0 )
+            {
+                return node.without ( bit, index );
+            }
+
+            if ( result.slots.length == 1 && ! ( result.slots[0] instanceof Node ) )
+            {
+                // pull up a single leaf or collision
+                return node.with ( index, result.slots[0] );
+            }
+
+            return node.with ( index, result );
+        }
+    }
+
+    @Override
+    public void clear ()
+    {
+        this.root = Node.EMPTY;
+        this.size = 0;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet ()
+    {
+        return new AbstractSet<Map.Entry<K, V>> () {
+
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator ()
+            {
+                return new EntryIterator ( HashTrieMap.this.root );
+            }
+
+            @Override
+            public int size ()
+            {
+                return HashTrieMap.this.size;
+            }
+
+            @Override
+            public boolean contains ( final Object o )
+            {
+                if ( ! ( o instanceof Map.Entry<?, ?> ) )
+                {
+                    return false;
+                }
+
+                final Map.Entry<?, ?> entry = (Map.Entry<?, ?>)o;
+                final Leaf<K, V> leaf = find ( entry.getKey () );
+                return leaf != null && Objects.equals ( leaf.getValue (), entry.getValue () );
+            }
+
+            @Override
+            public void clear ()
+            {
+                HashTrieMap.this.clear ();
+            }
+        };
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<K, V>>
+    {
+        private final Object[][] stack = new Object[MAX_DEPTH][];
+
+        private final int[] positions = new int[MAX_DEPTH];
+
+        private int depth;
+
+        private Leaf<K, V> next;
+
+        private Leaf<K, V> last;
+
+        public EntryIterator ( final Node root )
+        {
+            this.stack[0] = root.slots;
+            advance ();
+        }
+
+        @SuppressWarnings ( "unchecked" )
+        private void advance ()
+        {
+            while ( this.depth >= 0 )
+            {
+                final Object[] slots = this.stack[this.depth];
+                if ( this.positions[this.depth] >= slots.length )
+                {
+                    this.depth--;
+                    continue;
+                }
+
+                final Object slot = slots[this.positions[this.depth]++];
+
+                if ( slot instanceof Leaf<?, ?> )
+                {
+                    this.next = (Leaf<K, V>)slot;
+                    return;
+                }
+
+                this.depth++;
+                this.stack[this.depth] = slot instanceof Collision ? ( (Collision)slot ).leaves : ( (Node)slot ).slots;
+                this.positions[this.depth] = 0;
+            }
+
+            this.next = null;
+        }
+
+        @Override
+        public boolean hasNext ()
+        {
+            return this.next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next ()
+        {
+            if ( this.next == null )
+            {
+                throw new NoSuchElementException ();
+            }
+
+            this.last = this.next;
+            advance ();
+            return this.last;
+        }
+
+        @Override
+        public void remove ()
+        {
+            if ( this.last == null )
+            {
+                throw new IllegalStateException ();
+            }
+
+            HashTrieMap.this.remove ( this.last.getKey () );
+            this.last = null;
+        }
+    }
+}
@@ -13,24 +13,43 @@ package org.eclipse.packagedrone.repo.channel.apm.store;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
+import org.eclipse.packagedrone.repo.channel.ArtifactContent;
+import org.eclipse.packagedrone.repo.channel.StagedArtifact;
+import org.eclipse.packagedrone.repo.channel.apm.internal.HashTrieMap;
+import org.eclipse.packagedrone.repo.utils.HashHelper;
 import org.eclipse.packagedrone.utils.io.IOConsumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.CountingOutputStream;
 
@@ -46,12 +65,18 @@ public class BlobStore implements Closeable
 
         private final Set<String> added = new HashSet<> ();
 
+        /**
+         * All blobs created by this transaction, even if they got deleted
+         * again
+         */
+        private final Set<String> created = new HashSet<> ();
+
         @Override
         public boolean delete ( final String id ) throws IOException
         {
             testDone ();
 
-            final boolean existed = BlobStore.this.currentIndex.contains ( id ) || this.added.contains ( id );
+            final boolean existed = BlobStore.this.currentIndex.containsKey ( id ) || this.added.contains ( id );
 
             this.added.remove ( id );
             this.deleted.add ( id );
@@ -64,6 +89,8 @@ public class BlobStore implements Closeable
         {
             testDone ();
 
+            this.created.add ( id );
+
             final long size = handleCreate ( id, consumer );
 
             this.added.add ( id );
@@ -72,6 +99,21 @@ public class BlobStore implements Closeable
             return size;
         }
 
+        @Override
+        public long adopt ( final String id, final Path file, final boolean move, final Map<String, String> checksums ) throws IOException
+        {
+            testDone ();
+
+            this.created.add ( id );
+
+            final long size = handleAdopt ( id, file, move, checksums.get ( "sha256" ) );
+
+            this.added.add ( id );
+            this.deleted.remove ( id );
+
+            return size;
+        }
+
         @Override
         public boolean stream ( final String id, final IOConsumer<InputStream> consumer ) throws IOException
         {
@@ -85,6 +127,24 @@ public class BlobStore implements Closeable
             return handleStream ( id, consumer );
         }
 
+        @Override
+        public BlobReference reference ( final String id )
+        {
+            testDone ();
+
+            if ( this.deleted.contains ( id ) )
+            {
+                return null;
+            }
+
+            if ( !acquire ( id, this.added.contains ( id ) ) )
+            {
+                return null;
+            }
+
+            return makeReference ( id );
+        }
+
         @Override
         public void commit ()
         {
@@ -100,7 +160,7 @@ public class BlobStore implements Closeable
             testDone ();
             this.done = true;
 
-            handleRollback ( this );
+            handleRollback ( this, this.created );
         }
 
         protected void testDone ()
@@ -123,40 +183,280 @@ public class BlobStore implements Closeable
 
         public long create ( String id, IOConsumer<OutputStream> consumer ) throws IOException;
 
+        public default long adopt ( final String id, final Path file, final boolean move ) throws IOException
+        {
+            return adopt ( id, file, move, Collections.emptyMap () );
+        }
+
+        /**
+         * Create a blob from an existing file
+         * <p>
+         * See {@link BlobStore#handleAdopt(String, Path, boolean, String)}.
+         * </p>
+         *
+         * @param checksums
+         *            the already known checksums of the file, by hash
+         *            algorithm
+         */
+        public long adopt ( String id, Path file, boolean move, Map<String, String> checksums ) throws IOException;
+
         public boolean stream ( String id, IOConsumer<InputStream> consumer ) throws IOException;
 
+        /**
+         * Acquire a reference to a blob
+         * <p>
+         * See {@link BlobStore#reference(String)}.
+         * </p>
+         */
+        public BlobReference reference ( String id );
+
         public void commit ();
 
         public void rollback ();
     }
 
+    /**
+     * Content which was written to the staging area of the store
+     * <p>
+     * Staging does not require a transaction and may happen concurrently to
+     * a running transaction.
+     * </p>
+     */
+    public class StagedBlob implements StagedArtifact
+    {
+        private final Path path;
+
+        private final long size;
+
+        private final Map<String, String> checksums;
+
+        private StagedBlob ( final Path path, final long size, final Map<String, String> checksums )
+        {
+            this.path = path;
+            this.size = size;
+            this.checksums = Collections.unmodifiableMap ( checksums );
+        }
+
+        @Override
+        public long getSize ()
+        {
+            return this.size;
+        }
+
+        @Override
+        public Map<String, String> getChecksums ()
+        {
+            return this.checksums;
+        }
+
+        @Override
+        public boolean stream ( final IOConsumer<InputStream> consumer ) throws IOException
+        {
+            final InputStream in;
+            try
+            {
+                in = Files.newInputStream ( this.path, StandardOpenOption.READ );
+            }
+            catch ( final NoSuchFileException e )
+            {
+                return false;
+            }
+
+            try ( InputStream stream = new BufferedInputStream ( in ) )
+            {
+                consumer.accept ( stream );
+                return true;
+            }
+        }
+
+        @Override
+        public void close ()
+        {
+            try
+            {
+                Files.deleteIfExists ( this.path );
+            }
+            catch ( final IOException e )
+            {
+                logger.warn ( "Failed to delete staged blob: " + this.path, e );
+            }
+        }
+
+        private BlobStore getStore ()
+        {
+            return BlobStore.this;
+        }
+    }
+
+    /**
+     * The minimum number of index log entries before the log gets compacted
+     * into a new snapshot
+     */
+    private static final int MIN_COMPACTION_SIZE = 1_000;
+
+    private static final Map<String, HashFunction> STAGING_HASHES;
+
+    static
+    {
+        final Map<String, HashFunction> hashes = new HashMap<> ( 4 );
+        hashes.put ( "md5", Hashing.md5 () );
+        hashes.put ( "sha1", Hashing.sha1 () );
+        hashes.put ( "sha256", Hashing.sha256 () );
+        hashes.put ( "sha512", Hashing.sha512 () );
+        STAGING_HASHES = Collections.unmodifiableMap ( hashes );
+    }
+
+    private static final String STAGED_PREFIX = "staged-";
+
+    private static final Map<String, HashFunction> SHARING_HASHES = Collections.singletonMap ( "sha256", Hashing.sha256 () );
+
     private final Path base;
 
     private final Path dataPath;
 
-    private Transaction transaction;
+    private final Path stagingPath;
+
+    /**
+     * The shared content store, may be {@code null}
+     */
+    private final ContentStore contentStore;
+
+    private TransactionImpl transaction;
+
+    /**
+     * The current index, this will be replaced, but never modified, when a
+     * transaction gets committed
+     * <p>
+     * The map is only used as a set, all values are {@link Boolean#TRUE}.
+     * </p>
+     */
+    private volatile HashTrieMap<String, Boolean> currentIndex;
+
+    /**
+     * The number of entries in the index log
+     */
+    private int logEntries;
 
-    private Set<String> currentIndex;
+    /**
+     * The number of open streams, by blob id
+     * <p>
+     * Access to this map, and to {@link #pendingDeletes}, is guarded by
+     * synchronizing on this map.
+     * </p>
+     */
+    private final Map<String, Integer> references = new HashMap<> ();
 
+    /**
+     * Blobs which got deleted while they were still being read
+     * <p>
+     * The ids are also recorded in {@link #pendingDeletesPath}, so that the
+     * blobs get deleted on the next start if the process ends before the last
+     * stream is closed.
+     * </p>
+     */
+    private final Set<String> pendingDeletes = new HashSet<> ();
+
+    /**
+     * The log of deferred deletes, one blob id per line
+     */
+    private final Path pendingDeletesPath;
+
+    /**
+     * The last full snapshot of the index
+     */
     private final Path indexPath;
 
+    /**
+     * The changes to the index since the last snapshot
+     * <p>
+     * Each line contains the id of a blob, prefixed with {@code +} if the blob
+     * was added and {@code -} if it was deleted. Every line is terminated by a
+     * newline, a last line without one was torn by a crash and is dropped.
+     * </p>
+     */
+    private final Path indexLogPath;
+
     public BlobStore ( final Path path ) throws IOException
+    {
+        this ( path, null );
+    }
+
+    /**
+     * Create a new blob store
+     *
+     * @param path
+     *            the base path of the store
+     * @param contentStore
+     *            the content store to share the content of new blobs with,
+     *            may be {@code null}
+     */
+    public BlobStore ( final Path path, final ContentStore contentStore ) throws IOException
     {
         this.base = path;
+        this.contentStore = contentStore;
 
         this.dataPath = this.base.resolve ( "data" ).toAbsolutePath ();
         this.indexPath = this.base.resolve ( "index.txt" ).toAbsolutePath ();
+        this.indexLogPath = this.base.resolve ( "index.log" ).toAbsolutePath ();
+        this.pendingDeletesPath = this.base.resolve ( "deletes.log" ).toAbsolutePath ();
+        this.stagingPath = this.base.resolve ( "staging" ).toAbsolutePath ();
 
         Files.createDirectories ( this.dataPath );
+        Files.createDirectories ( this.stagingPath );
 
-        Set<String> index = loadIndex ();
+        cleanupStaging ();
+
+        final HashTrieMap<String, Boolean> index = loadIndex ();
         if ( index == null )
         {
             // build index
-            index = scanIndex ( path );
-            writeIndex ( index );
+            writeIndex ( toIndex ( scanIndex ( path ) ) );
         }
-        this.currentIndex = index;
+        else
+        {
+            this.currentIndex = index;
+        }
+
+        processPendingDeletes ();
+    }
+
+    /**
+     * Delete the blobs whose deletion got deferred by a previous run
+     */
+    private void processPendingDeletes () throws IOException
+    {
+        final List<String> ids;
+        try
+        {
+            ids = readLines ( this.pendingDeletesPath );
+        }
+        catch ( final NoSuchFileException e )
+        {
+            return;
+        }
+
+        for ( final String id : ids )
+        {
+            if ( id.length () < 2 || this.currentIndex.containsKey ( id ) )
+            {
+                continue;
+            }
+
+            logger.debug ( "Removing blob of deferred delete: {}", id );
+            Files.deleteIfExists ( makeDataPath ( id ) );
+        }
+
+        Files.deleteIfExists ( this.pendingDeletesPath );
+    }
+
+    private static HashTrieMap<String, Boolean> toIndex ( final Collection<String> ids )
+    {
+        final HashTrieMap<String, Boolean> result = new HashTrieMap<> ();
+        for ( final String id : ids )
+        {
+            result.put ( id, Boolean.TRUE );
+        }
+        return result;
     }
 
     public static Set<String> scanIndex ( final Path basePath ) throws IOException
@@ -171,6 +471,139 @@ public class BlobStore implements Closeable
         }
     }
 
+    private void cleanupStaging () throws IOException
+    {
+        // anything still in the staging area was left over by a previous run
+
+        try ( DirectoryStream<Path> files = Files.newDirectoryStream ( this.stagingPath ) )
+        {
+            for ( final Path file : files )
+            {
+                logger.debug ( "Removing stale staged blob: {}", file );
+                Files.deleteIfExists ( file );
+            }
+        }
+    }
+
+    /**
+     * Stage content without starting a transaction
+     * <p>
+     * The content will be written to the staging area of the store and the
+     * size and checksums get recorded while writing.
+     * </p>
+     *
+     * @param source
+     *            the content to stage
+     * @return the staged blob, must be closed by the caller
+     * @throws IOException
+     *             if writing the content failed
+     */
+    public StagedBlob stage ( final InputStream source ) throws IOException
+    {
+        final Path path = Files.createTempFile ( this.stagingPath, STAGED_PREFIX, null );
+
+        try
+        {
+            final Map<String, HashingOutputStream> hashers = new HashMap<> ( STAGING_HASHES.size () );
+
+            final CountingOutputStream counter = new CountingOutputStream ( Files.newOutputStream ( path ) );
+            OutputStream out = counter;
+            for ( final Map.Entry<String, HashFunction> entry : STAGING_HASHES.entrySet () )
+            {
+                final HashingOutputStream hasher = new HashingOutputStream ( entry.getValue (), out );
+                hashers.put ( entry.getKey (), hasher );
+                out = hasher;
+            }
+
+            try ( OutputStream stream = new BufferedOutputStream ( out ) )
+            {
+                ByteStreams.copy ( source, stream );
+            }
+
+            final Map<String, String> checksums = new HashMap<> ( hashers.size () );
+            for ( final Map.Entry<String, HashingOutputStream> entry : hashers.entrySet () )
+            {
+                checksums.put ( entry.getKey (), entry.getValue ().hash ().toString () );
+            }
+
+            return new StagedBlob ( path, counter.getCount (), checksums );
+        }
+        catch ( final IOException | RuntimeException e )
+        {
+            Files.deleteIfExists ( path );
+            throw e;
+        }
+    }
+
+    /**
+     * Create an empty file in the staging area of the store
+     * <p>
+     * As the file is located on the same file system as the blobs, it can be
+     * adopted by a transaction without copying its content. Files which are
+     * left over will be removed when the store gets opened the next time.
+     * </p>
+     *
+     * @return the new file, must be deleted by the caller if it does not get
+     *         adopted
+     * @throws IOException
+     *             if the file could not be created
+     */
+    public Path createSpoolFile () throws IOException
+    {
+        return Files.createTempFile ( this.stagingPath, "spool-", null );
+    }
+
+    /**
+     * Create a file in the staging area which links to already known content
+     * <p>
+     * This allows creating a blob from content which is already stored, e.g.
+     * in another channel, without copying it.
+     * </p>
+     *
+     * @param sha256
+     *            the SHA-256 digest of the content, in hex encoding
+     * @param size
+     *            the size of the content
+     * @return the new staged file, must be deleted by the caller if it does
+     *         not get adopted, or {@code null} if the content is not known
+     * @throws IOException
+     *             if the file could not be created
+     */
+    public Path linkContent ( final String sha256, final long size ) throws IOException
+    {
+        if ( this.contentStore == null || sha256 == null )
+        {
+            return null;
+        }
+
+        final Path path = Files.createTempFile ( this.stagingPath, STAGED_PREFIX, null );
+
+        if ( this.contentStore.link ( sha256, size, path ) )
+        {
+            return path;
+        }
+
+        Files.deleteIfExists ( path );
+        return null;
+    }
+
+    /**
+     * Get the file of a staged artifact
+     *
+     * @param artifact
+     *            the staged artifact
+     * @return the path to the staged content, or {@code null} if the artifact
+     *         was not staged by this store
+     */
+    public Path getStagedPath ( final StagedArtifact artifact )
+    {
+        if ( artifact instanceof StagedBlob && ( (StagedBlob)artifact ).getStore () == this )
+        {
+            return ( (StagedBlob)artifact ).path;
+        }
+        return null;
+    }
+
     public boolean handleStream ( final String id, final IOConsumer<InputStream> consumer ) throws IOException
     {
         return processStream ( id, consumer );
@@ -182,10 +615,116 @@ public class BlobStore implements Closeable
 
         Files.createDirectories ( path.getParent () );
 
+        if ( this.contentStore == null )
+        {
+            try ( CountingOutputStream stream = new CountingOutputStream ( new BufferedOutputStream ( Files.newOutputStream ( path, StandardOpenOption.CREATE_NEW ) ) ) )
+            {
+                consumer.accept ( stream );
+                return stream.getCount ();
+            }
+        }
+
+        final long size;
+        final HashingOutputStream hasher;
+
         try ( CountingOutputStream stream = new CountingOutputStream ( new BufferedOutputStream ( Files.newOutputStream ( path, StandardOpenOption.CREATE_NEW ) ) ) )
         {
-            consumer.accept ( stream );
-            return stream.getCount ();
+            hasher = new HashingOutputStream ( Hashing.sha256 (), stream );
+            consumer.accept ( hasher );
+            size = stream.getCount ();
+        }
+
+        this.contentStore.share ( path, hasher.hash ().toString () );
+
+        return size;
+    }
+
+    /**
+     * Turn an existing file into the content of a blob
+     * <p>
+     * If the file gets moved, the caller gives up the ownership of the file.
+     * Otherwise the file stays untouched. A file staged by this store will be
+     * hard linked, as it will never be modified. Any other file gets copied,
+     * since the caller may still modify it, which would then modify the stored
+     * content as well. If the file is located on a different file system, the
+     * content gets copied in any case.
+     * </p>
+     * <p>
+     * If the store has a content store, the content of the new blob will be
+     * shared with other blobs of the same content. If the SHA-256 digest of
+     * the file is not known, it will be calculated.
+     * </p>
+     *
+     * @param id
+     *            the id of the new blob
+     * @param file
+     *            the file to adopt
+     * @param move
+     *            {@code true} if the file should be moved, {@code false} if
+     *            the file must stay in place
+     * @param sha256
+     *            the SHA-256 digest of the file, may be {@code null}
+     * @return the size of the blob
+     * @throws IOException
+     *             if the file could not be adopted
+     */
+    public long handleAdopt ( final String id, final Path file, final boolean move, final String sha256 ) throws IOException
+    {
+        final Path path = makeDataPath ( id );
+
+        Files.createDirectories ( path.getParent () );
+
+        adoptFile ( path, file, move, isStagedFile ( file ) );
+
+        if ( this.contentStore != null )
+        {
+            this.contentStore.share ( path, sha256 != null ? sha256 : HashHelper.createChecksums ( path, SHARING_HASHES ).get ( "sha256" ).toString () );
+        }
+
+        return Files.size ( path );
+    }
+
+    /**
+     * Check if a file is the content of a blob staged by this store
+     */
+    private boolean isStagedFile ( final Path file )
+    {
+        final Path absolute = file.toAbsolutePath ().normalize ();
+        return this.stagingPath.equals ( absolute.getParent () ) && absolute.getFileName ().toString ().startsWith ( STAGED_PREFIX );
+    }
+
+    private static void adoptFile ( final Path path, final Path file, final boolean move, final boolean link ) throws IOException
+    {
+        if ( move )
+        {
+            try
+            {
+                Files.move ( file, path, StandardCopyOption.ATOMIC_MOVE );
+                return;
+            }
+            catch ( final AtomicMoveNotSupportedException e )
+            {
+                logger.debug ( "Unable to move file, copying: {}", file );
+            }
+        }
+        else if ( link )
+        {
+            try
+            {
+                Files.createLink ( path, file );
+                return;
+            }
+            catch ( final UnsupportedOperationException | FileSystemException e )
+            {
+                logger.debug ( "Unable to link file, copying: {}", file );
+            }
+        }
+
+        Files.copy ( file, path );
+
+        if ( move )
+        {
+            Files.delete ( file );
         }
     }
 
@@ -194,18 +733,242 @@ public class BlobStore implements Closeable
     {
         if ( this.transaction != null )
         {
-            handleRollback ( this.transaction );
+            handleRollback ( this.transaction, this.transaction.created );
         }
     }
 
     public boolean stream ( final String id, final IOConsumer<InputStream> consumer ) throws IOException
     {
-        if ( !this.currentIndex.contains ( id ) )
+        try ( InputStream stream = open ( id ) )
         {
-            // FIXME: check locking
-            return false;
+            if ( stream == null )
+            {
+                return false;
+            }
+
+            consumer.accept ( stream );
+            return true;
+        }
+    }
+
+    /**
+     * Open the content of a blob
+     * <p>
+     * The blob will not be deleted from the store before the returned stream
+     * is closed, even if a transaction deleting the blob gets committed in the
+     * meantime. So the caller does not need to hold a lock on the channel
+     * while reading the stream. The stream must be closed by the caller.
+     * </p>
+     *
+     * @param id
+     *            the id of the blob
+     * @return the content of the blob, or {@code null} if the blob does not
+     *         exist
+     */
+    public InputStream open ( final String id ) throws IOException
+    {
+        return openStream ( reference ( id ) );
+    }
+
+    /**
+     * Acquire a reference to a blob
+     * <p>
+     * The blob file will not be deleted before the reference is closed. The
+     * reference must be closed by the caller.
+     * </p>
+     *
+     * @param id
+     *            the id of the blob
+     * @return the reference to the blob, or {@code null} if the blob does not
+     *         exist
+     */
+    public BlobReference reference ( final String id )
+    {
+        if ( !acquire ( id, false ) )
+        {
+            return null;
+        }
+
+        return makeReference ( id );
+    }
+
+    private BlobReference makeReference ( final String id )
+    {
+        final Path path = makeDataPath ( id );
+
+        if ( !Files.isRegularFile ( path ) )
+        {
+            release ( id );
+            return null;
+        }
+
+        return new BlobReference ( id, path );
+    }
+
+    private static InputStream openStream ( final BlobReference reference ) throws IOException
+    {
+        if ( reference == null )
+        {
+            return null;
+        }
+
+        try
+        {
+            return new ReferenceInputStream ( reference, new BufferedInputStream ( Files.newInputStream ( reference.getPath (), StandardOpenOption.READ ) ) );
+        }
+        catch ( final NoSuchFileException e )
+        {
+            reference.close ();
+            return null;
+        }
+        catch ( final IOException | RuntimeException e )
+        {
+            reference.close ();
+            throw e;
+        }
+    }
+
+    /**
+     * Acquire a reference to a blob
+     *
+     * @param id
+     *            the id of the blob
+     * @param force
+     *            acquire a reference, even if the blob is not in the current
+     *            index
+     * @return {@code true} if a reference was acquired, {@code false} if the
+     *         blob is not in the current index
+     */
+    private boolean acquire ( final String id, final boolean force )
+    {
+        synchronized ( this.references )
+        {
+            if ( !force && !this.currentIndex.containsKey ( id ) )
+            {
+                return false;
+            }
+
+            this.references.merge ( id, 1, Integer::sum );
+            return true;
+        }
+    }
+
+    private void release ( final String id )
+    {
+        synchronized ( this.references )
+        {
+            final Integer count = this.references.get ( id );
+            if ( count == null )
+            {
+                return;
+            }
+
+            if ( count > 1 )
+            {
+                this.references.put ( id, count - 1 );
+                return;
+            }
+
+            this.references.remove ( id );
+
+            if ( this.pendingDeletes.remove ( id ) )
+            {
+                final Path path = makeDataPath ( id );
+                try
+                {
+                    Files.deleteIfExists ( path );
+
+                    if ( this.pendingDeletes.isEmpty () )
+                    {
+                        Files.deleteIfExists ( this.pendingDeletesPath );
+                    }
+                }
+                catch ( final IOException e )
+                {
+                    logger.warn ( "Failed to delete blob: " + path, e );
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete a blob, or defer the deletion until the last open stream of the
+     * blob is closed
+     */
+    private void deleteOrDefer ( final String id ) throws IOException
+    {
+        synchronized ( this.references )
+        {
+            if ( this.references.containsKey ( id ) )
+            {
+                logger.debug ( "Deferring delete of blob: {}", id );
+                if ( this.pendingDeletes.add ( id ) )
+                {
+                    appendLines ( this.pendingDeletesPath, Collections.singleton ( id ) );
+                }
+            }
+            else
+            {
+                Files.deleteIfExists ( makeDataPath ( id ) );
+            }
+        }
+    }
+
+    /**
+     * A reference to the file of a blob
+     */
+    public class BlobReference implements ArtifactContent
+    {
+        private final String id;
+
+        private final Path path;
+
+        private final AtomicBoolean closed = new AtomicBoolean ();
+
+        private BlobReference ( final String id, final Path path )
+        {
+            this.id = id;
+            this.path = path;
+        }
+
+        @Override
+        public Path getPath ()
+        {
+            return this.path;
+        }
+
+        @Override
+        public void close ()
+        {
+            if ( this.closed.compareAndSet ( false, true ) )
+            {
+                release ( this.id );
+            }
+        }
+    }
+
+    private static class ReferenceInputStream extends FilterInputStream
+    {
+        private final BlobReference reference;
+
+        public ReferenceInputStream ( final BlobReference reference, final InputStream in )
+        {
+            super ( in );
+            this.reference = reference;
+        }
+
+        @Override
+        public void close () throws IOException
+        {
+            try
+            {
+                super.close ();
+            }
+            finally
+            {
+                this.reference.close ();
+            }
         }
-        return processStream ( id, consumer );
     }
 
     private boolean processStream ( final String id, final IOConsumer<InputStream> consumer ) throws IOException
@@ -244,15 +1007,37 @@ public class BlobStore implements Closeable
 
         try
         {
-            final Set<String> index = new HashSet<> ( this.currentIndex );
-            index.removeAll ( deleted );
-            index.addAll ( added );
+            // copying the index is cheap, the copy shares the structure
 
-            writeIndex ( index );
+            final HashTrieMap<String, Boolean> index = new HashTrieMap<> ( this.currentIndex );
 
+            final List<String> changes = new ArrayList<> ( deleted.size () + added.size () );
             for ( final String id : deleted )
             {
-                Files.deleteIfExists ( makeDataPath ( id ) );
+                index.remove ( id );
+                changes.add ( "-" + id );
+            }
+            for ( final String id : added )
+            {
+                index.put ( id, Boolean.TRUE );
+                changes.add ( "+" + id );
+            }
+
+            if ( this.logEntries + changes.size () > Math.max ( MIN_COMPACTION_SIZE, index.size () ) )
+            {
+                // the log got larger than a snapshot
+                writeIndex ( index );
+            }
+            else
+            {
+                appendLines ( this.indexLogPath, changes );
+                this.logEntries += changes.size ();
+                this.currentIndex = index;
+            }
+
+            for ( final String id : deleted )
+            {
+                deleteOrDefer ( id );
             }
         }
         catch ( final IOException e )
@@ -261,52 +1046,153 @@ public class BlobStore implements Closeable
         }
     }
 
-    private void writeIndex ( final Set<String> index ) throws IOException
+    /**
+     * Write a full snapshot of the index and reset the log
+     */
+    private void writeIndex ( final HashTrieMap<String, Boolean> index ) throws IOException
     {
-        Files.write ( this.indexPath, index, StandardCharsets.UTF_8 );
+        final Path tmp = this.base.resolve ( "index.txt.tmp" );
+        Files.write ( tmp, index.keySet (), StandardCharsets.UTF_8 );
+        Files.move ( tmp, this.indexPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+
+        Files.deleteIfExists ( this.indexLogPath );
+        this.logEntries = 0;
+
         this.currentIndex = index;
     }
 
-    private Set<String> loadIndex () throws IOException
+    private HashTrieMap<String, Boolean> loadIndex () throws IOException
     {
+        final HashTrieMap<String, Boolean> index;
         try
         {
-            return new HashSet<> ( Files.readAllLines ( this.indexPath, StandardCharsets.UTF_8 ) );
+            index = toIndex ( Files.readAllLines ( this.indexPath, StandardCharsets.UTF_8 ) );
         }
         catch ( final NoSuchFileException e )
         {
             return null;
         }
+
+        // replay the log
+
+        try
+        {
+            for ( final String line : readLines ( this.indexLogPath ) )
+            {
+                if ( line.length () < 2 )
+                {
+                    continue;
+                }
+
+                final String id = line.substring ( 1 );
+                switch ( line.charAt ( 0 ) )
+                {
+                    case '+':
+                        index.put ( id, Boolean.TRUE );
+                        break;
+                    case '-':
+                        index.remove ( id );
+                        break;
+                    default:
+                        logger.warn ( "Invalid index log entry: {}", line );
+                        break;
+                }
+
+                this.logEntries++;
+            }
+        }
+        catch ( final NoSuchFileException e )
+        {
+            // no changes since the last snapshot
+        }
+
+        return index;
     }
 
-    protected synchronized void handleRollback ( final Transaction transaction )
+    /**
+     * Append lines to a log file, each one terminated by a newline
+     */
+    private static void appendLines ( final Path path, final Collection<String> lines ) throws IOException
     {
-        if ( this.transaction != transaction )
+        final StringBuilder sb = new StringBuilder ();
+        for ( final String line : lines )
         {
-            throw new IllegalStateException ( "Invalid transaction" );
+            sb.append ( line ).append ( '\n' );
         }
-        this.transaction = null;
 
-        try
+        Files.write ( path, sb.toString ().getBytes ( StandardCharsets.UTF_8 ), StandardOpenOption.CREATE, StandardOpenOption.APPEND );
+    }
+
+    /**
+     * Read the complete lines of a log file
+     * <p>
+     * A last line, which is not terminated by a newline, is the result of an
+     * interrupted append. It gets dropped and truncated from the file, so that
+     * the next append starts on a new line.
+     * </p>
+     *
+     * @throws NoSuchFileException
+     *             if the file does not exist
+     */
+    private static List<String> readLines ( final Path path ) throws IOException
+    {
+        final byte[] data = Files.readAllBytes ( path );
+
+        int end = data.length;
+        while ( end > 0 && data[end - 1] != '\n' )
         {
-            vacuum ();
+            end--;
         }
-        catch ( final IOException e )
+
+        if ( end < data.length )
+        {
+            logger.warn ( "Dropping incomplete last line of {}", path );
+            try ( FileChannel channel = FileChannel.open ( path, StandardOpenOption.WRITE ) )
+            {
+                channel.truncate ( end );
+            }
+        }
+
+        final List<String> result = new ArrayList<> ();
+        for ( final String line : new String ( data, 0, end, StandardCharsets.UTF_8 ).split ( "\n" ) )
         {
-            logger.warn ( "Failed to vacuum", e );
+            // logs written with the platform line separator
+            result.add ( line.endsWith ( "\r" ) ? line.substring ( 0, line.length () - 1 ) : line );
         }
+        return result;
     }
 
-    public synchronized void vacuum () throws IOException
+    /**
+     * Roll back a transaction
+     * <p>
+     * Only the blobs created by the transaction are removed, unless they
+     * ended up in the index.
+     * </p>
+     */
+    protected synchronized void handleRollback ( final Transaction transaction, final Set<String> created )
     {
-        final Set<String> ids = scanIndex ( this.base );
-        ids.removeAll ( this.currentIndex );
+        if ( this.transaction != transaction )
+        {
+            throw new IllegalStateException ( "Invalid transaction" );
+        }
+        this.transaction = null;
 
-        for ( final String id : ids )
+        for ( final String id : created )
         {
-            final Path path = makeDataPath ( id );
-            logger.debug ( "Vacuuming file: {}", path );
-            Files.deleteIfExists ( path );
+            if ( this.currentIndex.containsKey ( id ) )
+            {
+                continue;
+            }
+
+            try
+            {
+                logger.debug ( "Removing rolled back blob: {}", id );
+                deleteOrDefer ( id );
+            }
+            catch ( final IOException e )
+            {
+                logger.warn ( "Failed to remove rolled back blob: " + id, e );
+            }
         }
     }
 
@@ -15,10 +15,18 @@ import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
 
 import org.eclipse.packagedrone.repo.MetaKey;
 import org.eclipse.packagedrone.utils.io.IOConsumer;
@@ -30,9 +38,18 @@ public class CacheStore implements AutoCloseable
 {
     private final static Logger logger = LoggerFactory.getLogger ( CacheStore.TransactionImpl.class );
 
+    /**
+     * A cache store transaction
+     * <p>
+     * Entries may be put by multiple threads concurrently. Each entry is
+     * written to a temporary file first and then moved to its final location.
+     * If the content of an entry did not change since the last commit, the
+     * committed file gets linked instead.
+     * </p>
+     */
     public class TransactionImpl implements Transaction
     {
-        private Path tmp;
+        private volatile Path tmp;
 
         public TransactionImpl ()
         {
@@ -46,12 +63,81 @@ public class CacheStore implements AutoCloseable
             final Path path = makePath ( this.tmp, key );
             Files.createDirectories ( path.getParent () );
 
-            try ( OutputStream stream = new BufferedOutputStream ( Files.newOutputStream ( path ) ) )
+            final Path committed = makePath ( CacheStore.this.dataPath, key );
+
+            final Path file = Files.createTempFile ( this.tmp, ".put-", null );
+            try
             {
-                source.accept ( stream );
+                final ComparingOutputStream comparing = new ComparingOutputStream ( committed, file );
+                try ( OutputStream stream = new BufferedOutputStream ( comparing ) )
+                {
+                    source.accept ( stream );
+                }
+
+                if ( comparing.isUnchanged () )
+                {
+                    logger.trace ( "Cache entry unchanged: {}", key );
+                    linkOrCopy ( committed, file );
+                }
+
+                // replaces the entry, even if it is a link to a committed entry, without modifying it
+                Files.move ( file, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+
+                return comparing.getCount ();
+            }
+            finally
+            {
+                Files.deleteIfExists ( file );
             }
+        }
+
+        @Override
+        public boolean keep ( final MetaKey key ) throws IOException
+        {
+            makeTemp ();
 
-            return Files.size ( path );
+            final Path source = makePath ( CacheStore.this.dataPath, key );
+            if ( !Files.isRegularFile ( source ) )
+            {
+                return false;
+            }
+
+            final Path path = makePath ( this.tmp, key );
+            Files.createDirectories ( path.getParent () );
+
+            final Path file = this.tmp.resolve ( ".keep-" + UUID.randomUUID () );
+            try
+            {
+                linkOrCopy ( source, file );
+                Files.move ( file, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+            }
+            finally
+            {
+                Files.deleteIfExists ( file );
+            }
+
+            return true;
+        }
+
+        /**
+         * Link a committed file
+         * <p>
+         * The committed file will only be unlinked, never modified, so it is
+         * safe to share it.
+         * </p>
+         */
+        private void linkOrCopy ( final Path source, final Path file ) throws IOException
+        {
+            Files.deleteIfExists ( file );
+            try
+            {
+                Files.createLink ( file, source );
+            }
+            catch ( final UnsupportedOperationException | IOException e )
+            {
+                logger.debug ( "Failed to link cache entry, copying instead", e );
+                Files.copy ( source, file, StandardCopyOption.REPLACE_EXISTING );
+            }
         }
 
         @Override
@@ -64,6 +150,7 @@ public class CacheStore implements AutoCloseable
                 {
                     // delete it
                     Files.walkFileTree ( this.tmp, new RecursiveDeleteVisitor () );
+                    this.tmp = null;
                 }
 
                 // and ensure we always have one
@@ -71,7 +158,7 @@ public class CacheStore implements AutoCloseable
             }
         }
 
-        private void makeTemp () throws IOException
+        private synchronized void makeTemp () throws IOException
         {
             if ( this.tmp == null )
             {
@@ -82,12 +169,13 @@ public class CacheStore implements AutoCloseable
         @Override
         public boolean stream ( final MetaKey key, final IOConsumer<InputStream> consumer ) throws IOException
         {
-            if ( streamFrom ( this.tmp, key, consumer ) )
+            final Path tmp = this.tmp;
+            if ( tmp != null && streamFrom ( tmp, key, consumer ) )
             {
                 return true;
             }
 
-            return streamFrom ( CacheStore.this.dataPath, key, consumer );
+            return CacheStore.this.stream ( key, consumer );
         }
 
         @Override
@@ -103,39 +191,26 @@ public class CacheStore implements AutoCloseable
                     return;
                 }
 
-                try
-                {
-                    // first delete the swap dir
-                    if ( Files.exists ( CacheStore.this.swapPath ) )
-                    {
-                        Files.walkFileTree ( CacheStore.this.swapPath, new RecursiveDeleteVisitor () );
-                    }
+                // the transaction becomes the next generation
 
-                    // move away old data path
-                    if ( Files.exists ( CacheStore.this.dataPath ) )
-                    {
-                        Files.createDirectories ( CacheStore.this.swapPath.getParent () );
-                        Files.move ( CacheStore.this.dataPath, CacheStore.this.swapPath, StandardCopyOption.ATOMIC_MOVE );
-                    }
+                final Path previous = CacheStore.this.dataPath;
+                final Path next = CacheStore.this.basePath.resolve ( GENERATION_PREFIX + UUID.randomUUID () );
 
-                    Files.move ( this.tmp, CacheStore.this.dataPath, StandardCopyOption.ATOMIC_MOVE );
+                try
+                {
+                    Files.move ( this.tmp, next, StandardCopyOption.ATOMIC_MOVE );
+                    writeCurrent ( next );
                 }
                 catch ( final IOException e )
                 {
                     throw new RuntimeException ( e );
                 }
 
-                if ( Files.exists ( CacheStore.this.swapPath ) )
-                {
-                    try
-                    {
-                        Files.walkFileTree ( CacheStore.this.swapPath, new RecursiveDeleteVisitor () );
-                    }
-                    catch ( final IOException e )
-                    {
-                        // we can ignore this one
-                    }
-                }
+                CacheStore.this.dataPath = next;
+
+                // readers may still use the previous generation
+
+                deleteLater ( Collections.singleton ( previous ) );
             }
         }
 
@@ -167,6 +242,22 @@ public class CacheStore implements AutoCloseable
     {
         public long put ( MetaKey key, IOConsumer<OutputStream> data ) throws IOException;
 
+        /**
+         * Keep the committed content of a cache entry
+         * <p>
+         * Committing a transaction replaces all cache entries with the ones
+         * put into the transaction. This method carries over an entry of the
+         * last commit without re-creating it.
+         * </p>
+         *
+         * @param key
+         *            the key of the entry
+         * @return {@code true} if the entry was found, {@code false} otherwise
+         * @throws IOException
+         *             if the entry could not be carried over
+         */
+        public boolean keep ( MetaKey key ) throws IOException;
+
         public boolean stream ( final MetaKey key, final IOConsumer<InputStream> consumer ) throws IOException;
 
         public void clear () throws IOException;
@@ -176,22 +267,133 @@ public class CacheStore implements AutoCloseable
         public void rollback ();
     }
 
+    private static final String GENERATION_PREFIX = "data-";
+
     private Transaction transaction;
 
-    private final Path dataPath;
+    private final Path basePath;
+
+    /**
+     * The directory of the current generation
+     * <p>
+     * Each commit creates a new generation. Unchanged entries are shared
+     * between generations using hard links. Old generations get deleted in the
+     * background.
+     * </p>
+     */
+    private volatile Path dataPath;
 
     private final Path tmpPath;
 
-    private final Path swapPath;
+    private final Path currentPath;
 
     public CacheStore ( final Path path ) throws IOException
     {
-        this.dataPath = path.resolve ( "data" );
+        this.basePath = path;
         this.tmpPath = path.resolve ( "tmp" );
-        this.swapPath = path.resolve ( "swap" );
+        this.currentPath = path.resolve ( "current" );
+
+        this.dataPath = readCurrent ();
 
         Files.createDirectories ( this.dataPath );
         Files.createDirectories ( this.tmpPath );
+
+        // delete what was left over by previous runs
+
+        deleteLater ( findGarbage () );
+    }
+
+    /**
+     * Read the current generation
+     * <p>
+     * If there is no current generation recorded, this is a store of the
+     * format before generations were introduced, which only had a "data"
+     * directory.
+     * </p>
+     */
+    private Path readCurrent () throws IOException
+    {
+        try
+        {
+            final String name = new String ( Files.readAllBytes ( this.currentPath ), StandardCharsets.UTF_8 ).trim ();
+            if ( !name.isEmpty () )
+            {
+                return this.basePath.resolve ( name );
+            }
+        }
+        catch ( final NoSuchFileException e )
+        {
+            // use default
+        }
+
+        return this.basePath.resolve ( "data" );
+    }
+
+    private void writeCurrent ( final Path generation ) throws IOException
+    {
+        final Path tmp = this.basePath.resolve ( "current.tmp" );
+        Files.write ( tmp, generation.getFileName ().toString ().getBytes ( StandardCharsets.UTF_8 ) );
+        Files.move ( tmp, this.currentPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+    }
+
+    /**
+     * Find old generations and stale transaction directories
+     */
+    private List<Path> findGarbage () throws IOException
+    {
+        final List<Path> result = new ArrayList<> ();
+
+        try ( DirectoryStream<Path> dirs = Files.newDirectoryStream ( this.basePath ) )
+        {
+            for ( final Path dir : dirs )
+            {
+                final String name = dir.getFileName ().toString ();
+                if ( dir.equals ( this.dataPath ) )
+                {
+                    continue;
+                }
+                if ( name.equals ( "data" ) || name.startsWith ( GENERATION_PREFIX ) || name.equals ( "swap" ) )
+                {
+                    result.add ( dir );
+                }
+            }
+        }
+
+        try ( DirectoryStream<Path> dirs = Files.newDirectoryStream ( this.tmpPath ) )
+        {
+            for ( final Path dir : dirs )
+            {
+                result.add ( dir );
+            }
+        }
+
+        return result;
+    }
+
+    private static void deleteLater ( final Collection<Path> paths )
+    {
+        if ( paths.isEmpty () )
+        {
+            return;
+        }
+
+        ForkJoinPool.commonPool ().execute ( () -> {
+            for ( final Path path : paths )
+            {
+                try
+                {
+                    if ( Files.exists ( path ) )
+                    {
+                        logger.debug ( "Deleting old cache generation: {}", path );
+                        Files.walkFileTree ( path, new RecursiveDeleteVisitor () );
+                    }
+                }
+                catch ( final IOException e )
+                {
+                    logger.info ( "Failed to delete old cache generation: " + path, e );
+                }
+            }
+        } );
     }
 
     protected void markFinished ( final TransactionImpl transaction )
@@ -229,7 +431,22 @@ public class CacheStore implements AutoCloseable
      */
     public boolean stream ( final MetaKey key, final IOConsumer<InputStream> consumer ) throws IOException
     {
-        return streamFrom ( this.dataPath, key, consumer );
+        while ( true )
+        {
+            final Path dataPath = this.dataPath;
+
+            if ( streamFrom ( dataPath, key, consumer ) )
+            {
+                return true;
+            }
+
+            if ( dataPath == this.dataPath )
+            {
+                return false;
+            }
+
+            // a new generation was committed in the meantime, try again
+        }
     }
 
     private boolean streamFrom ( final Path basePath, final MetaKey key, final IOConsumer<InputStream> consumer ) throws IOException
@@ -238,15 +455,21 @@ public class CacheStore implements AutoCloseable
 
         logger.trace ( "streamFrom - key: %s, path: %s", key, path );
 
-        try ( InputStream stream = new BufferedInputStream ( Files.newInputStream ( path ) ) )
+        final InputStream in;
+        try
         {
-            consumer.accept ( stream );
-            return true;
+            in = Files.newInputStream ( path );
         }
         catch ( final NoSuchFileException e )
         {
             return false;
         }
+
+        try ( InputStream stream = new BufferedInputStream ( in ) )
+        {
+            consumer.accept ( stream );
+            return true;
+        }
     }
 
     private static Path makePath ( final Path basePath, final MetaKey key )
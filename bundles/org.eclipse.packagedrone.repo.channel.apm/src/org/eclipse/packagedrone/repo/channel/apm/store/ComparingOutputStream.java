@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.channel.apm.store;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * An output stream which only writes to its target file if the content
+ * differs from a reference file
+ * <p>
+ * As long as the written data matches the reference file, nothing gets
+ * written. When the first difference is detected, the matching prefix is
+ * copied from the reference file and all further data is written to the
+ * target file directly.
+ * </p>
+ */
+class ComparingOutputStream extends OutputStream
+{
+    private final Path reference;
+
+    private final Path target;
+
+    private InputStream referenceStream;
+
+    private OutputStream targetStream;
+
+    private byte[] buffer = new byte[0];
+
+    private long count;
+
+    private boolean unchanged;
+
+    private boolean closed;
+
+    /**
+     * @param reference
+     *            the file to compare with, does not need to exist
+     * @param target
+     *            the file to write to in case the content differs
+     */
+    public ComparingOutputStream ( final Path reference, final Path target ) throws IOException
+    {
+        this.reference = reference;
+        this.target = target;
+
+        try
+        {
+            this.referenceStream = new BufferedInputStream ( Files.newInputStream ( reference ) );
+        }
+        catch ( final NoSuchFileException e )
+        {
+            diverge ();
+        }
+    }
+
+    @Override
+    public void write ( final int b ) throws IOException
+    {
+        write ( new byte[] { (byte)b }, 0, 1 );
+    }
+
+    @Override
+    public void write ( final byte[] b, final int off, final int len ) throws IOException
+    {
+        if ( this.referenceStream != null )
+        {
+            if ( this.buffer.length < len )
+            {
+                this.buffer = new byte[len];
+            }
+
+            final int read = ByteStreams.read ( this.referenceStream, this.buffer, 0, len );
+            if ( read == len && equals ( b, off, this.buffer, len ) )
+            {
+                this.count += len;
+                return;
+            }
+
+            diverge ();
+        }
+
+        this.targetStream.write ( b, off, len );
+        this.count += len;
+    }
+
+    private static boolean equals ( final byte[] data, final int off, final byte[] reference, final int len )
+    {
+        for ( int i = 0; i < len; i++ )
+        {
+            if ( data[off + i] != reference[i] )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Switch to writing the target file, starting with the prefix which
+     * matched so far
+     */
+    private void diverge () throws IOException
+    {
+        if ( this.referenceStream != null )
+        {
+            this.referenceStream.close ();
+            this.referenceStream = null;
+        }
+
+        this.buffer = null;
+
+        try ( FileChannel in = FileChannel.open ( this.reference, StandardOpenOption.READ );
+              FileChannel out = FileChannel.open ( this.target, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.CREATE ) )
+        {
+            long position = 0;
+            while ( position < this.count )
+            {
+                position += in.transferTo ( position, this.count - position, out );
+            }
+        }
+        catch ( final NoSuchFileException e )
+        {
+            // nothing to copy, the reference does not exist
+        }
+
+        this.targetStream = Files.newOutputStream ( this.target, StandardOpenOption.WRITE, StandardOpenOption.APPEND, StandardOpenOption.CREATE );
+    }
+
+    @Override
+    public void flush () throws IOException
+    {
+        if ( this.targetStream != null )
+        {
+            this.targetStream.flush ();
+        }
+    }
+
+    @Override
+    public void close () throws IOException
+    {
+        if ( this.closed )
+        {
+            return;
+        }
+        this.closed = true;
+
+        if ( this.referenceStream != null )
+        {
+            // the reference must not have additional content
+
+            if ( this.referenceStream.read () < 0 )
+            {
+                this.referenceStream.close ();
+                this.referenceStream = null;
+                this.unchanged = true;
+                return;
+            }
+
+            diverge ();
+        }
+
+        this.targetStream.close ();
+    }
+
+    /**
+     * Check if the content matched the reference file
+     * <p>
+     * Only valid after the stream was closed. If the content is unchanged, the
+     * target file was not written.
+     * </p>
+     *
+     * @return {@code true} if the content is identical to the reference file
+     */
+    public boolean isUnchanged ()
+    {
+        return this.unchanged;
+    }
+
+    /**
+     * Get the number of bytes written to this stream
+     *
+     * @return the number of bytes
+     */
+    public long getCount ()
+    {
+        return this.count;
+    }
+}
@@ -0,0 +1,287 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.channel.apm.store;
+
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A content addressed store, shared by the blob stores of all channels
+ * <p>
+ * The content store does not hold content of its own. It keeps a hard link to
+ * one blob file for each SHA-256 digest it has seen. When another blob with
+ * the same digest gets stored, the blob file is replaced with a hard link to
+ * the existing content. So identical content, e.g. promoted from one channel
+ * to another, is only stored once on disk.
+ * </p>
+ * <p>
+ * The link count of the file system serves as the reference count. Once all
+ * blobs referencing some content are deleted, only the link of the content
+ * store remains, which will be removed by {@link #gc()}.
+ * </p>
+ * <p>
+ * This requires blob files to never be modified after they have been
+ * written.
+ * </p>
+ */
+public class ContentStore
+{
+    private final static Logger logger = LoggerFactory.getLogger ( ContentStore.class );
+
+    private final Path base;
+
+    /**
+     * Create a new content store
+     *
+     * @param base
+     *            the base directory, must be on the same file system as the
+     *            blob stores using it
+     * @throws IOException
+     *             if the base directory could not be created
+     * @throws UnsupportedOperationException
+     *             if the file system does not provide link counts
+     */
+    public ContentStore ( final Path base ) throws IOException
+    {
+        this.base = base.toAbsolutePath ();
+
+        Files.createDirectories ( this.base );
+
+        if ( !Files.getFileStore ( this.base ).supportsFileAttributeView ( "unix" ) )
+        {
+            throw new UnsupportedOperationException ( "The file system does not provide link counts" );
+        }
+    }
+
+    private Path makePath ( final String sha256 )
+    {
+        return this.base.resolve ( sha256.substring ( 0, 2 ) ).resolve ( sha256.substring ( 2, 4 ) ).resolve ( sha256 );
+    }
+
+    /**
+     * Share the content of a blob file
+     * <p>
+     * If the content is already known, the file will be replaced by a link to
+     * the known content. Otherwise the file becomes the known content for its
+     * digest.
+     * </p>
+     * <p>
+     * The file must not be in use by anyone else while calling this method.
+     * Failing to share the content is not an error, the file will simply keep
+     * its own copy of the content.
+     * </p>
+     *
+     * @param file
+     *            the blob file
+     * @param sha256
+     *            the SHA-256 digest of the content, in hex encoding
+     * @return {@code true} if the file now shares the content with other
+     *         blobs, {@code false} otherwise
+     */
+    public synchronized boolean share ( final Path file, final String sha256 )
+    {
+        if ( sha256 == null || sha256.length () < 4 )
+        {
+            return false;
+        }
+
+        final Path path = makePath ( sha256 );
+
+        try
+        {
+            try
+            {
+                if ( Files.size ( path ) != Files.size ( file ) )
+                {
+                    logger.warn ( "Content size mismatch for digest {}, not sharing: {}", sha256, file );
+                    return false;
+                }
+            }
+            catch ( final NoSuchFileException e )
+            {
+                // first one with this content
+
+                Files.createDirectories ( path.getParent () );
+                Files.createLink ( path, file );
+                return false;
+            }
+
+            if ( Files.isSameFile ( path, file ) )
+            {
+                return true;
+            }
+
+            // calls are serialized, so a single temporary name is enough
+
+            final Path tmp = this.base.resolve ( "link.tmp" );
+
+            Files.deleteIfExists ( tmp );
+            Files.createLink ( tmp, path );
+            Files.move ( tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+
+            logger.debug ( "Sharing content {} for: {}", sha256, file );
+
+            return true;
+        }
+        catch ( final UnsupportedOperationException | FileSystemException e )
+        {
+            // e.g. a different file system or too many links
+
+            logger.debug ( "Unable to share content: " + file, e );
+            return false;
+        }
+        catch ( final IOException e )
+        {
+            logger.warn ( "Failed to share content: " + file, e );
+            return false;
+        }
+    }
+
+    /**
+     * Link known content to a file
+     * <p>
+     * If content with the digest and size is known, the target file will be
+     * replaced with a link to this content.
+     * </p>
+     *
+     * @param sha256
+     *            the SHA-256 digest of the content, in hex encoding
+     * @param size
+     *            the expected size of the content
+     * @param target
+     *            the file to link the content to
+     * @return {@code true} if the target now links to the known content,
+     *         {@code false} if the content is unknown or could not be linked
+     */
+    public synchronized boolean link ( final String sha256, final long size, final Path target )
+    {
+        if ( sha256 == null || sha256.length () < 4 )
+        {
+            return false;
+        }
+
+        final Path path = makePath ( sha256 );
+
+        try
+        {
+            if ( Files.size ( path ) != size )
+            {
+                return false;
+            }
+
+            final Path tmp = this.base.resolve ( "link.tmp" );
+
+            Files.deleteIfExists ( tmp );
+            Files.createLink ( tmp, path );
+            Files.move ( tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+
+            logger.debug ( "Linked known content {} to: {}", sha256, target );
+
+            return true;
+        }
+        catch ( final NoSuchFileException e )
+        {
+            return false;
+        }
+        catch ( final UnsupportedOperationException | FileSystemException e )
+        {
+            logger.debug ( "Unable to link content: " + target, e );
+            return false;
+        }
+        catch ( final IOException e )
+        {
+            logger.warn ( "Failed to link content: " + target, e );
+            return false;
+        }
+    }
+
+    /**
+     * Remove all content which is no longer used by any blob
+     * <p>
+     * The store is walked without holding the lock, so that sharing and
+     * linking content is not blocked for the duration of the walk. Only the
+     * check and removal of each single file is done under the lock. The walk
+     * stops early if the calling thread gets interrupted.
+     * </p>
+     */
+    public void gc () throws IOException
+    {
+        final int[] count = new int[1];
+
+        Files.walkFileTree ( this.base, new SimpleFileVisitor<Path> () {
+
+            @Override
+            public FileVisitResult visitFile ( final Path file, final BasicFileAttributes attrs ) throws IOException
+            {
+                if ( Thread.currentThread ().isInterrupted () )
+                {
+                    logger.info ( "Content store cleanup interrupted" );
+                    return FileVisitResult.TERMINATE;
+                }
+
+                if ( removeUnused ( file ) )
+                {
+                    count[0]++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed ( final Path file, final IOException e ) throws IOException
+            {
+                if ( e instanceof NoSuchFileException )
+                {
+                    // removed in the meantime
+                    return FileVisitResult.CONTINUE;
+                }
+                throw e;
+            }
+        } );
+
+        logger.info ( "Removed {} unused content entries", count[0] );
+    }
+
+    /**
+     * Remove a single content file, if it is no longer used
+     * <p>
+     * The link count is checked again under the lock, since content may have
+     * been shared after the file was visited.
+     * </p>
+     */
+    private synchronized boolean removeUnused ( final Path file ) throws IOException
+    {
+        try
+        {
+            final Number links = (Number)Files.getAttribute ( file, "unix:nlink" );
+            if ( links.intValue () > 1 )
+            {
+                return false;
+            }
+
+            Files.delete ( file );
+            return true;
+        }
+        catch ( final NoSuchFileException e )
+        {
+            return false;
+        }
+    }
+}
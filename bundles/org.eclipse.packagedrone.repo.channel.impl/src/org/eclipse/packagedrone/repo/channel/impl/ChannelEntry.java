@@ -16,7 +16,7 @@ import org.eclipse.packagedrone.repo.channel.provider.ChannelProvider;
 
 class ChannelEntry
 {
-    private ChannelId id;
+    private volatile ChannelId id;
 
     private final Channel channel;
 
@@ -13,6 +13,8 @@ package org.eclipse.packagedrone.repo.channel.impl;
 import static org.eclipse.packagedrone.repo.utils.Splits.split;
 import static org.eclipse.packagedrone.utils.Locks.lock;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -22,6 +24,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -39,6 +42,7 @@ import org.eclipse.packagedrone.repo.channel.DeployKeysChannelAdapter;
 import org.eclipse.packagedrone.repo.channel.DescriptorAdapter;
 import org.eclipse.packagedrone.repo.channel.ModifiableChannel;
 import org.eclipse.packagedrone.repo.channel.ReadableChannel;
+import org.eclipse.packagedrone.repo.channel.StagedArtifact;
 import org.eclipse.packagedrone.repo.channel.deploy.DeployAuthService;
 import org.eclipse.packagedrone.repo.channel.deploy.DeployGroup;
 import org.eclipse.packagedrone.repo.channel.deploy.DeployKey;
@@ -46,6 +50,7 @@ import org.eclipse.packagedrone.repo.channel.provider.AccessContext;
 import org.eclipse.packagedrone.repo.channel.provider.Channel;
 import org.eclipse.packagedrone.repo.channel.provider.ChannelProvider;
 import org.eclipse.packagedrone.repo.channel.provider.ChannelProvider.Listener;
+import org.eclipse.packagedrone.repo.channel.provider.ChannelSummary;
 import org.eclipse.packagedrone.repo.channel.provider.ModifyContext;
 import org.eclipse.packagedrone.repo.channel.provider.ProviderInformation;
 import org.eclipse.packagedrone.repo.channel.stats.ChannelStatistics;
@@ -59,8 +64,8 @@ import org.osgi.framework.ServiceReference;
 import org.osgi.util.tracker.ServiceTracker;
 import org.osgi.util.tracker.ServiceTrackerCustomizer;
 
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
 
 public class ChannelServiceImpl implements ChannelService, DeployAuthService
 {
@@ -105,6 +110,34 @@ public class ChannelServiceImpl implements ChannelService, DeployAuthService
 
     }
 
+    /**
+     * The cache of deploy groups and keys
+     * <p>
+     * Instances are immutable and get replaced as a whole, so that readers
+     * don't need to acquire a lock.
+     * </p>
+     */
+    private static class DeployKeyCache
+    {
+        static final DeployKeyCache EMPTY = new DeployKeyCache ( ImmutableSetMultimap.of (), ImmutableSetMultimap.of () );
+
+        /**
+         * Map channel ids to deploy groups
+         */
+        private final SetMultimap<String, DeployGroup> groups;
+
+        /**
+         * Map deploy keys to channel ids
+         */
+        private final SetMultimap<String, String> channels;
+
+        private DeployKeyCache ( final SetMultimap<String, DeployGroup> groups, final SetMultimap<String, String> channels )
+        {
+            this.groups = groups;
+            this.channels = channels;
+        }
+    }
+
     private static final MetaKey KEY_STORAGE = new MetaKey ( "channels", "service" );
 
     private final BundleContext context;
@@ -132,6 +165,10 @@ public class ChannelServiceImpl implements ChannelService, DeployAuthService
 
     /**
      * Used to read-lock the channel and provider map
+     * <p>
+     * Looking up channels does not require the lock, the channel and the name
+     * map are concurrent maps.
+     * </p>
      */
     private final Lock readLock;
 
@@ -142,7 +179,17 @@ public class ChannelServiceImpl implements ChannelService, DeployAuthService
 
     private final ServiceTracker<ChannelProvider, Entry> tracker;
 
-    private final Map<String, ChannelEntry> channelMap = new HashMap<> ();
+    private final Map<String, ChannelEntry> channelMap = new ConcurrentHashMap<> ();
+
+    /**
+     * Index of the channel map by channel name
+     * <p>
+     * Names of channels must only be changed using
+     * {@link #updateId(ChannelEntry, ChannelId)}, in order to keep this index
+     * up to date.
+     * </p>
+     */
+    private final Map<String, ChannelEntry> nameMap = new ConcurrentHashMap<> ();
 
     private final Map<String, ChannelProvider> providerMap = new HashMap<> ();
 
@@ -155,9 +202,9 @@ public class ChannelServiceImpl implements ChannelService, DeployAuthService
     private StorageRegistration handle;
 
     /**
-     * Map channel ids to deploy groups, cache
+     * Deploy groups and keys, cache
      */
-    private final Multimap<String, DeployGroup> deployKeysMap = HashMultimap.create ();
+    private volatile DeployKeyCache deployKeys = DeployKeyCache.EMPTY;
 
     private ChannelAspectProcessor aspectProcessor;
 
@@ -189,7 +236,14 @@ public class ChannelServiceImpl implements ChannelService, DeployAuthService
                 added.forEach ( channel -> {
                     final String mappedId = makeMappedId ( provider, channel );
                     final String name = mapName ( mappedId );
-                    this.channelMap.put ( mappedId, new ChannelEntry ( new ChannelId ( mappedId, name ), channel, provider ) );
+                    final ChannelEntry entry = new ChannelEntry ( new ChannelId ( mappedId, name ), channel, provider );
+
+                    final ChannelEntry oldEntry = this.channelMap.put ( mappedId, entry );
+                    if ( oldEntry != null )
+                    {
+                        removeName ( oldEntry );
+                    }
+                    addName ( entry );
                 } );
             }
 
@@ -199,12 +253,51 @@ public class ChannelServiceImpl implements ChannelService, DeployAuthService
             {
                 removed.forEach ( channel -> {
                     final String mappedId = makeMappedId ( provider, channel );
-                    this.channelMap.remove ( mappedId );
+                    final ChannelEntry entry = this.channelMap.remove ( mappedId );
+                    if ( entry != null )
+                    {
+                        removeName ( entry );
+                    }
                 } );
             }
         }
     }
 
+    /**
+     * Change the id of a channel entry and update the name index
+     * <p>
+     * Must be called with the write lock held.
+     * </p>
+     */
+    private void updateId ( final ChannelEntry entry, final ChannelId id )
+    {
+        removeName ( entry );
+        entry.setId ( id );
+
+        if ( this.channelMap.get ( id.getId () ) == entry )
+        {
+            addName ( entry );
+        }
+    }
+
+    private void addName ( final ChannelEntry entry )
+    {
+        final String name = entry.getId ().getName ();
+        if ( name != null )
+        {
+            this.nameMap.put ( name, entry );
+        }
+    }
+
+    private void removeName ( final ChannelEntry entry )
+    {
+        final String name = entry.getId ().getName ();
+        if ( name != null )
+        {
+            this.nameMap.remove ( name, entry );
+        }
+    }
+
     private String mapName ( final String mappedId )
     {
         return this.manager.accessCall ( KEY_STORAGE, ChannelServiceAccess.class, model -> model.mapToName ( mappedId ) );
@@ -254,9 +347,17 @@ public class ChannelServiceImpl implements ChannelService, DeployAuthService
         }
     }
 
+    /**
+     * Get the channel information from the summary of the channel
+     * <p>
+     * This does not require the full channel state, so listing channels does
+     * not load channels which got unloaded or were not loaded yet.
+     * </p>
+     */
     private static ChannelInformation accessState ( final ChannelEntry channelEntry )
     {
-        return accessRead ( channelEntry, channel -> channel.getInformation () );
+        final ChannelSummary summary = channelEntry.getChannel ().getSummary ();
+        return new ChannelInformation ( channelEntry.getId (), summary.getState (), summary.getMetaData (), summary.getAspectStates () );
     }
 
     @Override
@@ -271,8 +372,9 @@ public class ChannelServiceImpl implements ChannelService, DeployAuthService
     /**
      * Find by the locator
      * <p>
-     * This method does not acquire the read lock, this has to be done by the
-     * caller
+     * This method does not acquire the read lock. As the lookup maps are
+     * concurrent, this is only required if the caller needs a consistent view
+     * across multiple calls.
      * </p>
      *
      * @param by
@@ -320,17 +422,7 @@ public class ChannelServiceImpl implements ChannelService, DeployAuthService
             return Optional.empty ();
         }
 
-        // FIXME: improve performance
-
-        for ( final ChannelEntry entry : this.channelMap.values () )
-        {
-            if ( name.equals ( entry.getId ().getName () ) )
-            {
-                return Optional.of ( entry );
-            }
-        }
-
-        return Optional.empty ();
+        return Optional.ofNullable ( this.nameMap.get ( name ) );
     }
 
     @Override
@@ -453,9 +545,19 @@ public class ChannelServiceImpl implements ChannelService, DeployAuthService
         }
     }
 
+    @Override
+    public StagedArtifact stage ( final By by, final InputStream source ) throws IOException
+    {
+        // staging does not lock the channel
+
+        return findChannel ( by ).getChannel ().stage ( source );
+    }
+
     private static <R> R accessRead ( final ChannelEntry channelEntry, final ChannelOperation<R, ReadableChannel> operation )
     {
-        return channelEntry.getChannel ().accessCall ( ctx -> {
+        // read access works on the last persisted state, not blocking on running modifications
+
+        return channelEntry.getChannel ().snapshotCall ( ctx -> {
 
             try ( Disposing<AccessContext> wrappedCtx = Disposing.proxy ( AccessContext.class, ctx );
                   Disposing<ReadableChannel> channel = Disposing.proxy ( ReadableChannel.class, new ReadableChannelAdapter ( channelEntry.getId (), wrappedCtx.getTarget () ) ) )
@@ -522,17 +624,32 @@ public class ChannelServiceImpl implements ChannelService, DeployAuthService
     @Override
     public Optional<Collection<DeployGroup>> getChannelDeployGroups ( final By by )
     {
-        try ( Locked l = lock ( this.readLock ) )
+        final Optional<ChannelEntry> channelEntry = find ( by );
+
+        if ( !channelEntry.isPresent () )
         {
-            final Optional<ChannelEntry> channelEntry = find ( by );
+            return Optional.empty ();
+        }
 
-            if ( !channelEntry.isPresent () )
-            {
-                return Optional.empty ();
-            }
+        return Optional.of ( this.deployKeys.groups.get ( channelEntry.get ().getId ().getId () ) );
+    }
 
-            return Optional.ofNullable ( this.deployKeysMap.get ( channelEntry.get ().getId ().getId () ) ).map ( Collections::unmodifiableCollection );
+    @Override
+    public boolean isDeployKeyValid ( final By by, final String deployKey )
+    {
+        if ( deployKey == null )
+        {
+            return false;
         }
+
+        final Optional<ChannelEntry> channelEntry = find ( by );
+
+        if ( !channelEntry.isPresent () )
+        {
+            return false;
+        }
+
+        return this.deployKeys.channels.containsEntry ( deployKey, channelEntry.get ().getId ().getId () );
     }
 
     private <R> R handleDescribe ( final ChannelEntry channelEntry, final ChannelOperation<R, DescriptorAdapter> operation )
@@ -551,7 +668,7 @@ public class ChannelServiceImpl implements ChannelService, DeployAuthService
 
                         final ChannelId desc = getDescriptor ();
                         StorageManager.executeAfterPersist ( () -> {
-                            channelEntry.setId ( desc );
+                            updateId ( channelEntry, desc );
                         } );
                     }
                 };
@@ -563,11 +680,7 @@ public class ChannelServiceImpl implements ChannelService, DeployAuthService
 
     private ChannelEntry findChannel ( final By by )
     {
-        final Optional<ChannelEntry> channel;
-        try ( Locked l = lock ( this.readLock ) )
-        {
-            channel = find ( by );
-        }
+        final Optional<ChannelEntry> channel = find ( by );
 
         if ( !channel.isPresent () )
         {
@@ -630,11 +743,11 @@ public class ChannelServiceImpl implements ChannelService, DeployAuthService
                     final ChannelEntry channel = this.channelMap.get ( channelId );
                     if ( channel != null )
                     {
-                        channel.setId ( new ChannelId ( channelId, null ) );
+                        updateId ( channel, new ChannelId ( channelId, null ) );
                     }
 
                     // remove deploy groups for channel
-                    this.deployKeysMap.removeAll ( channelId );
+                    updateDeployGroupCache ( model );
                 } );
             } );
 
@@ -660,7 +773,7 @@ public class ChannelServiceImpl implements ChannelService, DeployAuthService
                 // try to remove from mapped channels
                 if ( channel != null )
                 {
-                    channel.setId ( new ChannelId ( id, null ) );
+                    updateId ( channel, new ChannelId ( id, null ) );
                 }
             } );
         }
@@ -674,18 +787,32 @@ public class ChannelServiceImpl implements ChannelService, DeployAuthService
      */
     private void updateDeployGroupCache ( final ChannelServiceAccess model )
     {
-        // this will simply rebuild the complete map
+        // this will simply rebuild the complete cache and swap it afterwards
 
-        // clear first
-        this.deployKeysMap.clear ();
+        final ImmutableSetMultimap.Builder<String, DeployGroup> groups = ImmutableSetMultimap.builder ();
+        final ImmutableSetMultimap.Builder<String, String> channels = ImmutableSetMultimap.builder ();
 
-        // fill afterwards
         for ( final Map.Entry<String, Set<String>> entry : model.getDeployGroupMap ().entrySet () )
         {
             final String channelId = entry.getKey ();
-            final List<DeployGroup> groups = entry.getValue ().stream ().map ( groupId -> model.getDeployGroup ( groupId ) ).collect ( Collectors.toList () );
-            this.deployKeysMap.putAll ( channelId, groups );
+            for ( final String groupId : entry.getValue () )
+            {
+                final DeployGroup group = model.getDeployGroup ( groupId );
+                if ( group == null )
+                {
+                    continue;
+                }
+
+                groups.put ( channelId, group );
+
+                for ( final DeployKey key : group.getKeys () )
+                {
+                    channels.put ( key.getKey (), channelId );
+                }
+            }
         }
+
+        this.deployKeys = new DeployKeyCache ( groups.build (), channels.build () );
     }
 
     // methods of DeployAuthService
@@ -807,7 +934,7 @@ public class ChannelServiceImpl implements ChannelService, DeployAuthService
 
             for ( final ChannelEntry entry : this.channelMap.values () )
             {
-                entry.setId ( new ChannelId ( entry.getId ().getId (), null ) );
+                updateId ( entry, new ChannelId ( entry.getId ().getId (), null ) );
             }
         } );
     }
@@ -55,12 +55,17 @@ import org.eclipse.packagedrone.repo.channel.ChannelService;
 import org.eclipse.packagedrone.repo.channel.DescriptorAdapter;
 import org.eclipse.packagedrone.repo.channel.ModifiableChannel;
 import org.eclipse.packagedrone.repo.channel.ReadableChannel;
+import org.eclipse.packagedrone.repo.channel.StagedArtifact;
 import org.eclipse.packagedrone.repo.channel.ChannelService.By;
 import org.eclipse.packagedrone.repo.channel.transfer.TransferService;
+import org.eclipse.packagedrone.utils.Holder;
+import org.eclipse.packagedrone.utils.io.IOConsumer;
 import org.eclipse.packagedrone.utils.xml.XmlToolsFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
 
@@ -131,19 +136,34 @@ public class TransferServiceImpl implements TransferService
 
                 final String generatorId = getData ( zip, baseName + "generator" );
 
+                final String sha256 = getData ( zip, baseName + "sha256" );
+
+                final Map<MetaKey, String> providedMetaData = getProperties ( zip, baseName + "properties.xml" );
+
                 final ArtifactInformation result;
-                try ( final InputStream stream = zip.getInputStream ( child.zipEntry ) )
+                if ( generatorId == null && sha256 != null )
                 {
-                    final Map<MetaKey, String> providedMetaData = getProperties ( zip, baseName + "properties.xml" );
+                    // let the channel link the content if it is already known
 
-                    if ( generatorId != null )
+                    final String parentId = parent.map ( ArtifactInformation::getId ).orElse ( null );
+                    try ( ZipStagedArtifact staged = new ZipStagedArtifact ( zip, child.zipEntry, sha256 ) )
                     {
-                        result = channel.getContext ().createGeneratorArtifact ( generatorId, stream, name, providedMetaData );
+                        result = channel.getContext ().createArtifact ( parentId, staged, name, providedMetaData );
                     }
-                    else
+                }
+                else
+                {
+                    try ( final InputStream stream = zip.getInputStream ( child.zipEntry ) )
                     {
-                        final String parentId = parent.map ( ArtifactInformation::getId ).orElse ( null );
-                        result = channel.getContext ().createArtifact ( parentId, stream, name, providedMetaData );
+                        if ( generatorId != null )
+                        {
+                            result = channel.getContext ().createGeneratorArtifact ( generatorId, stream, name, providedMetaData );
+                        }
+                        else
+                        {
+                            final String parentId = parent.map ( ArtifactInformation::getId ).orElse ( null );
+                            result = channel.getContext ().createArtifact ( parentId, stream, name, providedMetaData );
+                        }
                     }
                 }
 
@@ -156,6 +176,53 @@ public class TransferServiceImpl implements TransferService
         }
     }
 
+    /**
+     * The content of an exported artifact, with the checksum recorded during
+     * the export
+     */
+    private static class ZipStagedArtifact implements StagedArtifact
+    {
+        private final ZipFile zip;
+
+        private final ZipEntry entry;
+
+        private final Map<String, String> checksums;
+
+        public ZipStagedArtifact ( final ZipFile zip, final ZipEntry entry, final String sha256 )
+        {
+            this.zip = zip;
+            this.entry = entry;
+            this.checksums = Collections.singletonMap ( "sha256", sha256.trim () );
+        }
+
+        @Override
+        public long getSize ()
+        {
+            return this.entry.getSize ();
+        }
+
+        @Override
+        public Map<String, String> getChecksums ()
+        {
+            return this.checksums;
+        }
+
+        @Override
+        public boolean stream ( final IOConsumer<InputStream> consumer ) throws IOException
+        {
+            try ( InputStream stream = this.zip.getInputStream ( this.entry ) )
+            {
+                consumer.accept ( stream );
+            }
+            return true;
+        }
+
+        @Override
+        public void close ()
+        {
+        }
+    }
+
     @Override
     public void importAll ( final InputStream inputStream, final boolean useChannelNames, final boolean wipe ) throws IOException
     {
@@ -512,11 +579,19 @@ public class TransferServiceImpl implements TransferService
 
             try
             {
+                final Holder<String> sha256 = new Holder<> ();
+
                 channel.getContext ().stream ( art.getId (), in -> {
+                    final HashingInputStream hasher = new HashingInputStream ( Hashing.sha256 (), in );
                     zos.putNextEntry ( new ZipEntry ( name + "data" ) );
-                    ByteStreams.copy ( in, zos );
+                    ByteStreams.copy ( hasher, zos );
                     zos.closeEntry ();
+                    sha256.value = hasher.hash ().toString ();
                 } );
+
+                // allows the import to link already known content
+
+                putDataEntry ( zos, name + "sha256", sha256.value );
             }
             catch ( final Exception e )
             {
@@ -476,15 +476,15 @@ public class ChannelController implements InterfaceExtender, SitemapExtender
     }
 
     @RequestMapping ( value = "/channel/{channelId}/artifacts/{artifactId}/get", method = RequestMethod.GET )
-    public void getArtifact ( @PathVariable ( "channelId" ) final String channelId, @PathVariable ( "artifactId" ) final String artifactId, final HttpServletResponse response) throws IOException
+    public void getArtifact ( @PathVariable ( "channelId" ) final String channelId, @PathVariable ( "artifactId" ) final String artifactId, final HttpServletRequest request, final HttpServletResponse response) throws IOException
     {
-        DownloadHelper.streamArtifact ( response, this.channelService, channelId, artifactId, null, true );
+        DownloadHelper.streamArtifact ( request, response, this.channelService, channelId, artifactId, null, true );
     }
 
     @RequestMapping ( value = "/channel/{channelId}/artifacts/{artifactId}/dump", method = RequestMethod.GET )
-    public void dumpArtifact ( @PathVariable ( "channelId" ) final String channelId, @PathVariable ( "artifactId" ) final String artifactId, final HttpServletResponse response) throws IOException
+    public void dumpArtifact ( @PathVariable ( "channelId" ) final String channelId, @PathVariable ( "artifactId" ) final String artifactId, final HttpServletRequest request, final HttpServletResponse response) throws IOException
     {
-        DownloadHelper.streamArtifact ( response, this.channelService, channelId, artifactId, null, false );
+        DownloadHelper.streamArtifact ( request, response, this.channelService, channelId, artifactId, null, false );
     }
 
     @RequestMapping ( value = "/channel/{channelId}/artifacts/{artifactId}/view", method = RequestMethod.GET )
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.channel;
+
+import java.nio.file.Path;
+
+import org.eclipse.packagedrone.repo.channel.provider.AccessContext;
+
+/**
+ * A reference to the stored content of an artifact
+ * <p>
+ * The reference is acquired by {@link AccessContext#openContent(String)}. As
+ * long as the reference is not closed, the content will not be removed from
+ * the channel storage, even if the artifact gets deleted in the meantime. The
+ * reference must be closed by the caller.
+ * </p>
+ */
+public interface ArtifactContent extends AutoCloseable
+{
+    /**
+     * Get the file holding the content
+     * <p>
+     * The file must only be read, never modified.
+     * </p>
+     *
+     * @return the path to the file
+     */
+    public Path getPath ();
+
+    /**
+     * Release the reference
+     */
+    @Override
+    public void close ();
+}
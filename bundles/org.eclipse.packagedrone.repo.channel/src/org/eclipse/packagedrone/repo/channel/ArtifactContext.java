@@ -28,9 +28,13 @@ public interface ArtifactContext
     public ArtifactInformation getArtifactInformation ();
 
     /**
-     * Get the path to the temporary file holding the BLOB
+     * Get the path to the file holding the BLOB
+     * <p>
+     * The file may be the stored content of the artifact itself, so it must
+     * only be read, never modified.
+     * </p>
      *
-     * @return a path to the temporary BLOB data
+     * @return a path to the BLOB data
      */
     public Path getFile ();
 
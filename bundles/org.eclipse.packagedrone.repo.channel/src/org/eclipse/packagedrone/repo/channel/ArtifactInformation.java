@@ -10,9 +10,7 @@
  *******************************************************************************/
 package org.eclipse.packagedrone.repo.channel;
 
-import static java.util.Collections.emptyMap;
 import static java.util.Collections.unmodifiableList;
-import static java.util.Collections.unmodifiableMap;
 import static java.util.Collections.unmodifiableSet;
 import static java.util.Comparator.comparing;
 import static java.util.Comparator.nullsFirst;
@@ -29,8 +27,8 @@ import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
 
+import org.eclipse.packagedrone.repo.MetaDataMap;
 import org.eclipse.packagedrone.repo.MetaKey;
-import org.eclipse.packagedrone.repo.MetaKeys;
 
 public class ArtifactInformation implements Comparable<ArtifactInformation>, Validated
 {
@@ -61,11 +59,15 @@ public class ArtifactInformation implements Comparable<ArtifactInformation>, Val
 
     private final List<ValidationMessage> messages;
 
-    private final Map<MetaKey, String> providedMetaData;
+    private final MetaDataMap providedMetaData;
 
-    private final Map<MetaKey, String> extractedMetaData;
+    private final MetaDataMap extractedMetaData;
 
-    private final Map<MetaKey, String> metaData;
+    /**
+     * The union of the provided and extracted meta data, created on first
+     * access
+     */
+    private transient volatile Map<MetaKey, String> metaData;
 
     private final String virtualizerAspectId;
 
@@ -95,10 +97,8 @@ public class ArtifactInformation implements Comparable<ArtifactInformation>, Val
         this.modMessages = new CopyOnWriteArrayList<> ( messages );
         this.messages = unmodifiableList ( this.modMessages );
 
-        this.providedMetaData = providedMetaData != null ? unmodifiableMap ( new HashMap<> ( providedMetaData ) ) : emptyMap ();
-        this.extractedMetaData = extractedMetaData != null ? unmodifiableMap ( new HashMap<> ( extractedMetaData ) ) : emptyMap ();
-
-        this.metaData = MetaKeys.union ( providedMetaData, extractedMetaData );
+        this.providedMetaData = MetaDataMap.copyOf ( providedMetaData );
+        this.extractedMetaData = MetaDataMap.copyOf ( extractedMetaData );
 
         this.virtualizerAspectId = virtualizerAspectId;
     }
@@ -122,8 +122,8 @@ public class ArtifactInformation implements Comparable<ArtifactInformation>, Val
 
         this.providedMetaData = other.providedMetaData;
         this.extractedMetaData = other.extractedMetaData;
-
         this.metaData = other.metaData;
+
         this.virtualizerAspectId = other.virtualizerAspectId;
     }
 
@@ -172,9 +172,27 @@ public class ArtifactInformation implements Comparable<ArtifactInformation>, Val
         return new Date ( this.creationTimestamp.toEpochMilli () );
     }
 
+    /**
+     * Get the effective meta data
+     * <p>
+     * This is the union of the extracted and the provided meta data, with the
+     * provided meta data overriding the extracted. The union is created on
+     * first access and kept for further calls. If there is no provided meta
+     * data, which is the common case, this is the extracted meta data itself.
+     * </p>
+     */
     public Map<MetaKey, String> getMetaData ()
     {
-        return this.metaData;
+        Map<MetaKey, String> result = this.metaData;
+
+        if ( result == null )
+        {
+            // creating the union twice is harmless, it is immutable
+            result = MetaDataMap.union ( this.providedMetaData, this.extractedMetaData );
+            this.metaData = result;
+        }
+
+        return result;
     }
 
     public Map<MetaKey, String> getExtractedMetaData ()
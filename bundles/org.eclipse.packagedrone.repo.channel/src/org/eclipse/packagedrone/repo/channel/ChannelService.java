@@ -16,12 +16,14 @@ import static java.util.stream.Collectors.toSet;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
 import org.eclipse.packagedrone.repo.channel.deploy.DeployGroup;
 import org.eclipse.packagedrone.repo.channel.deploy.DeployKey;
+import org.eclipse.packagedrone.repo.channel.provider.ModifyContext;
 import org.eclipse.packagedrone.repo.channel.provider.ProviderInformation;
 import org.eclipse.packagedrone.repo.channel.stats.ChannelStatistics;
 
@@ -45,8 +47,9 @@ import org.eclipse.packagedrone.repo.channel.stats.ChannelStatistics;
  * </p>
  * <dl>
  * <dt>{@link ReadableChannel}</dt>
- * <dd>A read only instance to the channel. Will lock the channel in shared read
- * mode. No write access is possible.</dd>
+ * <dd>A read only instance to the channel. Won't lock the channel, but work on
+ * the state of the last successful modification. No write access is
+ * possible.</dd>
  * <dt>{@link ModifiableChannel}</dt>
  * <dd>A modifiable instance to the channel. Will lock the channel in exclusive
  * mode. No other read or write access is possible. Modifications will not be
@@ -226,6 +229,28 @@ public interface ChannelService
         } );
     }
 
+    /**
+     * Stage artifact content for a channel
+     * <p>
+     * This will receive the content and store it in the channel's storage,
+     * without locking the channel. So a slow client will not block other
+     * operations on the same channel. The result can be used with
+     * {@link ModifyContext#createArtifact(String, StagedArtifact, String, Map)}
+     * afterwards and must be closed by the caller.
+     * </p>
+     *
+     * @param by
+     *            locator of the channel to stage the content for
+     * @param source
+     *            the content to stage
+     * @return the staged artifact, never returns {@code null}
+     * @throws IOException
+     *             if receiving the content failed
+     * @throws ChannelNotFoundException
+     *             if the channel was not found
+     */
+    public StagedArtifact stage ( By by, InputStream source ) throws IOException;
+
     /**
      * Get all name to channel mappings which are currently unclaimed.
      *
@@ -247,6 +272,21 @@ public interface ChannelService
 
     public Optional<Collection<DeployGroup>> getChannelDeployGroups ( By by );
 
+    /**
+     * Check if a deploy key is valid for a channel
+     *
+     * @param by
+     *            the channel locator
+     * @param deployKey
+     *            the deploy key to check
+     * @return {@code true} if the channel exists and the deploy key is
+     *         assigned to the channel, {@code false} otherwise
+     */
+    public default boolean isDeployKeyValid ( final By by, final String deployKey )
+    {
+        return getChannelDeployKeyStrings ( by ).orElse ( Collections.emptySet () ).contains ( deployKey );
+    }
+
     public default boolean streamArtifact ( final String channelId, final String artifactId, final ArtifactReceiver receiver )
     {
         try
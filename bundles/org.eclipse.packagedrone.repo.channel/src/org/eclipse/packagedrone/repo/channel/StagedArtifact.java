@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.channel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import org.eclipse.packagedrone.repo.channel.provider.ModifyContext;
+import org.eclipse.packagedrone.utils.io.IOConsumer;
+
+/**
+ * Artifact content which got received before the artifact is created
+ * <p>
+ * A staged artifact is created by
+ * {@link ChannelService#stage(ChannelService.By, InputStream)} without locking
+ * the channel. The content can then be turned into an artifact by calling
+ * {@link ModifyContext#createArtifact(String, StagedArtifact, String, Map)}
+ * while holding the channel lock.
+ * </p>
+ * <p>
+ * The staged artifact must be closed by the caller. Closing will discard the
+ * staged content if it was not used for creating an artifact.
+ * </p>
+ */
+public interface StagedArtifact extends AutoCloseable
+{
+    /**
+     * Get the size of the staged content
+     *
+     * @return the number of bytes which got staged
+     */
+    public long getSize ();
+
+    /**
+     * Get the checksums of the staged content
+     *
+     * @return a map of checksums, the key is the algorithm (e.g. "sha1") and
+     *         the value the hex encoded checksum, never returns {@code null}
+     */
+    public Map<String, String> getChecksums ();
+
+    /**
+     * Stream the staged content
+     *
+     * @param consumer
+     *            the consumer of the content
+     * @return {@code true} if the content could be streamed, {@code false} if
+     *         the staged content is no longer available
+     * @throws IOException
+     *             if the content could not be read
+     */
+    public boolean stream ( IOConsumer<InputStream> consumer ) throws IOException;
+
+    /**
+     * Discard the staged content, if it was not consumed
+     */
+    @Override
+    public void close ();
+}
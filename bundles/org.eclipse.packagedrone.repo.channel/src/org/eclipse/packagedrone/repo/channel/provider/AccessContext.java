@@ -17,6 +17,7 @@ import java.util.Map;
 import java.util.SortedMap;
 
 import org.eclipse.packagedrone.repo.MetaKey;
+import org.eclipse.packagedrone.repo.channel.ArtifactContent;
 import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
 import org.eclipse.packagedrone.repo.channel.CacheEntry;
 import org.eclipse.packagedrone.repo.channel.CacheEntryInformation;
@@ -38,6 +39,25 @@ public interface AccessContext
         return stream ( artifact.getId (), consumer );
     }
 
+    /**
+     * Acquire a reference to the stored content of an artifact
+     * <p>
+     * The reference may still be used after the access to the channel has
+     * ended. The content will not be removed from the channel storage before
+     * the reference is closed. So it is possible to transfer the content
+     * without keeping the channel locked. The caller must close the
+     * reference.
+     * </p>
+     *
+     * @param artifactId
+     *            the id of the artifact
+     * @return the reference to the content, or {@code null} if the artifact
+     *         could not be found
+     * @throws IOException
+     *             if acquiring the reference failed
+     */
+    public ArtifactContent openContent ( String artifactId ) throws IOException;
+
     public default SortedMap<String, String> getAspectStates ()
     {
         return Collections.emptySortedMap ();
@@ -10,7 +10,11 @@
  *******************************************************************************/
 package org.eclipse.packagedrone.repo.channel.provider;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 import org.eclipse.packagedrone.repo.channel.IdTransformer;
+import org.eclipse.packagedrone.repo.channel.StagedArtifact;
 import org.eclipse.packagedrone.repo.channel.ChannelService.ChannelOperation;
 import org.eclipse.packagedrone.repo.channel.ChannelService.ChannelOperationVoid;
 
@@ -20,8 +24,45 @@ public interface Channel
 
     public <T> T accessCall ( ChannelOperation<T, AccessContext> operation, IdTransformer idTransformer );
 
+    /**
+     * Access the last persisted state of the channel
+     * <p>
+     * Other than {@link #accessCall(ChannelOperation, IdTransformer)} this
+     * method must not block while the channel is being modified. The
+     * operation will see the state of the channel after the last successful
+     * modification.
+     * </p>
+     * <p>
+     * The default implementation falls back to
+     * {@link #accessCall(ChannelOperation, IdTransformer)}.
+     * </p>
+     */
+    public default <T> T snapshotCall ( final ChannelOperation<T, AccessContext> operation, final IdTransformer idTransformer )
+    {
+        return accessCall ( operation, idTransformer );
+    }
+
     public <T> T modifyCall ( ChannelOperation<T, ModifyContext> operation, IdTransformer idTransformer );
 
+    /**
+     * Get the summary of the last persisted state of the channel
+     * <p>
+     * The summary is used for listing channels. Providers which load or unload
+     * the state of a channel on demand should be able to provide it without
+     * loading the full state.
+     * </p>
+     * <p>
+     * The default implementation uses
+     * {@link #snapshotCall(ChannelOperation, IdTransformer)}.
+     * </p>
+     *
+     * @return the summary of the channel
+     */
+    public default ChannelSummary getSummary ()
+    {
+        return snapshotCall ( ctx -> new ChannelSummary ( ctx.getState (), ctx.getMetaData (), ctx.getAspectStates () ), null );
+    }
+
     public default void accessRun ( final ChannelOperationVoid<AccessContext> operation, final IdTransformer idTransformer )
     {
         accessCall ( channel -> {
@@ -38,5 +79,20 @@ public interface Channel
         } , idTransformer );
     }
 
+    /**
+     * Stage content for a later call to
+     * {@link ModifyContext#createArtifact(String, StagedArtifact, String, java.util.Map)}
+     * <p>
+     * This method must not lock the channel.
+     * </p>
+     *
+     * @param source
+     *            the content to stage
+     * @return the staged content
+     * @throws IOException
+     *             if receiving the content failed
+     */
+    public StagedArtifact stage ( InputStream source ) throws IOException;
+
     public void delete ();
 }
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.channel.provider;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.eclipse.packagedrone.repo.MetaKey;
+import org.eclipse.packagedrone.repo.channel.ChannelState;
+
+/**
+ * The summary of a channel
+ * <p>
+ * The summary holds the information required for listing channels. It is
+ * small enough to be kept in memory for all channels, even when the full state
+ * of a channel is not loaded.
+ * </p>
+ */
+public class ChannelSummary
+{
+    private final ChannelState state;
+
+    private final SortedMap<MetaKey, String> metaData;
+
+    private final SortedMap<String, String> aspectStates;
+
+    public ChannelSummary ( final ChannelState state, final Map<MetaKey, String> metaData, final Map<String, String> aspectStates )
+    {
+        this.state = state;
+        this.metaData = Collections.unmodifiableSortedMap ( metaData != null ? new TreeMap<> ( metaData ) : new TreeMap<> () );
+        this.aspectStates = Collections.unmodifiableSortedMap ( aspectStates != null ? new TreeMap<> ( aspectStates ) : new TreeMap<> () );
+    }
+
+    public ChannelState getState ()
+    {
+        return this.state;
+    }
+
+    public SortedMap<MetaKey, String> getMetaData ()
+    {
+        return this.metaData;
+    }
+
+    public SortedMap<String, String> getAspectStates ()
+    {
+        return this.aspectStates;
+    }
+}
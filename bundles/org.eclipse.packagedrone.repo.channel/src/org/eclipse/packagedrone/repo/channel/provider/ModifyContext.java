@@ -17,6 +17,7 @@ import java.util.Set;
 import org.eclipse.packagedrone.repo.MetaKey;
 import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
 import org.eclipse.packagedrone.repo.channel.ChannelDetails;
+import org.eclipse.packagedrone.repo.channel.StagedArtifact;
 
 public interface ModifyContext extends AccessContext
 {
@@ -34,6 +35,28 @@ public interface ModifyContext extends AccessContext
 
     public ArtifactInformation createArtifact ( String parentId, InputStream source, String name, Map<MetaKey, String> providedMetaData );
 
+    /**
+     * Create a new artifact from staged content
+     * <p>
+     * Content staged for the same channel is taken over without copying it.
+     * Other staged content, e.g. of another channel or of an import, is
+     * linked if its content is already known by its SHA-256 checksum, and
+     * copied otherwise. The content will be consumed by this call, the caller
+     * still has to close the staged artifact.
+     * </p>
+     *
+     * @param parentId
+     *            the optional parent artifact id
+     * @param source
+     *            the staged content
+     * @param name
+     *            the name of the artifact
+     * @param providedMetaData
+     *            the provided meta data, may be {@code null}
+     * @return the new artifact, or {@code null} if the artifact was vetoed
+     */
+    public ArtifactInformation createArtifact ( String parentId, StagedArtifact source, String name, Map<MetaKey, String> providedMetaData );
+
     public ArtifactInformation createGeneratorArtifact ( String generatorId, InputStream source, String name, Map<MetaKey, String> providedMetaData );
 
     public boolean deleteArtifact ( String artifactId );
@@ -46,5 +69,22 @@ public interface ModifyContext extends AccessContext
 
     public void refreshAspects ( Set<String> aspectIds );
 
+    /**
+     * Refresh aspects and report the progress
+     * <p>
+     * The default implementation does not report any progress.
+     * </p>
+     *
+     * @param aspectIds
+     *            the aspects to refresh, {@code null} for all aspects of the
+     *            channel
+     * @param monitor
+     *            the monitor receiving the number of processed artifacts
+     */
+    public default void refreshAspects ( final Set<String> aspectIds, final ProgressMonitor monitor )
+    {
+        refreshAspects ( aspectIds );
+    }
+
     public void regenerate ( String artifactId );
 }
@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.channel.provider;
+
+/**
+ * Receives the progress of long running channel operations
+ * <p>
+ * This mirrors the progress methods of a job context, so that a job can
+ * forward the progress of the channel operation it runs.
+ * </p>
+ */
+public interface ProgressMonitor
+{
+    /**
+     * A monitor which ignores all progress
+     */
+    public static final ProgressMonitor NONE = new ProgressMonitor () {
+
+        @Override
+        public void setCurrentTaskName ( final String name )
+        {
+        }
+
+        @Override
+        public void worked ( final long amount )
+        {
+        }
+    };
+
+    public void setCurrentTaskName ( String name );
+
+    /**
+     * Report progress
+     *
+     * @param amount
+     *            the number of artifacts processed since the last call
+     */
+    public void worked ( long amount );
+}
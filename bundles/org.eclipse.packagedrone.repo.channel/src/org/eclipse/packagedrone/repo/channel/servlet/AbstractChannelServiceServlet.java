@@ -13,7 +13,6 @@ package org.eclipse.packagedrone.repo.channel.servlet;
 import static org.eclipse.packagedrone.web.util.BasicAuthentication.parseAuthorization;
 
 import java.io.IOException;
-import java.util.Collections;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -166,7 +165,7 @@ public abstract class AbstractChannelServiceServlet extends HttpServlet
             return false;
         }
 
-        return service.getChannelDeployKeyStrings ( by ).orElse ( Collections.emptySet () ).contains ( deployKey );
+        return service.isDeployKeyValid ( by, deployKey );
     }
 
 }
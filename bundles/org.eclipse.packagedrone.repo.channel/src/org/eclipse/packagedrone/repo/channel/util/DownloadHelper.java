@@ -10,31 +10,67 @@
  *******************************************************************************/
 package org.eclipse.packagedrone.repo.channel.util;
 
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Optional;
 import java.util.function.Function;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.packagedrone.repo.MetaKey;
+import org.eclipse.packagedrone.repo.channel.ArtifactContent;
 import org.eclipse.packagedrone.repo.channel.ArtifactInformation;
 import org.eclipse.packagedrone.repo.channel.ChannelArtifactInformation;
 import org.eclipse.packagedrone.repo.channel.ChannelNotFoundException;
 import org.eclipse.packagedrone.repo.channel.ChannelService;
 import org.eclipse.packagedrone.repo.channel.ReadableChannel;
 import org.eclipse.packagedrone.repo.channel.ChannelService.By;
+import org.eclipse.packagedrone.utils.Holder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.io.ByteStreams;
-
+/**
+ * Helper for serving artifacts with HTTP
+ * <p>
+ * The methods which receive the {@link HttpServletRequest} support
+ * conditional requests (using {@code If-None-Match} and
+ * {@code If-Modified-Since}) and single byte ranges. The entity tag of an
+ * artifact is taken from its stored checksum.
+ * </p>
+ */
 public final class DownloadHelper
 {
     private static final MetaKey KEY_MIME_TYPE = new MetaKey ( "mime", "type" );
 
+    /**
+     * The checksums to use as entity tag, in the order of preference
+     */
+    private static final MetaKey[] ETAG_KEYS = new MetaKey[] { new MetaKey ( "hasher", "sha256" ), new MetaKey ( "hasher", "sha1" ), new MetaKey ( "hasher", "md5" ) };
+
     private final static Logger logger = LoggerFactory.getLogger ( DownloadHelper.class );
 
+    private static final class Range
+    {
+        private final long start;
+
+        private final long length;
+
+        public Range ( final long start, final long length )
+        {
+            this.start = start;
+            this.length = length;
+        }
+    }
+
+    private static final Range UNSATISFIABLE = new Range ( -1, -1 );
+
     private DownloadHelper ()
     {
     }
@@ -43,25 +79,48 @@ public final class DownloadHelper
 
     public static void streamArtifact ( final HttpServletResponse response, final ChannelService service, final String channelId, final String artifactId, final String mimetype, final boolean download ) throws IOException
     {
-        streamArtifact ( response, service, channelId, artifactId, mimetype, download, ArtifactInformation::getName );
+        streamArtifact ( null, response, service, channelId, artifactId, mimetype, download );
+    }
+
+    public static void streamArtifact ( final HttpServletRequest request, final HttpServletResponse response, final ChannelService service, final String channelId, final String artifactId, final String mimetype, final boolean download ) throws IOException
+    {
+        streamArtifact ( request, response, service, channelId, artifactId, Optional.ofNullable ( mimetype ), download, ArtifactInformation::getName );
     }
 
     public static void streamArtifact ( final HttpServletResponse response, final ChannelService service, final String channelId, final String artifactId, final Optional<String> mimetype, final boolean download, final Function<ArtifactInformation, String> nameFunc ) throws IOException
     {
+        streamArtifact ( null, response, service, channelId, artifactId, mimetype, download, nameFunc );
+    }
+
+    /**
+     * Stream an artifact
+     * <p>
+     * The artifact is only looked up while accessing the channel, the transfer
+     * of the content happens afterwards.
+     * </p>
+     *
+     * @param request
+     *            the request, may be {@code null}, in which case neither
+     *            conditional nor range requests are supported
+     */
+    public static void streamArtifact ( final HttpServletRequest request, final HttpServletResponse response, final ChannelService service, final String channelId, final String artifactId, final Optional<String> mimetype, final boolean download, final Function<ArtifactInformation, String> nameFunc ) throws IOException
+    {
+        final Holder<ArtifactInformation> artifact = new Holder<> ();
+        final ArtifactContent content;
+
         try
         {
-            service.accessRun ( By.id ( channelId ), ReadableChannel.class, channel -> {
+            // only resolve the artifact while accessing the channel, the transfer happens afterwards
+
+            content = service.accessCall ( By.id ( channelId ), ReadableChannel.class, channel -> {
 
-                final ArtifactInformation artifact = channel.getContext ().getArtifacts ().get ( artifactId );
-                if ( artifact == null )
+                artifact.value = channel.getContext ().getArtifacts ().get ( artifactId );
+                if ( artifact.value == null )
                 {
-                    response.setStatus ( HttpServletResponse.SC_NOT_FOUND );
-                    response.setContentType ( "text/plain" );
-                    response.getWriter ().format ( "Artifact '%s' in channel '%s' could not be found", artifact, channelId );
-                    return;
+                    return null;
                 }
 
-                streamArtifact ( response, artifact, mimetype, download, channel, nameFunc );
+                return channel.getContext ().openContent ( artifactId );
             } );
         }
         catch ( final ChannelNotFoundException e )
@@ -69,6 +128,24 @@ public final class DownloadHelper
             response.setStatus ( HttpServletResponse.SC_NOT_FOUND );
             response.setContentType ( "text/plain" );
             response.getWriter ().format ( "Channel '%s' could not be found", channelId );
+            return;
+        }
+
+        if ( content == null )
+        {
+            response.setStatus ( HttpServletResponse.SC_NOT_FOUND );
+            response.setContentType ( "text/plain" );
+            response.getWriter ().format ( "Artifact '%s' in channel '%s' could not be found", artifactId, channelId );
+            return;
+        }
+
+        try
+        {
+            streamContent ( request, response, artifact.value, content.getPath (), mimetype, download, nameFunc );
+        }
+        finally
+        {
+            content.close ();
         }
     }
 
@@ -78,6 +155,11 @@ public final class DownloadHelper
     }
 
     public static boolean streamArtifact ( final HttpServletResponse response, final String artifactId, final Optional<String> mimetype, final boolean download, final ReadableChannel channel, final Function<ArtifactInformation, String> nameFunc ) throws IOException
+    {
+        return streamArtifact ( null, response, artifactId, mimetype, download, channel, nameFunc );
+    }
+
+    public static boolean streamArtifact ( final HttpServletRequest request, final HttpServletResponse response, final String artifactId, final Optional<String> mimetype, final boolean download, final ReadableChannel channel, final Function<ArtifactInformation, String> nameFunc ) throws IOException
     {
         final Optional<ChannelArtifactInformation> artifact = channel.getArtifact ( artifactId );
         if ( !artifact.isPresent () )
@@ -85,26 +167,85 @@ public final class DownloadHelper
             return false;
         }
 
-        return channel.getContext ().stream ( artifactId, stream -> {
-            streamArtifact ( response, artifact.get (), stream, mimetype, download, nameFunc );
-        } );
+        return streamArtifact ( request, response, artifact.get (), mimetype, download, channel, nameFunc );
     }
 
     public static boolean streamArtifact ( final HttpServletResponse response, final ArtifactInformation artifact, final Optional<String> mimetype, final boolean download, final ReadableChannel channel, final Function<ArtifactInformation, String> nameFunc ) throws IOException
     {
-        return channel.getContext ().stream ( artifact.getId (), stream -> {
-            streamArtifact ( response, artifact, stream, mimetype, download, nameFunc );
-        } );
+        return streamArtifact ( null, response, artifact, mimetype, download, channel, nameFunc );
+    }
+
+    public static boolean streamArtifact ( final HttpServletRequest request, final HttpServletResponse response, final ArtifactInformation artifact, final Optional<String> mimetype, final boolean download, final ReadableChannel channel, final Function<ArtifactInformation, String> nameFunc ) throws IOException
+    {
+        try ( ArtifactContent content = channel.getContext ().openContent ( artifact.getId () ) )
+        {
+            if ( content == null )
+            {
+                return false;
+            }
+
+            streamContent ( request, response, artifact, content.getPath (), mimetype, download, nameFunc );
+            return true;
+        }
+    }
+
+    private static void streamContent ( final HttpServletRequest request, final HttpServletResponse response, final ArtifactInformation artifact, final Path path, final Optional<String> mimetype, final boolean download, final Function<ArtifactInformation, String> nameFunc ) throws IOException
+    {
+        final String etag = makeETag ( artifact );
+        final long lastModified = artifact.getCreationInstant ().toEpochMilli ();
+        final long size = artifact.getSize ();
+
+        response.setHeader ( "ETag", etag );
+        response.setDateHeader ( "Last-Modified", lastModified );
+        response.setHeader ( "Accept-Ranges", "bytes" );
+
+        if ( request != null && isNotModified ( request, etag, lastModified ) )
+        {
+            response.setStatus ( HttpServletResponse.SC_NOT_MODIFIED );
+            return;
+        }
+
+        final Range range = request != null ? makeRange ( request, etag, lastModified, size ) : null;
+
+        if ( range == UNSATISFIABLE )
+        {
+            response.setStatus ( HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE );
+            response.setHeader ( "Content-Range", String.format ( "bytes */%s", size ) );
+            return;
+        }
+
+        applyHeaders ( response, artifact, mimetype, download, nameFunc );
+
+        final long start;
+        final long length;
+
+        if ( range != null )
+        {
+            start = range.start;
+            length = range.length;
+
+            response.setStatus ( HttpServletResponse.SC_PARTIAL_CONTENT );
+            response.setHeader ( "Content-Range", String.format ( "bytes %s-%s/%s", start, start + length - 1, size ) );
+        }
+        else
+        {
+            start = 0;
+            length = size;
+
+            response.setStatus ( HttpServletResponse.SC_OK );
+        }
+
+        response.setContentLengthLong ( length );
+
+        transfer ( path, start, length, response.getOutputStream () );
+        logger.debug ( "Transferred {} bytes, starting at {}", length, start );
     }
 
-    public static void streamArtifact ( final HttpServletResponse response, final ArtifactInformation artifact, final InputStream stream, final Optional<String> mimetype, final boolean download, final Function<ArtifactInformation, String> nameFunc ) throws IOException
+    private static void applyHeaders ( final HttpServletResponse response, final ArtifactInformation artifact, final Optional<String> mimetype, final boolean download, final Function<ArtifactInformation, String> nameFunc )
     {
         final String mt = mimetype.orElseGet ( () -> evalMimeType ( artifact ) );
 
-        response.setStatus ( HttpServletResponse.SC_OK );
         response.setContentType ( mt );
-        response.setDateHeader ( "Last-Modified", artifact.getCreationInstant ().toEpochMilli () );
-        response.setContentLengthLong ( artifact.getSize () );
 
         if ( download )
         {
@@ -117,9 +258,203 @@ public final class DownloadHelper
                 response.setHeader ( "Content-Disposition", String.format ( "attachment; filename=%s", artifact.getName () ) );
             }
         }
+    }
+
+    /**
+     * Transfer a part of a file to an output stream
+     * <p>
+     * If the output stream is a channel itself, the transfer is performed
+     * directly between the channels, allowing the operating system to skip
+     * copying the content through the heap.
+     * </p>
+     */
+    private static void transfer ( final Path path, final long start, final long length, final OutputStream out ) throws IOException
+    {
+        final WritableByteChannel target = out instanceof WritableByteChannel ? (WritableByteChannel)out : Channels.newChannel ( out );
+
+        try ( FileChannel channel = FileChannel.open ( path, StandardOpenOption.READ ) )
+        {
+            long position = start;
+            long remaining = length;
+
+            while ( remaining > 0 )
+            {
+                final long count = channel.transferTo ( position, remaining, target );
+                if ( count <= 0 )
+                {
+                    throw new EOFException ( String.format ( "Unexpected end of file at %s: %s", position, path ) );
+                }
+
+                position += count;
+                remaining -= count;
+            }
+        }
+    }
+
+    private static String makeETag ( final ArtifactInformation artifact )
+    {
+        for ( final MetaKey key : ETAG_KEYS )
+        {
+            final String value = artifact.getMetaData ().get ( key );
+            if ( value != null && !value.isEmpty () )
+            {
+                return '"' + value + '"';
+            }
+        }
+
+        // the content of an artifact never changes, so the id is good enough
+
+        return '"' + artifact.getId () + '"';
+    }
+
+    private static boolean isNotModified ( final HttpServletRequest request, final String etag, final long lastModified )
+    {
+        final String ifNoneMatch = request.getHeader ( "If-None-Match" );
+        if ( ifNoneMatch != null )
+        {
+            // takes precedence over "If-Modified-Since"
+            return matchesETag ( ifNoneMatch, etag );
+        }
+
+        final long since = getDateHeader ( request, "If-Modified-Since" );
+        return since >= 0 && lastModified / 1000 <= since / 1000;
+    }
+
+    private static boolean matchesETag ( final String header, final String etag )
+    {
+        for ( String tag : header.split ( "," ) )
+        {
+            tag = tag.trim ();
+
+            if ( tag.equals ( "*" ) )
+            {
+                return true;
+            }
+
+            if ( tag.startsWith ( "W/" ) )
+            {
+                tag = tag.substring ( 2 );
+            }
+
+            if ( tag.equals ( etag ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long getDateHeader ( final HttpServletRequest request, final String name )
+    {
+        try
+        {
+            return request.getDateHeader ( name );
+        }
+        catch ( final IllegalArgumentException e )
+        {
+            // invalid date
+            return -1;
+        }
+    }
+
+    /**
+     * Evaluate the range of the request
+     *
+     * @return the range to serve, {@code null} if the full content should be
+     *         served or {@link #UNSATISFIABLE} if the range could not be
+     *         satisfied
+     */
+    private static Range makeRange ( final HttpServletRequest request, final String etag, final long lastModified, final long size )
+    {
+        final String header = request.getHeader ( "Range" );
+        if ( header == null )
+        {
+            return null;
+        }
+
+        final String ifRange = request.getHeader ( "If-Range" );
+        if ( ifRange != null )
+        {
+            if ( ifRange.startsWith ( "\"" ) || ifRange.startsWith ( "W/" ) )
+            {
+                if ( !ifRange.equals ( etag ) )
+                {
+                    return null;
+                }
+            }
+            else if ( getDateHeader ( request, "If-Range" ) / 1000 != lastModified / 1000 )
+            {
+                return null;
+            }
+        }
+
+        return parseRange ( header, size );
+    }
+
+    private static Range parseRange ( final String header, final long size )
+    {
+        if ( !header.startsWith ( "bytes=" ) )
+        {
+            return null;
+        }
+
+        final String spec = header.substring ( "bytes=".length () ).trim ();
+
+        if ( spec.indexOf ( ',' ) >= 0 )
+        {
+            // multiple ranges are not supported, serve the full content
+            return null;
+        }
+
+        final int idx = spec.indexOf ( '-' );
+        if ( idx < 0 )
+        {
+            return null;
+        }
+
+        final String first = spec.substring ( 0, idx ).trim ();
+        final String last = spec.substring ( idx + 1 ).trim ();
+
+        try
+        {
+            if ( first.isEmpty () )
+            {
+                // suffix range
+
+                if ( last.isEmpty () )
+                {
+                    return null;
+                }
+
+                final long suffix = Long.parseLong ( last );
+                if ( suffix <= 0 || size <= 0 )
+                {
+                    return UNSATISFIABLE;
+                }
+
+                final long length = Math.min ( suffix, size );
+                return new Range ( size - length, length );
+            }
+
+            final long start = Long.parseLong ( first );
+            if ( start >= size )
+            {
+                return UNSATISFIABLE;
+            }
+
+            final long end = last.isEmpty () ? size - 1 : Math.min ( Long.parseLong ( last ), size - 1 );
+            if ( end < start )
+            {
+                // invalid range, ignore
+                return null;
+            }
 
-        final long size = ByteStreams.copy ( stream, response.getOutputStream () );
-        logger.debug ( "Copyied {} bytes", size );
+            return new Range ( start, end - start + 1 );
+        }
+        catch ( final NumberFormatException e )
+        {
+            return null;
+        }
     }
 
     private static String evalMimeType ( final ArtifactInformation artifact )
@@ -0,0 +1,74 @@
+package org.eclipse.packagedrone.repo.tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.eclipse.packagedrone.repo.utils.HashHelper;
+import org.junit.Test;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+public class HashHelperTest
+{
+    private static Map<String, HashFunction> functions ()
+    {
+        final Map<String, HashFunction> functions = new HashMap<> ();
+        functions.put ( "md5", Hashing.md5 () );
+        functions.put ( "sha1", Hashing.sha1 () );
+        functions.put ( "sha256", Hashing.sha256 () );
+        return functions;
+    }
+
+    private void testFile ( final int size ) throws IOException
+    {
+        final byte[] data = new byte[size];
+        new Random ( size ).nextBytes ( data );
+
+        final Path file = Files.createTempFile ( "hash-", null );
+        try
+        {
+            Files.write ( file, data );
+
+            final Map<String, HashCode> expected = HashHelper.createChecksums ( new ByteArrayInputStream ( data ), functions () );
+            final Map<String, HashCode> result = HashHelper.createChecksums ( file, functions () );
+
+            assertEquals ( expected, result );
+            assertEquals ( Hashing.sha1 ().hashBytes ( data ), result.get ( "sha1" ) );
+        }
+        finally
+        {
+            Files.deleteIfExists ( file );
+        }
+    }
+
+    @Test
+    public void testEmpty () throws IOException
+    {
+        testFile ( 0 );
+    }
+
+    @Test
+    public void testSmall () throws IOException
+    {
+        testFile ( 12345 );
+    }
+
+    /**
+     * Large enough to be hashed in parallel, and not a multiple of the chunk
+     * size
+     */
+    @Test
+    public void testLarge () throws IOException
+    {
+        testFile ( 9 * 1024 * 1024 + 17 );
+    }
+}
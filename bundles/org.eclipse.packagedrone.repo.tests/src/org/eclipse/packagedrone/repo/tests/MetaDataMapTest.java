@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.packagedrone.repo.MetaDataMap;
+import org.eclipse.packagedrone.repo.MetaKey;
+import org.eclipse.packagedrone.repo.MetaKeys;
+import org.junit.Test;
+
+public class MetaDataMapTest
+{
+    private static final MetaKey A = new MetaKey ( "a", "1" );
+
+    private static final MetaKey B = new MetaKey ( "b", "1" );
+
+    private static final MetaKey C = new MetaKey ( "c", "1" );
+
+    @Test
+    public void testIntern ()
+    {
+        assertSame ( MetaKey.intern ( "foo", "bar" ), MetaKey.fromString ( "foo:bar" ) );
+        assertSame ( MetaKey.fromString ( "foo:bar" ), new MetaKey ( "foo", "bar" ).intern () );
+    }
+
+    @Test
+    public void testCopy ()
+    {
+        final Map<MetaKey, String> source = new HashMap<> ();
+        source.put ( C, "c" );
+        source.put ( A, "a" );
+        source.put ( B, null );
+
+        final MetaDataMap map = MetaDataMap.copyOf ( source );
+
+        assertEquals ( source, map );
+        assertEquals ( source.hashCode (), map.hashCode () );
+        assertEquals ( Arrays.asList ( A, B, C ), new ArrayList<> ( map.keySet () ) );
+
+        assertEquals ( "a", map.get ( new MetaKey ( "a", "1" ) ) );
+        assertTrue ( map.containsKey ( B ) );
+        assertNull ( map.get ( B ) );
+        assertFalse ( map.containsKey ( new MetaKey ( "d", "1" ) ) );
+        assertNull ( map.get ( "a:1" ) );
+
+        assertSame ( map, MetaDataMap.copyOf ( map ) );
+        assertSame ( MetaDataMap.EMPTY, MetaDataMap.copyOf ( null ) );
+    }
+
+    @Test
+    public void testUnion ()
+    {
+        final Map<MetaKey, String> provided = new HashMap<> ();
+        provided.put ( B, "provided" );
+        provided.put ( C, "c" );
+
+        final Map<MetaKey, String> extracted = new HashMap<> ();
+        extracted.put ( A, "a" );
+        extracted.put ( B, "extracted" );
+
+        final MetaDataMap union = MetaDataMap.union ( provided, extracted );
+
+        assertEquals ( 3, union.size () );
+        assertEquals ( "a", union.get ( A ) );
+        assertEquals ( "provided", union.get ( B ) );
+        assertEquals ( "c", union.get ( C ) );
+
+        final MetaDataMap map = MetaDataMap.copyOf ( extracted );
+        assertSame ( map, MetaDataMap.union ( null, map ) );
+        assertSame ( map, MetaDataMap.union ( map, MetaDataMap.EMPTY ) );
+    }
+
+    @Test
+    public void testMetaKeysUnionNullKey ()
+    {
+        final Map<MetaKey, String> provided = new HashMap<> ();
+        provided.put ( null, "provided" );
+
+        final Map<MetaKey, String> union = MetaKeys.union ( provided, Collections.singletonMap ( A, "a" ) );
+
+        assertEquals ( "provided", union.get ( null ) );
+        assertEquals ( "a", union.get ( A ) );
+    }
+
+    @Test ( expected = UnsupportedOperationException.class )
+    public void testImmutable ()
+    {
+        MetaDataMap.copyOf ( new HashMap<> ( Collections.singletonMap ( A, "a" ) ) ).put ( B, "b" );
+    }
+}
@@ -0,0 +1,258 @@
+/*******************************************************************************
+ * Copyright (c) 2015 IBH SYSTEMS GmbH.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBH SYSTEMS GmbH - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.packagedrone.repo;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable, compact map of meta data
+ * <p>
+ * The entries are held in two arrays, sorted by key. Lookups are done by a
+ * binary search. Compared to a {@link java.util.HashMap} this saves the
+ * entry objects and the hash table, which matters when holding the meta data
+ * of many artifacts in memory. The keys are canonicalized using
+ * {@link MetaKey#intern()}.
+ * </p>
+ * <p>
+ * The map does not support {@code null} keys. It does support {@code null}
+ * values.
+ * </p>
+ */
+public final class MetaDataMap extends AbstractMap<MetaKey, String>
+{
+    public static final MetaDataMap EMPTY = new MetaDataMap ( new MetaKey[0], new String[0] );
+
+    private final MetaKey[] keys;
+
+    private final String[] values;
+
+    private MetaDataMap ( final MetaKey[] keys, final String[] values )
+    {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * Create a meta data map with the content of another map
+     *
+     * @param map
+     *            the map to copy, may be {@code null}
+     * @return the new map, or the provided map if it already is a
+     *         {@link MetaDataMap}, never returns {@code null}
+     * @throws NullPointerException
+     *             if the map contains a {@code null} key
+     */
+    public static MetaDataMap copyOf ( final Map<MetaKey, String> map )
+    {
+        if ( map instanceof MetaDataMap )
+        {
+            return (MetaDataMap)map;
+        }
+
+        if ( map == null || map.isEmpty () )
+        {
+            return EMPTY;
+        }
+
+        @SuppressWarnings ( "unchecked" )
+        final Map.Entry<MetaKey, String>[] entries = map.entrySet ().toArray ( new Map.Entry[map.size ()] );
+
+        for ( final Map.Entry<MetaKey, String> entry : entries )
+        {
+            Objects.requireNonNull ( entry.getKey (), "Meta data keys must not be null" );
+        }
+
+        Arrays.sort ( entries, Map.Entry.comparingByKey () );
+
+        final MetaKey[] keys = new MetaKey[entries.length];
+        final String[] values = new String[entries.length];
+
+        for ( int i = 0; i < entries.length; i++ )
+        {
+            keys[i] = entries[i].getKey ().intern ();
+            values[i] = entries[i].getValue ();
+        }
+
+        return new MetaDataMap ( keys, values );
+    }
+
+    /**
+     * Create the union of two meta data maps
+     * <p>
+     * If one of the maps is empty, no new map will be created.
+     * </p>
+     *
+     * @param primary
+     *            the primary map, its values override the values of the
+     *            secondary map, may be {@code null}
+     * @param secondary
+     *            the secondary map, may be {@code null}
+     * @return the union of both maps, never returns {@code null}
+     */
+    public static MetaDataMap union ( final Map<MetaKey, String> primary, final Map<MetaKey, String> secondary )
+    {
+        if ( secondary == null || secondary.isEmpty () )
+        {
+            return copyOf ( primary );
+        }
+        if ( primary == null || primary.isEmpty () )
+        {
+            return copyOf ( secondary );
+        }
+
+        final MetaDataMap first = copyOf ( primary );
+        final MetaDataMap second = copyOf ( secondary );
+
+        final MetaKey[] keys = new MetaKey[first.keys.length + second.keys.length];
+        final String[] values = new String[keys.length];
+
+        int i = 0;
+        int j = 0;
+        int len = 0;
+
+        while ( i < first.keys.length || j < second.keys.length )
+        {
+            final int rc;
+            if ( i >= first.keys.length )
+            {
+                rc = 1;
+            }
+            else if ( j >= second.keys.length )
+            {
+                rc = -1;
+            }
+            else
+            {
+                rc = first.keys[i].compareTo ( second.keys[j] );
+            }
+
+            if ( rc <= 0 )
+            {
+                keys[len] = first.keys[i];
+                values[len] = first.values[i];
+                i++;
+                if ( rc == 0 )
+                {
+                    // overridden by the primary map
+                    j++;
+                }
+            }
+            else
+            {
+                keys[len] = second.keys[j];
+                values[len] = second.values[j];
+                j++;
+            }
+            len++;
+        }
+
+        if ( len == keys.length )
+        {
+            return new MetaDataMap ( keys, values );
+        }
+
+        return new MetaDataMap ( Arrays.copyOf ( keys, len ), Arrays.copyOf ( values, len ) );
+    }
+
+    private int indexOf ( final Object key )
+    {
+        if ( ! ( key instanceof MetaKey ) )
+        {
+            return -1;
+        }
+
+        return Arrays.binarySearch ( this.keys, key );
+    }
+
+    @Override
+    public int size ()
+    {
+        return this.keys.length;
+    }
+
+    @Override
+    public boolean isEmpty ()
+    {
+        return this.keys.length == 0;
+    }
+
+    @Override
+    public boolean containsKey ( final Object key )
+    {
+        return indexOf ( key ) >= 0;
+    }
+
+    @Override
+    public String get ( final Object key )
+    {
+        final int idx = indexOf ( key );
+        return idx >= 0 ? this.values[idx] : null;
+    }
+
+    @Override
+    public void forEach ( final BiConsumer<? super MetaKey, ? super String> action )
+    {
+        for ( int i = 0; i < this.keys.length; i++ )
+        {
+            action.accept ( this.keys[i], this.values[i] );
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<MetaKey, String>> entrySet ()
+    {
+        return new EntrySet ();
+    }
+
+    private class EntrySet extends AbstractSet<Map.Entry<MetaKey, String>>
+    {
+        @Override
+        public int size ()
+        {
+            return MetaDataMap.this.keys.length;
+        }
+
+        @Override
+        public Iterator<Map.Entry<MetaKey, String>> iterator ()
+        {
+            return new Iterator<Map.Entry<MetaKey, String>> () {
+
+                private int index;
+
+                @Override
+                public boolean hasNext ()
+                {
+                    return this.index < MetaDataMap.this.keys.length;
+                }
+
+                @Override
+                public Map.Entry<MetaKey, String> next ()
+                {
+                    if ( !hasNext () )
+                    {
+                        throw new NoSuchElementException ();
+                    }
+
+                    final int i = this.index++;
+                    return new AbstractMap.SimpleImmutableEntry<> ( MetaDataMap.this.keys[i], MetaDataMap.this.values[i] );
+                }
+            };
+        }
+    }
+}
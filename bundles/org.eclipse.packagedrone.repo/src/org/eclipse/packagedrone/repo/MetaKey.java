@@ -12,6 +12,9 @@ package org.eclipse.packagedrone.repo;
 
 import java.io.Serializable;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
 /**
  * A meta data key
  * <p>
@@ -22,11 +25,19 @@ import java.io.Serializable;
  * Meta keys with the same namespace and key are equal. The natural sort order
  * is first by namespace and then by key. Both compared as strings.
  * </p>
+ * <p>
+ * The same keys are used over and over again for all artifacts. So instances
+ * which are held for a longer time should be canonicalized using
+ * {@link #intern()}. {@link #fromString(String)} already returns canonical
+ * instances.
+ * </p>
  */
 public class MetaKey implements Comparable<MetaKey>, Serializable
 {
     private static final long serialVersionUID = 1L;
 
+    private static final Interner<MetaKey> INTERNER = Interners.newWeakInterner ();
+
     private final String namespace;
 
     private final String key;
@@ -48,6 +59,35 @@ public class MetaKey implements Comparable<MetaKey>, Serializable
         this.key = key;
     }
 
+    /**
+     * Get the canonical instance of this key
+     * <p>
+     * Equal keys will always return the same instance, as long as it is in
+     * use. Unused instances will be garbage collected.
+     * </p>
+     *
+     * @return the canonical instance, never {@code null}
+     */
+    public MetaKey intern ()
+    {
+        return INTERNER.intern ( this );
+    }
+
+    /**
+     * Get the canonical instance for a namespace and key
+     *
+     * @see #intern()
+     */
+    public static MetaKey intern ( final String namespace, final String key )
+    {
+        return new MetaKey ( namespace, key ).intern ();
+    }
+
+    private Object readResolve ()
+    {
+        return intern ();
+    }
+
     public String getKey ()
     {
         return this.key;
@@ -134,8 +174,8 @@ public class MetaKey implements Comparable<MetaKey>, Serializable
      *
      * @param string
      *            the string to convert
-     * @return the new MetaKey instance or <code>null</code> if the format was
-     *         invalid
+     * @return the canonical MetaKey instance or <code>null</code> if the format
+     *         was invalid
      */
     public static MetaKey fromString ( final String string )
     {
@@ -152,6 +192,6 @@ public class MetaKey implements Comparable<MetaKey>, Serializable
             return null;
         }
 
-        return new MetaKey ( string.substring ( 0, idx ), string.substring ( idx + 1 ), true );
+        return new MetaKey ( string.substring ( 0, idx ), string.substring ( idx + 1 ), true ).intern ();
     }
 }
@@ -224,6 +224,34 @@ public class XmlHelper
         }
     }
 
+    /**
+     * Write a node to a string, without the XML declaration
+     * <p>
+     * This can be used to render a part of a document, which will be embedded
+     * into a document later on.
+     * </p>
+     *
+     * @param node
+     *            the node to write
+     * @return the string representation of the node
+     */
+    public String toFragment ( final Node node )
+    {
+        try
+        {
+            final StringWriter sw = new StringWriter ();
+            write ( this.transformerFactory, node, new StreamResult ( sw ), t -> {
+                t.setOutputProperty ( OutputKeys.OMIT_XML_DECLARATION, "yes" );
+            } );
+            sw.close ();
+            return sw.toString ();
+        }
+        catch ( final Exception e )
+        {
+            throw new RuntimeException ( e );
+        }
+    }
+
     public void write ( final Node doc, final OutputStream stream ) throws Exception
     {
         write ( doc, new StreamResult ( stream ) );
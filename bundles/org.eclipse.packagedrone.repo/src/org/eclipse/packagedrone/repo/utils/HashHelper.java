@@ -10,14 +10,20 @@
  *******************************************************************************/
 package org.eclipse.packagedrone.repo.utils;
 
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
@@ -25,10 +31,36 @@ import com.google.common.hash.Hasher;
 
 public final class HashHelper
 {
+    /**
+     * The size of the chunks which are read from files
+     */
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * The minimum file size for hashing the chunks of a file in parallel
+     */
+    private static final long PARALLEL_THRESHOLD = Long.getLong ( "drone.hash.parallelThreshold", 8L * 1024L * 1024L );
+
     private HashHelper ()
     {
     }
 
+    /**
+     * Create checksums of a file
+     * <p>
+     * The file is read only once, in large chunks. If more than one checksum
+     * is requested for a large file, each hash function runs in its own
+     * thread, while the next chunk is being read.
+     * </p>
+     *
+     * @param file
+     *            the file to hash
+     * @param functions
+     *            the hash functions, by name
+     * @return the checksums, by name of the hash function
+     * @throws IOException
+     *             if reading the file failed
+     */
     public static Map<String, HashCode> createChecksums ( final Path file, final Map<String, HashFunction> functions ) throws IOException
     {
         if ( functions.isEmpty () )
@@ -36,53 +68,140 @@ public final class HashHelper
             return Collections.emptyMap ();
         }
 
-        try ( BufferedInputStream is = new BufferedInputStream ( new FileInputStream ( file.toString () ) ) )
+        try ( FileChannel channel = FileChannel.open ( file, StandardOpenOption.READ ) )
         {
-            return createChecksums ( is, functions );
+            final Map<String, Hasher> hashers = createHashers ( functions );
+
+            if ( hashers.size () > 1 && channel.size () >= PARALLEL_THRESHOLD )
+            {
+                hashParallel ( channel, hashers.values () );
+            }
+            else
+            {
+                hashSequential ( channel, hashers.values () );
+            }
+
+            return finish ( hashers );
         }
     }
 
-    public static Map<String, HashCode> createChecksums ( final InputStream stream, final Map<String, HashFunction> functions ) throws IOException
+    private static void hashSequential ( final FileChannel channel, final Collection<Hasher> hashers ) throws IOException
     {
-        if ( functions.isEmpty () )
+        final byte[] buffer = new byte[CHUNK_SIZE];
+
+        int len;
+        while ( ( len = readChunk ( channel, buffer ) ) > 0 )
         {
-            return Collections.emptyMap ();
+            for ( final Hasher hasher : hashers )
+            {
+                hasher.putBytes ( buffer, 0, len );
+            }
         }
+    }
+
+    /**
+     * Feed the chunks of a file into the hashers, one thread per hasher
+     * <p>
+     * Each hasher gets the chunks in order, as only one chunk is processed at
+     * a time. While the hashers process one chunk, the next one is read into
+     * a second buffer.
+     * </p>
+     */
+    private static void hashParallel ( final FileChannel channel, final Collection<Hasher> hashers ) throws IOException
+    {
+        final ForkJoinPool pool = ForkJoinPool.commonPool ();
+        final List<ForkJoinTask<?>> tasks = new ArrayList<> ( hashers.size () );
 
-        // init hashers
+        byte[] current = new byte[CHUNK_SIZE];
+        byte[] next = new byte[CHUNK_SIZE];
 
-        final Map<String, Hasher> hasherMap = new HashMap<> ();
-        final Hasher[] hashers = new Hasher[functions.size ()];
-        int i = 0;
-        for ( final Map.Entry<String, HashFunction> entry : functions.entrySet () )
+        int len = readChunk ( channel, current );
+        while ( len > 0 )
         {
-            hashers[i] = entry.getValue ().newHasher ();
-            hasherMap.put ( entry.getKey (), hashers[i] );
-            i++;
-        }
+            final byte[] data = current;
+            final int dataLen = len;
 
-        // read data
+            for ( final Hasher hasher : hashers )
+            {
+                tasks.add ( pool.submit ( () -> {
+                    hasher.putBytes ( data, 0, dataLen );
+                } ) );
+            }
 
-        final byte[] buffer = new byte[4096];
-        int len;
-        while ( ( len = stream.read ( buffer ) ) >= 0 )
+            len = readChunk ( channel, next );
+
+            for ( final ForkJoinTask<?> task : tasks )
+            {
+                task.join ();
+            }
+            tasks.clear ();
+
+            // swap buffers
+
+            current = next;
+            next = data;
+        }
+    }
+
+    /**
+     * Read a full chunk, unless the end of the file is reached
+     *
+     * @return the number of bytes read, zero at the end of the file
+     */
+    private static int readChunk ( final FileChannel channel, final byte[] buffer ) throws IOException
+    {
+        final ByteBuffer bb = ByteBuffer.wrap ( buffer );
+        while ( bb.hasRemaining () )
         {
-            for ( final Hasher hasher : hashers )
+            if ( channel.read ( bb ) < 0 )
             {
-                hasher.putBytes ( buffer, 0, len );
+                break;
             }
         }
+        return bb.position ();
+    }
 
-        // finalize hashes
+    private static Map<String, Hasher> createHashers ( final Map<String, HashFunction> functions )
+    {
+        final Map<String, Hasher> hashers = new HashMap<> ( functions.size () );
+        for ( final Map.Entry<String, HashFunction> entry : functions.entrySet () )
+        {
+            hashers.put ( entry.getKey (), entry.getValue ().newHasher () );
+        }
+        return hashers;
+    }
 
-        final Map<String, HashCode> result = new HashMap<String, HashCode> ( hashers.length );
-        for ( final Map.Entry<String, Hasher> entry : hasherMap.entrySet () )
+    private static Map<String, HashCode> finish ( final Map<String, Hasher> hashers )
+    {
+        final Map<String, HashCode> result = new HashMap<String, HashCode> ( hashers.size () );
+        for ( final Map.Entry<String, Hasher> entry : hashers.entrySet () )
         {
             result.put ( entry.getKey (), entry.getValue ().hash () );
         }
+        return result;
+    }
 
-        // return result
+    public static Map<String, HashCode> createChecksums ( final InputStream stream, final Map<String, HashFunction> functions ) throws IOException
+    {
+        if ( functions.isEmpty () )
+        {
+            return Collections.emptyMap ();
+        }
 
-        return result;
+        final Map<String, Hasher> hashers = createHashers ( functions );
+
+        // read data
+
+        final byte[] buffer = new byte[64 * 1024];
+        int len;
+        while ( ( len = stream.read ( buffer ) ) >= 0 )
+        {
+            for ( final Hasher hasher : hashers.values () )
+            {
+                hasher.putBytes ( buffer, 0, len );
+            }
+        }
+
+        return finish ( hashers );
     }
 }
@@ -13,14 +13,20 @@ package org.eclipse.packagedrone.storage.apm;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.LinkedList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.packagedrone.repo.MetaKey;
+import org.eclipse.packagedrone.storage.apm.StorageContext;
 import org.eclipse.packagedrone.storage.apm.StorageManager;
 import org.eclipse.packagedrone.storage.apm.StorageRegistration;
 import org.eclipse.scada.utils.io.RecursiveDeleteVisitor;
@@ -116,6 +122,66 @@ public class BaseTest
         this.mgr.registerModel ( 1, new MetaKey ( "mock", "1" ), new MockStorageProvider ( "1", "foo" ) );
     }
 
+    /**
+     * Register the same model while the first provider is still starting.
+     * The second registration must fail without starting its provider.
+     */
+    @Test
+    public void test2e () throws Exception
+    {
+        final MetaKey key = new MetaKey ( "mock", "2e" );
+
+        final CountDownLatch starting = new CountDownLatch ( 1 );
+        final CountDownLatch release = new CountDownLatch ( 1 );
+        final AtomicInteger started = new AtomicInteger ();
+
+        final Thread first = new Thread ( () -> {
+            this.mgr.registerModel ( 1, key, new MockStorageProvider ( "2e", "foo" ) {
+                @Override
+                public void start ( final StorageContext context ) throws Exception
+                {
+                    started.incrementAndGet ();
+                    starting.countDown ();
+                    release.await ();
+                    super.start ( context );
+                }
+            } );
+        } );
+        first.start ();
+
+        try
+        {
+            assertTrue ( starting.await ( 10, TimeUnit.SECONDS ) );
+
+            try
+            {
+                this.mgr.registerModel ( 1, key, new MockStorageProvider ( "2e", "foo" ) {
+                    @Override
+                    public void start ( final StorageContext context ) throws Exception
+                    {
+                        started.incrementAndGet ();
+                        super.start ( context );
+                    }
+                } );
+                fail ( "Duplicate registration must fail" );
+            }
+            catch ( final IllegalArgumentException e )
+            {
+                // expected
+            }
+        }
+        finally
+        {
+            release.countDown ();
+            first.join ();
+        }
+
+        assertEquals ( 1, started.get () );
+        this.mgr.snapshotRun ( key, MockStorageViewModel.class, m -> {
+            assertEquals ( "foo", m.getValue () );
+        } );
+    }
+
     /**
      * Access a model
      */
@@ -658,4 +724,233 @@ public class BaseTest
         } );
     }
 
+    /**
+     * Read a snapshot while another thread modifies the model.
+     * <p>
+     * Expect the snapshot read to not block and to see the last persisted
+     * state.
+     * </p>
+     */
+    @Test
+    public void test9a () throws Exception
+    {
+        final MetaKey key1 = new MetaKey ( "mock", "9a1" );
+        this.mgr.registerModel ( 1, key1, new MockStorageProvider ( key1.getKey (), "foo" ) );
+
+        final CountDownLatch modifying = new CountDownLatch ( 1 );
+        final CountDownLatch release = new CountDownLatch ( 1 );
+
+        final Thread writer = new Thread ( () -> {
+            this.mgr.modifyRun ( key1, MockStorageModel.class, m1 -> {
+                m1.setValue ( "bar" );
+                modifying.countDown ();
+                try
+                {
+                    release.await ();
+                }
+                catch ( final InterruptedException e )
+                {
+                    throw new RuntimeException ( e );
+                }
+            } );
+        } );
+        writer.start ();
+
+        try
+        {
+            assertTrue ( modifying.await ( 10, TimeUnit.SECONDS ) );
+
+            this.mgr.snapshotRun ( key1, MockStorageViewModel.class, m1 -> {
+                assertEquals ( "foo", m1.getValue () );
+            } );
+        }
+        finally
+        {
+            release.countDown ();
+            writer.join ();
+        }
+
+        this.mgr.snapshotRun ( key1, MockStorageViewModel.class, m1 -> {
+            assertEquals ( "bar", m1.getValue () );
+        } );
+    }
+
+    /**
+     * Read a snapshot inside a modify lock.
+     * <p>
+     * Expect the snapshot to contain the content of the write model
+     * </p>
+     */
+    @Test
+    public void test9b ()
+    {
+        final MetaKey key1 = new MetaKey ( "mock", "9b1" );
+        this.mgr.registerModel ( 1, key1, new MockStorageProvider ( key1.getKey (), "foo" ) );
+
+        this.mgr.modifyRun ( key1, MockStorageModel.class, m1 -> {
+            m1.setValue ( "bar" );
+            this.mgr.snapshotRun ( key1, MockStorageViewModel.class, m1a -> {
+                assertEquals ( "bar", m1a.getValue () );
+            } );
+        } );
+    }
+
+    /**
+     * A lazy model must not be loaded before it gets accessed
+     */
+    @Test
+    public void test10 ()
+    {
+        final MetaKey key = new MetaKey ( "mock", "10" );
+
+        final AtomicInteger loads = new AtomicInteger ();
+
+        this.mgr.registerModel ( 1, key, new MockStorageProvider ( key.getKey (), "foo" ) {
+
+            @Override
+            protected boolean isLazy ()
+            {
+                return true;
+            }
+
+            @Override
+            protected MockStorageModel loadWriteModel ( final StorageContext context ) throws Exception
+            {
+                loads.incrementAndGet ();
+                return super.loadWriteModel ( context );
+            }
+        } );
+
+        assertEquals ( 0, loads.get () );
+
+        this.mgr.accessRun ( key, MockStorageViewModel.class, m -> {
+            assertEquals ( "foo", m.getValue () );
+        } );
+
+        this.mgr.modifyRun ( key, MockStorageModel.class, m -> {
+            m.setValue ( "bar" );
+        } );
+
+        this.mgr.accessRun ( key, MockStorageViewModel.class, m -> {
+            assertEquals ( "bar", m.getValue () );
+        } );
+
+        assertEquals ( 1, loads.get () );
+    }
+
+    /**
+     * Unload the least recently used model and load it again on next access
+     */
+    @Test
+    public void test11 ()
+    {
+        final MetaKey key1 = new MetaKey ( "mock", "11a" );
+        final MetaKey key2 = new MetaKey ( "mock", "11b" );
+
+        final AtomicInteger loads = new AtomicInteger ();
+
+        for ( final MetaKey key : new MetaKey[] { key1, key2 } )
+        {
+            this.mgr.registerModel ( 1, key, new MockStorageProvider ( key.getKey (), "foo" ) {
+
+                @Override
+                public boolean isUnloadable ()
+                {
+                    return true;
+                }
+
+                @Override
+                protected MockStorageModel loadWriteModel ( final StorageContext context ) throws Exception
+                {
+                    loads.incrementAndGet ();
+                    return super.loadWriteModel ( context );
+                }
+            } );
+        }
+
+        this.mgr.modifyRun ( key1, MockStorageModel.class, m -> {
+            m.setValue ( "bar" );
+        } );
+        this.mgr.accessRun ( key2, MockStorageViewModel.class, m -> {
+        } );
+
+        assertEquals ( 2, loads.get () );
+
+        // only the first one exceeds the limit
+
+        assertEquals ( 1, this.mgr.evict ( 0, 1 ) );
+
+        this.mgr.accessRun ( key1, MockStorageViewModel.class, m -> {
+            assertEquals ( "bar", m.getValue () );
+        } );
+
+        assertEquals ( 3, loads.get () );
+    }
+
+    /**
+     * Listing models by their summary must neither load unloaded models nor
+     * keep them from being unloaded
+     */
+    @Test
+    public void test12 ()
+    {
+        final MetaKey key1 = new MetaKey ( "mock", "12a" );
+        final MetaKey key2 = new MetaKey ( "mock", "12b" );
+
+        final AtomicInteger loads = new AtomicInteger ();
+
+        for ( final MetaKey key : new MetaKey[] { key1, key2 } )
+        {
+            this.mgr.registerModel ( 1, key, new MockStorageProvider ( key.getKey (), key.getKey () ) {
+
+                @Override
+                public boolean isUnloadable ()
+                {
+                    return true;
+                }
+
+                @Override
+                protected Object makeSummaryTyped ( final MockStorageModel writeModel )
+                {
+                    return writeModel.getValue ();
+                }
+
+                @Override
+                protected MockStorageModel loadWriteModel ( final StorageContext context ) throws Exception
+                {
+                    loads.incrementAndGet ();
+                    return super.loadWriteModel ( context );
+                }
+            } );
+        }
+
+        this.mgr.accessRun ( key1, MockStorageViewModel.class, m -> {
+        } );
+        this.mgr.accessRun ( key2, MockStorageViewModel.class, m -> {
+        } );
+
+        assertEquals ( 2, loads.get () );
+
+        // listing after the last use must not make the first one more recent
+
+        assertEquals ( "12a", this.mgr.summaryCall ( key1, String.class, s -> s ) );
+        assertEquals ( "12b", this.mgr.summaryCall ( key2, String.class, s -> s ) );
+
+        assertEquals ( 1, this.mgr.evict ( 0, 1 ) );
+
+        // listing again must not load the unloaded model
+
+        assertEquals ( "12a", this.mgr.summaryCall ( key1, String.class, s -> s ) );
+        assertEquals ( "12b", this.mgr.summaryCall ( key2, String.class, s -> s ) );
+
+        assertEquals ( 2, loads.get () );
+
+        // the second one is still loaded
+
+        this.mgr.accessRun ( key2, MockStorageViewModel.class, m -> {
+            assertEquals ( "12b", m.getValue () );
+        } );
+
+        assertEquals ( 2, loads.get () );
+    }
 }
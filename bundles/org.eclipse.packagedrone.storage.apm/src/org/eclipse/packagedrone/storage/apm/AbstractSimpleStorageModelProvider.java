@@ -15,10 +15,33 @@ public abstract class AbstractSimpleStorageModelProvider<V, W> implements Storag
 
     private StorageContext context;
 
-    private V viewModel;
+    /**
+     * The view model of the last persisted write model
+     * <p>
+     * This is volatile since it may be read without holding a lock, see
+     * {@link StorageManager#snapshotCall(org.eclipse.packagedrone.repo.MetaKey, Class, java.util.function.Function)}.
+     * </p>
+     */
+    private volatile V viewModel;
 
     private W writeModel;
 
+    /**
+     * The summary of the last persisted write model, see
+     * {@link #makeSummaryTyped(Object)}
+     * <p>
+     * Other than the view model, the summary is kept when the model gets
+     * unloaded.
+     * </p>
+     */
+    private volatile Object summary;
+
+    /**
+     * Whether the model has been loaded, see {@link #isLazy()} and
+     * {@link #unload()}
+     */
+    private volatile boolean loaded;
+
     private final Class<W> writeModelClazz;
 
     public AbstractSimpleStorageModelProvider ( final Class<V> viewClazz, final Class<W> writeClazz )
@@ -29,7 +52,34 @@ public abstract class AbstractSimpleStorageModelProvider<V, W> implements Storag
     @Override
     public V getViewModel ()
     {
-        return this.viewModel;
+        final V viewModel = this.viewModel;
+        if ( viewModel != null )
+        {
+            return viewModel;
+        }
+
+        synchronized ( this )
+        {
+            ensureLoaded ();
+            return this.viewModel;
+        }
+    }
+
+    @Override
+    public Object getSummary ()
+    {
+        final Object summary = this.summary;
+        if ( summary != null )
+        {
+            return summary;
+        }
+
+        // no summary support or not loaded yet
+
+        final V viewModel = getViewModel ();
+
+        final Object loadedSummary = this.summary;
+        return loadedSummary != null ? loadedSummary : viewModel;
     }
 
     @Override
@@ -37,8 +87,83 @@ public abstract class AbstractSimpleStorageModelProvider<V, W> implements Storag
     {
         this.context = context;
 
-        this.writeModel = loadWriteModel ( context );
+        if ( !isLazy () )
+        {
+            load ();
+        }
+        else
+        {
+            this.summary = loadSummary ( context );
+        }
+    }
+
+    /**
+     * Check if the model should be loaded on first access instead of when
+     * starting
+     * <p>
+     * The default implementation returns {@code false}.
+     * </p>
+     *
+     * @return {@code true} if the model should be loaded lazily
+     */
+    protected boolean isLazy ()
+    {
+        return false;
+    }
+
+    private synchronized void load () throws Exception
+    {
+        if ( this.loaded )
+        {
+            return;
+        }
+
+        this.writeModel = loadWriteModel ( this.context );
+        this.summary = makeSummaryTyped ( this.writeModel );
         this.viewModel = makeViewModel ( this.writeModel );
+        this.loaded = true;
+    }
+
+    @Override
+    public boolean isLoaded ()
+    {
+        return this.loaded;
+    }
+
+    @Override
+    public synchronized boolean unload ()
+    {
+        if ( !this.loaded || !isUnloadable () )
+        {
+            return false;
+        }
+
+        this.loaded = false;
+        this.writeModel = null;
+        this.viewModel = null;
+
+        return true;
+    }
+
+    private void ensureLoaded ()
+    {
+        if ( this.loaded )
+        {
+            return;
+        }
+
+        try
+        {
+            load ();
+        }
+        catch ( final RuntimeException e )
+        {
+            throw e;
+        }
+        catch ( final Exception e )
+        {
+            throw new ModelInitializationException ( "Failed to load model", e );
+        }
     }
 
     @Override
@@ -49,6 +174,7 @@ public abstract class AbstractSimpleStorageModelProvider<V, W> implements Storag
     @Override
     public W cloneWriteModel ()
     {
+        ensureLoaded ();
         return cloneWriteModel ( this.writeModel );
     }
 
@@ -60,6 +186,7 @@ public abstract class AbstractSimpleStorageModelProvider<V, W> implements Storag
         persistWriteModel ( this.context, writeModel );
 
         this.writeModel = writeModel;
+        this.summary = makeSummaryTyped ( writeModel );
         this.viewModel = viewModel;
     }
 
@@ -69,8 +196,51 @@ public abstract class AbstractSimpleStorageModelProvider<V, W> implements Storag
         return makeViewModelTyped ( this.writeModelClazz.cast ( writeModel ) );
     }
 
+    @Override
+    public Object makeSummary ( final Object writeModel )
+    {
+        final Object summary = makeSummaryTyped ( this.writeModelClazz.cast ( writeModel ) );
+        return summary != null ? summary : makeViewModel ( writeModel );
+    }
+
     protected abstract V makeViewModelTyped ( W writeModel );
 
+    /**
+     * Make a summary of the write model
+     * <p>
+     * The default implementation returns {@code null}, which means that the
+     * view model is used as summary.
+     * </p>
+     *
+     * @param writeModel
+     *            the write model
+     * @return the summary, or {@code null} if the provider does not support
+     *         summaries
+     */
+    protected Object makeSummaryTyped ( final W writeModel )
+    {
+        return null;
+    }
+
+    /**
+     * Load the summary of a lazy model without loading the model
+     * <p>
+     * This is called when starting a lazy model. The default implementation
+     * returns {@code null}, in which case the model will be loaded on the
+     * first request for the summary.
+     * </p>
+     *
+     * @param context
+     *            the storage context
+     * @return the summary, or {@code null} if it is not available
+     * @throws Exception
+     *             if loading the summary failed
+     */
+    protected Object loadSummary ( final StorageContext context ) throws Exception
+    {
+        return null;
+    }
+
     protected abstract W cloneWriteModel ( final W writeModel );
 
     protected abstract void persistWriteModel ( StorageContext context, final W writeModel ) throws Exception;
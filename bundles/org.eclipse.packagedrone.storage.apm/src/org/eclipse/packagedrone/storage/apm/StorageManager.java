@@ -15,33 +15,88 @@ import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.eclipse.packagedrone.repo.MetaKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class StorageManager
 {
+    private final static Logger logger = LoggerFactory.getLogger ( StorageManager.class );
+
     private static final ThreadLocal<Deque<State>> lockStates = ThreadLocal.withInitial ( LinkedList::new );
 
+    /**
+     * The time in milliseconds after which an unused model gets unloaded,
+     * {@code 0} disables unloading idle models
+     */
+    private static final long IDLE_TIMEOUT = Long.getLong ( "drone.storage.idleTimeout", 0 );
+
+    /**
+     * The maximum number of unloadable models kept loaded, {@code 0} for no
+     * limit
+     * <p>
+     * Models are unloaded least recently used first. Reading the summary of a
+     * model, see {@link #summaryCall(MetaKey, Class, Function)}, does not count
+     * as a use. So listing all models does not cycle them through the set of
+     * loaded models.
+     * </p>
+     */
+    private static final int MAX_LOADED_MODELS = Integer.getInteger ( "drone.storage.maxLoadedModels", 0 );
+
+    /**
+     * The interval in milliseconds for checking for models to unload
+     */
+    private static final long EVICTION_INTERVAL = Long.getLong ( "drone.storage.evictionInterval", 60_000 );
+
     private long counter;
 
     private final ReadWriteLock modelLock = new ReentrantReadWriteLock ( false );
 
     private final Map<Long, Entry> modelIdMap = new HashMap<> ();
 
-    private final Map<MetaKey, Entry> modelKeyMap = new HashMap<> ();
+    /**
+     * The models by key
+     * <p>
+     * This map is only modified while holding the write lock of the
+     * {@link #modelLock}, but may be read without holding any lock by
+     * {@link #snapshotCall(MetaKey, Class, Function)}.
+     * </p>
+     */
+    private final Map<MetaKey, Entry> modelKeyMap = new ConcurrentHashMap<> ();
+
+    /**
+     * The keys of models which are currently being registered
+     * <p>
+     * A key is reserved before its provider is started, so that no second
+     * provider gets started for the same key. This set is guarded by the write
+     * lock of the {@link #modelLock}.
+     * </p>
+     */
+    private final Set<MetaKey> reservedKeys = new HashSet<> ();
 
     private final StorageContext context;
 
-    private boolean closed;
+    private volatile boolean closed;
+
+    private final ScheduledExecutorService evictionExecutor;
 
     private static enum LockType
     {
@@ -238,6 +293,11 @@ public class StorageManager
 
         ReadWriteLock lock = new ReentrantReadWriteLock ( false );
 
+        /**
+         * The time of the last access, used for unloading idle models
+         */
+        volatile long lastAccess = System.nanoTime ();
+
         public Entry ( final long id, final long lockPriority, final MetaKey key, final StorageModelProvider<?, ?> storageProvider )
         {
             this.id = id;
@@ -259,6 +319,98 @@ public class StorageManager
                 return basePath;
             }
         };
+
+        if ( IDLE_TIMEOUT > 0 || MAX_LOADED_MODELS > 0 )
+        {
+            this.evictionExecutor = Executors.newSingleThreadScheduledExecutor ( r -> {
+                final Thread t = new Thread ( r, "StorageManager/Eviction" );
+                t.setDaemon ( true );
+                return t;
+            } );
+            this.evictionExecutor.scheduleWithFixedDelay ( () -> evict ( IDLE_TIMEOUT, MAX_LOADED_MODELS ), EVICTION_INTERVAL, EVICTION_INTERVAL, TimeUnit.MILLISECONDS );
+        }
+        else
+        {
+            this.evictionExecutor = null;
+        }
+    }
+
+    /**
+     * Unload models which are idle or exceed the maximum number of loaded
+     * models
+     * <p>
+     * Only models whose provider is {@link StorageModelProvider#isUnloadable()
+     * unloadable} are considered, least recently used first. Models which are
+     * currently locked are skipped.
+     * </p>
+     *
+     * @param idleTimeout
+     *            the time in milliseconds after which an unused model gets
+     *            unloaded, {@code 0} to disable
+     * @param maxLoaded
+     *            the maximum number of loaded models, {@code 0} for no limit
+     * @return the number of unloaded models
+     */
+    public int evict ( final long idleTimeout, final int maxLoaded )
+    {
+        if ( this.closed )
+        {
+            return 0;
+        }
+
+        final List<Entry> loaded = this.modelKeyMap.values ().stream ().filter ( entry -> entry.storageProvider.isUnloadable () && entry.storageProvider.isLoaded () ).sorted ( Comparator.comparingLong ( entry -> entry.lastAccess ) ).collect ( Collectors.toList () );
+
+        final long now = System.nanoTime ();
+
+        int excess = maxLoaded > 0 ? loaded.size () - maxLoaded : 0;
+        int count = 0;
+
+        for ( final Entry entry : loaded )
+        {
+            final boolean idle = idleTimeout > 0 && now - entry.lastAccess > TimeUnit.MILLISECONDS.toNanos ( idleTimeout );
+            if ( !idle && excess <= 0 )
+            {
+                // sorted by last access, so all others are more recent
+                break;
+            }
+
+            if ( unload ( entry ) )
+            {
+                excess--;
+                count++;
+            }
+        }
+
+        if ( count > 0 )
+        {
+            logger.debug ( "Unloaded {} models", count );
+        }
+
+        return count;
+    }
+
+    private static boolean unload ( final Entry entry )
+    {
+        // don't wait for models which are in use
+
+        if ( !entry.lock.writeLock ().tryLock () )
+        {
+            return false;
+        }
+
+        try
+        {
+            return entry.storageProvider.unload ();
+        }
+        catch ( final Exception e )
+        {
+            logger.warn ( "Failed to unload model: " + entry.key, e );
+            return false;
+        }
+        finally
+        {
+            entry.lock.writeLock ().unlock ();
+        }
     }
 
     private void validateBasePath ( final Path basePath )
@@ -293,6 +445,12 @@ public class StorageManager
 
     /**
      * Register a new model with the storage manager
+     * <p>
+     * The storage provider is started without holding the lock of the
+     * storage manager, so multiple models may be registered concurrently. The
+     * key is reserved before the provider is started, so a concurrent
+     * registration of the same key fails without starting its provider.
+     * </p>
      *
      * @param lockPriority
      *            the priority of the lock, lower numbers must be locked before
@@ -312,19 +470,39 @@ public class StorageManager
         try
         {
             testClosed ();
+            testNotRegistered ( key );
+            this.reservedKeys.add ( key );
+        }
+        finally
+        {
+            this.modelLock.writeLock ().unlock ();
+        }
 
-            if ( this.modelKeyMap.containsKey ( key ) )
-            {
-                throw new IllegalArgumentException ( String.format ( "A provider for '%s' is already registered", key ) );
-            }
+        // start without holding the lock, loading a model may take a while and multiple models may be started concurrently
+
+        try
+        {
+            storageProvider.start ( this.context );
+        }
+        catch ( final Exception e )
+        {
+            releaseKey ( key );
+            throw new ModelInitializationException ( "Failed to start model provider: " + key, e );
+        }
+
+        this.modelLock.writeLock ().lock ();
+        try
+        {
+            this.reservedKeys.remove ( key );
 
             try
             {
-                storageProvider.start ( this.context );
+                testClosed ();
             }
-            catch ( final Exception e )
+            catch ( final RuntimeException e )
             {
-                throw new ModelInitializationException ( "Failed to start model provider: " + key, e );
+                storageProvider.stop ();
+                throw e;
             }
 
             final long id = this.counter++;
@@ -349,6 +527,27 @@ public class StorageManager
         }
     }
 
+    private void releaseKey ( final MetaKey key )
+    {
+        this.modelLock.writeLock ().lock ();
+        try
+        {
+            this.reservedKeys.remove ( key );
+        }
+        finally
+        {
+            this.modelLock.writeLock ().unlock ();
+        }
+    }
+
+    private void testNotRegistered ( final MetaKey key )
+    {
+        if ( this.modelKeyMap.containsKey ( key ) || this.reservedKeys.contains ( key ) )
+        {
+            throw new IllegalArgumentException ( String.format ( "A provider for '%s' is already registered", key ) );
+        }
+    }
+
     protected void unregisterModel ( final long id )
     {
         final Entry entry;
@@ -419,6 +618,108 @@ public class StorageManager
 
     }
 
+    /**
+     * Access the last persisted view model without locking
+     * <p>
+     * Other than {@link #accessCall(MetaKey, Class, Function)} this method
+     * neither locks the model nor the storage manager. So it will not block
+     * when another thread is currently modifying the model. Instead the
+     * function will receive the view model of the last successfully persisted
+     * modification. Changes persisted while the function is running will not
+     * be visible to the function.
+     * </p>
+     * <p>
+     * This requires that the view model published by
+     * {@link StorageModelProvider#getViewModel()} is not modified after it got
+     * published.
+     * </p>
+     * <p>
+     * If the current thread already holds a lock on the model, this method
+     * behaves like {@link #accessCall(MetaKey, Class, Function)}, so that the
+     * function sees the modifications of the current thread.
+     * </p>
+     */
+    public <T, M> T snapshotCall ( final MetaKey modelKey, final Class<M> modelClazz, final Function<M, T> function )
+    {
+        final State current = getCurrent ();
+        if ( current != null && current.isLocked ( modelKey ) )
+        {
+            return accessCall ( modelKey, modelClazz, function );
+        }
+
+        testClosed ();
+
+        final Entry entry = this.modelKeyMap.get ( modelKey );
+
+        if ( entry == null )
+        {
+            throw new IllegalArgumentException ( String.format ( "Model '%s' could not be found", modelKey ) );
+        }
+
+        entry.lastAccess = System.nanoTime ();
+
+        final Object viewModel = entry.storageProvider.getViewModel ();
+
+        if ( viewModel == null || modelClazz.isAssignableFrom ( viewModel.getClass () ) )
+        {
+            return function.apply ( modelClazz.cast ( viewModel ) );
+        }
+        else
+        {
+            throw new IllegalStateException ( String.format ( "View model of '%s' is not of type '%s'", modelKey, modelClazz.getName () ) );
+        }
+    }
+
+    /**
+     * Access the summary of the last persisted model
+     * <p>
+     * Like {@link #snapshotCall(MetaKey, Class, Function)} this method does not
+     * lock. It is meant for listing models, so it does not count as using the
+     * model. It will neither keep the model from being unloaded, nor will it
+     * load the model if the provider can supply the summary without it, see
+     * {@link StorageModelProvider#getSummary()}.
+     * </p>
+     * <p>
+     * If the current thread already holds a lock on the model, the summary is
+     * made from the model of the current thread.
+     * </p>
+     */
+    public <T, S> T summaryCall ( final MetaKey modelKey, final Class<S> summaryClazz, final Function<S, T> function )
+    {
+        final State current = getCurrent ();
+        if ( current != null && current.isLocked ( modelKey ) )
+        {
+            return doWithModel ( modelKey, entry -> doWithState ( entry, LockType.READ, state -> {
+                final State same = state.sameKeyParent;
+
+                final Object summary;
+                if ( same != null && same.writeModel != null )
+                {
+                    summary = entry.storageProvider.makeSummary ( same.writeModel );
+                }
+                else
+                {
+                    summary = entry.storageProvider.getSummary ();
+                }
+
+                return function.apply ( cast ( entry, summaryClazz, summary ) );
+            } ) );
+        }
+
+        testClosed ();
+
+        final Entry entry = this.modelKeyMap.get ( modelKey );
+
+        if ( entry == null )
+        {
+            throw new IllegalArgumentException ( String.format ( "Model '%s' could not be found", modelKey ) );
+        }
+
+        // don't touch the last access time, listing is no use of the model
+
+        return function.apply ( cast ( entry, summaryClazz, entry.storageProvider.getSummary () ) );
+    }
+
     public <T, M> T modifyCall ( final MetaKey modelKey, final Class<M> modelClazz, final Function<M, T> function )
     {
         return doWithModel ( modelKey, entry -> {
@@ -508,6 +809,8 @@ public class StorageManager
                 throw new IllegalArgumentException ( String.format ( "Model '%s' could not be found", modelKey ) );
             }
 
+            entry.lastAccess = System.nanoTime ();
+
             return function.apply ( entry );
         }
         finally
@@ -574,6 +877,14 @@ public class StorageManager
         } );
     }
 
+    public <M> void snapshotRun ( final MetaKey modelKey, final Class<M> modelClazz, final Consumer<M> consumer )
+    {
+        snapshotCall ( modelKey, modelClazz, ( model ) -> {
+            consumer.accept ( model );
+            return null;
+        } );
+    }
+
     public <M> void modifyRun ( final MetaKey modelKey, final Class<M> modelClazz, final Consumer<M> consumer )
     {
         modifyCall ( modelKey, modelClazz, ( model ) -> {
@@ -640,6 +951,11 @@ public class StorageManager
 
             this.closed = true;
 
+            if ( this.evictionExecutor != null )
+            {
+                this.evictionExecutor.shutdown ();
+            }
+
             this.modelIdMap.clear ();
             this.modelKeyMap.clear ();
         }
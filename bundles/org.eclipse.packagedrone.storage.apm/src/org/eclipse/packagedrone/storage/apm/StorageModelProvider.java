@@ -12,6 +12,16 @@ package org.eclipse.packagedrone.storage.apm;
 
 public interface StorageModelProvider<V, W>
 {
+    /**
+     * Get the view model of the last persisted write model
+     * <p>
+     * This method may be called without holding a lock on the model. So the
+     * view model must be published in a thread safe way and must not be
+     * modified after it got published.
+     * </p>
+     *
+     * @return the current view model
+     */
     public V getViewModel ();
 
     public void start ( StorageContext context ) throws Exception;
@@ -22,5 +32,73 @@ public interface StorageModelProvider<V, W>
 
     public V makeViewModel ( Object writeModel );
 
+    /**
+     * Get a summary of the last persisted write model
+     * <p>
+     * The summary holds the information required for listing models. A
+     * provider which loads its model lazily or supports unloading should be
+     * able to provide the summary without loading the model. The same
+     * publishing rules as for {@link #getViewModel()} apply.
+     * </p>
+     * <p>
+     * The default implementation returns the view model.
+     * </p>
+     *
+     * @return the current summary
+     */
+    public default Object getSummary ()
+    {
+        return getViewModel ();
+    }
+
+    /**
+     * Make a summary of a write model
+     * <p>
+     * The default implementation returns the view model of the write model.
+     * </p>
+     *
+     * @param writeModel
+     *            the write model
+     * @return the summary of the write model
+     */
+    public default Object makeSummary ( final Object writeModel )
+    {
+        return makeViewModel ( writeModel );
+    }
+
     public void persistWriteModel ( W model ) throws Exception;
+
+    /**
+     * Check if the model may be unloaded when it is not being used
+     *
+     * @return {@code true} if {@link #unload()} is supported
+     */
+    public default boolean isUnloadable ()
+    {
+        return false;
+    }
+
+    /**
+     * Check if the model is currently loaded
+     *
+     * @return {@code true} if the model is loaded
+     */
+    public default boolean isLoaded ()
+    {
+        return true;
+    }
+
+    /**
+     * Release the loaded model
+     * <p>
+     * The model will be loaded again on the next access. This method is only
+     * called while holding the write lock of the model.
+     * </p>
+     *
+     * @return {@code true} if the model got released
+     */
+    public default boolean unload ()
+    {
+        return false;
+    }
 }